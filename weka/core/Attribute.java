@@ -708,6 +708,33 @@ public class Attribute implements Copyable, Serializable {
     }
   }
 
+  /**
+   * Produces a copy of a string attribute that keeps only some of its
+   * values. The values that are kept are renumbered in their original
+   * order; the original attribute is not changed.
+   *
+   * @param newIndexes the new index of every value, or -1 if the value
+   * is to be dropped
+   * @param numKept the number of values that are kept
+   * @return the copy of the attribute
+   */
+  //@ requires isString();
+  //@ requires newIndexes.length == m_Values.size();
+  final /*@ pure non_null @*/ Attribute copyStringValues(int[] newIndexes, int numKept) {
+
+    Attribute copy = (Attribute)copy();
+    copy.m_Values = new FastVector(numKept);
+    copy.m_Hashtable = new Hashtable(numKept);
+    for (int i = 0; i < newIndexes.length; i++) {
+      if (newIndexes[i] >= 0) {
+        Object store = m_Values.elementAt(i);
+        copy.m_Values.addElement(store);
+        copy.m_Hashtable.put(store, new Integer(newIndexes[i]));
+      }
+    }
+    return copy;
+  }
+
   /**
    * Adds an attribute value. Creates a fresh list of attribute
    * values before adding it.
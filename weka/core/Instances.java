@@ -430,6 +430,65 @@ public class Instances implements Serializable {
     }
   }
 
+  /**
+   * Drops the values of string attributes that are not referenced by
+   * any instance in the dataset, and renumbers the values the instances
+   * hold. Setting a string value adds it to the attribute for good, so
+   * code that rewrites string values (e.g. to normalize them) should
+   * compact the dataset afterwards. This change only affects this
+   * dataset: instances that use its header without being in it must not
+   * hold string values.
+   *
+   * @return the number of values dropped
+   */
+  public int compactStringAttributes() {
+
+    int numDropped = 0;
+    FastVector newVec = null;
+    for (int j = 0; j < numAttributes(); j++) {
+      Attribute att = attribute(j);
+      if (!att.isString()) {
+	continue;
+      }
+
+      // count the references to every value
+      int[] references = new int[att.numValues()];
+      for (int i = 0; i < numInstances(); i++) {
+	Instance instance = instance(i);
+	if (!instance.isMissing(j)) {
+	  references[(int)instance.value(j)]++;
+	}
+      }
+      int[] newIndexes = new int[references.length];
+      int numKept = 0;
+      for (int v = 0; v < references.length; v++) {
+	newIndexes[v] = (references[v] > 0) ? numKept++ : -1;
+      }
+      if (numKept == references.length) {
+	continue;
+      }
+
+      for (int i = 0; i < numInstances(); i++) {
+	Instance instance = instance(i);
+	if (!instance.isMissing(j)) {
+	  int index = (int)instance.value(j);
+	  if (newIndexes[index] != index) {
+	    instance.setValue(j, newIndexes[index]);
+	  }
+	}
+      }
+      if (newVec == null) {
+	newVec = (FastVector)m_Attributes.copy();
+      }
+      newVec.setElementAt(att.copyStringValues(newIndexes, numKept), j);
+      numDropped += references.length - numKept;
+    }
+    if (newVec != null) {
+      m_Attributes = newVec;
+    }
+    return numDropped;
+  }
+
   /**
    * Deletes all string attributes in the dataset. A deep copy of the attribute
    * information is performed before an attribute is deleted.
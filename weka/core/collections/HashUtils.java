@@ -0,0 +1,62 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    HashUtils.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.core.collections;
+
+/**
+ * Hashing and sizing shared by the open-addressing tables of this
+ * package.  Tables have power-of-two capacities and are kept at most
+ * half full, so that linear probe sequences stay short.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class HashUtils {
+
+  /** Largest table capacity */
+  public static final int MAX_CAPACITY = 1 << 30;
+
+  /** Spread the bits of a key, so that keys with regular low bits,
+   * such as pair codes or class values, do not cluster */
+  public static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  /** Capacity of a table holding a given number of keys */
+  public static int capacity(int expectedSize) {
+    int capacity = 16;
+    while (capacity < MAX_CAPACITY && threshold(capacity) < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /** Number of keys a table of a given capacity holds before growing */
+  public static int threshold(int capacity) {
+    return (capacity == MAX_CAPACITY) ? capacity - 1 : capacity / 2;
+  }
+}
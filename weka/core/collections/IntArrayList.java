@@ -0,0 +1,98 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    IntArrayList.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.core.collections;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A growable array of ints, used instead of an ArrayList of Integers
+ * where boxing would dominate the cost.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class IntArrayList implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -2660408882769101671L;
+
+  protected int[] m_values;
+  protected int m_size = 0;
+
+  public IntArrayList() {
+    this(16);
+  }
+
+  public IntArrayList(int capacity) {
+    m_values = new int[Math.max(capacity, 4)];
+  }
+
+  /** Append a value */
+  public void add(int value) {
+    if (m_size == m_values.length) {
+      m_values = Arrays.copyOf(m_values, (int) Math.min(Integer.MAX_VALUE - 8, 2L * m_size));
+    }
+    m_values[m_size++] = value;
+  }
+
+  public int get(int i) {
+    if (i >= m_size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", size: " + m_size);
+    }
+    return m_values[i];
+  }
+
+  public void set(int i, int value) {
+    if (i >= m_size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", size: " + m_size);
+    }
+    m_values[i] = value;
+  }
+
+  public int size() { return m_size; }
+  public boolean isEmpty() { return m_size == 0; }
+
+  /** Remove all values, keeping the capacity */
+  public void clear() {
+    m_size = 0;
+  }
+
+  /** Sort the values in increasing order */
+  public void sort() {
+    Arrays.sort(m_values, 0, m_size);
+  }
+
+  /** Copy the values into an array of their size */
+  public int[] toArray() {
+    return Arrays.copyOf(m_values, m_size);
+  }
+
+  public String toString() {
+    StringBuffer buffer = new StringBuffer("[");
+    for (int i = 0; i < m_size; i++) {
+      buffer.append(i > 0 ? ", " : "").append(m_values[i]);
+    }
+    return buffer.append("]").toString();
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    IntIntHashMap.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.core.collections;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A map from ints to ints kept in an open-addressing table with linear
+ * probing, used instead of a HashMap of Integers.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class IntIntHashMap implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -1312092116253048471L;
+
+  protected int[] m_keys;
+  protected int[] m_values;
+  protected boolean[] m_used;
+  protected int m_size = 0;
+
+  /** The table is grown when more than this many slots are used */
+  protected int m_threshold;
+
+  public IntIntHashMap() {
+    this(16);
+  }
+
+  /** Create a map that holds a given number of keys without growing */
+  public IntIntHashMap(int expectedSize) {
+    allocate(HashUtils.capacity(expectedSize));
+  }
+
+  protected void allocate(int capacity) {
+    m_keys = new int[capacity];
+    m_values = new int[capacity];
+    m_used = new boolean[capacity];
+    m_threshold = HashUtils.threshold(capacity);
+  }
+
+  /** The slot of a key, or of the empty slot where it would go */
+  protected int slot(int key) {
+    int mask = m_keys.length - 1;
+    int slot = HashUtils.hash(key) & mask;
+    while (m_used[slot] && m_keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /** Associate a value with a key */
+  public void put(int key, int value) {
+    int slot = slot(key);
+    m_values[slot] = value;
+    if (!m_used[slot]) {
+      m_keys[slot] = key;
+      m_used[slot] = true;
+      if (++m_size > m_threshold) {
+        rehash();
+      }
+    }
+  }
+
+  /** Get the value of a key, or a default value if the key is absent */
+  public int get(int key, int defaultValue) {
+    int slot = slot(key);
+    return m_used[slot] ? m_values[slot] : defaultValue;
+  }
+
+  /** Add to the value of a key, which is 0 if the key is absent
+   * @return the new value */
+  public int increment(int key, int delta) {
+    int slot = slot(key);
+    if (m_used[slot]) {
+      return (m_values[slot] += delta);
+    }
+    put(key, delta);
+    return delta;
+  }
+
+  public boolean containsKey(int key) {
+    return m_used[slot(key)];
+  }
+
+  /** Remove a key
+   * @return true if the key was in the map */
+  public boolean remove(int key) {
+    int slot = slot(key);
+    if (!m_used[slot]) {
+      return false;
+    }
+    // shift back the following keys of the probe sequence
+    int mask = m_keys.length - 1;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      if (!m_used[next]) {
+        break;
+      }
+      int home = HashUtils.hash(m_keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - slot) & mask)) {
+        m_keys[slot] = m_keys[next];
+        m_values[slot] = m_values[next];
+        slot = next;
+      }
+    }
+    m_used[slot] = false;
+    m_size--;
+    return true;
+  }
+
+  public int size() { return m_size; }
+  public boolean isEmpty() { return m_size == 0; }
+
+  public void clear() {
+    Arrays.fill(m_used, false);
+    m_size = 0;
+  }
+
+  /** The keys, in the order of values() */
+  public int[] keys() {
+    int[] keys = new int[m_size];
+    int j = 0;
+    for (int i = 0; i < m_keys.length; i++) {
+      if (m_used[i]) {
+        keys[j++] = m_keys[i];
+      }
+    }
+    return keys;
+  }
+
+  /** The values, in the order of keys() */
+  public int[] values() {
+    int[] values = new int[m_size];
+    int j = 0;
+    for (int i = 0; i < m_keys.length; i++) {
+      if (m_used[i]) {
+        values[j++] = m_values[i];
+      }
+    }
+    return values;
+  }
+
+  protected void rehash() {
+    int[] keys = m_keys;
+    int[] values = m_values;
+    boolean[] used = m_used;
+    allocate(keys.length * 2);
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        int slot = slot(keys[i]);
+        m_keys[slot] = keys[i];
+        m_values[slot] = values[i];
+        m_used[slot] = true;
+      }
+    }
+  }
+}
@@ -61,6 +61,14 @@ implements FileSourcedConverter, BatchConverter, IncrementalConverter {
    */
   private transient Reader m_sourceReader = null;
 
+  /**
+   * Should values of string attributes read incrementally be kept in
+   * the structure?  If not, every instance returned by getNextInstance
+   * refers to a header holding only its own string values, so memory
+   * use does not grow with the size of the file.
+   */
+  protected boolean m_retainStringValues = true;
+
   /**
    * Returns a string describing this Loader
    * @return a description of the Loader suitable for
@@ -255,6 +263,9 @@ implements FileSourcedConverter, BatchConverter, IncrementalConverter {
    
     Instance current = m_structure.instance(0);
     m_structure.delete(0);
+    if (!m_retainStringValues && m_structure.checkForStringAttributes()) {
+      m_structure = m_structure.stringFreeStructure();
+    }
     if (current == null) {
       try {
         reset();
@@ -265,6 +276,26 @@ implements FileSourcedConverter, BatchConverter, IncrementalConverter {
     return current;
   }
 
+  /**
+   * Sets whether values of string attributes read incrementally are
+   * kept in the structure.
+   *
+   * @param retain true if all string values should be kept (default)
+   */
+  public void setRetainStringValues(boolean retain) {
+    m_retainStringValues = retain;
+  }
+
+  /**
+   * Gets whether values of string attributes read incrementally are
+   * kept in the structure.
+   *
+   * @return true if all string values are kept
+   */
+  public boolean getRetainStringValues() {
+    return m_retainStringValues;
+  }
+
   /**
    * Main method.
    *
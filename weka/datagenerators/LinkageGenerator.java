@@ -0,0 +1,667 @@
+/*
+ *    LinkageGenerator.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.datagenerators;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+/**
+ * Generates record linkage data: records of synthetic entities, where
+ * every entity is represented by a cluster of corrupted duplicates and
+ * the class attribute holds the id of the entity.  The id is numeric,
+ * numbering the entities from 0 in order of generation, since a nominal
+ * class would have to list every entity in the header.<p>
+ *
+ * Entities are synthesized from the string attributes of a seed dataset,
+ * e.g. restaurant or cora: every field of an entity is taken from a
+ * random seed record, and its tokens are replaced by random tokens of the
+ * same field with a given probability.  Cluster sizes follow a truncated
+ * power law, P(size = s) proportional to s^-z for s up to a maximum size;
+ * z = 0 gives uniform cluster sizes.  The first record of a cluster is
+ * the clean entity; the other records are corrupted by typos (a character
+ * inserted, deleted, substituted or transposed), abbreviations (a token
+ * shortened to its initial), swaps of adjacent tokens, and missing fields.<p>
+ *
+ * Records are written as they are generated, through a bounded shuffle
+ * buffer so that duplicates are not adjacent; memory use does not grow
+ * with the number of records.<p>
+ *
+ * Valid options are:<p>
+ *
+ * -E file <br>
+ * The seed dataset (required). <p>
+ *
+ * -S seed <br>
+ * Random number seed (default 1). <p>
+ *
+ * -M num <br>
+ * Maximum cluster size (default 10). <p>
+ *
+ * -Z num <br>
+ * Exponent of the cluster size distribution (default 2). <p>
+ *
+ * -V num <br>
+ * Probability of replacing a token when synthesizing an entity (default 0.3). <p>
+ *
+ * -T num <br>
+ * Probability of a typo in a field of a duplicate (default 0.2). <p>
+ *
+ * -A num <br>
+ * Probability of abbreviating a token of a duplicate (default 0.05). <p>
+ *
+ * -W num <br>
+ * Probability of swapping two tokens in a field of a duplicate (default 0.05). <p>
+ *
+ * -P num <br>
+ * Probability of a field of a duplicate being missing (default 0.05). <p>
+ *
+ * -B num <br>
+ * Size of the shuffle buffer (default 10000). <p>
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class LinkageGenerator extends Generator implements OptionHandler,
+							   Serializable {
+
+  /**@serial name of the seed dataset */
+  private String m_SeedFile = "";
+
+  /**@serial random number generator seed */
+  private int m_Seed = 1;
+
+  /**@serial maximum cluster size */
+  private int m_MaxClusterSize = 10;
+
+  /**@serial exponent of the cluster size distribution */
+  private double m_ClusterSizeExponent = 2;
+
+  /**@serial probability of replacing a token of a synthesized entity */
+  private double m_VariationProb = 0.3;
+
+  /**@serial corruption probabilities */
+  private double m_TypoProb = 0.2;
+  private double m_AbbreviationProb = 0.05;
+  private double m_SwapProb = 0.05;
+  private double m_MissingProb = 0.05;
+
+  /**@serial size of the shuffle buffer */
+  private int m_BufferSize = 10000;
+
+  /** Names of the generated fields */
+  private transient String [] m_FieldNames;
+
+  /** For every field, the values of the seed records and the tokens of the field */
+  private transient String [][] m_SeedValues;
+  private transient String [][] m_SeedTokens;
+
+  /** Cumulative cluster size distribution */
+  private transient double [] m_SizeCDF;
+
+  /** Generation state */
+  private transient Random m_Random;
+  private transient Random m_SizeRandom;
+  private transient int m_NumGenerated;
+  private transient int m_CurrentEntity;
+  private transient int m_RecordsLeftInCluster;
+  private transient String [] m_CurrentValues;
+  private transient ArrayList m_Buffer;
+
+  /** The dataset format, if generating through the Generator interface */
+  private transient Instances m_DatasetFormat;
+
+
+  /**
+   * Returns a string describing this data generator.
+   *
+   * @return a description of the data generator suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return "A data generator that produces record linkage data: clusters of "
+      + "corrupted duplicates of entities synthesized from a seed dataset, "
+      + "with the entity id as the class.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options
+   */
+  public Enumeration listOptions() {
+
+    Vector newVector = new Vector(10);
+
+    newVector.addElement(new Option(
+              "\tseed dataset (required)",
+              "E", 1, "-E <file>"));
+    newVector.addElement(new Option(
+              "\tseed for random function (default 1)",
+              "S", 1, "-S <num>"));
+    newVector.addElement(new Option(
+              "\tmaximum cluster size (default 10)",
+              "M", 1, "-M <num>"));
+    newVector.addElement(new Option(
+              "\texponent of the cluster size distribution (default 2)",
+              "Z", 1, "-Z <num>"));
+    newVector.addElement(new Option(
+              "\tprobability of replacing a token of an entity (default 0.3)",
+              "V", 1, "-V <num>"));
+    newVector.addElement(new Option(
+              "\tprobability of a typo in a field (default 0.2)",
+              "T", 1, "-T <num>"));
+    newVector.addElement(new Option(
+              "\tprobability of abbreviating a token (default 0.05)",
+              "A", 1, "-A <num>"));
+    newVector.addElement(new Option(
+              "\tprobability of swapping tokens in a field (default 0.05)",
+              "W", 1, "-W <num>"));
+    newVector.addElement(new Option(
+              "\tprobability of a missing field (default 0.05)",
+              "P", 1, "-P <num>"));
+    newVector.addElement(new Option(
+              "\tsize of the shuffle buffer (default 10000)",
+              "B", 1, "-B <num>"));
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a list of options for this object. <p>
+   *
+   * For list of valid options see class description.<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+
+    m_SeedFile = Utils.getOption('E', options);
+    if (m_SeedFile.length() == 0) {
+      throw new Exception("A seed dataset must be specified with -E.");
+    }
+    String option = Utils.getOption('S', options);
+    setSeed((option.length() != 0) ? Integer.parseInt(option) : 1);
+    option = Utils.getOption('M', options);
+    setMaxClusterSize((option.length() != 0) ? Integer.parseInt(option) : 10);
+    option = Utils.getOption('Z', options);
+    setClusterSizeExponent((option.length() != 0) ? Double.parseDouble(option) : 2);
+    option = Utils.getOption('V', options);
+    setVariationProb((option.length() != 0) ? Double.parseDouble(option) : 0.3);
+    option = Utils.getOption('T', options);
+    setTypoProb((option.length() != 0) ? Double.parseDouble(option) : 0.2);
+    option = Utils.getOption('A', options);
+    setAbbreviationProb((option.length() != 0) ? Double.parseDouble(option) : 0.05);
+    option = Utils.getOption('W', options);
+    setSwapProb((option.length() != 0) ? Double.parseDouble(option) : 0.05);
+    option = Utils.getOption('P', options);
+    setMissingProb((option.length() != 0) ? Double.parseDouble(option) : 0.05);
+    option = Utils.getOption('B', options);
+    setBufferSize((option.length() != 0) ? Integer.parseInt(option) : 10000);
+  }
+
+  /**
+   * Gets the current settings of the datagenerator.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  public String [] getOptions() {
+
+    String [] options = new String [20];
+    int current = 0;
+    options[current++] = "-E"; options[current++] = m_SeedFile;
+    options[current++] = "-S"; options[current++] = "" + getSeed();
+    options[current++] = "-M"; options[current++] = "" + getMaxClusterSize();
+    options[current++] = "-Z"; options[current++] = "" + getClusterSizeExponent();
+    options[current++] = "-V"; options[current++] = "" + getVariationProb();
+    options[current++] = "-T"; options[current++] = "" + getTypoProb();
+    options[current++] = "-A"; options[current++] = "" + getAbbreviationProb();
+    options[current++] = "-W"; options[current++] = "" + getSwapProb();
+    options[current++] = "-P"; options[current++] = "" + getMissingProb();
+    options[current++] = "-B"; options[current++] = "" + getBufferSize();
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+    return options;
+  }
+
+  public String getSeedFile() { return m_SeedFile; }
+  public void setSeedFile(String seedFile) { m_SeedFile = seedFile; }
+
+  public int getSeed() { return m_Seed; }
+  public void setSeed(int seed) { m_Seed = seed; }
+
+  public int getMaxClusterSize() { return m_MaxClusterSize; }
+  public void setMaxClusterSize(int maxClusterSize) { m_MaxClusterSize = maxClusterSize; }
+
+  public double getClusterSizeExponent() { return m_ClusterSizeExponent; }
+  public void setClusterSizeExponent(double exponent) { m_ClusterSizeExponent = exponent; }
+
+  public double getVariationProb() { return m_VariationProb; }
+  public void setVariationProb(double prob) { m_VariationProb = prob; }
+
+  public double getTypoProb() { return m_TypoProb; }
+  public void setTypoProb(double prob) { m_TypoProb = prob; }
+
+  public double getAbbreviationProb() { return m_AbbreviationProb; }
+  public void setAbbreviationProb(double prob) { m_AbbreviationProb = prob; }
+
+  public double getSwapProb() { return m_SwapProb; }
+  public void setSwapProb(double prob) { m_SwapProb = prob; }
+
+  public double getMissingProb() { return m_MissingProb; }
+  public void setMissingProb(double prob) { m_MissingProb = prob; }
+
+  public int getBufferSize() { return m_BufferSize; }
+  public void setBufferSize(int bufferSize) { m_BufferSize = bufferSize; }
+
+  /**
+   * Examples are generated one by one.
+   *
+   * @return true
+   */
+  public boolean getSingleModeFlag() { return true; }
+
+
+  /**
+   * Reads the seed dataset and prepares the generation.
+   *
+   * @exception Exception if the seed dataset cannot be read
+   */
+  public void initialize() throws Exception {
+
+    Instances seed = new Instances(new BufferedReader(new FileReader(m_SeedFile)));
+    ArrayList names = new ArrayList();
+    ArrayList fields = new ArrayList();
+    for (int j = 0; j < seed.numAttributes(); j++) {
+      if (seed.attribute(j).isString()) {
+	names.add(seed.attribute(j).name());
+	fields.add(new Integer(j));
+      }
+    }
+    if (fields.size() == 0) {
+      throw new Exception("The seed dataset has no string attributes.");
+    }
+    m_FieldNames = (String []) names.toArray(new String[names.size()]);
+    m_SeedValues = new String[fields.size()][];
+    m_SeedTokens = new String[fields.size()][];
+    for (int f = 0; f < fields.size(); f++) {
+      int j = ((Integer) fields.get(f)).intValue();
+      ArrayList values = new ArrayList();
+      HashSet tokens = new HashSet();
+      for (int i = 0; i < seed.numInstances(); i++) {
+	if (!seed.instance(i).isMissing(j)) {
+	  String value = seed.instance(i).stringValue(j);
+	  values.add(value);
+	  StringTokenizer tokenizer = new StringTokenizer(value);
+	  while (tokenizer.hasMoreTokens()) {
+	    tokens.add(tokenizer.nextToken());
+	  }
+	}
+      }
+      m_SeedValues[f] = (String []) values.toArray(new String[values.size()]);
+      m_SeedTokens[f] = (String []) tokens.toArray(new String[tokens.size()]);
+      Arrays.sort(m_SeedTokens[f]);
+    }
+
+    m_SizeCDF = new double[m_MaxClusterSize];
+    double sum = 0;
+    for (int s = 1; s <= m_MaxClusterSize; s++) {
+      sum += Math.pow(s, -m_ClusterSizeExponent);
+      m_SizeCDF[s - 1] = sum;
+    }
+    for (int s = 0; s < m_MaxClusterSize; s++) {
+      m_SizeCDF[s] /= sum;
+    }
+
+    m_Random = new Random(m_Seed + 1);
+    m_SizeRandom = new Random(m_Seed);
+    m_NumGenerated = 0;
+    m_CurrentEntity = -1;
+    m_RecordsLeftInCluster = 0;
+    m_Buffer = new ArrayList(m_BufferSize);
+  }
+
+  /** Draw a cluster size */
+  protected int nextClusterSize(Random random) {
+    double r = random.nextDouble();
+    for (int s = 0; s < m_SizeCDF.length - 1; s++) {
+      if (r < m_SizeCDF[s]) {
+	return s + 1;
+      }
+    }
+    return m_SizeCDF.length;
+  }
+
+  /** Synthesize the field values of a new entity */
+  protected String [] synthesizeEntity() {
+    String [] values = new String[m_FieldNames.length];
+    for (int f = 0; f < values.length; f++) {
+      if (m_SeedValues[f].length == 0) {
+	continue;
+      }
+      String value = m_SeedValues[f][m_Random.nextInt(m_SeedValues[f].length)];
+      StringBuffer buffer = new StringBuffer(value.length());
+      StringTokenizer tokenizer = new StringTokenizer(value);
+      while (tokenizer.hasMoreTokens()) {
+	String token = tokenizer.nextToken();
+	if (m_Random.nextDouble() < m_VariationProb) {
+	  token = m_SeedTokens[f][m_Random.nextInt(m_SeedTokens[f].length)];
+	}
+	if (buffer.length() > 0) {
+	  buffer.append(' ');
+	}
+	buffer.append(token);
+      }
+      values[f] = buffer.toString();
+    }
+    return values;
+  }
+
+  /** Corrupt the field values of an entity to form a duplicate */
+  protected String [] corrupt(String [] values) {
+    String [] duplicate = new String[values.length];
+    for (int f = 0; f < values.length; f++) {
+      if (values[f] == null || m_Random.nextDouble() < m_MissingProb) {
+	continue;
+      }
+      String [] tokens = split(values[f]);
+      for (int t = 0; t < tokens.length; t++) {
+	if (tokens[t].length() > 1 && m_Random.nextDouble() < m_AbbreviationProb) {
+	  tokens[t] = tokens[t].charAt(0) + ".";
+	}
+      }
+      if (tokens.length > 1 && m_Random.nextDouble() < m_SwapProb) {
+	int t = m_Random.nextInt(tokens.length - 1);
+	String token = tokens[t];
+	tokens[t] = tokens[t + 1];
+	tokens[t + 1] = token;
+      }
+      StringBuffer buffer = new StringBuffer(values[f].length() + 1);
+      for (int t = 0; t < tokens.length; t++) {
+	if (t > 0) {
+	  buffer.append(' ');
+	}
+	buffer.append(tokens[t]);
+      }
+      if (buffer.length() > 0 && m_Random.nextDouble() < m_TypoProb) {
+	typo(buffer);
+      }
+      duplicate[f] = buffer.toString();
+    }
+    return duplicate;
+  }
+
+  /** Insert, delete, substitute or transpose a character */
+  protected void typo(StringBuffer buffer) {
+    int pos = m_Random.nextInt(buffer.length());
+    char c = (char) ('a' + m_Random.nextInt(26));
+    switch (m_Random.nextInt(4)) {
+    case 0:
+      buffer.insert(pos, c);
+      break;
+    case 1:
+      if (buffer.length() > 1) {
+	buffer.deleteCharAt(pos);
+      }
+      break;
+    case 2:
+      buffer.setCharAt(pos, c);
+      break;
+    default:
+      if (pos < buffer.length() - 1) {
+	char next = buffer.charAt(pos + 1);
+	buffer.setCharAt(pos + 1, buffer.charAt(pos));
+	buffer.setCharAt(pos, next);
+      }
+    }
+  }
+
+  protected static String [] split(String value) {
+    StringTokenizer tokenizer = new StringTokenizer(value);
+    String [] tokens = new String[tokenizer.countTokens()];
+    for (int t = 0; t < tokens.length; t++) {
+      tokens[t] = tokenizer.nextToken();
+    }
+    return tokens;
+  }
+
+  /**
+   * Generates the next record, in order of generation.
+   *
+   * @return the field values, followed by the entity number
+   */
+  protected Object [] nextRecordInOrder() {
+    String [] values;
+    if (m_RecordsLeftInCluster == 0) {
+      m_CurrentEntity++;
+      m_RecordsLeftInCluster = nextClusterSize(m_SizeRandom);
+      m_CurrentValues = synthesizeEntity();
+      values = m_CurrentValues;
+    } else {
+      values = corrupt(m_CurrentValues);
+    }
+    m_RecordsLeftInCluster--;
+    return new Object[] {values, new Integer(m_CurrentEntity)};
+  }
+
+  /**
+   * Generates the next record, drawn from the shuffle buffer.
+   *
+   * @return the field values, followed by the entity number; null if
+   * all records have been generated
+   */
+  public Object [] nextRecord() {
+    while (m_Buffer.size() < m_BufferSize && m_NumGenerated < getNumExamplesAct()) {
+      m_Buffer.add(nextRecordInOrder());
+      m_NumGenerated++;
+    }
+    if (m_Buffer.size() == 0) {
+      return null;
+    }
+    int i = m_Random.nextInt(m_Buffer.size());
+    Object [] record = (Object []) m_Buffer.get(i);
+    m_Buffer.set(i, m_Buffer.get(m_Buffer.size() - 1));
+    m_Buffer.remove(m_Buffer.size() - 1);
+    return record;
+  }
+
+  /**
+   * Writes the whole dataset in ARFF format without holding it in memory.
+   *
+   * @param output the writer the dataset is written to
+   * @exception Exception if the generation fails
+   */
+  public void writeArff(PrintWriter output) throws Exception {
+
+    initialize();
+    output.println("@relation " + Utils.quote(getRelationName()));
+    output.println();
+    for (int f = 0; f < m_FieldNames.length; f++) {
+      output.println("@attribute " + Utils.quote(m_FieldNames[f]) + " string");
+    }
+    output.println("@attribute class numeric");
+    output.println();
+    output.println("@data");
+
+    StringBuffer line = new StringBuffer();
+    Object [] record;
+    while ((record = nextRecord()) != null) {
+      String [] values = (String []) record[0];
+      line.setLength(0);
+      for (int f = 0; f < values.length; f++) {
+	line.append((values[f] == null) ? "?" : Utils.quote(values[f])).append(',');
+      }
+      line.append(record[1]);
+      output.println(line);
+    }
+    output.flush();
+  }
+
+  /**
+   * Initializes the format for the dataset produced.  The dataset is
+   * held in memory, so this is meant for small datasets; large datasets
+   * are written with writeArff.
+   *
+   * @return the format for the dataset
+   * @exception Exception if the seed dataset cannot be read
+   */
+  public Instances defineDataFormat() throws Exception {
+
+    setNumExamplesAct(getNumExamples());
+    initialize();
+    FastVector attributes = new FastVector(m_FieldNames.length + 1);
+    for (int f = 0; f < m_FieldNames.length; f++) {
+      attributes.addElement(new Attribute(m_FieldNames[f], (FastVector) null));
+    }
+    attributes.addElement(new Attribute("class"));
+    m_DatasetFormat = new Instances(getRelationName(), attributes, 0);
+    m_DatasetFormat.setClassIndex(m_DatasetFormat.numAttributes() - 1);
+    return m_DatasetFormat;
+  }
+
+  /**
+   * Generates one example of the dataset.
+   *
+   * @return the generated example
+   * @exception Exception if the format of the dataset is not yet defined
+   */
+  public Instance generateExample() throws Exception {
+
+    if (m_DatasetFormat == null) {
+      throw new Exception("Dataset format not defined.");
+    }
+    Object [] record = nextRecord();
+    if (record == null) {
+      throw new Exception("All examples have been generated.");
+    }
+    String [] values = (String []) record[0];
+    double [] attValues = new double[values.length + 1];
+    for (int f = 0; f < values.length; f++) {
+      attValues[f] = (values[f] == null) ? Instance.missingValue()
+	: m_DatasetFormat.attribute(f).addStringValue(values[f]);
+    }
+    attValues[values.length] = ((Integer) record[1]).intValue();
+    Instance example = new Instance(1.0, attValues);
+    example.setDataset(m_DatasetFormat);
+    return example;
+  }
+
+  /**
+   * Generates all examples of the dataset.
+   *
+   * @return the generated dataset
+   * @exception Exception if the format of the dataset is not yet defined
+   */
+  public Instances generateExamples() throws Exception {
+
+    if (m_DatasetFormat == null) {
+      throw new Exception("Dataset format not defined.");
+    }
+    Instances dataset = new Instances(m_DatasetFormat, getNumExamplesAct());
+    for (int i = 0; i < getNumExamplesAct(); i++) {
+      dataset.add(generateExample());
+    }
+    return dataset;
+  }
+
+  /**
+   * Compiles documentation about the data generation.
+   *
+   * @return string with additional information about generated dataset
+   */
+  public String generateFinished() throws Exception {
+    return "\n%\n% Number of entities = " + (m_CurrentEntity + 1) + "\n%";
+  }
+
+  /**
+   * Main method for generating a dataset.  The dataset is streamed to
+   * the output, so it need not fit in memory.
+   *
+   * @param argv the options of the data generator, with -n the number
+   * of records, -r the relation name and -o the output file
+   */
+  public static void main(String [] argv) {
+
+    LinkageGenerator generator = new LinkageGenerator();
+    try {
+      String relationName = Utils.getOption('r', argv);
+      String outputFile = Utils.getOption('o', argv);
+      String numExamples = Utils.getOption('n', argv);
+      if (numExamples.length() != 0) {
+	generator.setNumExamples(Integer.parseInt(numExamples));
+      }
+      generator.setNumExamplesAct(generator.getNumExamples());
+      generator.setOptions(argv);
+      Utils.checkForRemainingOptions(argv);
+      if (relationName.length() == 0) {
+	relationName = new File(generator.getSeedFile()).getName().replaceAll("\\.arff$", "")
+	  + "-" + generator.getNumExamples();
+      }
+      generator.setRelationName(relationName);
+
+      PrintWriter output = new PrintWriter(new BufferedWriter(
+	(outputFile.length() != 0) ? new FileWriter(outputFile)
+	: new OutputStreamWriter(System.out), 1 << 16));
+      output.println("% ");
+      output.print("% " + generator.getClass().getName() + " -n " + generator.getNumExamples());
+      String [] options = generator.getOptions();
+      for (int i = 0; i < options.length; i++) {
+	output.print(" " + options[i]);
+      }
+      output.println("\n%");
+      generator.writeArff(output);
+      output.println(generator.generateFinished());
+      output.close();
+    } catch (Exception ex) {
+      System.err.println(ex.getMessage());
+      Enumeration enu = generator.listOptions();
+      StringBuffer usage = new StringBuffer("\nOptions:\n\n-n <num>\n\tnumber of records\n"
+					    + "-r <name>\n\trelation name\n"
+					    + "-o <file>\n\toutput file (default stdout)\n");
+      while (enu.hasMoreElements()) {
+	Option option = (Option) enu.nextElement();
+	usage.append(option.synopsis() + '\n' + option.description() + "\n");
+      }
+      System.err.println(usage);
+    }
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ParallelExperiment.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.experiment;
+
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Option;
+import weka.core.SerializedObject;
+import weka.core.Utils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.io.BufferedInputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.concurrent.*;
+
+/**
+ * Runs the iterations of an experiment (a run of a dataset with a
+ * property value) on a pool of threads in the local JVM.  Every
+ * iteration is carried out by its own deep copy of the result producer;
+ * results are passed to the result listener through a
+ * SynchronizedResultListener, so listeners need not be thread-safe.
+ * Results of different iterations may arrive in any order.<p>
+ *
+ * Example:<p>
+ * <pre>
+ * java weka.experiment.ParallelExperiment -threads 4 -r -L 1 -U 10 \
+ * -T datasets/restaurant.arff -D weka.experiment.CSVResultListener \
+ * -P weka.linkage.LinkagePRCurveCVResultProducer -- ...
+ * </pre>
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class ParallelExperiment extends Experiment {
+
+  /** The number of iterations carried out at once */
+  protected int m_numThreads = Runtime.getRuntime().availableProcessors();
+
+  /** The listener shared by the copies of the result producer */
+  protected transient SynchronizedResultListener m_SyncListener;
+
+
+  public ParallelExperiment() {
+  }
+
+  /**
+   * Construct a parallel experiment with the settings of another experiment.
+   *
+   * @param base the experiment to copy the settings of
+   */
+  public ParallelExperiment(Experiment base) {
+    setRunLower(base.getRunLower());
+    setRunUpper(base.getRunUpper());
+    setResultListener(base.getResultListener());
+    setResultProducer(base.getResultProducer());
+    setDatasets(base.getDatasets());
+    setUsePropertyIterator(base.getUsePropertyIterator());
+    setPropertyPath(base.getPropertyPath());
+    setPropertyArray(base.getPropertyArray());
+    setNotes(base.getNotes());
+    m_ClassFirst = base.m_ClassFirst;
+    m_AdvanceDataSetFirst = base.m_AdvanceDataSetFirst;
+  }
+
+  /** Set the number of iterations carried out at once */
+  public void setNumThreads(int numThreads) { m_numThreads = numThreads; }
+  public int getNumThreads() { return m_numThreads; }
+
+  /**
+   * Prepares the result producer and a synchronized wrapper around the
+   * result listener.
+   *
+   * @exception Exception if an error occurs
+   */
+  public void initialize() throws Exception {
+
+    ResultListener listener = m_ResultListener;
+    m_SyncListener = new SynchronizedResultListener(listener);
+    m_ResultListener = m_SyncListener;
+    try {
+      super.initialize();
+    } finally {
+      m_ResultListener = listener;
+    }
+  }
+
+  /**
+   * Creates a copy of the result producer for the current iteration.
+   */
+  protected ResultProducer copyResultProducer() throws Exception {
+
+    // the listener is shared rather than copied
+    m_ResultProducer.setResultListener(null);
+    ResultProducer copy;
+    try {
+      copy = (ResultProducer) new SerializedObject(m_ResultProducer).getObject();
+    } finally {
+      m_ResultProducer.setResultListener(m_SyncListener);
+    }
+    copy.setResultListener(m_SyncListener);
+    if (m_UsePropertyIterator) {
+      setProperty(0, copy);
+    }
+    return copy;
+  }
+
+  /**
+   * Runs all iterations of the experiment on the thread pool, continuing
+   * past errors.  An iteration's copies of the result producer and the
+   * dataset are made only once a thread is free for it, so no more than
+   * m_numThreads of them are held at once.
+   */
+  public void runExperiment() {
+
+    ExecutorService executor = Executors.newFixedThreadPool(m_numThreads, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "iteration");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    ArrayList<Future> futures = new ArrayList<Future>();
+    ArrayList<String> names = new ArrayList<String>();
+    // iterations are copied only when a thread is free to run them
+    final Semaphore slots = new Semaphore(m_numThreads);
+    try {
+      while (hasMoreIterations()) {
+        try {
+          slots.acquire();
+        } catch (InterruptedException ex) {
+          System.err.println("Interrupted");
+          break;
+        }
+        boolean submitted = false;
+        try {
+          if (m_CurrentInstances == null) {
+            File currentFile = (File) getDatasets().elementAt(m_DatasetNumber);
+            Instances data = new Instances(new BufferedReader(new FileReader(currentFile)));
+            if (m_ClassFirst) {
+              data.setClassIndex(0);
+            } else {
+              data.setClassIndex(data.numAttributes() - 1);
+            }
+            m_CurrentInstances = data;
+          }
+          final ResultProducer producer = copyResultProducer();
+          final Instances source = m_CurrentInstances;
+          final int run = m_RunNumber;
+          futures.add(executor.submit(new Callable<Object>() {
+              public Object call() throws Exception {
+                try {
+                  // a deep copy, so concurrent iterations do not share attribute
+                  // headers: cleaning records adds string values to them
+                  Instances data = (Instances) new SerializedObject(source).getObject();
+                  producer.setInstances(data);
+                  producer.doRun(run);
+                } finally {
+                  slots.release();
+                }
+                return null;
+              }
+            }));
+          submitted = true;
+          names.add("run " + m_RunNumber + ", dataset " + m_DatasetNumber
+                    + (m_UsePropertyIterator ? ", property " + m_PropertyNumber : ""));
+        } catch (Exception ex) {
+          ex.printStackTrace();
+          System.err.println(ex.getMessage());
+        } finally {
+          if (!submitted) {
+            slots.release();
+          }
+        }
+        advanceCounters();
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException ex) {
+          ex.getCause().printStackTrace();
+          System.err.println(names.get(i) + ": " + ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+          System.err.println("Interrupted");
+          break;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Gets a string representation of the experiment configuration.
+   */
+  public String toString() {
+    return "Threads: " + m_numThreads + '\n' + super.toString();
+  }
+
+  /**
+   * Configures/Runs the ParallelExperiment from the command line.
+   *
+   * @param args command line arguments to the Experiment.
+   */
+  public static void main(String[] args) {
+
+    try {
+      ParallelExperiment exp = null;
+      String threadsString = Utils.getOption("threads", args);
+      String expFile = Utils.getOption('l', args);
+      boolean runExp = Utils.getFlag('r', args);
+      if (expFile.length() == 0) {
+	Experiment base = new Experiment();
+	try {
+	  base.setOptions(args);
+	  Utils.checkForRemainingOptions(args);
+	} catch (Exception ex) {
+	  ex.printStackTrace();
+	  String result = "Usage:\n\n"
+	    + "-l <exp file>\n"
+	    + "\tLoad experiment from file (default use cli options)\n"
+	    + "-threads <num>\n"
+	    + "\tNumber of iterations carried out at once\n"
+	    + "\t(default number of processors)\n"
+	    + "-r\n"
+	    + "\tRun experiment (default don't run)\n"
+	    + "\n";
+	  Enumeration enm = ((OptionHandler)base).listOptions();
+	  while (enm.hasMoreElements()) {
+	    Option option = (Option) enm.nextElement();
+	    result += option.synopsis() + "\n";
+	    result += option.description() + "\n";
+	  }
+	  throw new Exception(result + "\n" + ex.getMessage());
+	}
+	exp = new ParallelExperiment(base);
+      } else {
+	ObjectInputStream oi = new ObjectInputStream(
+			       new BufferedInputStream(new FileInputStream(expFile)));
+	exp = new ParallelExperiment((Experiment) oi.readObject());
+	oi.close();
+      }
+      if (threadsString.length() != 0) {
+	exp.setNumThreads(Integer.parseInt(threadsString));
+      }
+      System.err.println("Experiment:\n" + exp.toString());
+
+      if (runExp) {
+	System.err.println("Initializing...");
+	exp.initialize();
+	System.err.println("Iterating...");
+	exp.runExperiment();
+	System.err.println("Postprocessing...");
+	exp.postProcess();
+      }
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      System.err.println(ex.getMessage());
+    }
+  }
+}
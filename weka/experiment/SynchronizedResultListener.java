@@ -0,0 +1,96 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    SynchronizedResultListener.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.experiment;
+
+/**
+ * Passes results from several threads to a single result listener such
+ * as CSVResultListener or InstancesResultListener, one call at a time.
+ * Results may be sent by copies of the result producer that was
+ * preprocessed; the listener always sees the original producer, since
+ * listeners reject results from producers they have not been prepared for.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class SynchronizedResultListener implements ResultListener {
+
+  /** The listener receiving the results */
+  protected ResultListener m_Listener;
+
+  /** The producer the listener was prepared for */
+  protected ResultProducer m_RP;
+
+
+  /**
+   * Wraps a result listener.
+   *
+   * @param listener the listener receiving the results
+   */
+  public SynchronizedResultListener(ResultListener listener) {
+    m_Listener = listener;
+  }
+
+  /**
+   * Gets the wrapped result listener.
+   *
+   * @return the listener receiving the results
+   */
+  public ResultListener getResultListener() {
+    return m_Listener;
+  }
+
+  /**
+   * Returns the producer to report to the listener.
+   */
+  protected ResultProducer producer(ResultProducer rp) {
+    return (m_RP != null) ? m_RP : rp;
+  }
+
+  public synchronized String [] determineColumnConstraints(ResultProducer rp)
+    throws Exception {
+    return m_Listener.determineColumnConstraints(producer(rp));
+  }
+
+  public synchronized void preProcess(ResultProducer rp) throws Exception {
+    m_RP = rp;
+    m_Listener.preProcess(rp);
+  }
+
+  public synchronized void postProcess(ResultProducer rp) throws Exception {
+    m_Listener.postProcess(producer(rp));
+  }
+
+  public synchronized void acceptResult(ResultProducer rp, Object [] key,
+                                        Object [] result) throws Exception {
+    m_Listener.acceptResult(producer(rp), key, result);
+  }
+
+  public synchronized boolean isResultRequired(ResultProducer rp, Object [] key)
+    throws Exception {
+    return m_Listener.isResultRequired(producer(rp), key);
+  }
+
+  public String toString() {
+    return "Synchronized " + m_Listener;
+  }
+}
@@ -23,6 +23,7 @@
 package weka.linkage;
 
 import weka.core.*;
+import weka.core.collections.*;
 import weka.linkage.metrics.*;
 import weka.linkage.blocking.*;
 import java.text.SimpleDateFormat;
@@ -66,9 +67,27 @@ public class BasicDeduper extends Deduper
    *  Actual number of pairs may be smaller if blocking returned fewer pairs */
   protected int m_blockingPairRatio = 50;
 
+  /** If set, pairs are requested from blocking within this budget
+   *  instead of by the blocking pair ratio, which needs the number of
+   *  true dupe pairs */
+  protected BlockingBudget m_blockingBudget = null;
+
   /** Artificially add pairs missed by blocking */
   protected boolean m_blockingAddMissedPairs = true; 
 
+  /** Keep candidate pairs in a memory-mapped pair store instead of on the heap */
+  protected boolean m_usePairStore = false;
+
+  /** Number of worker processes computing distances; 0 to compute them here.
+   * Workers always use a pair store. */
+  protected int m_numWorkers = 0;
+
+  /** A previously trained model; if set, buildDeduper does not retrain */
+  protected LinkageModel m_model = null;
+
+  /** Header of the training data */
+  protected Instances m_trainHeader = null;
+
 
   /** verbose? */
   protected boolean m_debug = false;
@@ -114,8 +133,19 @@ public class BasicDeduper extends Deduper
       } 
     }
 
+    // use the previously trained model if there is one
+    if (m_model != null) {
+      m_model.checkCompatible(trainData);
+      m_numActualDupePairsTrain = m_metric.getNumActualPosPairs();   
+      m_numActualNonDupePairsTrain = m_metric.getNumActualNegPairs();  
+      m_trainTime = 0;
+      return;
+    }
+
     // START TRAINING
     long trainTimeStart = System.currentTimeMillis();
+    m_trainHeader = new Instances(trainData, 0);
+    long start = LinkageStage.TRAINING.start();
     
     // train the blocking
     if (m_useBlocking) {
@@ -125,6 +155,7 @@ public class BasicDeduper extends Deduper
     // train the instance metric
     m_metric.buildInstanceMetric(m_attrIdxs);
     m_metric.trainInstanceMetric(trainData, testData);
+    LinkageStage.TRAINING.stop(start);
 
     // get training statistics
     m_numActualDupePairsTrain = m_metric.getNumActualPosPairs();   
@@ -137,7 +168,7 @@ public class BasicDeduper extends Deduper
   /** Create pairs and get the statistics */
   public void findDuplicates(Instances testData,
                              int numObjects) throws Exception  {
-    m_numObjects = testData.numClasses();
+    m_numObjects = numEntities(testData);
     m_numTruePairs = numTruePairs(testData);
 
     int numInstances = testData.numInstances();
@@ -149,7 +180,12 @@ public class BasicDeduper extends Deduper
       testData.instance(i).setWeight(i); 
     } 
     
-    InstancePair[] pairs;
+    if (m_usePairStore || m_numWorkers > 0) {
+      findDuplicatesInStore(testData);
+      return;
+    }
+    
+    PairBuffer pairs;
 
     if (m_useBlocking) {
       System.out.println("\nUsing blocking...");
@@ -157,23 +193,32 @@ public class BasicDeduper extends Deduper
       if (m_blockingAddMissedPairs) { 
         m_blocking.setIncludeAllDuplicates(true);
       } 
-      m_blocking.buildIndex(testData);
+      long start = LinkageStage.INDEXING.start();
+      if (m_blockingBudget != null) {
+        m_blocking.buildIndex(testData, m_blockingBudget);
+      } else {
+        m_blocking.buildIndex(testData);
+      }
+      start = LinkageStage.INDEXING.stop(start);
 
-      // requested number of pairs is m_numTruePairs*m_blockingPairRatio or totalPairs
-      int numRequestedPairs = (m_numTotalPairsTest >= m_numTruePairs * m_blockingPairRatio 
-                               ? m_numTruePairs * m_blockingPairRatio
-                               : m_numTotalPairsTest);
-      System.out.println("Requesting " + numRequestedPairs + " out of " + m_numTotalPairsTest); 
-      pairs = m_blocking.getMostSimilarPairs(numRequestedPairs);
+      if (m_blockingBudget != null) {
+        System.out.println("Requesting pairs within " + m_blockingBudget);
+        pairs = m_blocking.getPairs(m_blockingBudget);
+      } else {
+        // requested number of pairs is m_numTruePairs*m_blockingPairRatio or totalPairs
+        int numRequestedPairs = (m_numTotalPairsTest >= m_numTruePairs * m_blockingPairRatio 
+                                 ? m_numTruePairs * m_blockingPairRatio
+                                 : m_numTotalPairsTest);
+        System.out.println("Requesting " + numRequestedPairs + " out of " + m_numTotalPairsTest); 
+        pairs = new PairBuffer();
+        m_blocking.getMostSimilarPairs(numRequestedPairs, pairs);
+      }
+      LinkageStage.BLOCKING.stop(start);
+      LinkageStage.BLOCKING.addPairsGenerated(pairs.size());
 
       // Count good pairs to make sure all is well
-      int goodPairs = 0;
-      System.out.println(pairs.length); 
-      for (InstancePair pair : pairs) {
-        if (pair.positive)
-          ++goodPairs;
-      }
-      System.out.println("Got " + pairs.length + " pairs from blocking. " +
+      int goodPairs = pairs.numPositive();
+      System.out.println("Got " + pairs.size() + " pairs from blocking. " +
                          "True pairs:" + m_numTruePairs + " good blocked pairs:" +
                          goodPairs);
       if (goodPairs != m_numTruePairs) {
@@ -185,7 +230,8 @@ public class BasicDeduper extends Deduper
           // populate blocked good pairs
           HashMap<Instance, Set<Instance>>
             blockedMap = new HashMap<Instance, Set<Instance>>();
-          for (InstancePair pair : pairs) {
+          for (int i = 0; i < pairs.size(); i++) {
+            InstancePair pair = pairs.pair(i, testData);
             if (pair.instance1.classValue() == pair.instance2.classValue()) {
               Set<Instance> set1 = blockedMap.get(pair.instance1);
               if (set1 == null) {
@@ -240,38 +286,42 @@ public class BasicDeduper extends Deduper
       System.out.println("*NOT* using blocking..."); 
       
       // create an array of all pairs
-      pairs = new InstancePair[numInstances*(numInstances - 1)/2];
-      int pairIdx = 0; 
+      long start = LinkageStage.BLOCKING.start();
+      pairs = new PairBuffer(numInstances*(numInstances - 1)/2);
       for (int i = 0; i < numInstances-1; i++) {
-        Instance instance1 = testData.instance(i);
         for (int j = i+1; j < numInstances; j++) {
-          Instance instance2 = testData.instance(j);
-          boolean sameClass = (instance1.classValue() == instance2.classValue());
-          pairs[pairIdx++] = new InstancePair(instance1, instance2, sameClass, 0);
+          pairs.add(testData, i, j, 0);
         }
       }
+      LinkageStage.BLOCKING.stop(start);
+      LinkageStage.BLOCKING.addPairsGenerated(pairs.size());
     }
 
     // compute similarity between all pairs of interest
-    int numPairs = pairs.length;
+    int numPairs = pairs.size();
 
+    LinkageStage.Batch scoring = LinkageStage.SCORING.batch();
+    long start = scoring.start();
     for (int i = 0; i < numPairs; i++) {
-      InstancePair pair = pairs[i]; 
-      pair.value = m_metric.distance(pair.instance1, pair.instance2);
-      if (i % 100 == 99) System.out.print("#");
-      if (i % 10000 == 9999) System.out.println(" " + (1+i));
+      pairs.setScore(i, (float) m_metric.distance(testData.instance(pairs.left(i)),
+                                                  testData.instance(pairs.right(i))));
+      start = scoring.stop(start);
     }
+    scoring.flush();
+    LinkageStage.SCORING.addPairsScored(numPairs);
     System.out.println(getTimestamp() + ": done calculating distances\n");
 
-    // sort the pairs array by distance
-    Arrays.sort(pairs);
+    // sort the pairs by distance
+    start = LinkageStage.SORTING.start();
+    pairs.sort(false);
+    LinkageStage.SORTING.stop(start);
 
     accumulateStatistics(pairs); 
 
     // If in verbose mode, print out the errors
     if (m_debug) { 
       for (int i = 0; i < numPairs; i++) {
-        InstancePair pair = pairs[i];
+        InstancePair pair = pairs.pair(i, testData);
       
         if (pair.positive) {
           ++m_numGoodPairs;
@@ -280,15 +330,15 @@ public class BasicDeduper extends Deduper
                   
         if (!pair.positive && m_numTotalPairs < m_numTruePairs) {
           System.out.println("FALSE POSITIVE:  " +
-                             pair.instance1.stringValue(pair.instance1.classAttribute()) + " = " +
-                             pair.instance2.stringValue(pair.instance2.classAttribute())); 
+                             pair.instance1.toString(pair.instance1.classAttribute()) + " = " +
+                             pair.instance2.toString(pair.instance2.classAttribute())); 
           System.out.println("\t" + pair.instance1);
           System.out.println("\t" + pair.instance2);
         }
         if (pair.positive && m_numTotalPairs >  m_numTruePairs) {
           System.out.println("HARD POSITIVE: " +
-                             pair.instance1.stringValue(pair.instance1.classAttribute()) + " = " +
-                             pair.instance2.stringValue(pair.instance2.classAttribute())); 
+                             pair.instance1.toString(pair.instance1.classAttribute()) + " = " +
+                             pair.instance2.toString(pair.instance2.classAttribute())); 
           System.out.println("\t" + pair.instance1);
           System.out.println("\t" + pair.instance2);
         }
@@ -300,6 +350,103 @@ public class BasicDeduper extends Deduper
   }
 
 
+  /** Score and rank the candidate pairs in a pair store, so that
+   * their number is not limited by the heap
+   * @param testData the instances to dedupe, weighted by their index
+   */
+  protected void findDuplicatesInStore(Instances testData) throws Exception {
+    int numInstances = testData.numInstances();
+    PairStore store = new PairStore();
+    try {
+      if (m_useBlocking) {
+        System.out.println("\nUsing blocking...");
+        if (m_blockingAddMissedPairs) { 
+          m_blocking.setIncludeAllDuplicates(true);
+        } 
+        long start = LinkageStage.INDEXING.start();
+        if (m_blockingBudget != null) {
+          m_blocking.buildIndex(testData, m_blockingBudget);
+        } else {
+          m_blocking.buildIndex(testData);
+        }
+        start = LinkageStage.INDEXING.stop(start);
+        if (m_blockingBudget != null) {
+          System.out.println("Requesting pairs within " + m_blockingBudget);
+          m_blocking.getPairs(m_blockingBudget, store);
+        } else {
+          int numRequestedPairs = (m_numTotalPairsTest >= m_numTruePairs * m_blockingPairRatio 
+                                   ? m_numTruePairs * m_blockingPairRatio
+                                   : m_numTotalPairsTest);
+          System.out.println("Requesting " + numRequestedPairs + " out of " + m_numTotalPairsTest); 
+          m_blocking.getMostSimilarPairs(numRequestedPairs, store);
+        }
+        LinkageStage.BLOCKING.stop(start);
+        System.out.println("Got " + store.size() + " pairs from blocking. True pairs:" + m_numTruePairs);
+      } else {
+        System.out.println("*NOT* using blocking..."); 
+        long start = LinkageStage.BLOCKING.start();
+        for (int i = 0; i < numInstances-1; i++) {
+          Instance instance1 = testData.instance(i);
+          for (int j = i+1; j < numInstances; j++) {
+            Instance instance2 = testData.instance(j);
+            store.append(i, j, 0, instance1.classValue() == instance2.classValue());
+          }
+        }
+        LinkageStage.BLOCKING.stop(start);
+      }
+      LinkageStage.BLOCKING.addPairsGenerated(store.size());
+
+      // compute distances in place, possibly in worker processes
+      PairStore.Cursor cursor;
+      if (m_numWorkers > 0) {
+        DistributedScorer scorer = new DistributedScorer(m_numWorkers);
+        long start = LinkageStage.SCORING.start();
+        try {
+          scorer.start(testData, m_metric);
+          scorer.score(store);
+        } finally {
+          scorer.stop();
+        }
+        // the workers are timed as a whole rather than per pair
+        LinkageStage.SCORING.stop(start);
+        System.out.println("Scored " + scorer.getNumPartitions() + " partitions in "
+                           + m_numWorkers + " workers; " + scorer.getNumRedispatched()
+                           + " redispatched");
+      } else {
+        cursor = store.cursor();
+        LinkageStage.Batch scoring = LinkageStage.SCORING.batch();
+        long start = scoring.start();
+        while (cursor.next()) {
+          Instance instance1 = testData.instance(cursor.getIndex1());
+          Instance instance2 = testData.instance(cursor.getIndex2());
+          cursor.setScore((float) m_metric.distance(instance1, instance2));
+          start = scoring.stop(start);
+        }
+        scoring.flush();
+      }
+      LinkageStage.SCORING.addPairsScored(store.size());
+      System.out.println(getTimestamp() + ": done calculating distances\n");
+
+      long start = LinkageStage.SORTING.start();
+      store.sort(false);
+      LinkageStage.SORTING.stop(start);
+
+      long[] goodPairRanks = new long[m_numTruePairs];
+      int numGoodPairs = 0;
+      cursor = store.cursor();
+      while (numGoodPairs < m_numTruePairs && cursor.next()) {
+        if (cursor.isPositive()) {
+          goodPairRanks[numGoodPairs++] = cursor.position();
+        }
+      }
+      accumulateStatistics(goodPairRanks, numGoodPairs);
+    } finally {
+      store.close();
+    }
+    System.out.println(getTimestamp() + ": done collecting statistics\n");
+  }
+
+
   /** A helper function that stratifies a training set and selects a proportion of
    * true objects for training
    * @param instances a set of instances from which to select the training data
@@ -345,7 +492,24 @@ public class BasicDeduper extends Deduper
 
   
   /** Add the current state of things to statistics */
-  protected void accumulateStatistics(InstancePair[] pairs) {
+  protected void accumulateStatistics(PairBuffer pairs) {
+    long[] goodPairRanks = new long[m_numTruePairs];
+    int numGoodPairs = 0;
+    for (int i = 0; i < pairs.size() && numGoodPairs < m_numTruePairs; i++) {
+      if (pairs.isPositive(i)) {
+        goodPairRanks[numGoodPairs++] = i;
+      }
+    }
+    accumulateStatistics(goodPairRanks, numGoodPairs);
+  }
+
+
+  /** Add the current state of things to statistics
+   * @param goodPairRanks positions of the true pairs among all pairs
+   * sorted by distance, in increasing order
+   * @param numGoodPairs the number of true pairs found
+   */
+  protected void accumulateStatistics(long[] goodPairRanks, int numGoodPairs) {
     int numRecLevels = 101;
     double[] recLevels = new double[numRecLevels];
     double[] iPrec = new double[numRecLevels]; 
@@ -355,48 +519,42 @@ public class BasicDeduper extends Deduper
       recLevels[i] = recallInc * i;
     }
 
-    int numPairs = pairs.length;
-
     // get the interpolated precisions and MAP
 
     int currRecallIdx = 0;
     double maxF1 = 0;
     double avgPrec = 0; 
-    int numGoodPairs = 0;
     
-    for (int i = 0; i < numPairs; i++) {
+    for (int k = 0; k < numGoodPairs; k++) {
+      // every good pair moves along recall axis
+      long i = goodPairRanks[k];
+      double prec = (k + 1.0) / (i+1); 
+      double recall = (k + 1.0) / m_numTruePairs;
+      
+      double f1 = ((recall + prec) > 0)
+        ? 2.0 * recall * prec / (recall + prec)
+        : 0.0;
 
-      // if good pair (move along recall axis)
-      if (pairs[i].positive) {
-        ++numGoodPairs; 
-        double prec = (numGoodPairs + 0.0) / (i+1); 
-        double recall = (numGoodPairs + 0.0) / m_numTruePairs;
-        
-        double f1 = ((recall + prec) > 0)
-          ? 2.0 * recall * prec / (recall + prec)
-          : 0.0;
-
-        if (f1 > maxF1) maxF1 = f1; 
-        avgPrec += prec;
-        
-
-        // need to update the interpolated values? 
-        while (currRecallIdx < numRecLevels-1 &&
-               recall >= recLevels[currRecallIdx+1]) {
-          ++currRecallIdx;
-        } 
-        
-        // update the interpolated precisions if necessary
-        for (int j = currRecallIdx; j >= 0; j--) {
-          if (iPrec[j] < prec) {
-            iPrec[j] = prec;
-          } else {
-            break;
-          } 
-        }
+      if (f1 > maxF1) maxF1 = f1; 
+      avgPrec += prec;
+      
 
-        if (recall == 1.0) break;
+      // need to update the interpolated values? 
+      while (currRecallIdx < numRecLevels-1 &&
+             recall >= recLevels[currRecallIdx+1]) {
+        ++currRecallIdx;
       } 
+      
+      // update the interpolated precisions if necessary
+      for (int j = currRecallIdx; j >= 0; j--) {
+        if (iPrec[j] < prec) {
+          iPrec[j] = prec;
+        } else {
+          break;
+        } 
+      }
+
+      if (recall == 1.0) break;
     }
 
     double map = avgPrec / m_numTruePairs; 
@@ -454,22 +612,14 @@ public class BasicDeduper extends Deduper
    * @returns the number of true same-class pairs
    */
   protected int numTruePairs(Instances instances) {
-    int numTruePairs = 0;
-    // get the class counts
-    HashMap<Double, Integer> classCountMap = new HashMap<Double, Integer>();
-
+    DoubleIntHashMap classCounts = new DoubleIntHashMap();
     for (int i = 0; i < instances.numInstances(); i++) {
-      Instance instance = instances.instance(i);
-      Double classValue = new Double(instance.classValue());
-      Integer counts = classCountMap.get(classValue);
-      if (counts == null) {
-        counts = new Integer(0);
-      }
-      classCountMap.put(classValue, counts + 1);
+      classCounts.increment(instances.instance(i).classValue(), 1);
     }
-    
+
     // calculate the number of pairs
-    for (Integer counts : classCountMap.values()) { 
+    int numTruePairs = 0;
+    for (int counts : classCounts.values()) {
       numTruePairs += counts * (counts - 1) / 2;
     }
     return numTruePairs;
@@ -477,6 +627,26 @@ public class BasicDeduper extends Deduper
   
 
 
+  /** Get the trained blocking and metric as a model that can be saved
+   * and reused; must be called after buildDeduper */
+  public LinkageModel getModel() {
+    return new LinkageModel(m_trainHeader, m_attrIdxs,
+                            (m_useBlocking ? m_blocking : null), m_metric);
+  }
+
+  /** Use a previously trained model instead of training */
+  public void setModel(LinkageModel model) {
+    m_model = model;
+    m_trainHeader = model.getHeader();
+    m_attrIdxs = model.getAttrIdxs();
+    m_metric = model.getMetric();
+    m_useBlocking = (model.getBlocking() != null);
+    if (m_useBlocking) {
+      m_blocking = model.getBlocking();
+    }
+  }
+
+
   /** Set/get the InstanceMetric */
   public void setMetric(InstanceMetric metric) { m_metric = metric;  }
   public InstanceMetric getMetric() { return m_metric; }
@@ -496,6 +666,11 @@ public class BasicDeduper extends Deduper
   public void setBlockingPairRatio(int ratio) { m_blockingPairRatio = ratio; }
   public int getBlockingPairRatio() { return m_blockingPairRatio; } 
 
+  /** Set/get the budget within which blocked pairs are requested; null
+   * to request the blocking pair ratio times the number of true pairs */
+  public void setBlockingBudget(BlockingBudget budget) { m_blockingBudget = budget; }
+  public BlockingBudget getBlockingBudget() { return m_blockingBudget; } 
+
   
   /** Set/get the blocking method */
   public void setBlockingMethod(Blocking blocking) {  m_blocking = blocking; }
@@ -505,6 +680,16 @@ public class BasicDeduper extends Deduper
   /** Turn adding of pairs missed by blocking on/off  */
   public void setBlockingAddMissedPairs(boolean b) { m_blockingAddMissedPairs = b; }
   public boolean getBlockingAddMissedPairs() { return m_blockingAddMissedPairs; } 
+
+  
+  /** Turn keeping candidate pairs in a memory-mapped pair store on/off */
+  public void setUsePairStore(boolean usePairStore) { m_usePairStore = usePairStore; }
+  public boolean getUsePairStore() { return m_usePairStore; } 
+
+  
+  /** Set/get the number of worker processes computing distances */
+  public void setNumWorkers(int numWorkers) { m_numWorkers = numWorkers; }
+  public int getNumWorkers() { return m_numWorkers; } 
   
   
 
@@ -579,6 +764,15 @@ public class BasicDeduper extends Deduper
       options[current++] = "" + m_trainProportion;
     }
 
+    if (m_usePairStore) {
+      options[current++] = "-PS";
+    }
+
+    if (m_numWorkers > 0) {
+      options[current++] = "-W";
+      options[current++] = "" + m_numWorkers;
+    }
+
     if (m_debug) {
       options[current++] = "-D";
     }
@@ -331,8 +331,8 @@ public class BlockingSplitEvaluator implements SplitEvaluator,
   public Object [] getResult(Instances trainData, Instances testData) 
     throws Exception {
     
-    if (trainData.classAttribute().type() != Attribute.NOMINAL) {
-      throw new Exception("Class attribute is not nominal!");
+    if (!trainData.classAttribute().isNominal() && !trainData.classAttribute().isNumeric()) {
+      throw new Exception("Class attribute is not nominal or numeric!");
     }
     if (m_blocking == null) {
       throw new Exception("No blocking has been specified");
@@ -23,6 +23,7 @@
 package weka.linkage;
 
 import weka.core.*;
+import weka.core.collections.*;
 import weka.linkage.metrics.*;
 import weka.linkage.blocking.*;
 import java.text.SimpleDateFormat;
@@ -82,8 +83,16 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
   /** This ratio times true number of dupe pairs will be selected */
   protected int m_blockingPairRatio = 12;
 
+  /** If set, pairs are requested from blocking within this budget
+   *  instead of by the blocking pair ratio, which needs the number of
+   *  true dupe pairs */
+  protected BlockingBudget m_blockingBudget = null;
+
   /** Blocking method to use */
   protected Blocking m_blocking = new NonLearnableBlocking();
+
+  /** Read blocked pairs through a memory-mapped pair store instead of on the heap */
+  protected boolean m_usePairStore = false;
   
   /**
    * temporary variable holding cluster assignments
@@ -137,6 +146,7 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
     }
 
     // train the blocking
+    long start = LinkageStage.TRAINING.start();
     if (m_useBlocking) {
       m_blocking.learnBlocking(trainInstances);
     }
@@ -145,6 +155,7 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
     long trainTimeStart = System.currentTimeMillis();
     m_metric.buildInstanceMetric(m_attrIdxs);
     m_metric.trainInstanceMetric(trainInstances, testInstances);
+    LinkageStage.TRAINING.stop(start);
 
     // get training statistics
     m_numActualDupePairsTrain = m_metric.getNumActualPosPairs();   
@@ -158,7 +169,7 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
   /** Two ways to find duplicates:  either do clustering, or just do distances */
   // TODO CRITICAL
   public void findDuplicates(Instances testInstances, int numObjects) throws Exception  {
-    m_numObjects = testInstances.numClasses();
+    m_numObjects = numEntities(testInstances);
     m_numTruePairs = numTruePairs(testInstances);
     m_numTotalPairsTest = testInstances.numInstances() * (testInstances.numInstances() -1) / 2;
     resetStatistics();
@@ -193,11 +204,13 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
                        "actual clusters; " + numObjects + " true objects desired");
 
     // merge clusters until desired number of clusters is reached
+    long start = LinkageStage.CLUSTERING.start();
     while (m_numCurrentObjects > numObjects) {
       if (m_debug) {
 	System.out.println("Merging with " + (m_numCurrentObjects) + " clusters left");
       }
       mergeStep();
+      start = LinkageStage.CLUSTERING.stop(start);
     }
 
     System.out.println(getTimestamp() + ": done deduping with "
@@ -226,7 +239,7 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
     double bestDistance = Double.MAX_VALUE;
     double thisDistance;
     Cluster thisCluster, nextCluster;
-    ArrayList mergeCandidatesList = new ArrayList();
+    IntArrayList mergeCandidatesList = new IntArrayList();
     int cluster1_index, cluster2_index;
 
     if (m_debug) { 
@@ -240,12 +253,12 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
 	thisDistance = clusterDistance(thisCluster, (Cluster) m_clusters.get(j));
 	// If there is a tie, add to the list of top distances
 	if (thisDistance == bestDistance) {
-	  mergeCandidatesList.add(new Integer(i));
-	  mergeCandidatesList.add(new Integer(j));
+	  mergeCandidatesList.add(i);
+	  mergeCandidatesList.add(j);
 	} else if (thisDistance < bestDistance) {  // this is the best distance seen this far
 	  mergeCandidatesList.clear();
-	  mergeCandidatesList.add(new Integer(i));
-	  mergeCandidatesList.add(new Integer(j));
+	  mergeCandidatesList.add(i);
+	  mergeCandidatesList.add(j);
 	  bestDistance = thisDistance;
 	}
       }
@@ -254,8 +267,8 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
     // randomly pick a most similar pair from the list of candidates
     int i1 = (int) (mergeCandidatesList.size() * Math.random());
     int i2 = (i1 % 2 > 0) ? (i1 - 1) : (i1 + 1);
-    int cluster1Idx = ((Integer) mergeCandidatesList.get(i1)).intValue();
-    int cluster2Idx = ((Integer) mergeCandidatesList.get(i2)).intValue();
+    int cluster1Idx = mergeCandidatesList.get(i1);
+    int cluster2Idx = mergeCandidatesList.get(i2);
     if (m_debug) {
       System.out.println("\nMerging clusters " + cluster1Idx + "(" + ((Cluster)m_clusters.get(cluster1Idx)).get(0) + 
 			 ") and " + cluster2Idx + "(" + ((Cluster)m_clusters.get(cluster2Idx)).get(0) + 
@@ -395,40 +408,75 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
 	Arrays.fill(m_distanceMatrix[i], Double.MAX_VALUE);
       }
       
-      m_blocking.buildIndex(m_testInstances);
-      InstancePair[] pairs = m_blocking.getMostSimilarPairs(m_numTruePairs * m_blockingPairRatio);
-
-      // Count good pairs to make sure all is well
-      int goodPairs = 0;
-      for (InstancePair pair : pairs) {
-        if (pair.instance1.classValue() == pair.instance2.classValue()) ++goodPairs;
+      long start = LinkageStage.INDEXING.start();
+      if (m_blockingBudget != null) {
+        m_blocking.buildIndex(m_testInstances, m_blockingBudget);
+      } else {
+        m_blocking.buildIndex(m_testInstances);
       }
-      System.out.println("Blocking returned " + goodPairs + " dupe pairs"); 
+      start = LinkageStage.INDEXING.stop(start);
+      if (m_usePairStore) {
+        PairStore store = new PairStore();
+        try {
+          if (m_blockingBudget != null) {
+            m_blocking.getPairs(m_blockingBudget, store);
+          } else {
+            m_blocking.getMostSimilarPairs(m_numTruePairs * m_blockingPairRatio, store);
+          }
+          LinkageStage.BLOCKING.stop(start);
+          LinkageStage.BLOCKING.addPairsGenerated(store.size());
+          System.out.println("Got " + store.size() +
+                             " pairs from blocking; true good pairs:" + m_numTruePairs); 
+          PairStore.Cursor cursor = store.cursor();
+          while (cursor.next()) {
+            int idx1 = cursor.getIndex1();
+            int idx2 = cursor.getIndex2();
+            m_distanceMatrix[idx1][idx2] = m_distanceMatrix[idx2][idx1] = cursor.getScore();
+          }
+        } finally {
+          store.close();
+        }
+      } else {
+        PairBuffer pairs;
+        if (m_blockingBudget != null) {
+          pairs = m_blocking.getPairs(m_blockingBudget);
+        } else {
+          pairs = new PairBuffer();
+          m_blocking.getMostSimilarPairs(m_numTruePairs * m_blockingPairRatio, pairs);
+        }
+        LinkageStage.BLOCKING.stop(start);
+        LinkageStage.BLOCKING.addPairsGenerated(pairs.size());
+
+        // Count good pairs to make sure all is well
+        System.out.println("Blocking returned " + pairs.numPositive() + " dupe pairs"); 
       
-      System.out.println("Got " + pairs.length +
-                         " pairs from blocking; true good pairs:" + m_numTruePairs); 
-      for (int i = 0; i < pairs.length && pairs[i] != null; i++) {
-	int idx1 = ((Integer) m_reverseInstancesHash.get(pairs[i].instance1)).intValue();
-	int idx2 = ((Integer) m_reverseInstancesHash.get(pairs[i].instance2)).intValue();
-	m_distanceMatrix[idx1][idx2] = m_distanceMatrix[idx1][idx2] = pairs[i].value;
+        System.out.println("Got " + pairs.size() +
+                           " pairs from blocking; true good pairs:" + m_numTruePairs); 
+        for (int i = 0; i < pairs.size(); i++) {
+	  int idx1 = pairs.left(i);
+	  int idx2 = pairs.right(i);
+	  m_distanceMatrix[idx1][idx2] = m_distanceMatrix[idx2][idx1] = pairs.score(i);
+        }
       }
     }
 
     System.out.println("Calculating distances between objects (out of "
                        + n*(n-1)/2 + " possible pairs");
     int distanceCalculations = 0; 
+    LinkageStage.Batch scoring = LinkageStage.SCORING.batch();
+    long start = scoring.start();
     for (int i = 0; i < n; i++) {
       for (int j = i+1; j < n; j++) {
 	if (!m_useBlocking || m_distanceMatrix[i][j] != Double.MAX_VALUE) {
 	  m_distanceMatrix[i][j] = m_distanceMatrix[j][i] =
-	    m_metric.distance((Instance) m_instancesHash.get(new Integer(i)),
-			      (Instance) m_instancesHash.get(new Integer(j)));
-          if (distanceCalculations % 100 == 99) System.out.print("#");
-          if (distanceCalculations % 10000 == 9999) System.out.println(" " + (1+distanceCalculations));
+	    m_metric.distance(m_testInstances.instance(i), m_testInstances.instance(j));
+          start = scoring.stop(start);
           distanceCalculations++;
 	}
       }
     }
+    scoring.flush();
+    LinkageStage.SCORING.addPairsScored(distanceCalculations);
     System.out.println(getTimestamp() + ": distance calculation done, total "
                        + distanceCalculations + " performed");
   }
@@ -515,28 +563,16 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
    * @returns the number of true same-class pairs
    */
   protected int numTruePairs(Instances instances) {
-    int numTruePairs = 0;
-    // get the class counts
-    HashMap classCountMap = new HashMap();
-
+    DoubleIntHashMap classCounts = new DoubleIntHashMap();
     for (int i = 0; i < instances.numInstances(); i++) {
-      Instance instance = instances.instance(i);
-      Double classValue = new Double(instance.classValue());
-      if (classCountMap.containsKey(classValue)) {
-	Integer counts = (Integer) classCountMap.get(classValue);
-	classCountMap.put(classValue, new Integer(counts.intValue() + 1));
-      } else {
-	classCountMap.put(classValue, new Integer(1));
-      }
+      classCounts.increment(instances.instance(i).classValue(), 1);
     }
-    
+
     // calculate the number of pairs
-    Iterator iterator = classCountMap.values().iterator();
-    while (iterator.hasNext()) {
-      int counts = ((Integer) iterator.next()).intValue();
+    int numTruePairs = 0;
+    for (int counts : classCounts.values()) {
       numTruePairs += counts * (counts - 1) / 2;
     }
-
     return numTruePairs;
   }
 
@@ -771,6 +807,15 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
   }
   public int getBlockingPairRatio() { return m_blockingPairRatio; } 
 
+  /** Set/get the budget within which blocked pairs are requested; null
+   * to request the blocking pair ratio times the number of true pairs */
+  public void setBlockingBudget(BlockingBudget budget) { m_blockingBudget = budget; }
+  public BlockingBudget getBlockingBudget() { return m_blockingBudget; } 
+
+  /** Turn reading blocked pairs through a pair store on/off */
+  public void setUsePairStore(boolean usePairStore) { m_usePairStore = usePairStore; }
+  public boolean getUsePairStore() { return m_usePairStore; } 
+
 
   public void setBlocking(Blocking blocking) {
     m_blocking = blocking;
@@ -843,6 +888,10 @@ public class ClusteringDeduper extends Deduper implements OptionHandler, Seriali
     options[current++] = "-T";
     options[current++] = "" + m_trainProportion;
 
+    if (m_usePairStore) {
+      options[current++] = "-PS";
+    }
+
     if (m_debug) {
       options[current++] = "-D";
     }
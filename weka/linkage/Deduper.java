@@ -49,6 +49,24 @@ public abstract class Deduper implements Cloneable {
    */
   public abstract void findDuplicates(Instances testInstances, int numObjects) throws Exception;
 
+  /** Get the number of entities the class values of a dataset index.
+   * The class is either nominal, or numeric holding entity ids from 0,
+   * as LinkageGenerator writes it for datasets with too many entities to
+   * list.
+   * @param data a set of instances
+   * @returns one more than the largest class value
+   */
+  public static int numEntities(Instances data) {
+    if (data.classAttribute().isNominal()) {
+      return data.numClasses();
+    }
+    int numEntities = 0;
+    for (int i = 0; i < data.numInstances(); i++) {
+      numEntities = Math.max(numEntities, (int) data.instance(i).classValue() + 1);
+    }
+    return numEntities;
+  }
+
   public static Deduper forName(String deduperName, String [] options) throws Exception {
     return (Deduper)Utils.forName(Deduper.class,
 				  deduperName,
@@ -0,0 +1,424 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    DistributedScorer.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import weka.core.*;
+import weka.core.collections.IntArrayList;
+import weka.core.collections.IntIntHashMap;
+import weka.linkage.metrics.InstanceMetric;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Scores the candidate pairs of a pair store in worker JVMs started
+ * as child processes on the local machine.  The coordinator sends every
+ * worker the trained metric and the header of the data once, then hands
+ * out partitions of consecutive pairs together with the records those
+ * pairs refer to; workers return the distances of the pairs of a
+ * partition, which are written back into the store.  A worker holds
+ * only the records of the partition it is scoring, but the coordinator
+ * holds all the data, and the metric is sent whole, so whatever the
+ * metric keeps about the training data is copied to every worker.
+ *
+ * If a worker dies, or does not answer within the read timeout, the
+ * partition it was scoring is handed to another worker; scoring fails
+ * only if all workers are gone.
+ *
+ * The protocol is a plain data stream over a socket: the serialized
+ * metric and string-free header, then for every partition the number of
+ * pairs, the records and the pairs as indices into those records,
+ * answered by the distances.  A negative number of pairs stops the
+ * worker.  A worker is started by running this class with the host and
+ * port of the coordinator.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class DistributedScorer {
+
+  /** Number of worker processes */
+  protected int m_numWorkers = 2;
+
+  /** Number of pairs in a partition */
+  protected int m_partitionSize = 100000;
+
+  /** Maximum heap of a worker JVM, e.g. "512m"; JVM default if empty */
+  protected String m_workerHeap = "";
+
+  /** Seconds to wait for the workers to connect */
+  protected int m_connectTimeout = 60;
+
+  /** Seconds to wait for the distances of a partition before the worker
+   * is considered failed; 0 to wait forever */
+  protected int m_readTimeout = 600;
+
+  /** The instances the pair codes refer to */
+  protected Instances m_data = null;
+
+  protected ServerSocket m_serverSocket = null;
+  protected ArrayList<Process> m_processes = new ArrayList<Process>();
+  protected ArrayList<Socket> m_sockets = new ArrayList<Socket>();
+
+  /** Statistics of the last run */
+  protected int m_numPartitions = 0;
+  protected int m_numRedispatched = 0;
+
+
+  public DistributedScorer() {
+  }
+
+
+  public DistributedScorer(int numWorkers) {
+    m_numWorkers = numWorkers;
+  }
+
+
+  /** Start the worker processes and send them the header of the data
+   * and the metric
+   * @param data the instances the pair codes refer to
+   * @param metric a trained metric
+   */
+  public void start(Instances data, InstanceMetric metric) throws Exception {
+    m_data = data;
+    m_serverSocket = new ServerSocket(0, m_numWorkers, InetAddress.getByName("localhost"));
+    m_serverSocket.setSoTimeout(m_connectTimeout * 1000);
+    String javaCommand = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    for (int i = 0; i < m_numWorkers; i++) {
+      ArrayList<String> command = new ArrayList<String>();
+      command.add(javaCommand);
+      if (m_workerHeap.length() > 0) {
+        command.add("-Xmx" + m_workerHeap);
+      }
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(DistributedScorer.class.getName());
+      command.add("localhost");
+      command.add("" + m_serverSocket.getLocalPort());
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+      m_processes.add(builder.start());
+    }
+
+    // serialize the setup once for all workers
+    ByteArrayOutputStream setup = new ByteArrayOutputStream();
+    ObjectOutputStream setupStream = new ObjectOutputStream(setup);
+    setupStream.writeObject(metric);
+    setupStream.writeObject(data.stringFreeStructure());
+    setupStream.close();
+    byte[] setupBytes = setup.toByteArray();
+
+    for (int i = 0; i < m_numWorkers; i++) {
+      Socket socket;
+      try {
+        socket = m_serverSocket.accept();
+      } catch (SocketTimeoutException e) {
+        System.err.println("Only " + i + " of " + m_numWorkers + " workers connected");
+        break;
+      }
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(m_readTimeout * 1000);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeInt(setupBytes.length);
+      out.write(setupBytes);
+      out.flush();
+      m_sockets.add(socket);
+    }
+    if (m_sockets.size() == 0) {
+      stop();
+      throw new Exception("No worker connected");
+    }
+  }
+
+
+  /** Compute the distances of all pairs in a store, replacing their scores
+   * @param store the pair store
+   */
+  public void score(final PairStore store) throws Exception {
+    final LinkedBlockingQueue<Long> partitions = new LinkedBlockingQueue<Long>();
+    for (long start = 0; start < store.size(); start += m_partitionSize) {
+      partitions.add(start);
+    }
+    m_numPartitions = partitions.size();
+    m_numRedispatched = 0;
+    final AtomicInteger numUnscored = new AtomicInteger(m_numPartitions);
+
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (final Socket socket : m_sockets) {
+      Thread thread = new Thread() {
+          public void run() {
+            serve(socket, store, partitions, numUnscored);
+          }
+        };
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    if (numUnscored.get() > 0) {
+      throw new Exception("All workers failed; " + numUnscored.get() + " partitions were not scored");
+    }
+  }
+
+
+  /** Hand partitions to a worker until all are scored or the worker
+   * fails or times out.  A worker waits while partitions taken by others
+   * are outstanding, as they may be handed out again. */
+  protected void serve(Socket socket, PairStore store, LinkedBlockingQueue<Long> partitions,
+                       AtomicInteger numUnscored) {
+    Long start = null;
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      while (numUnscored.get() > 0) {
+        start = partitions.poll(100, TimeUnit.MILLISECONDS);
+        if (start == null) {
+          continue;
+        }
+        long[] pairCodes;
+        synchronized (store) {
+          pairCodes = new long[(int) Math.min(m_partitionSize, store.size() - start)];
+          for (int i = 0; i < pairCodes.length; i++) {
+            pairCodes[i] = store.getPairCode(start + i);
+          }
+        }
+        int numPairs = pairCodes.length;
+        writePartition(out, pairCodes);
+        out.flush();
+        float[] scores = new float[numPairs];
+        for (int i = 0; i < numPairs; i++) {
+          scores[i] = in.readFloat();
+        }
+        synchronized (store) {
+          for (int i = 0; i < numPairs; i++) {
+            store.setScore(start + i, scores[i]);
+          }
+        }
+        start = null;
+        numUnscored.decrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      if (start != null) {
+        partitions.add(start);
+      }
+    } catch (IOException e) {
+      // includes SocketTimeoutException from a hung or stalled worker
+      System.err.println("Worker failed (" + e + ")");
+      if (start != null) {
+        synchronized (this) {
+          m_numRedispatched++;
+        }
+        partitions.add(start);
+      }
+      try {
+        socket.close();
+      } catch (IOException ce) {
+      }
+    }
+  }
+
+
+  /** Write the pairs of a partition with the records they refer to */
+  protected void writePartition(DataOutputStream out, long[] pairCodes) throws IOException {
+    IntIntHashMap localIndexes = new IntIntHashMap(2 * pairCodes.length);
+    IntArrayList records = new IntArrayList();
+    int[] localPairs = new int[2 * pairCodes.length];
+    for (int i = 0; i < pairCodes.length; i++) {
+      for (int j = 0; j < 2; j++) {
+        int index = (j == 0 ? PairStore.firstIndex(pairCodes[i]) : PairStore.secondIndex(pairCodes[i]));
+        int localIndex = localIndexes.get(index, -1);
+        if (localIndex < 0) {
+          localIndex = records.size();
+          localIndexes.put(index, localIndex);
+          records.add(index);
+        }
+        localPairs[2 * i + j] = localIndex;
+      }
+    }
+
+    out.writeInt(pairCodes.length);
+    out.writeInt(records.size());
+    for (int i = 0; i < records.size(); i++) {
+      Instance instance = m_data.instance(records.get(i));
+      out.writeDouble(instance.weight());
+      for (int att = 0; att < m_data.numAttributes(); att++) {
+        if (m_data.attribute(att).isString()) {
+          boolean missing = instance.isMissing(att);
+          out.writeBoolean(missing);
+          if (!missing) {
+            String value = instance.stringValue(att);
+            out.writeInt(value.length());
+            out.writeChars(value);
+          }
+        } else {
+          out.writeDouble(instance.value(att));
+        }
+      }
+    }
+    for (int i = 0; i < localPairs.length; i++) {
+      out.writeInt(localPairs[i]);
+    }
+  }
+
+
+  /** Read the records of a partition written by writePartition
+   * @param in the stream, positioned after the number of pairs
+   * @param header the string-free header of the data
+   */
+  protected static Instances readRecords(DataInputStream in, Instances header) throws IOException {
+    int numRecords = in.readInt();
+    Instances records = header.stringFreeStructure();
+    int numAttributes = records.numAttributes();
+    StringBuffer buffer = new StringBuffer();
+    for (int i = 0; i < numRecords; i++) {
+      double weight = in.readDouble();
+      double[] values = new double[numAttributes];
+      for (int att = 0; att < numAttributes; att++) {
+        if (records.attribute(att).isString()) {
+          if (in.readBoolean()) {
+            values[att] = Instance.missingValue();
+          } else {
+            int length = in.readInt();
+            buffer.setLength(0);
+            for (int c = 0; c < length; c++) {
+              buffer.append(in.readChar());
+            }
+            values[att] = records.attribute(att).addStringValue(buffer.toString());
+          }
+        } else {
+          values[att] = in.readDouble();
+        }
+      }
+      records.add(new Instance(weight, values));
+    }
+    return records;
+  }
+
+
+  /** Stop the workers */
+  public void stop() {
+    for (Socket socket : m_sockets) {
+      try {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(-1);
+        out.flush();
+        socket.close();
+      } catch (IOException e) {
+      }
+    }
+    m_sockets.clear();
+    for (Process process : m_processes) {
+      process.destroy();
+    }
+    m_processes.clear();
+    if (m_serverSocket != null) {
+      try {
+        m_serverSocket.close();
+      } catch (IOException e) {
+      }
+      m_serverSocket = null;
+    }
+  }
+
+
+  /** Set the number of worker processes */
+  public void setNumWorkers(int numWorkers) { m_numWorkers = numWorkers; }
+  public int getNumWorkers() { return m_numWorkers; }
+
+  /** Set the number of pairs in a partition */
+  public void setPartitionSize(int partitionSize) { m_partitionSize = partitionSize; }
+  public int getPartitionSize() { return m_partitionSize; }
+
+  /** Set the maximum heap of a worker JVM, e.g. "512m" */
+  public void setWorkerHeap(String workerHeap) { m_workerHeap = workerHeap; }
+  public String getWorkerHeap() { return m_workerHeap; }
+
+  /** Set the number of seconds to wait for the workers to connect */
+  public void setConnectTimeout(int connectTimeout) { m_connectTimeout = connectTimeout; }
+  public int getConnectTimeout() { return m_connectTimeout; }
+
+  /** Set the number of seconds to wait for the distances of a
+   * partition; 0 to wait forever */
+  public void setReadTimeout(int readTimeout) { m_readTimeout = readTimeout; }
+  public int getReadTimeout() { return m_readTimeout; }
+
+  /** Get the number of partitions of the last run */
+  public int getNumPartitions() { return m_numPartitions; }
+
+  /** Get the number of partitions handed out again after a worker failed */
+  public int getNumRedispatched() { return m_numRedispatched; }
+
+  /** Get the worker processes */
+  public ArrayList<Process> getProcesses() { return m_processes; }
+
+
+  /**
+   * Runs a worker.
+   *
+   * @param args the host and port of the coordinator
+   */
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      System.err.println("Usage:\n\tDistributedScorer <host> <port>\n");
+      return;
+    }
+    try {
+      Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+      socket.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+      byte[] setupBytes = new byte[in.readInt()];
+      in.readFully(setupBytes);
+      ObjectInputStream setupStream = new ObjectInputStream(new ByteArrayInputStream(setupBytes));
+      InstanceMetric metric = (InstanceMetric) setupStream.readObject();
+      Instances header = (Instances) setupStream.readObject();
+      setupStream.close();
+
+      int numPairs;
+      while ((numPairs = in.readInt()) >= 0) {
+        Instances records = readRecords(in, header);
+        int[] localPairs = new int[2 * numPairs];
+        for (int i = 0; i < localPairs.length; i++) {
+          localPairs[i] = in.readInt();
+        }
+        for (int i = 0; i < numPairs; i++) {
+          Instance instance1 = records.instance(localPairs[2 * i]);
+          Instance instance2 = records.instance(localPairs[2 * i + 1]);
+          out.writeFloat((float) metric.distance(instance1, instance2));
+        }
+        out.flush();
+      }
+      socket.close();
+    } catch (EOFException e) {
+      // the coordinator went away
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,755 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ExternalDeduper.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import weka.core.*;
+import weka.core.converters.ArffLoader;
+import weka.linkage.metrics.*;
+import weka.linkage.blocking.*;
+import weka.linkage.blocking.learn.Blocker;
+
+import java.io.*;
+import java.util.*;
+
+/** A deduper for datasets that do not fit in memory.  Records are
+ * streamed from an ARFF file and never held all at once:
+ * <ol>
+ * <li> every record is blocked as it is read, and (block key, record)
+ *      entries are buffered and spilled to sorted run files on disk;
+ * <li> the runs are merged, at most a fixed number at a time, which
+ *      brings together all records of a block;
+ * <li> the records of every block are compared in memory, and pairs
+ *      closer than the distance threshold are written to a pair file.
+ * </ol>
+ * A pair of records sharing several blocks is compared only in the
+ * first of them.  Blocks larger than the maximum block size are
+ * skipped.  Blockers and the metric are usually taken from a saved
+ * LinkageModel; only blockers that can block a single record are used.
+ *
+ * The pair file holds one (int index1, int index2, double distance)
+ * triple per pair, where indeces are positions of the records in the
+ * input file and index1 &lt; index2.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class ExternalDeduper implements OptionHandler, Serializable {
+
+  /** A metric measuring distance between instances */
+  protected InstanceMetric m_metric = null;
+
+  /** Blockers producing the block keys of a record */
+  protected Blocker[] m_blockers = new Blocker[0];
+
+  /** Should string values be cleaned before blocking, as LearnableBlocking does? */
+  protected boolean m_cleanValues = false;
+
+  /** Pairs closer than this are written out; the scale depends on the metric */
+  protected double m_maxDistance = 0.5;
+
+  /** Blocks with more records than this are not compared */
+  protected int m_maxBlockSize = 1000;
+
+  /** Approximate number of bytes of entries buffered before a run is written */
+  protected long m_runBufferSize = 64L * 1024 * 1024;
+
+  /** Maximum number of runs merged at once; with more runs, groups of
+   * runs are merged into longer intermediate runs first */
+  protected int m_mergeFanIn = 64;
+
+  /** Directory for the run files */
+  protected File m_tempDir = new File(System.getProperty("java.io.tmpdir"));
+
+  /** Header of the data being deduped */
+  protected transient Instances m_structure = null;
+
+  /** Keys of blocks that were too large to be compared */
+  protected transient HashSet<Long> m_skippedKeys = null;
+
+  /** Statistics of the last run */
+  protected int m_numRecords = 0;
+  protected int m_numRuns = 0;
+  protected long m_numEntries = 0;
+  protected long m_numBlocks = 0;
+  protected long m_numSkippedBlocks = 0;
+  protected long m_numComparisons = 0;
+  protected long m_numMatches = 0;
+
+  /** verbose? */
+  protected boolean m_verbose = false;
+
+
+  /** A record read from the input: its position in the file, its
+   * sorted block keys and its values, as strings (null if missing) */
+  protected static class Record {
+    int m_idx;
+    long[] m_keys;
+    String[] m_values;
+
+    /** Approximate number of bytes taken by the record in memory */
+    long size() {
+      long size = 64 + 8 * m_keys.length;
+      for (String value : m_values) {
+        size += (value == null ? 8 : 48 + 2 * value.length());
+      }
+      return size;
+    }
+  }
+
+
+  /** An entry of a run: a block key and a record in the block */
+  protected static class Entry implements Comparable<Entry> {
+    long m_key;
+    Record m_record;
+
+    Entry(long key, Record record) {
+      m_key = key;
+      m_record = record;
+    }
+
+    public int compareTo(Entry entry) {
+      if (m_key != entry.m_key) {
+        return (m_key < entry.m_key ? -1 : 1);
+      }
+      return m_record.m_idx - entry.m_record.m_idx;
+    }
+  }
+
+
+  /** Sequential reader of a run file */
+  protected class RunReader implements Comparable<RunReader> {
+    File m_file;
+    DataInputStream m_in;
+    int m_numLeft;
+    Entry m_current = null;
+
+    RunReader(File file) throws IOException {
+      m_file = file;
+      m_in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+      m_numLeft = m_in.readInt();
+    }
+
+    /** Read the next entry; returns false at the end of the run */
+    boolean advance() throws IOException {
+      if (m_numLeft == 0) {
+        m_current = null;
+        m_in.close();
+        return false;
+      }
+      m_numLeft--;
+      m_current = readEntry(m_in);
+      return true;
+    }
+
+    public int compareTo(RunReader reader) {
+      return m_current.compareTo(reader.m_current);
+    }
+  }
+
+
+  /** Set the metric and blockers from a trained linkage model.  Only
+   * blockers of a LearnableBlocking that can block a single record are
+   * used.
+   * @param model a trained model
+   */
+  public void setModel(LinkageModel model) throws Exception {
+    m_metric = model.getMetric();
+    Blocking blocking = model.getBlocking();
+    if (!(blocking instanceof LearnableBlocking)
+        || ((LearnableBlocking) blocking).getLearnedBlockers() == null) {
+      throw new Exception("ExternalDeduper needs a model with learned blocking");
+    }
+    ArrayList learnedBlockers = ((LearnableBlocking) blocking).getLearnedBlockers();
+    ArrayList<Blocker> blockers = new ArrayList<Blocker>();
+    for (int i = 0; i < learnedBlockers.size(); i++) {
+      Blocker blocker = (Blocker) learnedBlockers.get(i);
+      if (blocker.isIncremental()) {
+        blockers.add(blocker);
+      }
+    }
+    m_blockers = blockers.toArray(new Blocker[blockers.size()]);
+    m_cleanValues = true;
+  }
+
+
+  /** Dedupe the records of an ARFF file
+   * @param arffFile the file with the records
+   * @param pairFile the file the matching pairs are written to
+   */
+  public void dedupe(File arffFile, File pairFile) throws Exception {
+    if (m_metric == null || m_blockers.length == 0) {
+      throw new Exception("Metric and blockers must be set before deduping");
+    }
+    m_numRecords = 0;
+    m_numRuns = 0;
+    m_numEntries = 0;
+    m_numBlocks = 0;
+    m_numSkippedBlocks = 0;
+    m_numComparisons = 0;
+    m_numMatches = 0;
+    m_skippedKeys = new HashSet<Long>();
+
+    ArrayList<File> runFiles = new ArrayList<File>();
+    try {
+      writeRuns(arffFile, runFiles);
+      mergeRuns(runFiles, pairFile);
+    } finally {
+      for (File runFile : runFiles) {
+        runFile.delete();
+      }
+      m_skippedKeys = null;
+    }
+    if (m_verbose) {
+      System.out.println(m_numRecords + " records, " + m_numEntries + " block entries in "
+                         + m_numRuns + " runs; " + m_numBlocks + " blocks ("
+                         + m_numSkippedBlocks + " skipped), " + m_numComparisons
+                         + " comparisons, " + m_numMatches + " matches");
+    }
+  }
+
+
+  /** Read the records, blocking them and spilling sorted runs of entries */
+  protected void writeRuns(File arffFile, ArrayList<File> runFiles) throws Exception {
+    ArffLoader loader = new ArffLoader();
+    loader.setRetainStringValues(false);
+    loader.setSource(arffFile);
+    m_structure = loader.getStructure();
+    if (m_structure.classIndex() < 0) {
+      m_structure.setClassIndex(m_structure.numAttributes() - 1);
+    }
+
+    ArrayList<Entry> buffer = new ArrayList<Entry>();
+    long bufferSize = 0;
+    Instance instance;
+    while ((instance = loader.getNextInstance()) != null) {
+      instance.dataset().setClassIndex(m_structure.classIndex());
+      // the metric is trained on cleaned values, so they are kept cleaned
+      if (m_cleanValues) {
+        LearnableBlocking.cleanInstance(instance);
+      }
+      Record record = new Record();
+      record.m_idx = m_numRecords++;
+      record.m_values = new String[instance.numAttributes()];
+      for (int j = 0; j < instance.numAttributes(); j++) {
+        if (instance.isMissing(j)) {
+          continue;
+        }
+        if (instance.attribute(j).isNominal() || instance.attribute(j).isString()) {
+          record.m_values[j] = instance.stringValue(j);
+        } else {
+          record.m_values[j] = Double.toString(instance.value(j));
+        }
+      }
+      record.m_keys = getBlockKeys(instance);
+
+      bufferSize += record.size();
+      for (long key : record.m_keys) {
+        buffer.add(new Entry(key, record));
+        bufferSize += 32;
+      }
+      if (bufferSize >= m_runBufferSize) {
+        runFiles.add(writeRun(buffer));
+        buffer.clear();
+        bufferSize = 0;
+      }
+    }
+    if (buffer.size() > 0) {
+      runFiles.add(writeRun(buffer));
+    }
+  }
+
+
+  /** Return the sorted, unique block keys of an instance */
+  protected long[] getBlockKeys(Instance instance) {
+    long[] keys = new long[16];
+    int numKeys = 0;
+    for (int i = 0; i < m_blockers.length; i++) {
+      long[] blocks = m_blockers[i].getBlocks(instance);
+      if (numKeys + blocks.length > keys.length) {
+        keys = Arrays.copyOf(keys, Math.max(2 * keys.length, numKeys + blocks.length));
+      }
+      for (long blockKey : blocks) {
+        keys[numKeys++] = Blocker.combineKeys(i, blockKey);
+      }
+    }
+    Arrays.sort(keys, 0, numKeys);
+    int numUnique = 0;
+    for (int i = 0; i < numKeys; i++) {
+      if (numUnique == 0 || keys[i] != keys[numUnique - 1]) {
+        keys[numUnique++] = keys[i];
+      }
+    }
+    return Arrays.copyOf(keys, numUnique);
+  }
+
+
+  /** Sort the buffered entries and write them to a new run file */
+  protected File writeRun(ArrayList<Entry> buffer) throws IOException {
+    Collections.sort(buffer);
+    File runFile = File.createTempFile("dedup-run", ".bin", m_tempDir);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16));
+    try {
+      out.writeInt(buffer.size());
+      for (Entry entry : buffer) {
+        writeEntry(out, entry);
+      }
+    } finally {
+      out.close();
+    }
+    m_numRuns++;
+    m_numEntries += buffer.size();
+    return runFile;
+  }
+
+
+  /** Write an entry of a run */
+  protected static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+    Record record = entry.m_record;
+    out.writeLong(entry.m_key);
+    out.writeInt(record.m_idx);
+    out.writeInt(record.m_keys.length);
+    for (long key : record.m_keys) {
+      out.writeLong(key);
+    }
+    out.writeInt(record.m_values.length);
+    for (String value : record.m_values) {
+      if (value == null) {
+        out.writeInt(-1);
+      } else {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+
+
+  /** Read an entry of a run */
+  protected static Entry readEntry(DataInputStream in) throws IOException {
+    long key = in.readLong();
+    Record record = new Record();
+    record.m_idx = in.readInt();
+    record.m_keys = new long[in.readInt()];
+    for (int i = 0; i < record.m_keys.length; i++) {
+      record.m_keys[i] = in.readLong();
+    }
+    record.m_values = new String[in.readInt()];
+    for (int i = 0; i < record.m_values.length; i++) {
+      int length = in.readInt();
+      if (length >= 0) {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        record.m_values[i] = new String(bytes, "UTF-8");
+      }
+    }
+    return new Entry(key, record);
+  }
+
+
+  /** Merge the runs, comparing the records of every block.  While there
+   * are more runs than the merge fan-in, the oldest runs are merged into
+   * an intermediate run, so that no more files are open at once.
+   * @param runFiles the runs; merged runs are replaced by intermediate
+   * ones, so the list always holds the files to delete
+   * @param pairFile the file the matching pairs are written to
+   */
+  protected void mergeRuns(ArrayList<File> runFiles, File pairFile) throws Exception {
+    int fanIn = Math.max(2, m_mergeFanIn);
+    while (runFiles.size() > fanIn) {
+      List<File> group = runFiles.subList(0, fanIn);
+      File mergedFile = mergeGroup(group);
+      for (File runFile : group) {
+        runFile.delete();
+      }
+      group.clear();
+      runFiles.add(mergedFile);
+    }
+    compareRuns(runFiles, pairFile);
+  }
+
+
+  /** Merge runs into a new run file */
+  protected File mergeGroup(List<File> runFiles) throws Exception {
+    PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+    File mergedFile = File.createTempFile("dedup-run", ".bin", m_tempDir);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mergedFile), 1 << 16));
+    try {
+      long numEntries = 0;
+      for (File runFile : runFiles) {
+        RunReader reader = new RunReader(runFile);
+        numEntries += reader.m_numLeft;
+        if (reader.advance()) {
+          queue.add(reader);
+        }
+      }
+      if (numEntries > Integer.MAX_VALUE) {
+        throw new Exception("Too many entries for a run: " + numEntries);
+      }
+      out.writeInt((int) numEntries);
+      while (!queue.isEmpty()) {
+        RunReader reader = queue.poll();
+        writeEntry(out, reader.m_current);
+        if (reader.advance()) {
+          queue.add(reader);
+        }
+      }
+    } catch (Exception e) {
+      out.close();
+      mergedFile.delete();
+      throw e;
+    } finally {
+      for (RunReader reader : queue) {
+        reader.m_in.close();
+      }
+      out.close();
+    }
+    if (m_verbose) {
+      System.out.println("Merged " + runFiles.size() + " runs into " + mergedFile);
+    }
+    return mergedFile;
+  }
+
+
+  /** Merge at most the fan-in of runs, comparing the records of every block */
+  protected void compareRuns(ArrayList<File> runFiles, File pairFile) throws Exception {
+    PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pairFile), 1 << 16));
+    try {
+      for (File runFile : runFiles) {
+        RunReader reader = new RunReader(runFile);
+        if (reader.advance()) {
+          queue.add(reader);
+        }
+      }
+
+      ArrayList<Record> block = new ArrayList<Record>();
+      long blockKey = 0;
+      while (!queue.isEmpty()) {
+        RunReader reader = queue.poll();
+        Entry entry = reader.m_current;
+        if (block.size() > 0 && entry.m_key != blockKey) {
+          compareBlock(blockKey, block, out);
+          block.clear();
+        }
+        blockKey = entry.m_key;
+        if (block.size() <= m_maxBlockSize) {
+          block.add(entry.m_record);
+        }
+        if (reader.advance()) {
+          queue.add(reader);
+        }
+      }
+      if (block.size() > 0) {
+        compareBlock(blockKey, block, out);
+      }
+    } finally {
+      for (RunReader reader : queue) {
+        reader.m_in.close();
+      }
+      out.close();
+    }
+  }
+
+
+  /** Compare all pairs of records in a block whose first common
+   * compared block it is, writing out the matching pairs */
+  protected void compareBlock(long blockKey, ArrayList<Record> block,
+                              DataOutputStream out) throws Exception {
+    if (block.size() < 2) {
+      return;
+    }
+    m_numBlocks++;
+    if (block.size() > m_maxBlockSize) {
+      m_skippedKeys.add(blockKey);
+      m_numSkippedBlocks++;
+      return;
+    }
+
+    // string values of a block go into a header of its own
+    Instances header = m_structure.stringFreeStructure();
+    Instance[] instances = new Instance[block.size()];
+    for (int i = 0; i < instances.length; i++) {
+      instances[i] = toInstance(block.get(i), header);
+    }
+
+    for (int i = 0; i < instances.length; i++) {
+      Record record1 = block.get(i);
+      for (int j = i + 1; j < instances.length; j++) {
+        Record record2 = block.get(j);
+        if (firstCommonKey(record1.m_keys, record2.m_keys) != blockKey) {
+          continue;
+        }
+        m_numComparisons++;
+        double distance = m_metric.distance(instances[i], instances[j]);
+        if (distance <= m_maxDistance) {
+          out.writeInt(Math.min(record1.m_idx, record2.m_idx));
+          out.writeInt(Math.max(record1.m_idx, record2.m_idx));
+          out.writeDouble(distance);
+          m_numMatches++;
+        }
+      }
+    }
+  }
+
+
+  /** Return the smallest key shared by two sorted key lists that
+   * belongs to a block that was not skipped */
+  protected long firstCommonKey(long[] keys1, long[] keys2) {
+    int i = 0, j = 0;
+    while (i < keys1.length && j < keys2.length) {
+      if (keys1[i] < keys2[j]) {
+        i++;
+      } else if (keys1[i] > keys2[j]) {
+        j++;
+      } else {
+        if (!m_skippedKeys.contains(keys1[i])) {
+          return keys1[i];
+        }
+        i++;
+        j++;
+      }
+    }
+    throw new IllegalStateException("Records in a common block share no key");
+  }
+
+
+  /** Rebuild an instance from a record */
+  protected static Instance toInstance(Record record, Instances header) {
+    Instance instance = new Instance(header.numAttributes());
+    instance.setDataset(header);
+    for (int j = 0; j < record.m_values.length; j++) {
+      String value = record.m_values[j];
+      Attribute attribute = header.attribute(j);
+      if (value == null) {
+        instance.setMissing(j);
+      } else if (attribute.isNominal() || attribute.isString()) {
+        instance.setValue(j, value);
+      } else {
+        instance.setValue(j, Double.parseDouble(value));
+      }
+    }
+    return instance;
+  }
+
+
+  /** Read a pair file written by dedupe
+   * @param pairFile the file
+   * @returns the pairs as {index1, index2} arrays, and their distances
+   * in the same order
+   */
+  public static int[][] readPairs(File pairFile, ArrayList<Double> distances) throws IOException {
+    int numPairs = (int) (pairFile.length() / 16);
+    int[][] pairs = new int[numPairs][2];
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pairFile), 1 << 16));
+    try {
+      for (int i = 0; i < numPairs; i++) {
+        pairs[i][0] = in.readInt();
+        pairs[i][1] = in.readInt();
+        double distance = in.readDouble();
+        if (distances != null) {
+          distances.add(distance);
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return pairs;
+  }
+
+
+  /** Set the metric */
+  public void setMetric(InstanceMetric metric) { m_metric = metric; }
+  public InstanceMetric getMetric() { return m_metric; }
+
+  /** Set the blockers producing the block keys */
+  public void setBlockers(Blocker[] blockers) { m_blockers = blockers; }
+  public Blocker[] getBlockers() { return m_blockers; }
+
+  /** Turn cleaning of string values before blocking on/off */
+  public void setCleanValues(boolean cleanValues) { m_cleanValues = cleanValues; }
+  public boolean getCleanValues() { return m_cleanValues; }
+
+  /** Set the maximum distance of pairs written out */
+  public void setMaxDistance(double maxDistance) { m_maxDistance = maxDistance; }
+  public double getMaxDistance() { return m_maxDistance; }
+
+  /** Set the maximum number of records in a compared block */
+  public void setMaxBlockSize(int maxBlockSize) { m_maxBlockSize = maxBlockSize; }
+  public int getMaxBlockSize() { return m_maxBlockSize; }
+
+  /** Set the approximate number of bytes buffered before a run is written */
+  public void setRunBufferSize(long runBufferSize) { m_runBufferSize = runBufferSize; }
+  public long getRunBufferSize() { return m_runBufferSize; }
+
+  /** Set the maximum number of runs merged at once */
+  public void setMergeFanIn(int mergeFanIn) { m_mergeFanIn = mergeFanIn; }
+  public int getMergeFanIn() { return m_mergeFanIn; }
+
+  /** Set the directory for the run files */
+  public void setTempDir(File tempDir) { m_tempDir = tempDir; }
+  public File getTempDir() { return m_tempDir; }
+
+  /** Turn verbose output on/off */
+  public void setVerbose(boolean verbose) { m_verbose = verbose; }
+  public boolean getVerbose() { return m_verbose; }
+
+  /** Statistics of the last run */
+  public int getNumRecords() { return m_numRecords; }
+  public int getNumRuns() { return m_numRuns; }
+  public long getNumBlocks() { return m_numBlocks; }
+  public long getNumSkippedBlocks() { return m_numSkippedBlocks; }
+  public long getNumComparisons() { return m_numComparisons; }
+  public long getNumMatches() { return m_numMatches; }
+
+
+  /**
+   * Returns an enumeration describing the available options
+   *
+   * @return an enumeration of all the available options
+   **/
+  public Enumeration listOptions() {
+    Vector newVector = new Vector(6);
+    newVector.addElement(new Option("\tMaximum distance of written pairs.\n"
+				    +"\t(default=0.5)", "T", 1,"-T distance"));
+    newVector.addElement(new Option("\tMaximum number of records in a compared block.\n"
+				    +"\t(default=1000)", "S", 1,"-S num"));
+    newVector.addElement(new Option("\tMegabytes of entries buffered before a run is written.\n"
+				    +"\t(default=64)", "R", 1,"-R megabytes"));
+    newVector.addElement(new Option("\tMaximum number of runs merged at once.\n"
+				    +"\t(default=64)", "F", 1,"-F num"));
+    newVector.addElement(new Option("\tDirectory for run files.\n"
+				    +"\t(default=java.io.tmpdir)", "D", 1,"-D directory"));
+    newVector.addElement(new Option("\tVerbose output.", "V", 0,"-V"));
+    return newVector.elements();
+  }
+
+
+  /**
+   * Parses a given list of options.
+   *
+   * Valid options are:<p>
+   *
+   * -T distance <p>
+   * Maximum distance of written pairs <p>
+   *
+   * -S num <p>
+   * Maximum number of records in a compared block <p>
+   *
+   * -R megabytes <p>
+   * Megabytes of entries buffered before a run is written <p>
+   *
+   * -F num <p>
+   * Maximum number of runs merged at once <p>
+   *
+   * -D directory <p>
+   * Directory for run files <p>
+   *
+   * -V <p>
+   * Verbose output <p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+    String distanceString = Utils.getOption('T', options);
+    if (distanceString.length() != 0) {
+      setMaxDistance(Double.parseDouble(distanceString));
+    }
+
+    String sizeString = Utils.getOption('S', options);
+    if (sizeString.length() != 0) {
+      setMaxBlockSize(Integer.parseInt(sizeString));
+    }
+
+    String bufferString = Utils.getOption('R', options);
+    if (bufferString.length() != 0) {
+      setRunBufferSize(Long.parseLong(bufferString) * 1024 * 1024);
+    }
+
+    String fanInString = Utils.getOption('F', options);
+    if (fanInString.length() != 0) {
+      setMergeFanIn(Integer.parseInt(fanInString));
+    }
+
+    String dirString = Utils.getOption('D', options);
+    if (dirString.length() != 0) {
+      setTempDir(new File(dirString));
+    }
+
+    setVerbose(Utils.getFlag('V', options));
+  }
+
+
+  /**
+   * Gets the current settings of ExternalDeduper.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String [] getOptions() {
+    String [] options = new String [12];
+    int current = 0;
+
+    options[current++] = "-T";
+    options[current++] = "" + m_maxDistance;
+    options[current++] = "-S";
+    options[current++] = "" + m_maxBlockSize;
+    options[current++] = "-R";
+    options[current++] = "" + (m_runBufferSize / (1024 * 1024));
+    options[current++] = "-F";
+    options[current++] = "" + m_mergeFanIn;
+    options[current++] = "-D";
+    options[current++] = m_tempDir.getPath();
+    if (m_verbose) {
+      options[current++] = "-V";
+    }
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+
+    return options;
+  }
+
+
+  /**
+   * Dedupes an ARFF file with a saved linkage model.
+   *
+   * @param args the model file, the ARFF file, the pair file and options
+   */
+  public static void main(String[] args) {
+    if (args.length < 3) {
+      System.err.println("Usage:\n\tExternalDeduper <model file> <file.arff> <pair file> [options]\n");
+      return;
+    }
+    try {
+      ExternalDeduper deduper = new ExternalDeduper();
+      String[] options = new String[args.length - 3];
+      System.arraycopy(args, 3, options, 0, options.length);
+      deduper.setOptions(options);
+      deduper.setModel(LinkageModel.load(args[0]));
+      deduper.dedupe(new File(args[1]), new File(args[2]));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
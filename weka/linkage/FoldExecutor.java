@@ -0,0 +1,112 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    FoldExecutor.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import java.util.concurrent.*;
+
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.experiment.SplitEvaluator;
+
+/** Evaluates the folds of a cross-validation run on a bounded thread
+ * pool.  Every fold is evaluated by its own deep copy of the split
+ * evaluator and of its training and test data, so neither the deduper
+ * and metric configurations nor the attribute headers are shared
+ * between threads: cleaning records adds string values to the
+ * attributes, which is not thread-safe.  Result producers take the results back in fold
+ * order and pass them to their result listener from a single thread.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class FoldExecutor {
+
+  /** The result of a fold and the evaluator copy that produced it */
+  public static class FoldResult {
+    public int m_fold;
+    public Object[] m_result;
+    public SplitEvaluator m_evaluator;
+  }
+
+  protected ExecutorService m_executor;
+
+
+  /** Create an executor
+   * @param numThreads the maximum number of folds evaluated at once
+   */
+  public FoldExecutor(int numThreads) {
+    m_executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "fold");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+
+  /** Evaluate a fold with a copy of an evaluator and of the fold data
+   * @param evaluator the evaluator; it is copied before this returns
+   * @param fold the fold number
+   * @param train the training data of the fold; it is copied before this returns
+   * @param test the test data of the fold; it is copied before this returns
+   * @returns the pending result
+   */
+  public Future<FoldResult> submit(SplitEvaluator evaluator, final int fold,
+                                   Instances train, Instances test) throws Exception {
+    // copied together, so the training and test data of the fold share
+    // one header of their own
+    Object[] copies = (Object[]) new SerializedObject(new Object[] {evaluator, train, test}).getObject();
+    final SplitEvaluator copy = (SplitEvaluator) copies[0];
+    final Instances trainCopy = (Instances) copies[1];
+    final Instances testCopy = (Instances) copies[2];
+    return m_executor.submit(new Callable<FoldResult>() {
+        public FoldResult call() throws Exception {
+          FoldResult result = new FoldResult();
+          result.m_fold = fold;
+          result.m_evaluator = copy;
+          result.m_result = copy.getResult(trainCopy, testCopy);
+          return result;
+        }
+      });
+  }
+
+
+  /** Wait for a pending result, passing on the exception of a failed fold */
+  public static FoldResult get(Future<FoldResult> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+
+  /** Stop the threads; pending folds are abandoned */
+  public void shutdown() {
+    m_executor.shutdownNow();
+  }
+}
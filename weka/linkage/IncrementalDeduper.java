@@ -0,0 +1,595 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    IncrementalDeduper.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import weka.core.*;
+import weka.core.collections.*;
+import weka.linkage.metrics.*;
+import weka.linkage.blocking.*;
+
+import java.io.*;
+import java.util.*;
+
+/** A deduper that resolves records one at a time.  Every new record is
+ * compared only with the candidates returned by an incremental blocking
+ * index, and is linked to every candidate closer than a distance
+ * threshold whose cluster representative is also within the threshold.
+ * Links are maintained in a union-find structure, so the
+ * cost of adding a record does not depend on the number of records
+ * resolved before it.
+ *
+ * Cluster ids are stable: a new record starts a cluster with a fresh
+ * id, and when two clusters are merged the merged cluster keeps the id
+ * of the older one.  The representative of a cluster is its oldest
+ * record.  A serialized deduper keeps its clusters; the blocking index
+ * is rebuilt when it is read back, so new records can be resolved
+ * against the stored ones.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class IncrementalDeduper extends Deduper
+  implements OptionHandler, Serializable {
+
+  /** A metric measuring distance between instances */
+  protected InstanceMetric m_metric = new SumInstanceMetric();
+
+  /** Incremental blocking used to find candidates for every new record */
+  protected Blocking m_blocking = new NonLearnableBlocking();
+
+  /** the attribute indeces on which to do deduping */
+  protected int[] m_attrIdxs = null;
+
+  /** Records closer than this are linked; the scale depends on the metric */
+  protected double m_maxDistance = 0.5;
+
+  /** Number of blocking candidates every new record is compared with */
+  protected int m_numCandidates = 20;
+
+  /** Should a record also be close to the representative of a cluster
+   * to join it? */
+  protected boolean m_checkRepresentative = true;
+
+  /** Resolved records; their position is their index in the arrays below */
+  protected ArrayList<Instance> m_instances = null;
+  protected HashMap<Instance,Integer> m_instanceIdxs = null;
+
+  /** Union-find forest: parent and size of the tree of every record */
+  protected int[] m_parent = null;
+  protected int[] m_size = null;
+
+  /** Members of a cluster form a circular list through m_next */
+  protected int[] m_next = null;
+
+  /** Cluster id and representative of every root */
+  protected int[] m_clusterIds = null;
+  protected int[] m_representatives = null;
+
+  /** Maps ids of current clusters to their roots */
+  protected IntIntHashMap m_clusterRoots = null;
+
+  protected int m_numInstances = 0;
+  protected int m_nextClusterId = 0;
+
+  /** Statistics */
+  protected int m_numDistanceComputations = 0;
+  protected int m_numMerges = 0;
+  protected int m_numTruePairs = 0;
+  protected int m_numTotalPairsTrain = 0;
+  protected int m_numTotalPairsTest = 0;
+  protected int m_numPotentialDupePairsTrain = 0;
+  protected int m_numActualDupePairsTrain = 0;
+  protected int m_numPotentialNonDupePairsTrain = 0;
+  protected int m_numActualNonDupePairsTrain = 0;
+  protected double m_trainTime = 0;
+  protected double m_testTimeStart = 0;
+
+
+  public IncrementalDeduper() {
+    initClusters();
+  }
+
+
+  /** Given training data, learn the blocking and train the metric
+   * @param trainData a set of training data
+   * @param testData unlabeled data that may be used by the metric
+   */
+  public void buildDeduper(Instances trainData, Instances testData) throws Exception {
+    m_numTotalPairsTrain = trainData.numInstances() * (trainData.numInstances() - 1) / 2;
+    m_numPotentialDupePairsTrain = numTruePairs(trainData);
+    m_numPotentialNonDupePairsTrain = m_numTotalPairsTrain - m_numPotentialDupePairsTrain;
+
+    if (m_attrIdxs == null) {
+      m_attrIdxs = new int[trainData.numAttributes() - 1];
+      int classIdx = trainData.classIndex();
+      int counter = 0;
+      for (int i = 0; i < m_attrIdxs.length + 1; i++) {
+	if (i != classIdx) {
+	  m_attrIdxs[counter++] = i;
+	}
+      }
+    }
+
+    long trainTimeStart = System.currentTimeMillis();
+    m_blocking.learnBlocking(trainData);
+    m_metric.buildInstanceMetric(m_attrIdxs);
+    m_metric.trainInstanceMetric(trainData, testData);
+    m_numActualDupePairsTrain = m_metric.getNumActualPosPairs();
+    m_numActualNonDupePairsTrain = m_metric.getNumActualNegPairs();
+    m_trainTime = (System.currentTimeMillis() - trainTimeStart)/1000.0;
+  }
+
+
+  /** Use a previously trained model; its blocking must support
+   * incremental indexing */
+  public void setModel(LinkageModel model) {
+    m_attrIdxs = model.getAttrIdxs();
+    m_metric = model.getMetric();
+    if (model.getBlocking() != null) {
+      m_blocking = model.getBlocking();
+    }
+  }
+
+
+  /** Resolve all instances from scratch by adding them one by one, and
+   * collect pairwise statistics of the resulting clusters
+   * @param testData the instances to resolve
+   * @param numObjects ignored
+   */
+  public void findDuplicates(Instances testData, int numObjects) throws Exception {
+    m_statistics = new ArrayList();
+    m_testTimeStart = System.currentTimeMillis();
+    m_numTruePairs = numTruePairs(testData);
+    m_numTotalPairsTest = testData.numInstances() * (testData.numInstances() - 1) / 2;
+
+    reset();
+    for (int i = 0; i < testData.numInstances(); i++) {
+      addInstance(testData.instance(i));
+    }
+    System.out.println(getTimestamp() + ": resolved " + m_numInstances + " records into "
+                       + m_clusterRoots.size() + " clusters; " + m_numDistanceComputations
+                       + " distance computations, " + m_numMerges + " merges");
+    accumulateStatistics();
+  }
+
+
+  /** Forget all resolved records, removing them from the blocking index */
+  public void reset() throws Exception {
+    for (Instance instance : m_instances) {
+      m_blocking.remove(instance);
+    }
+    initClusters();
+  }
+
+
+  /** Start with no clusters */
+  protected void initClusters() {
+    m_instances = new ArrayList<Instance>();
+    m_instanceIdxs = new HashMap<Instance,Integer>();
+    m_parent = new int[16];
+    m_size = new int[16];
+    m_next = new int[16];
+    m_clusterIds = new int[16];
+    m_representatives = new int[16];
+    m_clusterRoots = new IntIntHashMap();
+    m_numInstances = 0;
+    m_nextClusterId = 0;
+    m_numDistanceComputations = 0;
+    m_numMerges = 0;
+  }
+
+
+  /** Resolve a new record: link it to all blocking candidates that are
+   * close enough, merging their clusters, and index it
+   * @param instance the new record
+   * @returns the id of the cluster the record ended up in
+   */
+  public int addInstance(Instance instance) throws Exception {
+    Integer existingIdx = m_instanceIdxs.get(instance);
+    if (existingIdx != null) {
+      return m_clusterIds[find(existingIdx)];
+    }
+
+    // a new record starts its own cluster
+    int idx = m_numInstances++;
+    if (idx == m_parent.length) {
+      int newLength = 2 * m_parent.length;
+      m_parent = Arrays.copyOf(m_parent, newLength);
+      m_size = Arrays.copyOf(m_size, newLength);
+      m_next = Arrays.copyOf(m_next, newLength);
+      m_clusterIds = Arrays.copyOf(m_clusterIds, newLength);
+      m_representatives = Arrays.copyOf(m_representatives, newLength);
+    }
+    m_parent[idx] = idx;
+    m_size[idx] = 1;
+    m_next[idx] = idx;
+    m_clusterIds[idx] = m_nextClusterId++;
+    m_representatives[idx] = idx;
+    m_clusterRoots.put(m_clusterIds[idx], idx);
+    m_instances.add(instance);
+    m_instanceIdxs.put(instance, idx);
+
+    // the blocking may normalize the record, so index it before comparing
+    m_blocking.add(instance);
+    InstancePair[] candidates = m_blocking.candidates(instance, m_numCandidates);
+    for (InstancePair pair : candidates) {
+      Integer candidateIdx = m_instanceIdxs.get(pair.instance2);
+      if (candidateIdx == null || find(candidateIdx) == find(idx)) {
+        continue;
+      }
+      m_numDistanceComputations++;
+      if (m_metric.distance(instance, pair.instance2) <= m_maxDistance
+          && closeToRepresentative(instance, candidateIdx)) {
+        union(idx, candidateIdx);
+      }
+    }
+    return m_clusterIds[find(idx)];
+  }
+
+
+  /** Is a record close enough to the representative of a candidate's
+   * cluster?  Requiring this limits chaining of unrelated records
+   * through a single close pair. */
+  protected boolean closeToRepresentative(Instance instance, int candidateIdx) throws Exception {
+    if (!m_checkRepresentative) {
+      return true;
+    }
+    int representative = m_representatives[find(candidateIdx)];
+    if (representative == candidateIdx) {
+      return true;
+    }
+    m_numDistanceComputations++;
+    return m_metric.distance(instance, m_instances.get(representative)) <= m_maxDistance;
+  }
+
+
+  /** Rebuild the blocking index, which is not serialized */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    try {
+      for (Instance instance : m_instances) {
+        m_blocking.add(instance);
+      }
+    } catch (Exception e) {
+      throw new IOException("Could not rebuild the blocking index: " + e.getMessage());
+    }
+  }
+
+
+  /** Find the root of a record's tree, halving the path on the way */
+  protected int find(int idx) {
+    while (m_parent[idx] != idx) {
+      m_parent[idx] = m_parent[m_parent[idx]];
+      idx = m_parent[idx];
+    }
+    return idx;
+  }
+
+
+  /** Merge the clusters of two records; the merged cluster keeps the
+   * older id and representative */
+  protected void union(int idx1, int idx2) {
+    int root1 = find(idx1);
+    int root2 = find(idx2);
+    if (root1 == root2) {
+      return;
+    }
+    int clusterId = Math.min(m_clusterIds[root1], m_clusterIds[root2]);
+    int representative = (m_clusterIds[root1] < m_clusterIds[root2]
+                          ? m_representatives[root1] : m_representatives[root2]);
+    m_clusterRoots.remove(m_clusterIds[root1]);
+    m_clusterRoots.remove(m_clusterIds[root2]);
+
+    // union by size
+    if (m_size[root1] < m_size[root2]) {
+      int tmp = root1; root1 = root2; root2 = tmp;
+    }
+    m_parent[root2] = root1;
+    m_size[root1] += m_size[root2];
+
+    // splice the member lists
+    int next1 = m_next[root1];
+    m_next[root1] = m_next[root2];
+    m_next[root2] = next1;
+
+    m_clusterIds[root1] = clusterId;
+    m_representatives[root1] = representative;
+    m_clusterRoots.put(clusterId, root1);
+    m_numMerges++;
+  }
+
+
+  /** Get the id of the cluster a record is in; -1 if it is unknown */
+  public int getClusterId(Instance instance) {
+    Integer idx = m_instanceIdxs.get(instance);
+    return (idx == null ? -1 : m_clusterIds[find(idx)]);
+  }
+
+
+  /** Get the members of a cluster; null if there is no such cluster */
+  public Cluster getCluster(int clusterId) {
+    int root = m_clusterRoots.get(clusterId, -1);
+    if (root == -1) {
+      return null;
+    }
+    Cluster cluster = new Cluster(clusterId);
+    int idx = root;
+    do {
+      cluster.add(m_instances.get(idx));
+      idx = m_next[idx];
+    } while (idx != root);
+    return cluster;
+  }
+
+
+  /** Get the representative (oldest record) of a cluster; null if
+   * there is no such cluster */
+  public Instance getRepresentative(int clusterId) {
+    int root = m_clusterRoots.get(clusterId, -1);
+    return (root == -1 ? null : m_instances.get(m_representatives[root]));
+  }
+
+
+  /** Get the ids of all current clusters */
+  public int[] getClusterIds() {
+    int[] clusterIds = m_clusterRoots.keys();
+    Arrays.sort(clusterIds);
+    return clusterIds;
+  }
+
+
+  /** Get the number of current clusters */
+  public int getNumClusters() { return m_clusterRoots.size(); }
+
+  /** Get the number of resolved records */
+  public int getNumInstances() { return m_numInstances; }
+
+
+  /** Add pairwise precision and recall of the current clusters to statistics */
+  protected void accumulateStatistics() {
+    // count same-class pairs within every cluster
+    int numPredictedPairs = 0;
+    int numGoodPairs = 0;
+    for (int root : m_clusterRoots.values()) {
+      DoubleIntHashMap classCounts = new DoubleIntHashMap();
+      int idx = root;
+      do {
+        classCounts.increment(m_instances.get(idx).classValue(), 1);
+        idx = m_next[idx];
+      } while (idx != root);
+      for (int count : classCounts.values()) {
+        numGoodPairs += count * (count - 1) / 2;
+      }
+      numPredictedPairs += m_size[root] * (m_size[root] - 1) / 2;
+    }
+
+    double precision = (numPredictedPairs > 0 ? (numGoodPairs + 0.0) / numPredictedPairs : 0);
+    double recall = (m_numTruePairs > 0 ? (numGoodPairs + 0.0) / m_numTruePairs : 0);
+    double f1 = (precision + recall > 0 ? 2 * precision * recall / (precision + recall) : 0);
+    System.out.println("\tClustering stats:  P=" + (float)precision + "\tR=" + (float)recall
+                       + "\tFM=" + (float)f1);
+
+    Object[] currentStats = new Object[17];
+    int statIdx = 0;
+    currentStats[statIdx++] = new Double(m_numInstances);
+
+    // Accuracy statistics
+    currentStats[statIdx++] = new Double(recall);
+    currentStats[statIdx++] = new Double(precision);
+    currentStats[statIdx++] = new Double(f1);
+    currentStats[statIdx++] = new Double(0);
+
+    // Dupe density statistics
+    currentStats[statIdx++] = new Double(m_numTotalPairsTrain);
+    currentStats[statIdx++] = new Double(m_numPotentialDupePairsTrain);
+    currentStats[statIdx++] = new Double(m_numActualDupePairsTrain);
+    currentStats[statIdx++] = new Double(m_numPotentialNonDupePairsTrain);
+    currentStats[statIdx++] = new Double(m_numActualNonDupePairsTrain);
+    currentStats[statIdx++] = new Double((m_numActualNonDupePairsTrain > 0)
+                                         ? ((m_numActualDupePairsTrain+0.0)/
+                                            m_numActualNonDupePairsTrain)
+                                         : 0);
+    currentStats[statIdx++] = new Double((m_numTotalPairsTrain > 0)
+                                         ? (m_numPotentialDupePairsTrain+0.0)/m_numTotalPairsTrain
+                                         : 0);
+    currentStats[statIdx++] = new Double(m_numTotalPairsTest);
+    currentStats[statIdx++] = new Double(m_numTruePairs);
+    currentStats[statIdx++] = new Double((m_numTotalPairsTest > 0)
+                                         ? (m_numTruePairs + 0.0)/m_numTotalPairsTest
+                                         : 0);
+
+    // Timing statistics
+    currentStats[statIdx++] = new Double(m_trainTime);
+    currentStats[statIdx++] = new Double((System.currentTimeMillis() -
+                                          m_testTimeStart)/1000.0);
+    m_statistics.add(currentStats);
+  }
+
+
+  /** Given a set of instances, calculate the number of true pairs
+   * @param instances a set of objects, class has the true object ID
+   * @returns the number of true same-class pairs
+   */
+  protected int numTruePairs(Instances instances) {
+    DoubleIntHashMap classCounts = new DoubleIntHashMap();
+    for (int i = 0; i < instances.numInstances(); i++) {
+      classCounts.increment(instances.instance(i).classValue(), 1);
+    }
+
+    // calculate the number of pairs
+    int numTruePairs = 0;
+    for (int counts : classCounts.values()) {
+      numTruePairs += counts * (counts - 1) / 2;
+    }
+    return numTruePairs;
+  }
+
+
+  /** Set/get the InstanceMetric */
+  public void setMetric(InstanceMetric metric) { m_metric = metric;  }
+  public InstanceMetric getMetric() { return m_metric; }
+
+  /** Set/get the blocking method; it must support incremental indexing */
+  public void setBlockingMethod(Blocking blocking) {  m_blocking = blocking; }
+  public Blocking getBlockingMethod() { return m_blocking; }
+
+  /** Set/get the distance below which records are linked */
+  public void setMaxDistance(double d) { m_maxDistance = d; }
+  public double getMaxDistance() { return m_maxDistance; }
+
+  /** Set/get the number of candidates every new record is compared with */
+  public void setNumCandidates(int n) { m_numCandidates = n; }
+  public int getNumCandidates() { return m_numCandidates; }
+
+  /** Turn checking distance to cluster representatives on/off */
+  public void setCheckRepresentative(boolean b) { m_checkRepresentative = b; }
+  public boolean getCheckRepresentative() { return m_checkRepresentative; }
+
+
+  /**
+   * Returns an enumeration describing the available options
+   *
+   * @return an enumeration of all the available options
+   **/
+  public Enumeration listOptions() {
+    Vector newVector = new Vector(5);
+    newVector.addElement(new Option("\tMetric.\n"
+				    +"\t(default=SumInstanceMetric)", "M", 1,"-M metric_name metric_options"));
+    newVector.addElement(new Option("\tBlocking.\n"
+				    +"\t(default=NonLearnableBlocking)", "B", 1,"-B blocking_name blocking_options"));
+    newVector.addElement(new Option("\tMaximum distance of linked records.\n"
+				    +"\t(default=0.5)", "T", 1,"-T distance"));
+    newVector.addElement(new Option("\tNumber of candidates per record.\n"
+				    +"\t(default=20)", "K", 1,"-K num"));
+    newVector.addElement(new Option("\tDo not require closeness to cluster representatives.",
+				    "noRep", 0,"-noRep"));
+    return newVector.elements();
+  }
+
+
+  /**
+   * Parses a given list of options.
+   *
+   * Valid options are:<p>
+   *
+   * -M metric options <p>
+   * InstanceMetric used <p>
+   *
+   * -B blocking options <p>
+   * Blocking used <p>
+   *
+   * -T distance <p>
+   * Maximum distance of linked records <p>
+   *
+   * -K num <p>
+   * Number of candidates per record <p>
+   *
+   * -noRep <p>
+   * Do not require closeness to cluster representatives <p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   *
+   **/
+  public void setOptions(String[] options) throws Exception {
+    String metricString = Utils.getOption('M', options);
+    if (metricString.length() != 0) {
+      String[] metricSpec = Utils.splitOptions(metricString);
+      String metricName = metricSpec[0];
+      metricSpec[0] = "";
+      setMetric(InstanceMetric.forName(metricName, metricSpec));
+    }
+
+    String blockingString = Utils.getOption('B', options);
+    if (blockingString.length() != 0) {
+      String[] blockingSpec = Utils.splitOptions(blockingString);
+      String blockingName = blockingSpec[0];
+      blockingSpec[0] = "";
+      setBlockingMethod(Blocking.forName(blockingName, blockingSpec));
+    }
+
+    String distanceString = Utils.getOption('T', options);
+    if (distanceString.length() != 0) {
+      setMaxDistance(Double.parseDouble(distanceString));
+    }
+
+    String numString = Utils.getOption('K', options);
+    if (numString.length() != 0) {
+      setNumCandidates(Integer.parseInt(numString));
+    }
+
+    setCheckRepresentative(!Utils.getFlag("noRep", options));
+  }
+
+
+  /**
+   * Gets the current settings of the deduper
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String [] getOptions() {
+    String [] options = new String [250];
+    int current = 0;
+
+    options[current++] = "-T";
+    options[current++] = "" + m_maxDistance;
+    options[current++] = "-K";
+    options[current++] = "" + m_numCandidates;
+    if (!m_checkRepresentative) {
+      options[current++] = "-noRep";
+    }
+
+    options[current++] = "-B";
+    options[current++] = Utils.removeSubstring(m_blocking.getClass().getName(), "weka.linkage.blocking.");
+    if (m_blocking instanceof OptionHandler) {
+      String[] blockingOptions = ((OptionHandler)m_blocking).getOptions();
+      for (int i = 0; i < blockingOptions.length; i++) {
+        options[current++] = blockingOptions[i];
+      }
+    }
+
+    options[current++] = "-M";
+    String metricName = Utils.removeSubstring(m_metric.getClass().getName(),
+                                              "weka.linkage.metrics.");
+    options[current++] = Utils.removeSubstring(metricName,
+                                               "InstanceMetric");
+    if (m_metric instanceof OptionHandler) {
+      String[] metricOptions = ((OptionHandler)m_metric).getOptions();
+      for (int i = 0; i < metricOptions.length; i++) {
+	options[current++] = metricOptions[i];
+      }
+    }
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+
+    return options;
+  }
+
+
+  /** Gets a string containing current date and time.   */
+  protected static String getTimestamp() {
+    return BasicDeduper.getTimestamp();
+  }
+}
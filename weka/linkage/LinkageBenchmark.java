@@ -0,0 +1,526 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    LinkageBenchmark.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import weka.core.*;
+import weka.linkage.blocking.*;
+import weka.linkage.blocking.learn.*;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Runs blocking and deduplication end to end on datasets of increasing
+ * size, to show where the cost of each component stops scaling.
+ * Datasets of a given size are derived from a labeled base dataset:
+ * smaller ones are random samples, larger ones consist of copies of the
+ * base dataset in which every copy has its own entities and its own
+ * consistently altered vocabulary.<p>
+ *
+ * For every size and blocking method the blocking stage is measured on
+ * its own, followed by BasicDeduper and ClusteringDeduper using the same
+ * blocking method.  Every stage records wall time, peak heap, peak
+ * resident set size (Linux only), candidate pairs, reduction ratio and
+ * pair recall of all candidates for blocking, and the maximum F1 for
+ * dedupers that report it.  A stage that fails, e.g. by running out of
+ * memory, is recorded as failed and the sweep goes on.  Results are
+ * written as CSV, or as JSON if the output file name ends with ".json".
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class LinkageBenchmark {
+
+  /** Names of the blocking methods that can be measured */
+  public static final String[] BLOCKING_METHODS = {
+    "NonLearnableBlocking", "LearnableBlocking", "ManualBlocking", "TFIDFBlocker"
+  };
+
+  /** Names of the dedupers that can be measured */
+  public static final String[] DEDUPERS = { "BasicDeduper", "ClusteringDeduper" };
+
+  /** The result of a stage */
+  public static class StageResult {
+    public int m_size;
+    public String m_blocking;
+    public String m_stage;
+    public String m_status = "ok";
+    public double m_wallTime = Double.NaN;
+    public double m_peakHeapMB = Double.NaN;
+    public double m_peakRssMB = Double.NaN;
+    public double m_candidatePairs = Double.NaN;
+    public double m_reductionRatio = Double.NaN;
+    public double m_pairRecall = Double.NaN;
+    public double m_maxF1 = Double.NaN;
+  }
+
+  /** Column names of the results */
+  public static final String[] COLUMNS = {
+    "size", "blocking", "stage", "status", "wallTime", "peakHeapMB", "peakRssMB",
+    "candidatePairs", "reductionRatio", "pairRecall", "maxF1"
+  };
+
+  /** Ratio of requested candidate pairs to true pairs */
+  protected int m_blockingPairRatio = 10;
+
+  /** Largest size the dedupers are run on */
+  protected int m_maxDeduperSize = 100000;
+
+  /** Whether progress output of the measured components is shown */
+  protected boolean m_verbose = false;
+
+  protected Random m_random = new Random(1);
+
+
+  /** Derive a dataset of a given size from a labeled base dataset
+   * @param base the base dataset; the class identifies the entities
+   * @param size the number of records
+   * @returns a dataset with a numeric class of entity ids, where copy c
+   * of base entity e is entity c * (number of base entities) + e
+   */
+  public Instances scaleDataset(Instances base, int size) {
+    int numBase = base.numInstances();
+    int numCopies = (size + numBase - 1) / numBase;
+    Instances source = new Instances(base);
+    if (size < numBase) {
+      source.randomize(m_random);
+    }
+
+    int numBaseEntities = Deduper.numEntities(base);
+    FastVector attributes = new FastVector(base.numAttributes());
+    for (int j = 0; j < base.numAttributes(); j++) {
+      Attribute attribute = base.attribute(j);
+      if (j == base.classIndex()) {
+        attributes.addElement(new Attribute(attribute.name()));
+      } else if (attribute.isString()) {
+        attributes.addElement(new Attribute(attribute.name(), (FastVector) null));
+      } else {
+        attributes.addElement(attribute.copy());
+      }
+    }
+    Instances data = new Instances(base.relationName() + "-" + size, attributes, size);
+    data.setClassIndex(base.classIndex());
+
+    for (int c = 0; c < numCopies; c++) {
+      HashMap<String,String> vocabulary = new HashMap<String,String>();
+      for (int i = 0; i < numBase && c * numBase + i < size; i++) {
+        Instance instance = source.instance(i);
+        double[] values = new double[data.numAttributes()];
+        for (int j = 0; j < data.numAttributes(); j++) {
+          if (instance.isMissing(j)) {
+            values[j] = Instance.missingValue();
+          } else if (j == data.classIndex()) {
+            values[j] = (double) c * numBaseEntities + instance.value(j);
+          } else if (data.attribute(j).isString()) {
+            String value = (c == 0) ? instance.stringValue(j)
+              : alterString(instance.stringValue(j), c, vocabulary);
+            values[j] = data.attribute(j).addStringValue(value);
+          } else {
+            values[j] = instance.value(j);
+          }
+        }
+        data.add(new Instance(instance.weight(), values));
+      }
+    }
+    return data;
+  }
+
+
+  /** Replace one character in every word of a string, the same way for
+   * all occurrences of the word within a copy */
+  protected static String alterString(String string, int copy, HashMap<String,String> vocabulary) {
+    StringBuffer result = new StringBuffer(string.length());
+    StringTokenizer tokenizer = new StringTokenizer(string, " \t\n\r\f.,;:-", true);
+    while (tokenizer.hasMoreTokens()) {
+      String token = tokenizer.nextToken();
+      if (token.length() > 1) {
+        String altered = vocabulary.get(token);
+        if (altered == null) {
+          Random random = new Random(token.hashCode() * 31L + copy);
+          char[] chars = token.toCharArray();
+          chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+          altered = new String(chars);
+          vocabulary.put(token, altered);
+        }
+        token = altered;
+      }
+      result.append(token);
+    }
+    return result.toString();
+  }
+
+
+  /** Create a blocking method by name */
+  public static Blocking createBlocking(String name) throws Exception {
+    if (name.equals("NonLearnableBlocking")) {
+      return new NonLearnableBlocking();
+    } else if (name.equals("LearnableBlocking")) {
+      LearnableBlocking blocking = new LearnableBlocking();
+      blocking.setBlockers(new Blocker[] {new CommonWordBlocker(), new FirstNCharBlocker()});
+      return blocking;
+    } else if (name.equals("ManualBlocking")) {
+      ManualBlocking blocking = new ManualBlocking();
+      blocking.setBlockers(new Blocker[] {new CommonWordBlocker()});
+      blocking.setAttributeIndeces("0");
+      return blocking;
+    } else if (name.equals("TFIDFBlocker")) {
+      ManualBlocking blocking = new ManualBlocking();
+      blocking.setBlockers(new Blocker[] {new TFIDFBlocker()});
+      blocking.setAttributeIndeces("0");
+      return blocking;
+    }
+    throw new Exception("Unknown blocking method " + name);
+  }
+
+
+  /** Copy a dataset including its instances, since blocking and
+   * deduping modify the instances they are given */
+  protected static Instances copyDataset(Instances data) {
+    Instances copy = new Instances(data, data.numInstances());
+    for (int i = 0; i < data.numInstances(); i++) {
+      copy.add(data.instance(i));
+    }
+    return copy;
+  }
+
+
+  /** Count the pairs of records of the same entity */
+  protected static double numTruePairs(Instances data) {
+    int[] counts = new int[Deduper.numEntities(data)];
+    for (int i = 0; i < data.numInstances(); i++) {
+      counts[(int) data.instance(i).classValue()]++;
+    }
+    double numPairs = 0;
+    for (int count : counts) {
+      numPairs += count * (count - 1.0) / 2;
+    }
+    return numPairs;
+  }
+
+
+  /** Measure blocking on a dataset */
+  public StageResult measureBlocking(Instances data, String blockingName) {
+    StageResult result = newResult(data, blockingName, "blocking");
+    try {
+      Instances copy = copyDataset(data);
+      double numTotalPairs = copy.numInstances() * (copy.numInstances() - 1.0) / 2;
+      double numTruePairs = numTruePairs(copy);
+
+      startStage();
+      long start = System.currentTimeMillis();
+      Blocking blocking = createBlocking(blockingName);
+      blocking.learnBlocking(copy);
+      blocking.buildIndex(copy);
+      // all candidates, not just the share a deduper would request
+      PairBuffer pairs = new PairBuffer();
+      blocking.getMostSimilarPairs(Integer.MAX_VALUE, pairs);
+      result.m_wallTime = (System.currentTimeMillis() - start) / 1000.0;
+      endStage(result);
+
+      int numGoodPairs = pairs.numPositive();
+      result.m_candidatePairs = pairs.size();
+      result.m_reductionRatio = 1 - pairs.size() / numTotalPairs;
+      result.m_pairRecall = (numTruePairs > 0) ? numGoodPairs / numTruePairs : Double.NaN;
+    } catch (Throwable t) {
+      fail(result, t);
+    }
+    return result;
+  }
+
+
+  /** Measure a deduper using a blocking method on a dataset */
+  public StageResult measureDeduper(Instances data, String blockingName, String deduperName) {
+    StageResult result = newResult(data, blockingName, deduperName);
+    try {
+      Instances train = copyDataset(data);
+      Instances test = copyDataset(data);
+      Deduper deduper;
+      if (deduperName.equals("BasicDeduper")) {
+        BasicDeduper basic = new BasicDeduper();
+        basic.setBlocking(true);
+        basic.setBlockingMethod(createBlocking(blockingName));
+        basic.setBlockingPairRatio(m_blockingPairRatio);
+        deduper = basic;
+      } else if (deduperName.equals("ClusteringDeduper")) {
+        ClusteringDeduper clustering = new ClusteringDeduper();
+        clustering.setUseBlocking(true);
+        clustering.setBlocking(createBlocking(blockingName));
+        clustering.setBlockingPairRatio(m_blockingPairRatio);
+        deduper = clustering;
+      } else {
+        throw new Exception("Unknown deduper " + deduperName);
+      }
+
+      startStage();
+      long start = System.currentTimeMillis();
+      deduper.buildDeduper(train, test);
+      deduper.findDuplicates(test, Deduper.numEntities(test));
+      result.m_wallTime = (System.currentTimeMillis() - start) / 1000.0;
+      endStage(result);
+
+      ArrayList statistics = deduper.getStatistics();
+      if (statistics != null && statistics.size() > 0) {
+        result.m_maxF1 = ((Double) ((Object[]) statistics.get(0))[3]).doubleValue();
+      }
+    } catch (Throwable t) {
+      fail(result, t);
+    }
+    return result;
+  }
+
+
+  /** Run all stages on datasets of the given sizes */
+  public ArrayList<StageResult> run(Instances base, int[] sizes, String[] blockingNames,
+                                    String[] deduperNames) {
+    ArrayList<StageResult> results = new ArrayList<StageResult>();
+    PrintStream out = System.out;
+    for (int size : sizes) {
+      Instances data = scaleDataset(base, size);
+      for (String blockingName : blockingNames) {
+        ArrayList<StageResult> stages = new ArrayList<StageResult>();
+        if (!m_verbose) {
+          System.setOut(new PrintStream(new OutputStream() {
+              public void write(int b) {}
+              public void write(byte[] b, int off, int len) {}
+            }));
+        }
+        try {
+          stages.add(measureBlocking(data, blockingName));
+          if (size <= m_maxDeduperSize) {
+            for (String deduperName : deduperNames) {
+              stages.add(measureDeduper(data, blockingName, deduperName));
+            }
+          }
+        } finally {
+          System.setOut(out);
+        }
+        for (StageResult stage : stages) {
+          System.err.println(toCSV(stage));
+        }
+        results.addAll(stages);
+      }
+    }
+    return results;
+  }
+
+
+  protected StageResult newResult(Instances data, String blockingName, String stage) {
+    StageResult result = new StageResult();
+    result.m_size = data.numInstances();
+    result.m_blocking = blockingName;
+    result.m_stage = stage;
+    return result;
+  }
+
+
+  protected void fail(StageResult result, Throwable t) {
+    result.m_status = "failed: " + t.toString().replace(',', ';').replace('"', '\'');
+    result.m_wallTime = Double.NaN;
+    System.gc();
+  }
+
+
+  /** Reset the peak heap and resident set size before a stage */
+  protected void startStage() {
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+    try {
+      // resets VmHWM on Linux
+      FileWriter writer = new FileWriter("/proc/self/clear_refs");
+      writer.write("5");
+      writer.close();
+    } catch (IOException e) {
+    }
+  }
+
+
+  /** Record the peak heap and resident set size of a stage */
+  protected void endStage(StageResult result) {
+    double peakHeap = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+    result.m_peakHeapMB = peakHeap / (1 << 20);
+    try {
+      BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("VmHWM:")) {
+          StringTokenizer tokenizer = new StringTokenizer(line.substring(6));
+          result.m_peakRssMB = Double.parseDouble(tokenizer.nextToken()) / 1024;
+        }
+      }
+      reader.close();
+    } catch (IOException e) {
+    }
+  }
+
+
+  protected static Object[] values(StageResult result) {
+    return new Object[] {
+      new Integer(result.m_size), result.m_blocking, result.m_stage, result.m_status,
+      new Double(result.m_wallTime), new Double(result.m_peakHeapMB), new Double(result.m_peakRssMB),
+      new Double(result.m_candidatePairs), new Double(result.m_reductionRatio),
+      new Double(result.m_pairRecall), new Double(result.m_maxF1)
+    };
+  }
+
+
+  /** Format a result as a CSV line */
+  public static String toCSV(StageResult result) {
+    StringBuffer buffer = new StringBuffer();
+    Object[] values = values(result);
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        buffer.append(',');
+      }
+      if (values[i] instanceof Double && ((Double) values[i]).isNaN()) {
+        continue;
+      }
+      buffer.append(values[i]);
+    }
+    return buffer.toString();
+  }
+
+
+  /** Format a result as a JSON object */
+  public static String toJSON(StageResult result) {
+    StringBuffer buffer = new StringBuffer("{");
+    Object[] values = values(result);
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        buffer.append(", ");
+      }
+      buffer.append('"').append(COLUMNS[i]).append("\": ");
+      if (values[i] instanceof String) {
+        buffer.append('"').append(values[i]).append('"');
+      } else if (values[i] instanceof Double && ((Double) values[i]).isNaN()) {
+        buffer.append("null");
+      } else {
+        buffer.append(values[i]);
+      }
+    }
+    return buffer.append('}').toString();
+  }
+
+
+  /** Write results as CSV, or as JSON if the file name ends with ".json" */
+  public static void writeResults(ArrayList<StageResult> results, String fileName) throws IOException {
+    PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+    if (fileName.endsWith(".json")) {
+      writer.println("[");
+      for (int i = 0; i < results.size(); i++) {
+        writer.println("  " + toJSON(results.get(i)) + ((i < results.size() - 1) ? "," : ""));
+      }
+      writer.println("]");
+    } else {
+      for (int i = 0; i < COLUMNS.length; i++) {
+        writer.print((i > 0 ? "," : "") + COLUMNS[i]);
+      }
+      writer.println();
+      for (StageResult result : results) {
+        writer.println(toCSV(result));
+      }
+    }
+    writer.close();
+  }
+
+
+  /** Set the ratio of requested candidate pairs to true pairs */
+  public void setBlockingPairRatio(int ratio) { m_blockingPairRatio = ratio; }
+  public int getBlockingPairRatio() { return m_blockingPairRatio; }
+
+  /** Set the largest size the dedupers are run on */
+  public void setMaxDeduperSize(int maxDeduperSize) { m_maxDeduperSize = maxDeduperSize; }
+  public int getMaxDeduperSize() { return m_maxDeduperSize; }
+
+  /** Show the progress output of the measured components */
+  public void setVerbose(boolean verbose) { m_verbose = verbose; }
+  public boolean getVerbose() { return m_verbose; }
+
+
+  protected static String[] parseList(String list, String[] defaults) {
+    if (list.length() == 0) {
+      return defaults;
+    }
+    StringTokenizer tokenizer = new StringTokenizer(list, ",");
+    String[] result = new String[tokenizer.countTokens()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = tokenizer.nextToken().trim();
+    }
+    return result;
+  }
+
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args -D base dataset, -N sizes, -B blocking methods, -E dedupers,
+   * -R pair ratio, -X largest deduper size, -o output file, -v
+   */
+  public static void main(String[] args) {
+    try {
+      LinkageBenchmark benchmark = new LinkageBenchmark();
+      String dataName = Utils.getOption('D', args);
+      if (dataName.length() == 0) {
+        throw new Exception("Required: -D <arff file>");
+      }
+      String[] sizeList = parseList(Utils.getOption('N', args),
+                                    new String[] {"1000", "10000", "100000", "1000000"});
+      String[] blockingNames = parseList(Utils.getOption('B', args), BLOCKING_METHODS);
+      String[] deduperNames = parseList(Utils.getOption('E', args), DEDUPERS);
+      String option = Utils.getOption('R', args);
+      if (option.length() != 0) benchmark.setBlockingPairRatio(Integer.parseInt(option));
+      option = Utils.getOption('X', args);
+      if (option.length() != 0) benchmark.setMaxDeduperSize(Integer.parseInt(option));
+      String outputFile = Utils.getOption('o', args);
+      if (outputFile.length() == 0) {
+        outputFile = "linkage-benchmark.csv";
+      }
+      benchmark.setVerbose(Utils.getFlag('v', args));
+      Utils.checkForRemainingOptions(args);
+
+      int[] sizes = new int[sizeList.length];
+      for (int i = 0; i < sizes.length; i++) {
+        sizes[i] = Integer.parseInt(sizeList[i]);
+      }
+      Instances base = new Instances(new BufferedReader(new FileReader(dataName)));
+      base.setClassIndex(base.numAttributes() - 1);
+
+      ArrayList<StageResult> results = benchmark.run(base, sizes, blockingNames, deduperNames);
+      writeResults(results, outputFile);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.err.println("Usage:\n\tLinkageBenchmark -D <arff file> [-N <sizes>] [-B <blocking methods>]"
+                         + " [-E <dedupers>] [-R <pair ratio>] [-X <largest deduper size>]"
+                         + " [-o <csv or json file>] [-v]\n");
+    }
+  }
+}
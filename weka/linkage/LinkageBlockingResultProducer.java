@@ -24,6 +24,7 @@
 package weka.linkage;
 
 import java.util.*;
+import java.util.concurrent.Future;
 import java.io.*;
 
 import weka.core.*;
@@ -68,6 +69,9 @@ public class  LinkageBlockingResultProducer
   /** The number of folds in the cross-validation */
   protected int m_numFolds = 2;
 
+  /** The number of folds evaluated in parallel; 1 evaluates them in turn */
+  protected int m_numThreads = 1;
+
   /** Save raw output of split evaluators --- for debugging purposes */
   protected boolean m_debugOutput = false;
 
@@ -345,13 +349,15 @@ public class  LinkageBlockingResultProducer
     if (m_resultListener == null) {
       throw new Exception("No ResultListener set");
     }
-    if (!m_instances.classAttribute().isNominal()) {
-      throw new Exception("Class attribute must be nominal - it is the true Object ID");
+    if (!m_instances.classAttribute().isNominal() && !m_instances.classAttribute().isNumeric()) {
+      throw new Exception("Class attribute must be nominal or numeric - it is the true Object ID");
     }
     // Randomize on a copy of the original dataset
     Instances runInstances = new Instances(m_instances);
     runInstances.randomize(new Random(run));
     ArrayList foldList = createFoldList(runInstances, m_numFolds);
+    FoldExecutor foldExecutor = (m_numThreads > 1 ? new FoldExecutor(m_numThreads) : null);
+    ArrayList<Future<FoldExecutor.FoldResult>> foldResults = new ArrayList<Future<FoldExecutor.FoldResult>>();
 
     for (int fold = 0; fold < m_numFolds; fold++) { 
       Instances train = getTrainingFold(foldList, fold);
@@ -372,48 +378,78 @@ public class  LinkageBlockingResultProducer
       testKey[3] = "" + m_plotPoints[0];
       System.arraycopy(seKey, 0, testKey, numExtraKeys, seKey.length);
       if (m_resultListener.isResultRequired(this, testKey)) {
-        Object[] prResults = m_splitEvaluator.getResult(train, test);
+        if (foldExecutor != null) {
+          foldResults.add(foldExecutor.submit(m_splitEvaluator, fold, train, test));
+        } else {
+          Object[] prResults = m_splitEvaluator.getResult(train, test);
+          acceptFoldResults(run, fold, prResults, m_splitEvaluator, runInstances);
+        }
+      }
+    }
 
-      
-        for (int i = 0; i < m_plotPoints.length; i++) {
-          // Add in some fields to the key like run and fold number, dataset name
-          Object [] key = new Object [seKey.length + numExtraKeys];
-          key[0] = Utils.backQuoteChars(m_instances.relationName());
-          key[1] = "" + run;
-          key[2] = "" + (fold + 1);
-          key[3] = "" + m_plotPoints[i];
-          System.arraycopy(seKey, 0, key, numExtraKeys, seKey.length);
-          if (m_resultListener.isResultRequired(this, key)) {
-            try {
-              Object [] seResults = processResults(prResults, m_plotPoints[i]);
-              System.out.println("Adding result:  RLevel=" + m_plotPoints[i] +
-                                 "\tR=" + seResults[1] + "\tP=" + seResults[2] +
-                                 "\tFM=" + seResults[3]); 
-              Object [] results = new Object [seResults.length + 1];
-              results[0] = getTimestamp();
-              System.arraycopy(seResults, 0, results, 1,
-                               seResults.length);
-              if (m_debugOutput) {
-                String resultName = (""+run+"."+(fold+1)+"."+ "." 
-                                     + Utils.backQuoteChars(runInstances.relationName())
-                                     +"."
-                                     +m_splitEvaluator.toString()).replace(' ','_');
-                resultName = Utils.removeSubstring(resultName, 
-                                                   "weka.clusterers.");
-                resultName = Utils.removeSubstring(resultName, 
-                                                   "weka.filters.");
-                resultName = Utils.removeSubstring(resultName, 
-                                                   "weka.attributeSelection.");
-                resultName = Utils.removeSubstring(resultName, 
-                                                   "weka.linkage.");
-                m_zipDest.zipit(m_splitEvaluator.getRawResultOutput(), resultName);
-              }
-              m_resultListener.acceptResult(this, key, results);
-            } catch (Exception ex) {
-              // Save the train and test datasets for debugging purposes?
-              throw ex;
-            }
+    // deliver the results of parallel folds in fold order
+    try {
+      for (Future<FoldExecutor.FoldResult> future : foldResults) {
+        FoldExecutor.FoldResult foldResult = FoldExecutor.get(future);
+        acceptFoldResults(run, foldResult.m_fold, foldResult.m_result,
+                          foldResult.m_evaluator, runInstances);
+      }
+    } finally {
+      if (foldExecutor != null) {
+        foldExecutor.shutdown();
+      }
+    }
+  }
+
+
+  /** Send the results of a fold to the result listener
+   * @param run the run number
+   * @param fold the fold number
+   * @param prResults the results of the split evaluator
+   * @param evaluator the split evaluator that produced the results
+   * @param runInstances the randomized data of the run
+   */
+  protected void acceptFoldResults(int run, int fold, Object[] prResults,
+                                   SplitEvaluator evaluator, Instances runInstances) throws Exception {
+    int numExtraKeys = 4;
+    Object [] seKey = m_splitEvaluator.getKey();
+    for (int i = 0; i < m_plotPoints.length; i++) {
+      // Add in some fields to the key like run and fold number, dataset name
+      Object [] key = new Object [seKey.length + numExtraKeys];
+      key[0] = Utils.backQuoteChars(m_instances.relationName());
+      key[1] = "" + run;
+      key[2] = "" + (fold + 1);
+      key[3] = "" + m_plotPoints[i];
+      System.arraycopy(seKey, 0, key, numExtraKeys, seKey.length);
+      if (m_resultListener.isResultRequired(this, key)) {
+        try {
+          Object [] seResults = processResults(prResults, m_plotPoints[i]);
+          System.out.println("Adding result:  RLevel=" + m_plotPoints[i] +
+                             "\tR=" + seResults[1] + "\tP=" + seResults[2] +
+                             "\tFM=" + seResults[3]); 
+          Object [] results = new Object [seResults.length + 1];
+          results[0] = getTimestamp();
+          System.arraycopy(seResults, 0, results, 1,
+                           seResults.length);
+          if (m_debugOutput) {
+            String resultName = (""+run+"."+(fold+1)+"."+ "." 
+                                 + Utils.backQuoteChars(runInstances.relationName())
+                                 +"."
+                                 +evaluator.toString()).replace(' ','_');
+            resultName = Utils.removeSubstring(resultName, 
+                                               "weka.clusterers.");
+            resultName = Utils.removeSubstring(resultName, 
+                                               "weka.filters.");
+            resultName = Utils.removeSubstring(resultName, 
+                                               "weka.attributeSelection.");
+            resultName = Utils.removeSubstring(resultName, 
+                                               "weka.linkage.");
+            m_zipDest.zipit(evaluator.getRawResultOutput(), resultName);
           }
+          m_resultListener.acceptResult(this, key, results);
+        } catch (Exception ex) {
+          // Save the train and test datasets for debugging purposes?
+          throw ex;
         }
       }
     }
@@ -788,6 +824,33 @@ public class  LinkageBlockingResultProducer
     m_numFolds = newNumFolds;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "Number of folds evaluated in parallel, each by a copy of the split evaluator.";
+  }
+
+  /**
+   * Get the number of folds evaluated in parallel.
+   *
+   * @return the number of threads.
+   */
+  public int getNumThreads() {
+    return m_numThreads;
+  }
+
+  /**
+   * Set the number of folds evaluated in parallel.
+   *
+   * @param numThreads the number of threads; 1 evaluates folds in turn.
+   */
+  public void setNumThreads(int numThreads) {
+    m_numThreads = numThreads;
+  }
+
 
   /**
    * Get if Deduper has to be run
@@ -940,7 +1003,7 @@ public class  LinkageBlockingResultProducer
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(7);
+    Vector newVector = new Vector(8);
 
     newVector.addElement(new Option(
 	     "\tThe number of folds to use for the cross-validation.\n"
@@ -948,6 +1011,12 @@ public class  LinkageBlockingResultProducer
 	     "X", 1, 
 	     "-X <number of folds>"));
 
+    newVector.addElement(new Option(
+	     "\tThe number of folds evaluated in parallel.\n"
+	      +"\t(default 1)", 
+	     "T", 1, 
+	     "-T <number of threads>"));
+
     newVector.addElement(new Option(
 	     "Save raw split evaluator output.",
 	     "D",0,"-D"));
@@ -987,6 +1056,9 @@ public class  LinkageBlockingResultProducer
    * -X num_folds <br>
    * The number of folds to use for the cross-validation. <p>
    *
+   * -T num_threads <br>
+   * The number of folds evaluated in parallel. <p>
+   *
    * -D <br>
    * Specify that raw split evaluator output is to be saved. <p>
    *
@@ -1020,6 +1092,13 @@ public class  LinkageBlockingResultProducer
       setNumFolds(10);
     }
 
+    String numThreads = Utils.getOption('T', options);
+    if (numThreads.length() != 0) {
+      setNumThreads(Integer.parseInt(numThreads));
+    } else {
+      setNumThreads(1);
+    }
+
     String seName = Utils.getOption('W', options);
     if (seName.length() == 0) {
       throw new Exception("A SplitEvaluator must be specified with"
@@ -1056,7 +1135,7 @@ public class  LinkageBlockingResultProducer
       seOptions = ((OptionHandler)m_splitEvaluator).getOptions();
     }
     
-    String [] options = new String [seOptions.length + 11];
+    String [] options = new String [seOptions.length + 13];
     int current = 0;
 
     switch (m_foldCreationMode) {
@@ -1071,6 +1150,9 @@ public class  LinkageBlockingResultProducer
     options[current++] = "-X";
     options[current++] = "" + getNumFolds();
 
+    options[current++] = "-T";
+    options[current++] = "" + getNumThreads();
+
     if (getRawOutput()) {
       options[current++] = "-D";
     }
@@ -24,6 +24,7 @@
 package weka.linkage;
 
 import java.util.*;
+import java.util.concurrent.Future;
 import java.io.*;
 
 import weka.core.*;
@@ -54,6 +55,9 @@ public class  LinkageBlockingResultProducerCV
   /** The number of folds in the cross-validation */
   protected int m_NumFolds = 2;
 
+  /** The number of folds evaluated in parallel; 1 evaluates them in turn */
+  protected int m_numThreads = 1;
+
   int m_numExtraKeys = 3; 
 
   /** Save raw output of split evaluators --- for debugging purposes */
@@ -283,14 +287,11 @@ public class  LinkageBlockingResultProducerCV
     runInstances.randomize(new Random(run));
     ArrayList foldList = createFoldList(runInstances, m_NumFolds);
     
+    FoldExecutor foldExecutor = (m_numThreads > 1 ? new FoldExecutor(m_numThreads) : null);
+    ArrayList<Future<FoldExecutor.FoldResult>> foldResults = new ArrayList<Future<FoldExecutor.FoldResult>>();
+    
     for (int fold = 0; fold < m_NumFolds; fold++) {
-      // Add in some fields to the key like run and fold number, dataset name
-      Object [] seKey = m_SplitEvaluator.getKey();
-      Object [] key = new Object [seKey.length + m_numExtraKeys];
-      key[0] =  Utils.backQuoteChars(m_Instances.relationName());
-      key[1] = "" + run;
-      key[2] = "" + (fold + 1);
-      System.arraycopy(seKey, 0, key, m_numExtraKeys, seKey.length);
+      Object [] key = getFoldKey(run, fold);
       if (m_ResultListener.isResultRequired(this, key)) {
         Instances train = getTrainingFold(foldList, fold);
         Instances test = (Instances) foldList.get(fold);
@@ -298,36 +299,73 @@ public class  LinkageBlockingResultProducerCV
                            + " TrainSize=" + train.numInstances()
                            + " TestSize=" + test.numInstances());
         
-	try {
+        if (foldExecutor != null) {
+          foldResults.add(foldExecutor.submit(m_SplitEvaluator, fold, train, test));
+        } else {
           Object[] prResults = (Object[])m_SplitEvaluator.getResult(train, test); 
-	  Object [] seResults = (Object[]) prResults[0]; 
-	  Object [] results = new Object [seResults.length + 1];
-	  results[0] = getTimestamp();
-	  System.arraycopy(seResults, 0, results, 1,
-			   seResults.length);
-	  if (m_debugOutput) {
-	    String resultName = (""+run+"."+(fold+1)+"."
-	      + Utils.backQuoteChars(runInstances.relationName())
-	      +"."
-	      +m_SplitEvaluator.toString()).replace(' ','_');
-	    resultName = Utils.removeSubstring(resultName, 
-					       "weka.linkage.blocking.");
-	    resultName = Utils.removeSubstring(resultName, 
-					       "weka.filters.");
-	    resultName = Utils.removeSubstring(resultName, 
-					       "weka.attributeSelection.");
-	    m_ZipDest.zipit(m_SplitEvaluator.getRawResultOutput(), resultName);
-	  }
-	  m_ResultListener.acceptResult(this, key, results);
-	} catch (Exception ex) {
-	  // Save the train and test datasets for debugging purposes?
-	  throw ex;
-	}
+          acceptFoldResults(run, fold, prResults, m_SplitEvaluator, runInstances);
+        }
+      }
+    }
+
+    // deliver the results of parallel folds in fold order
+    try {
+      for (Future<FoldExecutor.FoldResult> future : foldResults) {
+        FoldExecutor.FoldResult foldResult = FoldExecutor.get(future);
+        acceptFoldResults(run, foldResult.m_fold, foldResult.m_result,
+                          foldResult.m_evaluator, runInstances);
+      }
+    } finally {
+      if (foldExecutor != null) {
+        foldExecutor.shutdown();
       }
     }
   }
 
 
+  /** Add in some fields to the key like run and fold number, dataset name */
+  protected Object[] getFoldKey(int run, int fold) {
+    Object [] seKey = m_SplitEvaluator.getKey();
+    Object [] key = new Object [seKey.length + m_numExtraKeys];
+    key[0] =  Utils.backQuoteChars(m_Instances.relationName());
+    key[1] = "" + run;
+    key[2] = "" + (fold + 1);
+    System.arraycopy(seKey, 0, key, m_numExtraKeys, seKey.length);
+    return key;
+  }
+
+
+  /** Send the results of a fold to the result listener
+   * @param run the run number
+   * @param fold the fold number
+   * @param prResults the results of the split evaluator
+   * @param evaluator the split evaluator that produced the results
+   * @param runInstances the randomized data of the run
+   */
+  protected void acceptFoldResults(int run, int fold, Object[] prResults,
+                                   SplitEvaluator evaluator, Instances runInstances) throws Exception {
+    Object [] seResults = (Object[]) prResults[0]; 
+    Object [] results = new Object [seResults.length + 1];
+    results[0] = getTimestamp();
+    System.arraycopy(seResults, 0, results, 1,
+                     seResults.length);
+    if (m_debugOutput) {
+      String resultName = (""+run+"."+(fold+1)+"."
+                           + Utils.backQuoteChars(runInstances.relationName())
+                           +"."
+                           +evaluator.toString()).replace(' ','_');
+      resultName = Utils.removeSubstring(resultName, 
+                                         "weka.linkage.blocking.");
+      resultName = Utils.removeSubstring(resultName, 
+                                         "weka.filters.");
+      resultName = Utils.removeSubstring(resultName, 
+                                         "weka.attributeSelection.");
+      m_ZipDest.zipit(evaluator.getRawResultOutput(), resultName);
+    }
+    m_ResultListener.acceptResult(this, getFoldKey(run, fold), results);
+  }
+
+
     /** Given a set of instances with the class attribute containing true
    * objectID, create a list of folds using the preferred method
    *
@@ -560,6 +598,33 @@ public class  LinkageBlockingResultProducerCV
     m_NumFolds = newNumFolds;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "Number of folds evaluated in parallel, each by a copy of the split evaluator.";
+  }
+
+  /**
+   * Get the number of folds evaluated in parallel.
+   *
+   * @return the number of threads.
+   */
+  public int getNumThreads() {
+    return m_numThreads;
+  }
+
+  /**
+   * Set the number of folds evaluated in parallel.
+   *
+   * @param numThreads the number of threads; 1 evaluates folds in turn.
+   */
+  public void setNumThreads(int numThreads) {
+    m_numThreads = numThreads;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -624,7 +689,7 @@ public class  LinkageBlockingResultProducerCV
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(4);
+    Vector newVector = new Vector(5);
 
     newVector.addElement(new Option(
 	     "\tThe number of folds to use for the cross-validation.\n"
@@ -632,6 +697,12 @@ public class  LinkageBlockingResultProducerCV
 	     "X", 1, 
 	     "-X <number of folds>"));
 
+    newVector.addElement(new Option(
+	     "\tThe number of folds evaluated in parallel.\n"
+	      +"\t(default 1)", 
+	     "T", 1, 
+	     "-T <number of threads>"));
+
     newVector.addElement(new Option(
 	     "Save raw split evaluator output.",
 	     "D",0,"-D"));
@@ -671,6 +742,9 @@ public class  LinkageBlockingResultProducerCV
    * -X num_folds <br>
    * The number of folds to use for the cross-validation. <p>
    *
+   * -T num_threads <br>
+   * The number of folds evaluated in parallel. <p>
+   *
    * -D <br>
    * Specify that raw split evaluator output is to be saved. <p>
    *
@@ -704,6 +778,13 @@ public class  LinkageBlockingResultProducerCV
       setNumFolds(10);
     }
 
+    String numThreads = Utils.getOption('T', options);
+    if (numThreads.length() != 0) {
+      setNumThreads(Integer.parseInt(numThreads));
+    } else {
+      setNumThreads(1);
+    }
+
     String seName = Utils.getOption('W', options);
     if (seName.length() == 0) {
       throw new Exception("A SplitEvaluator must be specified with"
@@ -735,11 +816,13 @@ public class  LinkageBlockingResultProducerCV
       seOptions = ((OptionHandler)m_SplitEvaluator).getOptions();
     }
     
-    String [] options = new String [seOptions.length + 8];
+    String [] options = new String [seOptions.length + 10];
     int current = 0;
 
     options[current++] = "-X"; options[current++] = "" + getNumFolds();
 
+    options[current++] = "-T"; options[current++] = "" + getNumThreads();
+
     if (getRawOutput()) {
       options[current++] = "-D";
     }
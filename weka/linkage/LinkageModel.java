@@ -0,0 +1,173 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    LinkageModel.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import weka.core.Instances;
+import weka.linkage.blocking.Blocking;
+import weka.linkage.metrics.InstanceMetric;
+
+/** A trained linkage model: the learned blocking together with the
+ * trained instance metric (string metric parameters, IDF tables and
+ * the combining classifier).  A model is trained once, saved, and can
+ * then be loaded to dedupe new data without retraining.
+ *
+ * Models are stored as serialized objects preceded by the format
+ * version; files ending in ".gz" are compressed.  The classes a model
+ * holds pin their serialVersionUID, so recompiling them does not
+ * invalidate saved models.  Whether a saved model can be read is
+ * decided by the format version alone, which is checked before the
+ * model is deserialized.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class LinkageModel implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -2608284364640260308L;
+
+  /** Version of the model format; bumped on changes to the serialized
+   * form of any class a model holds */
+  public static final int FORMAT_VERSION = 1;
+
+  /** Format version this model was written with */
+  protected int m_formatVersion = FORMAT_VERSION;
+
+  /** Header of the training data */
+  protected Instances m_header = null;
+
+  /** Indeces of the attributes the deduper works on */
+  protected int[] m_attrIdxs = null;
+
+  /** The learned blocking; null if blocking is not used */
+  protected Blocking m_blocking = null;
+
+  /** The trained instance metric */
+  protected InstanceMetric m_metric = null;
+
+  /** Time when the model was created */
+  protected long m_timestamp = 0;
+
+
+  /** Create a model from trained components
+   * @param data the training data; only its header is kept
+   * @param attrIdxs indeces of the attributes the deduper works on
+   * @param blocking the learned blocking, or null
+   * @param metric the trained instance metric
+   */
+  public LinkageModel(Instances data, int[] attrIdxs,
+                      Blocking blocking, InstanceMetric metric) {
+    m_header = new Instances(data, 0);
+    m_attrIdxs = attrIdxs;
+    m_blocking = blocking;
+    m_metric = metric;
+    m_timestamp = System.currentTimeMillis();
+  }
+
+
+  /** Make sure that the model can be applied to the given data
+   * @param data the data to be deduped
+   * @exception Exception if the data is incompatible with the training data
+   */
+  public void checkCompatible(Instances data) throws Exception {
+    if (!m_header.equalHeaders(data)) {
+      throw new Exception("Data is incompatible with the model: attributes differ from "
+                          + m_header.relationName());
+    }
+  }
+
+
+  /** Write the model to a file
+   * @param filename name of the file; compressed if it ends in ".gz"
+   */
+  public void save(String filename) throws Exception {
+    OutputStream os = new BufferedOutputStream(new FileOutputStream(filename));
+    if (filename.endsWith(".gz")) {
+      os = new GZIPOutputStream(os);
+    }
+    ObjectOutputStream objectOutputStream = new ObjectOutputStream(os);
+    objectOutputStream.writeInt(m_formatVersion);
+    objectOutputStream.writeObject(this);
+    objectOutputStream.flush();
+    objectOutputStream.close();
+  }
+
+
+  /** Read a model from a file
+   * @param filename name of the file; decompressed if it ends in ".gz"
+   * @returns the model
+   * @exception Exception if the file does not contain a model of the
+   * current format version
+   */
+  public static LinkageModel load(String filename) throws Exception {
+    InputStream is = new BufferedInputStream(new FileInputStream(filename));
+    if (filename.endsWith(".gz")) {
+      is = new GZIPInputStream(is);
+    }
+    ObjectInputStream objectInputStream = new ObjectInputStream(is);
+    Object object;
+    try {
+      int formatVersion;
+      try {
+        formatVersion = objectInputStream.readInt();
+      } catch (EOFException e) {
+        throw new Exception(filename + " does not contain a linkage model");
+      }
+      if (formatVersion != FORMAT_VERSION) {
+        throw new Exception(filename + " has model format version " + formatVersion
+                            + "; version " + FORMAT_VERSION + " is required");
+      }
+      object = objectInputStream.readObject();
+    } finally {
+      objectInputStream.close();
+    }
+
+    if (!(object instanceof LinkageModel)) {
+      throw new Exception(filename + " does not contain a linkage model");
+    }
+    return (LinkageModel) object;
+  }
+
+
+  /** Get the header of the training data */
+  public Instances getHeader() { return m_header; }
+
+  /** Get the indeces of the attributes the deduper works on */
+  public int[] getAttrIdxs() { return m_attrIdxs; }
+
+  /** Get the learned blocking; null if blocking is not used */
+  public Blocking getBlocking() { return m_blocking; }
+
+  /** Get the trained instance metric */
+  public InstanceMetric getMetric() { return m_metric; }
+
+  /** Get the format version the model was written with */
+  public int getFormatVersion() { return m_formatVersion; }
+
+  /** Get the time when the model was created */
+  public long getTimestamp() { return m_timestamp; }
+}
@@ -320,8 +320,8 @@ public class LinkageSplitEvaluator
   public Object [] getResult(Instances trainData, Instances testData) 
     throws Exception {
     
-    if (trainData.classAttribute().type() != Attribute.NOMINAL) {
-      throw new Exception("Class attribute is not nominal!");
+    if (!trainData.classAttribute().isNominal() && !trainData.classAttribute().isNumeric()) {
+      throw new Exception("Class attribute is not nominal or numeric!");
     }
     if (m_deduper == null) {
       throw new Exception("No deduper has been specified");
@@ -0,0 +1,274 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    LinkageStage.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Counters, timings and a latency histogram for one stage of linkage:
+ * indexing, blocking, training, scoring, sorting or clustering.  The
+ * stages are shared by all dedupers in the JVM and are registered with
+ * the platform MBean server as weka.linkage:type=Stage,name=&lt;stage&gt;.
+ * Updates are thread-safe, so that parallel folds and experiments can
+ * report to the same stage.<p>
+ *
+ * A stage is timed with
+ * <pre>
+ * long start = LinkageStage.SCORING.start();
+ * ...
+ * LinkageStage.SCORING.stop(start);
+ * </pre>
+ * Short invocations in a loop, such as scoring single pairs, are timed
+ * with a Batch, which adds its timings to the shared counters only
+ * every BATCH_SIZE invocations:
+ * <pre>
+ * LinkageStage.Batch scoring = LinkageStage.SCORING.batch();
+ * long start = scoring.start();
+ * for (...) {
+ *   ...
+ *   start = scoring.stop(start);
+ * }
+ * scoring.flush();
+ * </pre>
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class LinkageStage implements LinkageStageMBean {
+
+  /** Number of histogram buckets; the last one holds everything over ~1 hour */
+  public static final int NUM_BUCKETS = 32;
+
+  /** Number of invocations a Batch accumulates before adding them to the stage */
+  public static final int BATCH_SIZE = 4096;
+
+  /** Building blocking indexes over the tokens of the test data */
+  public static final LinkageStage INDEXING = new LinkageStage("indexing");
+
+  /** Generating candidate pairs from the blocking indexes */
+  public static final LinkageStage BLOCKING = new LinkageStage("blocking");
+
+  /** Learning the blocking and the instance metric */
+  public static final LinkageStage TRAINING = new LinkageStage("training");
+
+  /** Computing the distance of a pair; timed per pair */
+  public static final LinkageStage SCORING = new LinkageStage("scoring");
+
+  /** Ranking the scored pairs */
+  public static final LinkageStage SORTING = new LinkageStage("sorting");
+
+  /** Merging clusters of instances */
+  public static final LinkageStage CLUSTERING = new LinkageStage("clustering");
+
+  public static final LinkageStage[] STAGES = {INDEXING, BLOCKING, TRAINING,
+                                               SCORING, SORTING, CLUSTERING};
+
+  static {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      for (LinkageStage stage : STAGES) {
+        ObjectName name = new ObjectName("weka.linkage:type=Stage,name=" + stage.getName());
+        if (!server.isRegistered(name)) {
+          server.registerMBean(stage, name);
+        }
+      }
+    } catch (Exception e) {
+      // the stages still count when management is unavailable
+      System.err.println("Could not register linkage stages: " + e);
+    }
+  }
+
+  protected String m_name;
+
+  protected AtomicLong m_invocations = new AtomicLong();
+  protected AtomicLong m_totalNanos = new AtomicLong();
+  protected AtomicLong m_maxNanos = new AtomicLong();
+  protected AtomicLong m_pairsGenerated = new AtomicLong();
+  protected AtomicLong m_pairsScored = new AtomicLong();
+  protected AtomicLong m_cacheHits = new AtomicLong();
+  protected AtomicLongArray m_histogram = new AtomicLongArray(NUM_BUCKETS);
+
+
+  protected LinkageStage(String name) {
+    m_name = name;
+  }
+
+  /** Start timing an invocation
+   * @return the start time to pass to stop
+   */
+  public long start() {
+    return System.nanoTime();
+  }
+
+  /** Finish timing an invocation
+   * @param start the value returned by start
+   * @return the current time, so that consecutive invocations can be
+   * timed with a single clock read each
+   */
+  public long stop(long start) {
+    long now = System.nanoTime();
+    record(now - start);
+    return now;
+  }
+
+  /** Record an invocation of a given duration */
+  public void record(long nanos) {
+    m_invocations.incrementAndGet();
+    m_totalNanos.addAndGet(nanos);
+    updateMax(nanos);
+    m_histogram.incrementAndGet(bucket(nanos));
+  }
+
+  protected void updateMax(long nanos) {
+    long max;
+    while (nanos > (max = m_maxNanos.get()) && !m_maxNanos.compareAndSet(max, nanos));
+  }
+
+  /** The histogram bucket of a duration: log2 of microseconds */
+  protected static int bucket(long nanos) {
+    long micros = nanos / 1000;
+    int bucket = (micros < 2) ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+    return Math.min(bucket, NUM_BUCKETS - 1);
+  }
+
+
+  /** Create a batch for timing invocations of this stage in a loop */
+  public Batch batch() {
+    return new Batch();
+  }
+
+
+  /** Timings of invocations of a stage by a single thread, kept in
+   * plain fields and added to the stage every BATCH_SIZE invocations
+   * and on flush(), so that timing every pair does not update counters
+   * shared by all threads */
+  public class Batch {
+    protected int m_numInvocations = 0;
+    protected long m_batchNanos = 0;
+    protected long m_batchMaxNanos = 0;
+    protected long[] m_batchHistogram = new long[NUM_BUCKETS];
+
+    public long start() {
+      return System.nanoTime();
+    }
+
+    /** Finish timing an invocation
+     * @param start the value returned by start or the previous stop
+     * @return the current time
+     */
+    public long stop(long start) {
+      long now = System.nanoTime();
+      long nanos = now - start;
+      m_numInvocations++;
+      m_batchNanos += nanos;
+      if (nanos > m_batchMaxNanos) {
+        m_batchMaxNanos = nanos;
+      }
+      m_batchHistogram[bucket(nanos)]++;
+      if (m_numInvocations >= BATCH_SIZE) {
+        flush();
+      }
+      return now;
+    }
+
+    /** Add the accumulated timings to the stage */
+    public void flush() {
+      if (m_numInvocations == 0) {
+        return;
+      }
+      m_invocations.addAndGet(m_numInvocations);
+      m_totalNanos.addAndGet(m_batchNanos);
+      updateMax(m_batchMaxNanos);
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        if (m_batchHistogram[i] != 0) {
+          m_histogram.addAndGet(i, m_batchHistogram[i]);
+          m_batchHistogram[i] = 0;
+        }
+      }
+      m_numInvocations = 0;
+      m_batchNanos = 0;
+      m_batchMaxNanos = 0;
+    }
+  }
+
+  public void addPairsGenerated(long n) { m_pairsGenerated.addAndGet(n); }
+  public void addPairsScored(long n) { m_pairsScored.addAndGet(n); }
+  public void addCacheHits(long n) { m_cacheHits.addAndGet(n); }
+
+  public String getName() { return m_name; }
+  public long getInvocations() { return m_invocations.get(); }
+  public double getTotalTimeMillis() { return m_totalNanos.get() / 1e6; }
+  public double getMaxTimeMillis() { return m_maxNanos.get() / 1e6; }
+  public long getPairsGenerated() { return m_pairsGenerated.get(); }
+  public long getPairsScored() { return m_pairsScored.get(); }
+  public long getCacheHits() { return m_cacheHits.get(); }
+
+  public double getMeanTimeMillis() {
+    long invocations = m_invocations.get();
+    return (invocations == 0) ? 0 : m_totalNanos.get() / 1e6 / invocations;
+  }
+
+  public double getPairsPerSecond() {
+    long nanos = m_totalNanos.get();
+    return (nanos == 0) ? 0 : m_pairsScored.get() * 1e9 / nanos;
+  }
+
+  public long[] getLatencyHistogram() {
+    long[] histogram = new long[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      histogram[i] = m_histogram.get(i);
+    }
+    return histogram;
+  }
+
+  public void reset() {
+    m_invocations.set(0);
+    m_totalNanos.set(0);
+    m_maxNanos.set(0);
+    m_pairsGenerated.set(0);
+    m_pairsScored.set(0);
+    m_cacheHits.set(0);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      m_histogram.set(i, 0);
+    }
+  }
+
+  /** Clear the counters of all stages */
+  public static void resetAll() {
+    for (LinkageStage stage : STAGES) {
+      stage.reset();
+    }
+  }
+
+  /** A one-line summary of the stage */
+  public String toString() {
+    return m_name + ": " + getInvocations() + " invocations, "
+      + Math.round(getTotalTimeMillis()) + " ms, "
+      + getPairsGenerated() + " pairs generated, "
+      + getPairsScored() + " scored, "
+      + getCacheHits() + " cache hits";
+  }
+}
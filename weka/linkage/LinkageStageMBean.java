@@ -0,0 +1,61 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    LinkageStageMBean.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+/** The management interface of a linkage stage, through which its
+ * counters and timings can be read with jconsole or any JMX client.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public interface LinkageStageMBean {
+
+  /** The name of the stage */
+  public String getName();
+
+  /** Number of timed invocations; for scoring, number of timed pairs */
+  public long getInvocations();
+
+  public double getTotalTimeMillis();
+  public double getMeanTimeMillis();
+  public double getMaxTimeMillis();
+
+  /** Candidate pairs produced by the stage */
+  public long getPairsGenerated();
+
+  /** Pairs whose distance was computed by the stage */
+  public long getPairsScored();
+
+  /** Lookups answered from a cache */
+  public long getCacheHits();
+
+  /** Pairs scored per second of time spent in the stage */
+  public double getPairsPerSecond();
+
+  /** Invocation counts by duration: bucket i counts durations
+   * in [2^i, 2^(i+1)) microseconds, bucket 0 those under 2 */
+  public long[] getLatencyHistogram();
+
+  /** Clear all counters */
+  public void reset();
+}
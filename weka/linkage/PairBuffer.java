@@ -0,0 +1,203 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    PairBuffer.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/** An in-memory list of candidate pairs kept as parallel arrays of
+ * instance indeces and scores and a bitset of positive flags, which
+ * takes about 12 bytes per pair instead of an InstancePair object per
+ * pair.  Indeces refer to positions of instances in the data the pairs
+ * were generated from; InstancePairs can be created from them when an
+ * API requires objects.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class PairBuffer {
+
+  /** Memory taken by a pair, not counting unused capacity */
+  public static final int BYTES_PER_PAIR = 12;
+
+  protected int[] m_left;
+  protected int[] m_right;
+  protected float[] m_score;
+  protected BitSet m_positive = new BitSet();
+
+  /** Number of pairs */
+  protected int m_size = 0;
+
+  /** The arrays do not grow beyond this many pairs unless more are added */
+  protected int m_maxCapacity = Integer.MAX_VALUE;
+
+
+  public PairBuffer() {
+    this(1024);
+  }
+
+  public PairBuffer(int capacity) {
+    capacity = Math.max(capacity, 16);
+    m_left = new int[capacity];
+    m_right = new int[capacity];
+    m_score = new float[capacity];
+  }
+
+  /**
+   * @param capacity the initial capacity
+   * @param maxCapacity the number of pairs the buffer is expected to
+   * hold at most, which caps the growth of its arrays
+   */
+  public PairBuffer(int capacity, int maxCapacity) {
+    this(Math.min(capacity, maxCapacity));
+    m_maxCapacity = Math.max(maxCapacity, 16);
+  }
+
+
+  /** Append a pair
+   * @param left the index of the first instance
+   * @param right the index of the second instance
+   * @param score the score of the pair, e.g. similarity or distance
+   * @param positive whether the pair is a true duplicate
+   */
+  public void add(int left, int right, float score, boolean positive) {
+    if (m_size == m_left.length) {
+      long capacity = 2L * m_size;
+      if (m_size < m_maxCapacity) {
+        capacity = Math.min(capacity, m_maxCapacity);
+      }
+      capacity = Math.min(capacity, Integer.MAX_VALUE - 8);
+      int[] lefts = new int[(int) capacity];
+      int[] rights = new int[(int) capacity];
+      float[] scores = new float[(int) capacity];
+      System.arraycopy(m_left, 0, lefts, 0, m_size);
+      System.arraycopy(m_right, 0, rights, 0, m_size);
+      System.arraycopy(m_score, 0, scores, 0, m_size);
+      m_left = lefts;
+      m_right = rights;
+      m_score = scores;
+    }
+    m_left[m_size] = left;
+    m_right[m_size] = right;
+    m_score[m_size] = score;
+    if (positive) {
+      m_positive.set(m_size);
+    }
+    m_size++;
+  }
+
+
+  /** Append a pair given by a pair code, see PairStore.pairCode */
+  public void add(long pairCode, float score, boolean positive) {
+    add(PairStore.secondIndex(pairCode), PairStore.firstIndex(pairCode), score, positive);
+  }
+
+
+  /** Append a pair of instances of a dataset, flagged as positive if
+   * the instances share a class value */
+  public void add(Instances instances, int left, int right, float score) {
+    add(left, right, score, instances.instance(left).classValue() == instances.instance(right).classValue());
+  }
+
+
+  public int size() { return m_size; }
+  public int left(int i) { return m_left[i]; }
+  public int right(int i) { return m_right[i]; }
+  public float score(int i) { return m_score[i]; }
+  public void setScore(int i, float score) { m_score[i] = score; }
+  public boolean isPositive(int i) { return m_positive.get(i); }
+
+  /** Number of pairs flagged as positive */
+  public int numPositive() {
+    return m_positive.cardinality();
+  }
+
+
+  /** Remove all pairs */
+  public void clear() {
+    m_size = 0;
+    m_positive.clear();
+  }
+
+
+  /** Sort the pairs by score; the sort is stable
+   * @param decreasing sort by decreasing score (similarities) instead
+   * of increasing score (distances)
+   */
+  public void sort(boolean decreasing) {
+    long[] keys = new long[m_size];
+    for (int i = 0; i < m_size; i++) {
+      keys[i] = ((long) PairStore.scoreKey(m_score[i], decreasing) << 32) | i;
+    }
+    Arrays.sort(keys);
+
+    int[] lefts = new int[m_left.length];
+    int[] rights = new int[m_right.length];
+    float[] scores = new float[m_score.length];
+    BitSet positive = new BitSet(m_size);
+    for (int i = 0; i < m_size; i++) {
+      int idx = (int) keys[i];
+      lefts[i] = m_left[idx];
+      rights[i] = m_right[idx];
+      scores[i] = m_score[idx];
+      if (m_positive.get(idx)) {
+        positive.set(i);
+      }
+    }
+    m_left = lefts;
+    m_right = rights;
+    m_score = scores;
+    m_positive = positive;
+  }
+
+
+  /** Create an InstancePair for a pair
+   * @param i the position of the pair
+   * @param instances the data the indeces refer to
+   */
+  public InstancePair pair(int i, Instances instances) {
+    return new InstancePair(instances.instance(m_left[i]), instances.instance(m_right[i]),
+                            m_positive.get(i), m_score[i]);
+  }
+
+
+  /** Create InstancePairs for all pairs, for the APIs that take them */
+  public InstancePair[] toInstancePairs(Instances instances) {
+    InstancePair[] pairs = new InstancePair[m_size];
+    for (int i = 0; i < m_size; i++) {
+      pairs[i] = pair(i, instances);
+    }
+    return pairs;
+  }
+
+
+  /** Append all pairs to a pair store */
+  public void appendTo(PairStore store) throws Exception {
+    for (int i = 0; i < m_size; i++) {
+      store.append(m_left[i], m_right[i], m_score[i], m_positive.get(i));
+    }
+  }
+}
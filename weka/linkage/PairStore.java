@@ -0,0 +1,493 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    PairStore.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/** A store of candidate pairs kept in a memory-mapped file rather
+ * than on the heap, so the number of candidates is limited by disk
+ * space only.  Every pair is a fixed-width record of a pair code, a
+ * float score and int flags.  Pair codes encode the indeces of two
+ * instances as max*(max-1)/2 + min, as the blocking pair codes do.
+ *
+ * Pairs are appended, can be sorted by score with an external sort
+ * whose chunks are sorted in parallel, and are read back with a
+ * sequential cursor, which can also update scores in place.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class PairStore {
+
+  /** The pair is a true duplicate */
+  public static final int FLAG_POSITIVE = 1;
+
+  /** Bytes taken by a pair: pair code, score and flags */
+  public static final int RECORD_SIZE = 16;
+
+  /** Bytes of the file header: magic, version and number of pairs */
+  protected static final int HEADER_SIZE = 16;
+  protected static final int MAGIC = 0x50414952;
+  protected static final int VERSION = 1;
+
+  /** Pairs per mapped segment; a segment is 128Mb */
+  protected static final int SEGMENT_SHIFT = 23;
+  protected static final int SEGMENT_PAIRS = 1 << SEGMENT_SHIFT;
+  protected static final long SEGMENT_BYTES = (long) SEGMENT_PAIRS * RECORD_SIZE;
+
+  /** The file holding the pairs */
+  protected File m_file = null;
+
+  /** Should the file be deleted when the store is closed? */
+  protected boolean m_temporary = false;
+
+  protected RandomAccessFile m_raf = null;
+  protected FileChannel m_channel = null;
+
+  /** Mapped segments of the file; mapped on demand */
+  protected ArrayList<MappedByteBuffer> m_segments = new ArrayList<MappedByteBuffer>();
+
+  /** Mapped file header */
+  protected MappedByteBuffer m_header = null;
+
+  /** Number of pairs in the store */
+  protected long m_size = 0;
+
+  /** Number of pairs sorted in memory at once by a sorting thread */
+  protected int m_sortChunkSize = 1 << 20;
+
+  /** Number of threads sorting chunks */
+  protected int m_numSortThreads = Runtime.getRuntime().availableProcessors();
+
+
+  /** Create an empty store in a temporary file, deleted on close */
+  public PairStore() throws IOException {
+    this(File.createTempFile("pairs", ".bin"), true, true);
+  }
+
+
+  /** Create an empty store, overwriting a file
+   * @param file the file holding the pairs
+   */
+  public PairStore(File file) throws IOException {
+    this(file, false, true);
+  }
+
+
+  protected PairStore(File file, boolean temporary, boolean create) throws IOException {
+    m_file = file;
+    m_temporary = temporary;
+    if (temporary) {
+      file.deleteOnExit();
+    }
+    openFile(create);
+  }
+
+
+  /** Open a store written earlier
+   * @param file the file holding the pairs
+   * @returns the store
+   */
+  public static PairStore open(File file) throws IOException {
+    return new PairStore(file, false, false);
+  }
+
+
+  /** Map the file, creating an empty store if requested */
+  protected void openFile(boolean create) throws IOException {
+    m_raf = new RandomAccessFile(m_file, "rw");
+    m_channel = m_raf.getChannel();
+    m_segments.clear();
+    if (create) {
+      m_channel.truncate(0);
+    }
+    m_header = m_channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    if (create) {
+      m_header.putInt(0, MAGIC);
+      m_header.putInt(4, VERSION);
+      m_header.putLong(8, 0);
+      m_size = 0;
+    } else {
+      if (m_header.getInt(0) != MAGIC || m_header.getInt(4) != VERSION) {
+        throw new IOException(m_file + " is not a pair store of version " + VERSION);
+      }
+      m_size = m_header.getLong(8);
+    }
+  }
+
+
+  /** Return the segment holding a pair, mapping it if needed */
+  protected MappedByteBuffer segment(long idx) throws IOException {
+    int segmentIdx = (int) (idx >>> SEGMENT_SHIFT);
+    while (m_segments.size() <= segmentIdx) {
+      m_segments.add(null);
+    }
+    MappedByteBuffer segment = m_segments.get(segmentIdx);
+    if (segment == null) {
+      segment = m_channel.map(FileChannel.MapMode.READ_WRITE,
+                              HEADER_SIZE + segmentIdx * SEGMENT_BYTES, SEGMENT_BYTES);
+      m_segments.set(segmentIdx, segment);
+    }
+    return segment;
+  }
+
+
+  /** Position of a pair within its segment */
+  protected static int offset(long idx) {
+    return (int) (idx & (SEGMENT_PAIRS - 1)) * RECORD_SIZE;
+  }
+
+
+  /** Encode a pair of instance indeces */
+  public static long pairCode(int idx1, int idx2) {
+    long max = Math.max(idx1, idx2);
+    long min = Math.min(idx1, idx2);
+    return max * (max - 1) / 2 + min;
+  }
+
+
+  /** Decode the larger instance index of a pair code */
+  public static int firstIndex(long pairCode) {
+    long idx1 = (long) ((1 + Math.sqrt(1.0 + 8.0 * pairCode)) / 2);
+    while (idx1 * (idx1 - 1) / 2 > pairCode) idx1--;
+    while ((idx1 + 1) * idx1 / 2 <= pairCode) idx1++;
+    return (int) idx1;
+  }
+
+
+  /** Decode the smaller instance index of a pair code */
+  public static int secondIndex(long pairCode) {
+    long idx1 = firstIndex(pairCode);
+    return (int) (pairCode - idx1 * (idx1 - 1) / 2);
+  }
+
+
+  /** Append a pair
+   * @param pairCode the pair code
+   * @param score the score of the pair, e.g. similarity or distance
+   * @param flags flags of the pair
+   */
+  public void append(long pairCode, float score, int flags) throws IOException {
+    MappedByteBuffer segment = segment(m_size);
+    int offset = offset(m_size);
+    segment.putLong(offset, pairCode);
+    segment.putFloat(offset + 8, score);
+    segment.putInt(offset + 12, flags);
+    m_size++;
+    m_header.putLong(8, m_size);
+  }
+
+
+  /** Append a pair of instances given by their indeces */
+  public void append(int idx1, int idx2, double score, boolean positive) throws IOException {
+    append(pairCode(idx1, idx2), (float) score, (positive ? FLAG_POSITIVE : 0));
+  }
+
+
+  /** Pair code of the pair at a position */
+  public long getPairCode(long idx) throws IOException {
+    return segment(idx).getLong(offset(idx));
+  }
+
+
+  /** Score of the pair at a position */
+  public float getScore(long idx) throws IOException {
+    return segment(idx).getFloat(offset(idx) + 8);
+  }
+
+
+  /** Replace the score of the pair at a position */
+  public void setScore(long idx, float score) throws IOException {
+    segment(idx).putFloat(offset(idx) + 8, score);
+  }
+
+
+  /** Number of pairs in the store */
+  public long size() {
+    return m_size;
+  }
+
+
+  /** Remove all pairs */
+  public void clear() {
+    m_size = 0;
+    m_header.putLong(8, 0);
+  }
+
+
+  /** Return a cursor positioned before the first pair */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+
+  /** A sequential reader of the pairs of a store */
+  public class Cursor {
+    protected long m_idx = -1;
+    protected MappedByteBuffer m_segment = null;
+    protected int m_offset = 0;
+
+    /** Move to the next pair; returns false after the last pair */
+    public boolean next() throws IOException {
+      if (m_idx + 1 >= m_size) {
+        m_idx = m_size;
+        return false;
+      }
+      m_idx++;
+      m_offset = offset(m_idx);
+      if (m_segment == null || m_offset == 0) {
+        m_segment = segment(m_idx);
+      }
+      return true;
+    }
+
+    /** Position of the current pair in the store */
+    public long position() { return m_idx; }
+
+    public long getPairCode() { return m_segment.getLong(m_offset); }
+    public float getScore() { return m_segment.getFloat(m_offset + 8); }
+    public int getFlags() { return m_segment.getInt(m_offset + 12); }
+    public boolean isPositive() { return (getFlags() & FLAG_POSITIVE) != 0; }
+
+    /** Indeces of the instances of the current pair */
+    public int getIndex1() { return firstIndex(getPairCode()); }
+    public int getIndex2() { return secondIndex(getPairCode()); }
+
+    /** Replace the score of the current pair */
+    public void setScore(float score) { m_segment.putFloat(m_offset + 8, score); }
+
+    /** Replace the flags of the current pair */
+    public void setFlags(int flags) { m_segment.putInt(m_offset + 12, flags); }
+  }
+
+
+  /** Materialize the first pairs as InstancePairs
+   * @param instances the instances the pair codes refer to
+   * @param numPairs the maximum number of pairs to return
+   */
+  public InstancePair[] toInstancePairs(Instances instances, int numPairs) throws IOException {
+    numPairs = (int) Math.min(numPairs, m_size);
+    InstancePair[] pairs = new InstancePair[numPairs];
+    Cursor cursor = cursor();
+    for (int i = 0; i < numPairs && cursor.next(); i++) {
+      pairs[i] = new InstancePair(instances.instance(cursor.getIndex1()),
+                                  instances.instance(cursor.getIndex2()),
+                                  cursor.isPositive(), cursor.getScore());
+    }
+    return pairs;
+  }
+
+
+  /** Sort key of a score: orders as the score, or in reverse */
+  protected static int scoreKey(float score, boolean decreasing) {
+    int bits = Float.floatToIntBits(score);
+    bits ^= (bits >> 31) & 0x7fffffff;
+    return (decreasing ? ~bits : bits);
+  }
+
+
+  /** Sort the pairs by score.  The sort is stable.  Chunks of
+   * sortChunkSize pairs are sorted in place by parallel threads and
+   * then merged into a new file that replaces the current one.
+   * @param decreasing sort by decreasing score (similarities) instead
+   * of increasing score (distances)
+   */
+  public void sort(final boolean decreasing) throws Exception {
+    if (m_size < 2) {
+      return;
+    }
+    final int chunkSize = m_sortChunkSize;
+    int numChunks = (int) ((m_size + chunkSize - 1) / chunkSize);
+
+    // map all segments up front, so the sorting threads only read the list
+    for (long idx = 0; idx < m_size; idx += SEGMENT_PAIRS) {
+      segment(idx);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(m_numSortThreads, numChunks)));
+    try {
+      ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int i = 0; i < numChunks; i++) {
+        final long start = (long) i * chunkSize;
+        final int length = (int) Math.min(chunkSize, m_size - start);
+        futures.add(executor.submit(new Callable<Object>() {
+            public Object call() throws IOException {
+              sortChunk(start, length, decreasing);
+              return null;
+            }
+          }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    if (numChunks > 1) {
+      mergeChunks(numChunks, chunkSize, decreasing);
+    }
+  }
+
+
+  /** Sort a range of pairs in place */
+  protected void sortChunk(long start, int length, boolean decreasing) throws IOException {
+    long[] codes = new long[length];
+    float[] scores = new float[length];
+    int[] flags = new int[length];
+    long[] keys = new long[length];
+    for (int i = 0; i < length; i++) {
+      long idx = start + i;
+      MappedByteBuffer segment = m_segments.get((int) (idx >>> SEGMENT_SHIFT));
+      int offset = offset(idx);
+      codes[i] = segment.getLong(offset);
+      scores[i] = segment.getFloat(offset + 8);
+      flags[i] = segment.getInt(offset + 12);
+      keys[i] = ((long) scoreKey(scores[i], decreasing) << 32) | i;
+    }
+    Arrays.sort(keys);
+    for (int i = 0; i < length; i++) {
+      int j = (int) keys[i];
+      long idx = start + i;
+      MappedByteBuffer segment = m_segments.get((int) (idx >>> SEGMENT_SHIFT));
+      int offset = offset(idx);
+      segment.putLong(offset, codes[j]);
+      segment.putFloat(offset + 8, scores[j]);
+      segment.putInt(offset + 12, flags[j]);
+    }
+  }
+
+
+  /** Merge sorted chunks into a new file that replaces the current one */
+  protected void mergeChunks(int numChunks, int chunkSize, boolean decreasing) throws IOException {
+    File mergedFile = new File(m_file.getPath() + ".sorted");
+    PairStore merged = new PairStore(mergedFile, false, true);
+
+    // a heap of chunks ordered by the key of their current pair and their position
+    long[] positions = new long[numChunks];
+    long[] ends = new long[numChunks];
+    int[] heap = new int[numChunks];
+    int heapSize = 0;
+    for (int i = 0; i < numChunks; i++) {
+      positions[i] = (long) i * chunkSize;
+      ends[i] = Math.min(positions[i] + chunkSize, m_size);
+      heap[heapSize++] = i;
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(heap, heapSize, i, positions, decreasing);
+    }
+
+    while (heapSize > 0) {
+      int chunk = heap[0];
+      long idx = positions[chunk];
+      MappedByteBuffer segment = segment(idx);
+      int offset = offset(idx);
+      merged.append(segment.getLong(offset), segment.getFloat(offset + 8), segment.getInt(offset + 12));
+      positions[chunk]++;
+      if (positions[chunk] == ends[chunk]) {
+        heap[0] = heap[--heapSize];
+      }
+      siftDown(heap, heapSize, 0, positions, decreasing);
+    }
+
+    // replace the current file with the merged one
+    merged.m_channel.force(false);
+    merged.m_raf.close();
+    m_raf.close();
+    m_segments.clear();
+    m_header = null;
+    if (!m_file.delete() || !mergedFile.renameTo(m_file)) {
+      throw new IOException("Could not replace " + m_file + " with " + mergedFile);
+    }
+    openFile(false);
+  }
+
+
+  /** Does the current pair of chunk1 go before the current pair of chunk2? */
+  protected boolean before(int chunk1, int chunk2, long[] positions, boolean decreasing) {
+    long idx1 = positions[chunk1], idx2 = positions[chunk2];
+    int key1 = scoreKey(m_segments.get((int) (idx1 >>> SEGMENT_SHIFT)).getFloat(offset(idx1) + 8), decreasing);
+    int key2 = scoreKey(m_segments.get((int) (idx2 >>> SEGMENT_SHIFT)).getFloat(offset(idx2) + 8), decreasing);
+    return (key1 != key2 ? key1 < key2 : chunk1 < chunk2);
+  }
+
+
+  protected void siftDown(int[] heap, int heapSize, int i, long[] positions, boolean decreasing) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1, right = left + 1;
+      if (left < heapSize && before(heap[left], heap[smallest], positions, decreasing)) {
+        smallest = left;
+      }
+      if (right < heapSize && before(heap[right], heap[smallest], positions, decreasing)) {
+        smallest = right;
+      }
+      if (smallest == i) {
+        return;
+      }
+      int tmp = heap[i];
+      heap[i] = heap[smallest];
+      heap[smallest] = tmp;
+      i = smallest;
+    }
+  }
+
+
+  /** Close the store, truncating the file to its pairs; a temporary
+   * file is deleted */
+  public void close() throws IOException {
+    if (m_raf == null) {
+      return;
+    }
+    m_segments.clear();
+    m_header = null;
+    m_raf.close();
+    m_raf = null;
+    m_channel = null;
+    if (m_temporary) {
+      m_file.delete();
+    } else {
+      RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+      raf.setLength(HEADER_SIZE + m_size * RECORD_SIZE);
+      raf.close();
+    }
+  }
+
+
+  /** Get the file holding the pairs */
+  public File getFile() { return m_file; }
+
+  /** Set the number of pairs sorted in memory at once by a sorting thread */
+  public void setSortChunkSize(int sortChunkSize) { m_sortChunkSize = sortChunkSize; }
+  public int getSortChunkSize() { return m_sortChunkSize; }
+
+  /** Set the number of threads sorting chunks */
+  public void setNumSortThreads(int numSortThreads) { m_numSortThreads = numSortThreads; }
+  public int getNumSortThreads() { return m_numSortThreads; }
+}
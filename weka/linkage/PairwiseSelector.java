@@ -41,19 +41,19 @@ import weka.text.*;
 
 public class PairwiseSelector implements OptionHandler, Serializable {
   /** The set of instances used for training */
-  protected Instances m_instances = null;
+  protected transient Instances m_instances = null;
   
   /** A hashmap where true object IDs are mapped to lists of strings of that object */
-  protected HashMap m_classInstanceMap = null;
+  protected transient HashMap m_classInstanceMap = null;
 
   /** A list of classes, each element is the double value of the class attribute */
-  protected ArrayList m_classValueList = null;
+  protected transient ArrayList m_classValueList = null;
 
   /** A list with all the positive examples as TrainingPair's */
-  protected ArrayList m_posPairList = null;
+  protected transient ArrayList m_posPairList = null;
 
   /** A list with a sufficient pool of negative examples as TrainingPair's */
-  protected ArrayList m_negPairList = null;
+  protected transient ArrayList m_negPairList = null;
   
   /** The number of possible same-class pairs */
   protected int m_numPotentialPositives = 0;
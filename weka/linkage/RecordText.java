@@ -0,0 +1,202 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    RecordText.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/** Keeps the normalized string fields of records, so that cleaning and
+ * tokenizing a value is done once per record rather than once per
+ * blocker and pass.  Records are held weakly.  A field is looked up by
+ * the attribute and value index the record holds, which avoids
+ * decompressing long values, and is computed again when either
+ * changes.  Hits are counted on LinkageStage.BLOCKING.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class RecordText {
+
+  /** The fields of recently used records */
+  protected static final Map<Instance,RecordText> CACHE =
+    Collections.synchronizedMap(new WeakHashMap<Instance,RecordText>());
+
+  /** Slots by attribute index; null if not computed yet */
+  protected Slot[] m_slots;
+
+
+  /** A field and the value it is for */
+  protected static class Slot {
+    protected final Attribute m_attribute;
+    protected final int m_valueIdx;
+    /** Is the value the normalized form? */
+    protected final boolean m_normalized;
+    protected final TextField m_field;
+
+    protected Slot(Attribute attribute, int valueIdx, boolean normalized, TextField field) {
+      m_attribute = attribute;
+      m_valueIdx = valueIdx;
+      m_normalized = normalized;
+      m_field = field;
+    }
+  }
+
+
+  protected RecordText(int numAttributes) {
+    m_slots = new Slot[numAttributes];
+  }
+
+
+  /** Get the normalized form of a nominal or string field of a record */
+  public static TextField field(Instance instance, int attrIdx) {
+    return slot(instance, attrIdx).m_field;
+  }
+
+
+  /** Get the normalized form of a nominal or string field of a record
+   * if its value is normalized already, as it is after
+   * LearnableBlocking.cleanInstance(); null otherwise
+   */
+  public static TextField normalizedField(Instance instance, int attrIdx) {
+    Slot slot = slot(instance, attrIdx);
+    return slot.m_normalized ? slot.m_field : null;
+  }
+
+
+  /** Set a field of a record to its normalized form
+   * @returns the normalized form
+   */
+  public static TextField normalize(Instance instance, int attrIdx) {
+    Slot slot = slot(instance, attrIdx);
+    if (slot.m_normalized) {
+      return slot.m_field;
+    }
+    instance.setValue(attrIdx, slot.m_field.text());
+    Attribute attribute = instance.attribute(attrIdx);
+    slot = new Slot(attribute, (int) instance.value(attrIdx), true, slot.m_field);
+    record(instance).m_slots[attrIdx] = slot;
+    return slot.m_field;
+  }
+
+
+  protected static RecordText record(Instance instance) {
+    RecordText record = CACHE.get(instance);
+    if (record == null || record.m_slots.length != instance.numAttributes()) {
+      record = new RecordText(instance.numAttributes());
+      CACHE.put(instance, record);
+    }
+    return record;
+  }
+
+
+  protected static Slot slot(Instance instance, int attrIdx) {
+    Attribute attribute = instance.attribute(attrIdx);
+    if (!attribute.isNominal() && !attribute.isString()) {
+      String value = instance.stringValue(attrIdx);
+      TextField field = new TextField(value);
+      return new Slot(attribute, -1, field.isNormalized(value), field);
+    }
+    int valueIdx = (int) instance.value(attrIdx);
+    RecordText record = record(instance);
+    Slot slot = record.m_slots[attrIdx];
+    if (slot != null && slot.m_attribute == attribute && slot.m_valueIdx == valueIdx) {
+      LinkageStage.BLOCKING.addCacheHits(1);
+      return slot;
+    }
+    String value = attribute.value(valueIdx);
+    TextField field = new TextField(value);
+    slot = new Slot(attribute, valueIdx, field.isNormalized(value), field);
+    record.m_slots[attrIdx] = slot;
+    return slot;
+  }
+
+
+  /** Drop the unreferenced string values of a dataset as
+   * Instances.compactStringAttributes() does, keeping the fields of its
+   * records.  Compacting replaces the string attributes and renumbers
+   * their values, so the slots are moved to the new ones.
+   * @returns the number of values dropped
+   */
+  public static int compactStringAttributes(Instances data) {
+    int numAttributes = data.numAttributes();
+    Attribute[] oldAttributes = new Attribute[numAttributes];
+    for (int j = 0; j < numAttributes; j++) {
+      oldAttributes[j] = data.attribute(j);
+    }
+
+    // only the slots that are current before compacting are kept
+    RecordText[] records = new RecordText[data.numInstances()];
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance instance = data.instance(i);
+      RecordText record = CACHE.get(instance);
+      if (record == null || record.m_slots.length != numAttributes) {
+        continue;
+      }
+      for (int j = 0; j < numAttributes; j++) {
+        Slot slot = record.m_slots[j];
+        if (slot != null && (slot.m_attribute != oldAttributes[j]
+                             || slot.m_valueIdx != (int) instance.value(j))) {
+          record.m_slots[j] = null;
+        }
+      }
+      records[i] = record;
+    }
+
+    int numDropped = data.compactStringAttributes();
+    if (numDropped == 0) {
+      return 0;
+    }
+    for (int i = 0; i < records.length; i++) {
+      if (records[i] == null) {
+        continue;
+      }
+      Instance instance = data.instance(i);
+      Slot[] slots = records[i].m_slots;
+      for (int j = 0; j < numAttributes; j++) {
+        Attribute attribute = data.attribute(j);
+        if (slots[j] != null && attribute != oldAttributes[j]) {
+          slots[j] = new Slot(attribute, (int) instance.value(j),
+                              slots[j].m_normalized, slots[j].m_field);
+        }
+      }
+    }
+    return numDropped;
+  }
+
+
+  /** Forget the fields of a record, such as a temporary copy */
+  public static void forget(Instance instance) {
+    CACHE.remove(instance);
+  }
+
+
+  /** Forget the fields of all records */
+  public static void clear() {
+    CACHE.clear();
+  }
+}
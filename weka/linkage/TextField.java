@@ -0,0 +1,210 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    TextField.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage;
+
+import java.util.Arrays;
+
+import weka.linkage.blocking.learn.Blocker;
+
+/** The normalized form of a string value: lowercased, with every run
+ * of characters other than letters and digits replaced by a single
+ * space and no leading or trailing spaces.  Tokens are the runs between
+ * spaces; token and q-gram keys are hashes of their characters computed
+ * with Blocker.hashChars, so they can be used as block keys directly.
+ * A field never changes once created and can be shared between threads;
+ * RecordText keeps the fields of a record.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class TextField {
+
+  /** The value the field was created from */
+  protected final String m_value;
+
+  /** The normalized value, and its characters */
+  protected final String m_text;
+  protected final char[] m_chars;
+
+  /** Token t spans [m_tokenBounds[2t], m_tokenBounds[2t+1]) */
+  protected final int[] m_tokenBounds;
+  protected final int m_numTokens;
+
+  /** Keys of the tokens in order, and sorted without duplicates */
+  protected final long[] m_tokenKeys;
+  protected final long[] m_distinctTokenKeys;
+
+  /** Key of the whole normalized value */
+  protected final long m_textKey;
+
+  /** Keys of the q-grams, computed when first needed; indexed by q */
+  protected long[][] m_qgramKeys = new long[0][];
+
+
+  /** Normalize a value and index its tokens
+   * @param value the value
+   */
+  public TextField(String value) {
+    m_value = value;
+    m_chars = normalizeChars(value);
+    String text = new String(m_chars);
+    m_text = text.equals(value) ? value : text;
+
+    int numTokens = (m_chars.length == 0) ? 0 : 1;
+    for (int i = 0; i < m_chars.length; i++) {
+      if (m_chars[i] == ' ') {
+        numTokens++;
+      }
+    }
+    m_numTokens = numTokens;
+    m_tokenBounds = new int[2 * numTokens];
+    m_tokenKeys = new long[numTokens];
+    int start = 0;
+    for (int t = 0; t < numTokens; t++) {
+      int end = start;
+      while (end < m_chars.length && m_chars[end] != ' ') end++;
+      m_tokenBounds[2 * t] = start;
+      m_tokenBounds[2 * t + 1] = end;
+      m_tokenKeys[t] = Blocker.hashChars(m_chars, start, end);
+      start = end + 1;
+    }
+
+    long[] keys = m_tokenKeys.clone();
+    Arrays.sort(keys);
+    int numDistinct = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (numDistinct == 0 || keys[i] != keys[numDistinct - 1]) {
+        keys[numDistinct++] = keys[i];
+      }
+    }
+    m_distinctTokenKeys = Arrays.copyOf(keys, numDistinct);
+    m_textKey = Blocker.hashChars(m_chars, 0, m_chars.length);
+  }
+
+
+  /** Lowercase a value and replace every run of characters other than
+   * letters and digits with a single space, trimming the ends */
+  public static String normalize(String value) {
+    return new String(normalizeChars(value));
+  }
+
+  protected static char[] normalizeChars(String value) {
+    String lower = value.toLowerCase();
+    char[] chars = new char[lower.length()];
+    int length = 0;
+    boolean lastSpace = true;
+    for (int i = 0; i < lower.length(); i++) {
+      char c = lower.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        chars[length++] = c;
+        lastSpace = false;
+      } else if (!lastSpace) {
+        chars[length++] = ' ';
+        lastSpace = true;
+      }
+    }
+    if (length > 0 && chars[length - 1] == ' ') {
+      length--;
+    }
+    return (length == chars.length) ? chars : Arrays.copyOf(chars, length);
+  }
+
+
+  /** Is a value equal to the normalized value of the field? */
+  public boolean isNormalized(String value) {
+    return value == m_text || value.equals(m_text);
+  }
+
+  /** The value the field was created from */
+  public String value() { return m_value; }
+
+  /** The normalized value */
+  public String text() { return m_text; }
+
+  /** The characters of the normalized value; must not be modified */
+  public char[] chars() { return m_chars; }
+
+  public int numTokens() { return m_numTokens; }
+
+  /** Token t spans [bounds[2t], bounds[2t+1]); must not be modified */
+  public int[] tokenBounds() { return m_tokenBounds; }
+
+  public int tokenStart(int t) { return m_tokenBounds[2 * t]; }
+  public int tokenEnd(int t) { return m_tokenBounds[2 * t + 1]; }
+  public long tokenKey(int t) { return m_tokenKeys[t]; }
+
+  /** Get the sorted keys of the distinct tokens; the array is a copy */
+  public long[] distinctTokenKeys() {
+    return m_distinctTokenKeys.clone();
+  }
+
+  /** Count the distinct tokens shared with another field */
+  public int numCommonTokens(TextField other) {
+    long[] keys1 = m_distinctTokenKeys, keys2 = other.m_distinctTokenKeys;
+    int common = 0;
+    int i = 0, j = 0;
+    while (i < keys1.length && j < keys2.length) {
+      if (keys1[i] < keys2[j]) {
+        i++;
+      } else if (keys1[i] > keys2[j]) {
+        j++;
+      } else {
+        common++;
+        i++;
+        j++;
+      }
+    }
+    return common;
+  }
+
+  /** Get the key of the whole normalized value */
+  public long textKey() {
+    return m_textKey;
+  }
+
+
+  /** Get the keys of the q-grams of the normalized value in order, or
+   * the key of the whole value if it is shorter than q; must not be
+   * modified
+   * @param q the number of characters in a q-gram
+   */
+  public synchronized long[] qgramKeys(int q) {
+    if (q >= m_qgramKeys.length) {
+      m_qgramKeys = Arrays.copyOf(m_qgramKeys, q + 1);
+    }
+    if (m_qgramKeys[q] == null) {
+      int numGrams = (m_chars.length == 0) ? 0 : Math.max(1, m_chars.length - q + 1);
+      long[] keys = new long[numGrams];
+      for (int i = 0; i < numGrams; i++) {
+        keys[i] = Blocker.hashChars(m_chars, i, Math.min(i + q, m_chars.length));
+      }
+      m_qgramKeys[q] = keys;
+    }
+    return m_qgramKeys[q];
+  }
+
+
+  public String toString() {
+    return m_text;
+  }
+}
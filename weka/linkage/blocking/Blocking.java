@@ -23,9 +23,11 @@
 
 package weka.linkage.blocking;
 
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Utils;
 import java.util.*;
+import java.io.Serializable;
 
 import weka.linkage.*;
 
@@ -34,7 +36,10 @@ import weka.linkage.*;
  *
  * @author Beena Kamath
  */
-public abstract class Blocking implements Cloneable {
+public abstract class Blocking implements Cloneable, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 8567980732035963459L;
 
   /** An arraylist of Object arrays containing statistics */           
   protected ArrayList m_statistics = null;
@@ -44,6 +49,15 @@ public abstract class Blocking implements Cloneable {
   public void setIncludeAllDuplicates(boolean b) {
     m_includeAllDuplicates = b;
   }
+
+  /** The System.nanoTime() by which candidate pairs must be produced,
+   * set by buildIndex(Instances, BlockingBudget) and used up by the
+   * getPairs call that follows it; 0 if there is none */
+  protected long m_deadline = 0;
+
+  /** The maximum number of candidate pairs kept in memory while the
+   * index is built, set by buildIndex(Instances, BlockingBudget) */
+  protected int m_maxIndexPairs = Integer.MAX_VALUE;
   
 
   /** Learn the blocking criteria */
@@ -55,17 +69,235 @@ public abstract class Blocking implements Cloneable {
   public abstract void buildIndex(Instances instances) throws Exception;
 
 
+  /** Build the index within the time and memory limits of a budget.
+   * Blockings that generate candidates incrementally stop generating
+   * when the time limit is reached, and the getPairs call that follows
+   * gets only the time that is left; the pairs are then the best found
+   * so far rather than the best overall.  Blockings that keep
+   * candidates while generating them keep no more than the pair and
+   * memory limits allow.
+   * @param instances the instances to index
+   * @param budget the limits on the pairs
+   */
+  public void buildIndex(Instances instances, BlockingBudget budget) throws Exception {
+    m_deadline = budget.deadline();
+    m_maxIndexPairs = budget.maxIndexPairs();
+    try {
+      buildIndex(instances);
+    } finally {
+      m_maxIndexPairs = Integer.MAX_VALUE;
+    }
+  }
+
+
+  /** Has the deadline set by buildIndex(Instances, BlockingBudget) passed? */
+  protected boolean deadlinePassed() {
+    return m_deadline != 0 && System.nanoTime() > m_deadline;
+  }
+
+
   /** Return n most similar pairs
    */
   public abstract InstancePair[] getMostSimilarPairs(int numPairs);
 
 
+  /** Append the n most similar pairs to a pair store, by decreasing
+   * similarity, instead of returning them as objects
+   * @param numPairs the maximum number of pairs
+   * @param store the store the pairs are appended to; pair codes refer
+   * to positions of instances in the indexed data
+   */
+  public void getMostSimilarPairs(int numPairs, PairStore store) throws Exception {
+    throw new Exception(getClass().getName() + " does not support pair stores");
+  }
+
+
+  /** Append the n most similar pairs to a pair buffer, by decreasing
+   * similarity, instead of returning them as objects
+   * @param numPairs the maximum number of pairs
+   * @param buffer the buffer the pairs are appended to; indeces refer
+   * to positions of instances in the indexed data
+   */
+  public void getMostSimilarPairs(int numPairs, PairBuffer buffer) throws Exception {
+    throw new Exception(getClass().getName() + " does not support pair buffers");
+  }
+
+
+  /** Return the most similar pairs that can be produced within a
+   * budget, by decreasing similarity.  The pair and memory limits are
+   * applied; the time limit runs from buildIndex(Instances,
+   * BlockingBudget) if the index was built with the budget, and from
+   * now otherwise.
+   * @param budget the limits on the pairs
+   * @returns the pairs; indeces refer to positions of instances in the
+   * indexed data
+   */
+  public PairBuffer getPairs(BlockingBudget budget) throws Exception {
+    int numPairs = numPairsWithin(budget.maxBufferPairs(), takeDeadline(budget));
+    PairBuffer buffer = new PairBuffer(1024, numPairs);
+    getMostSimilarPairs(numPairs, buffer);
+    return buffer;
+  }
+
+
+  /** Append the most similar pairs that can be produced within a
+   * budget to a pair store, by decreasing similarity.  As the store is
+   * on disk, only the pair and time limits apply to it; the memory
+   * limit still bounds the candidates kept while building the index.
+   * @param budget the limits on the pairs
+   * @param store the store the pairs are appended to; pair codes refer
+   * to positions of instances in the indexed data
+   */
+  public void getPairs(BlockingBudget budget, PairStore store) throws Exception {
+    getMostSimilarPairs(numPairsWithin(budget.maxStorePairs(), takeDeadline(budget)), store);
+  }
+
+
+  /** Get the number of the most similar pairs that can be produced by
+   * a deadline.  By default all candidates are available once the index
+   * is built; blockings that rank pairs lazily stop ranking at the
+   * deadline.
+   * @param maxPairs the maximum number of pairs
+   * @param deadline the System.nanoTime() by which pairs must be produced
+   */
+  protected int numPairsWithin(int maxPairs, long deadline) {
+    return maxPairs;
+  }
+
+
+  /** Get the deadline for producing pairs within a budget: the one set
+   * by buildIndex(Instances, BlockingBudget), which is used up, or one
+   * starting now */
+  protected long takeDeadline(BlockingBudget budget) {
+    long deadline = (m_deadline != 0 ? m_deadline : budget.deadline());
+    m_deadline = 0;
+    return deadline;
+  }
+
+
   public static Blocking forName(String blockingName, String[] options) throws Exception {
     return (Blocking)Utils.forName(Blocking.class,
                                   blockingName,
                                   options);
   }
 
+  /** Convert blocked pair codes into InstancePairs
+   * @param instances the instances the pair codes refer to
+   * @param pairCodes pair codes as produced by BlockingMap
+   * @param values values to assign to the pairs; may be null
+   * @param numPairs the maximum number of pairs to return
+   * @returns the first numPairs pairs
+   */
+  protected static InstancePair[] pairsFromCodes(Instances instances, int[] pairCodes,
+                                                 double[] values, int numPairs) {
+    numPairs = (numPairs < pairCodes.length ? numPairs : pairCodes.length);
+    InstancePair[] pairs = new InstancePair[numPairs];
+    for (int i = 0; i < numPairs; i++) {
+      int pairCode = pairCodes[i];
+      int idx1 = (int) ((1 + Math.sqrt(1.0 + 8.0 * pairCode)) / 2);
+      while (idx1 * (idx1 - 1) / 2 > pairCode) idx1--;
+      while ((idx1 + 1) * idx1 / 2 <= pairCode) idx1++;
+      int idx2 = pairCode - idx1 * (idx1 - 1) / 2;
+      Instance instance1 = instances.instance(idx1);
+      Instance instance2 = instances.instance(idx2);
+      pairs[i] = new InstancePair(instance1, instance2,
+                                  instance1.classValue() == instance2.classValue(),
+                                  (values == null ? 0 : values[i]));
+    }
+    return pairs;
+  }
+
+
+  /** Append blocked pair codes to a pair store
+   * @param instances the instances the pair codes refer to
+   * @param pairCodes pair codes as produced by BlockingMap
+   * @param values values to assign to the pairs; may be null
+   * @param numPairs the maximum number of pairs to append
+   * @param store the store the pairs are appended to
+   */
+  protected static void appendPairCodes(Instances instances, int[] pairCodes, double[] values,
+                                        int numPairs, PairStore store) throws Exception {
+    numPairs = (numPairs < pairCodes.length ? numPairs : pairCodes.length);
+    for (int i = 0; i < numPairs; i++) {
+      long pairCode = pairCodes[i];
+      Instance instance1 = instances.instance(PairStore.firstIndex(pairCode));
+      Instance instance2 = instances.instance(PairStore.secondIndex(pairCode));
+      store.append(pairCode, (float) (values == null ? 0 : values[i]),
+                   (instance1.classValue() == instance2.classValue() ? PairStore.FLAG_POSITIVE : 0));
+    }
+  }
+
+
+  /** Append blocked pair codes to a pair buffer
+   * @param instances the instances the pair codes refer to
+   * @param pairCodes pair codes as produced by BlockingMap
+   * @param values values to assign to the pairs; may be null
+   * @param numPairs the maximum number of pairs to append
+   * @param buffer the buffer the pairs are appended to
+   */
+  protected static void appendPairCodes(Instances instances, int[] pairCodes, double[] values,
+                                        int numPairs, PairBuffer buffer) {
+    numPairs = (numPairs < pairCodes.length ? numPairs : pairCodes.length);
+    for (int i = 0; i < numPairs; i++) {
+      long pairCode = pairCodes[i];
+      buffer.add(instances, PairStore.firstIndex(pairCode), PairStore.secondIndex(pairCode),
+                 (float) (values == null ? 0 : values[i]));
+    }
+  }
+
+
+  /** Add an instance to the index without rebuilding it.  The index
+   * may have been built by buildIndex or be empty.
+   * @param instance the instance to add
+   */
+  public void add(Instance instance) throws Exception {
+    throw new Exception(getClass().getName() + " does not support incremental indexing");
+  }
+
+
+  /** Remove a previously indexed instance from the index
+   * @param instance the instance to remove
+   */
+  public void remove(Instance instance) throws Exception {
+    throw new Exception(getClass().getName() + " does not support incremental indexing");
+  }
+
+
+  /** Return the indexed instances most likely to be duplicates of a
+   * given instance, which does not need to be indexed itself
+   * @param instance the query instance
+   * @param k the maximum number of candidates to return
+   * @returns pairs of the query instance (instance1) and its candidates
+   * (instance2), by decreasing value
+   */
+  public InstancePair[] candidates(Instance instance, int k) throws Exception {
+    throw new Exception(getClass().getName() + " does not support incremental indexing");
+  }
+
+
+  /** Are the two instances known to be in the same class? */
+  protected static boolean sameClass(Instance instance1, Instance instance2) {
+    if (instance1.dataset() == null || instance1.classIndex() < 0
+        || instance2.dataset() == null || instance2.classIndex() < 0
+        || instance1.classIsMissing() || instance2.classIsMissing()) {
+      return false;
+    }
+    return instance1.classValue() == instance2.classValue();
+  }
+
+
+  /** Return the first k pairs of a list by decreasing value */
+  protected static InstancePair[] topPairs(ArrayList pairList, int k) {
+    InstancePair[] pairs = (InstancePair[]) pairList.toArray(new InstancePair[pairList.size()]);
+    Arrays.sort(pairs, Collections.reverseOrder());
+    if (k < pairs.length) {
+      InstancePair[] topPairs = new InstancePair[k];
+      System.arraycopy(pairs, 0, topPairs, 0, k);
+      pairs = topPairs;
+    }
+    return pairs;
+  }
+
   /** Return the list of statistics collected during blocking
    * @returns collected statistics
    */
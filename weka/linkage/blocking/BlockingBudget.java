@@ -0,0 +1,120 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BlockingBudget.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage.blocking;
+
+import java.io.Serializable;
+
+import weka.linkage.PairBuffer;
+
+/** Limits on the candidate pairs requested from a blocking with
+ * Blocking.getPairs(): a maximum number of pairs, a maximum wall time
+ * for producing them and a ceiling on the memory they take.  Unlike a
+ * multiple of the number of true duplicates, none of the limits
+ * depends on the class labels.  A limit of 0 is no limit.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class BlockingBudget implements Serializable {
+
+  /** Maximum number of pairs */
+  protected int m_maxPairs = 0;
+
+  /** Maximum time for producing the pairs, in milliseconds */
+  protected long m_maxMillis = 0;
+
+  /** Maximum memory taken by the pairs, in bytes */
+  protected long m_maxBytes = 0;
+
+
+  /** A budget without limits */
+  public BlockingBudget() {
+  }
+
+  /**
+   * @param maxPairs the maximum number of pairs, or 0
+   * @param maxMillis the maximum time in milliseconds, or 0
+   * @param maxBytes the maximum memory in bytes, or 0
+   */
+  public BlockingBudget(int maxPairs, long maxMillis, long maxBytes) {
+    m_maxPairs = maxPairs;
+    m_maxMillis = maxMillis;
+    m_maxBytes = maxBytes;
+  }
+
+
+  /** Set/get the maximum number of pairs; 0 for no limit */
+  public void setMaxPairs(int maxPairs) { m_maxPairs = maxPairs; }
+  public int getMaxPairs() { return m_maxPairs; }
+
+  /** Set/get the maximum time in milliseconds; 0 for no limit */
+  public void setMaxMillis(long maxMillis) { m_maxMillis = maxMillis; }
+  public long getMaxMillis() { return m_maxMillis; }
+
+  /** Set/get the maximum memory in bytes; 0 for no limit */
+  public void setMaxBytes(long maxBytes) { m_maxBytes = maxBytes; }
+  public long getMaxBytes() { return m_maxBytes; }
+
+
+  /** Get the number of pairs allowed by the pair and memory limits
+   * @param bytesPerPair the memory taken by a pair
+   */
+  public int maxPairs(int bytesPerPair) {
+    long maxPairs = (m_maxPairs > 0 ? m_maxPairs : Integer.MAX_VALUE);
+    if (m_maxBytes > 0) {
+      maxPairs = Math.min(maxPairs, m_maxBytes / bytesPerPair);
+    }
+    return (int) maxPairs;
+  }
+
+  /** Get the number of pairs allowed in a PairBuffer */
+  public int maxBufferPairs() {
+    return maxPairs(PairBuffer.BYTES_PER_PAIR);
+  }
+
+  /** Get the number of candidate pairs a blocking may keep in memory
+   * while building its index */
+  public int maxIndexPairs() {
+    return maxPairs(PairHeap.BYTES_PER_PAIR);
+  }
+
+  /** Get the number of pairs allowed in a PairStore; the store is on
+   * disk, so the memory limit does not apply */
+  public int maxStorePairs() {
+    return (m_maxPairs > 0 ? m_maxPairs : Integer.MAX_VALUE);
+  }
+
+
+  /** Get the System.nanoTime() by which pairs started now must be
+   * produced; Long.MAX_VALUE if time is not limited */
+  public long deadline() {
+    return (m_maxMillis > 0 ? System.nanoTime() + m_maxMillis * 1000000L : Long.MAX_VALUE);
+  }
+
+
+  public String toString() {
+    return "maxPairs=" + (m_maxPairs > 0 ? "" + m_maxPairs : "none")
+      + " maxMillis=" + (m_maxMillis > 0 ? "" + m_maxMillis : "none")
+      + " maxBytes=" + (m_maxBytes > 0 ? "" + m_maxBytes : "none");
+  }
+}
@@ -26,6 +26,7 @@ package weka.linkage.blocking;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.*;
 import java.text.SimpleDateFormat;
 
 import weka.linkage.*;
@@ -43,6 +44,9 @@ import weka.linkage.blocking.learn.*;
  */
 public class LearnableBlocking extends Blocking implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 9061255945893559366L;
+
   /** Should sampling be used? */
   protected boolean m_sample = false; 
   
@@ -50,10 +54,16 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
   protected BlockingSampler m_sampler = new BlockingSamplerByClass(); 
   
   /** Currently blocked pairs */
-  protected int[]  m_blockedPairs = null;
+  protected transient int[]  m_blockedPairs = null;
+
+  /** Weights of the blocked pairs if meta-blocking was used */
+  protected transient double[] m_blockedPairWeights = null;
+
+  /** Meta-blocking applied to the blocks of all learned blockers; null if none */
+  protected MetaBlocking m_metaBlocking = null;
 
   /** Instances */
-  protected Instances m_instances; 
+  protected transient Instances m_instances; 
   
   /** Number of Instances indeeded for generating pairs */
   protected int m_numInstances;
@@ -85,6 +95,15 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
   protected double m_trainTime = 0;
   protected double m_testTimeStart = 0;
 
+  /** Incremental index: the instances in every block of the learned
+   * blockers, keyed by the block key combined with the blocker's
+   * position.  Built from the instances of buildIndex on the first
+   * add, remove or candidates call, so batch blocking does not pay for it */
+  protected transient HashMap<Long,LinkedHashSet<Instance>> m_blockIndex = null;
+
+  /** Keys of the blocks every incrementally indexed instance is in */
+  protected transient HashMap<Instance,long[]> m_instanceBlockKeys = null;
+
 
   /** Construct a vector space from a given set of examples
    * @param strings a list of strings from which the inverted index is
@@ -97,6 +116,18 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
   }
 
 
+  /** Lowercase the string values of an instance, replacing every run
+   * of non-alphanumeric characters with a single space.  The normalized
+   * fields are kept in RecordText, so blockers do not tokenize them again */
+  public static void cleanInstance(Instance instance) {
+    for (int j = 0; j < instance.numAttributes(); j++) {
+      if (j != instance.classIndex()) {
+        RecordText.normalize(instance, j);
+      }
+    } 
+  }
+
+
   /** Learn the set of blockers to use */ 
   public void learnBlocking(Instances data) {
     System.out.println("\n" + BasicDeduper.getTimestamp()
@@ -110,30 +141,11 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
 
     for (int i = 0; i < data.numInstances(); i++) {
       Instance instance = data.instance(i);
-      for (int j = 0; j < data.numAttributes(); j++) {
-        if (j != data.classIndex()) {
-          String value = instance.stringValue(j);
-          value = value.toLowerCase();
-          char[] val = value.toCharArray();
-          StringBuffer newVal = new StringBuffer();
-
-          boolean lastSpace = false; 
-          for (int k = 0; k < val.length; k++) {
-            if (Character.isLetterOrDigit(val[k])) {
-              newVal.append(val[k]);
-              lastSpace = false; 
-            } else if (!lastSpace) {
-              newVal.append(' ');
-              lastSpace = true; 
-            } 
-          }
-
-          String cleanedVal = newVal.toString();
-          instance.setValue(j,cleanedVal.trim()); 
-        }
-      } 
+      cleanInstance(instance);
       instance.setWeight(i);
     }
+    // drop the raw values that cleaning replaced
+    RecordText.compactStringAttributes(data);
     
     m_numTotalPairsTrain = (int) (0.5 * data.numInstances() *
                                   (data.numInstances() -1));
@@ -164,37 +176,23 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
     resetStatistics();
     
     int[] goodPairs = getRealPairs(instances);
-    boolean[] blockedPairs = new boolean[m_numTotalPairsTest];
+    // the blocked pairs are kept as a set rather than a flag for every
+    // potential pair, and no more of them than the budget allows
+    LongHashSet blockedPairs = new LongHashSet();
 
     //    HashSet<Integer> blockedPairSet = new HashSet<Integer>();
     
 
     for (int i = 0; i < instances.numInstances(); i++) {
       Instance instance = instances.instance(i);
-      for (int j = 0; j < instances.numAttributes(); j++) {
-        if (j != instances.classIndex()) {
-          String value = instance.stringValue(j);
-          value = value.toLowerCase();
-          char[] val = value.toCharArray();
-          StringBuffer newVal = new StringBuffer();
-
-          boolean lastSpace = false; 
-          for (int k = 0; k < val.length; k++) {
-            if (Character.isLetterOrDigit(val[k])) {
-              newVal.append(val[k]);
-              lastSpace = false; 
-            } else if (!lastSpace) {
-              newVal.append(' ');
-              lastSpace = true; 
-            } 
-          }
-
-          String cleanedVal = newVal.toString();
-          instance.setValue(j,cleanedVal.trim()); 
-        }
-      } 
+      cleanInstance(instance);
       instance.setWeight(i);
     }
+    RecordText.compactStringAttributes(instances);
+
+    // the incremental index is rebuilt from these instances when used
+    m_blockIndex = null;
+    m_instanceBlockKeys = null;
 
     m_numTruePairs = goodPairs.length;
     System.out.println("\n" + BasicDeduper.getTimestamp()
@@ -209,18 +207,34 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
       blocker.resetBlocker();
     }
 
-    // go through blockers one by one
+    if (m_metaBlocking != null) {
+      m_metaBlocking.reset();
+    }
+
+    // go through blockers one by one, in the order they were learned;
+    // past the deadline or the pair limit of a budget, the remaining
+    // blockers are skipped, so the pairs are those of the first blockers
     for (int i = 0; i < m_learnedBlockers.size(); i++) {
+      if (i > 0 && (deadlinePassed() || blockedPairs.size() >= m_maxIndexPairs)) {
+        System.out.println("Budget reached; skipping the last "
+                           + (m_learnedBlockers.size() - i) + " blockers");
+        break;
+      }
       Blocker blocker = (Blocker) m_learnedBlockers.get(i);
       blocker.blockData(instances);
       int[] newBlockedPairs = blocker.getPairsArray();
+      if (m_metaBlocking != null) {
+        m_metaBlocking.addBlocks(blocker.getBlockingMap());
+      }
 
 //       int numOldPairs = blockedPairSet.size();
 //      blockedPairSet.addAll(newBlockedPairSet);
       int numUnseenPairs = 0;
       for (int newPair : newBlockedPairs) {
-        if (blockedPairs[newPair] == false) {
-          blockedPairs[newPair] = true;
+        if (blockedPairs.size() >= m_maxIndexPairs) {
+          break;
+        }
+        if (blockedPairs.add(newPair)) {
           numUnseenPairs++;
           m_numTotalPairs++;
 
@@ -250,7 +264,7 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
 
     m_numGoodPairs = 0; 
     for (int pairIdx : goodPairs) {
-      if (blockedPairs[pairIdx]) { 
+      if (blockedPairs.contains(pairIdx)) { 
         m_numGoodPairs++;
       } else {
        //  int idx1 = 1+(int)Math.floor((-1.0+Math.sqrt(1.0+8.0*pairIdx))/2.0);
@@ -285,10 +299,33 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
         
       } 
     } 
+
+    if (m_metaBlocking != null) {
+      // prune the union of all blocks, keeping the heaviest pairs first
+      m_metaBlocking.prune(m_numInstances);
+      m_blockedPairs = m_metaBlocking.getPairs();
+      m_blockedPairWeights = m_metaBlocking.getWeights();
+      m_numTotalPairs = m_blockedPairs.length;
+      m_numGoodPairs = 0;
+      for (int pairIdx : m_blockedPairs) {
+        if (Arrays.binarySearch(goodPairs, pairIdx) >= 0) {
+          m_numGoodPairs++;
+        }
+      }
+    } else {
+      long[] pairIdxs = blockedPairs.toArray();
+      m_blockedPairs = new int[pairIdxs.length];
+      m_blockedPairWeights = null;
+      for (int j = 0; j < pairIdxs.length; j++) {
+        m_blockedPairs[j] = (int) pairIdxs[j];
+      }
+      Arrays.sort(m_blockedPairs);
+    }
+    blockedPairs = null; 
     accumulateStatistics();
     
-    // fixing a mem leak : force free the blockers
-    m_learnedBlockers = null;
+    // the learned blockers are kept so that the blocking can be saved
+    // and reused; their blocking maps have been freed above
 
     // print out errors
     //       for (int pairIdx : goodPairs) {
@@ -471,21 +508,20 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
   /** Return n most similar pairs
    */
   public InstancePair[] getMostSimilarPairs(int numPairs) {
-    int i = 0;
-    int numBlockedPairs = m_blockedPairs.length;
-    InstancePair [] pairs = new InstancePair[numPairs]; 
-    while (i < numBlockedPairs && i < numPairs) {
-      int pairCode = m_blockedPairs[i]; 
-      Integer idx1 = new Integer(pairCode / m_numInstances);
-      Integer idx2 = new Integer(pairCode % m_numInstances);
-      Instance instance1 = m_instances.instance(idx1);
-      Instance instance2 = m_instances.instance(idx2);
-      InstancePair pair = new InstancePair(instance1, instance2, true, 0);
-      pairs[i] = pair;
-      ++i;
-    }
-    return pairs; 
+    return pairsFromCodes(m_instances, m_blockedPairs, m_blockedPairWeights, numPairs);
   } 
+
+
+  /** Append the n most similar pairs to a pair store */
+  public void getMostSimilarPairs(int numPairs, PairStore store) throws Exception {
+    appendPairCodes(m_instances, m_blockedPairs, m_blockedPairWeights, numPairs, store);
+  }
+
+
+  /** Append the n most similar pairs to a pair buffer */
+  public void getMostSimilarPairs(int numPairs, PairBuffer buffer) {
+    appendPairCodes(m_instances, m_blockedPairs, m_blockedPairWeights, numPairs, buffer);
+  }
   
 
   /** Reset the current statistics */
@@ -563,25 +599,16 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
    * @returns the number of true same-class pairs
    */
   protected int numTruePairs(Instances instances) {
-    int numTruePairs = 0;
-    HashMap<Double,Integer> classCountMap = new HashMap<Double,Integer>();
-
+    DoubleIntHashMap classCounts = new DoubleIntHashMap();
     for (int i = 0; i < instances.numInstances(); i++) {
-      Instance instance = instances.instance(i);
-      Double classValue = new Double(instance.classValue());
-      if (classCountMap.containsKey(classValue)) {
-        Integer counts = (Integer) classCountMap.get(classValue);
-        classCountMap.put(classValue, new Integer(counts.intValue() + 1));
-      } else {
-        classCountMap.put(classValue, new Integer(1));
-      }
+      classCounts.increment(instances.instance(i).classValue(), 1);
     }
 
     // calculate the number of pairs
-    for (Integer counts : classCountMap.values()) { 
+    int numTruePairs = 0;
+    for (int counts : classCounts.values()) {
       numTruePairs += counts * (counts - 1) / 2;
     }
-
     return numTruePairs;
   }
 
@@ -596,21 +623,169 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
         System.err.println("Instance " + instance + " has missing class!!!");
         continue;
       }
-      Double classValue = new Double(instance.classValue());
-      realBlockingMap.putInstanceIdx(i, classValue);
+      realBlockingMap.putInstanceIdx(i, Double.doubleToLongBits(instance.classValue()));
     }
     
     realBlockingMap.createPotentialPairs(instances.numInstances());
-    HashSet<Integer> realPairSet = realBlockingMap.getPairs();
+    return realBlockingMap.getSortedPairs();
+  }
 
-    int[] pairs = new int[realPairSet.size()];
-    int i = 0; 
-    for (int pairIdx : realPairSet) {
-      pairs[i++] = pairIdx;
+
+  /** Return the keys of the blocks of an instance for all learned
+   * blockers that can block a single instance; canopy blockers, whose
+   * blocks depend on the whole dataset, are skipped */
+  protected long[] getIncrementalBlockKeys(Instance instance) {
+    long[] keys = new long[16];
+    int numKeys = 0;
+    for (int i = 0; i < m_learnedBlockers.size(); i++) {
+      Blocker blocker = (Blocker) m_learnedBlockers.get(i);
+      if (!blocker.isIncremental()) {
+        continue;
+      }
+      long[] blocks = blocker.getBlocks(instance);
+      if (numKeys + blocks.length > keys.length) {
+        keys = Arrays.copyOf(keys, Math.max(2 * keys.length, numKeys + blocks.length));
+      }
+      for (long blockKey : blocks) {
+        keys[numKeys++] = Blocker.combineKeys(i, blockKey);
+      }
+    }
+    return Arrays.copyOf(keys, numKeys);
+  }
+
+
+  /** Build the incremental index if it has not been built since the
+   * last buildIndex, starting from the instances indexed there */
+  protected void buildIncrementalIndex() {
+    if (m_blockIndex != null) {
+      return;
+    }
+    m_blockIndex = new HashMap<Long,LinkedHashSet<Instance>>();
+    m_instanceBlockKeys = new HashMap<Instance,long[]>();
+    if (m_instances != null) {
+      for (int i = 0; i < m_instances.numInstances(); i++) {
+        indexInstance(m_instances.instance(i));
+      }
+    }
+  }
+
+
+  /** Add an instance to the incremental index.  Its string values are
+   * cleaned in place, as in buildIndex.
+   * @param instance the instance to add
+   */
+  public void add(Instance instance) throws Exception {
+    if (m_learnedBlockers == null) {
+      throw new Exception("Blocking must be learned before instances can be added");
+    }
+    buildIncrementalIndex();
+    if (m_instanceBlockKeys.containsKey(instance)) {
+      return;
     }
-    Arrays.sort(pairs);
+    
+    cleanInstance(instance);
+    indexInstance(instance);
+  }
+
+
+  /** Put a cleaned instance into the blocks of the incremental index */
+  protected void indexInstance(Instance instance) {
+    long[] keys = getIncrementalBlockKeys(instance);
+    m_instanceBlockKeys.put(instance, keys);
+    for (long key : keys) {
+      LinkedHashSet<Instance> block = m_blockIndex.get(key);
+      if (block == null) {
+        block = new LinkedHashSet<Instance>();
+        m_blockIndex.put(key, block);
+      }
+      block.add(instance);
+    }
+  }
 
-    return pairs; 
+
+  /** Remove an instance from the incremental index
+   * @param instance the instance to remove
+   */
+  public void remove(Instance instance) throws Exception {
+    if (m_learnedBlockers == null) {
+      return;
+    }
+    buildIncrementalIndex();
+    long[] keys = m_instanceBlockKeys.remove(instance);
+    if (keys == null) {
+      return;
+    }
+    for (long key : keys) {
+      LinkedHashSet<Instance> block = m_blockIndex.get(key);
+      block.remove(instance);
+      if (block.isEmpty()) {
+        m_blockIndex.remove(key);
+      }
+    }
+  }
+
+
+  /** Copy a query instance onto a header of its own and clean the copy.
+   * Cleaning sets string values, which would otherwise be added to the
+   * attributes of the indexed instances. */
+  protected Instance cleanedQuery(Instance instance) {
+    Instances header = instance.dataset().stringFreeStructure();
+    Instance query = (Instance) instance.copy();
+    query.setDataset(header);
+    for (int j = 0; j < instance.numAttributes(); j++) {
+      if (instance.attribute(j).isString()) {
+        query.setValue(j, instance.stringValue(j));
+      }
+    }
+    cleanInstance(query);
+    return query;
+  }
+
+
+  /** Return the indexed instances that share blocks with a given one
+   * @param instance the query instance; it does not need to be indexed
+   * and is not modified
+   * @param k the maximum number of candidates to return
+   * @returns pairs of the query instance and its candidates, valued
+   * by the number of blocks they share
+   */
+  public InstancePair[] candidates(Instance instance, int k) throws Exception {
+    if (m_learnedBlockers == null) {
+      throw new Exception("Blocking must be learned before candidates can be found");
+    }
+    buildIncrementalIndex();
+
+    Instance query = cleanedQuery(instance);
+    long[] keys = getIncrementalBlockKeys(query);
+    RecordText.forget(query);
+
+    // count the blocks shared with every co-blocked instance
+    HashMap<Instance,Weight> commonBlocks = new HashMap<Instance,Weight>();
+    for (long key : keys) {
+      LinkedHashSet<Instance> block = m_blockIndex.get(key);
+      if (block == null) {
+        continue;
+      }
+      for (Instance candidate : block) {
+        if (candidate == instance) {
+          continue;
+        }
+        Weight count = commonBlocks.get(candidate);
+        if (count == null) {
+          count = new Weight();
+          commonBlocks.put(candidate, count);
+        }
+        count.increment();
+      }
+    }
+
+    ArrayList pairList = new ArrayList(commonBlocks.size());
+    for (Map.Entry<Instance,Weight> entry : commonBlocks.entrySet()) {
+      Instance candidate = entry.getKey();
+      pairList.add(new InstancePair(instance, candidate, sameClass(instance, candidate),
+                                    entry.getValue().getValue()));
+    }
+    return topPairs(pairList, k);
   }
 
 
@@ -620,7 +795,11 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
 
   /** Set/get the baseline blockers */
   public void setBlockers(Blocker[] blockers) { m_blockers = blockers; } 
-  public Blocker[] getBlockers() { return m_blockers; } 
+  public Blocker[] getBlockers() { return m_blockers; }
+
+  /** Get the learned blockers (disjuncts of the learned DNF); null if
+   *  blocking has not been learned */
+  public ArrayList getLearnedBlockers() { return m_learnedBlockers; }
 
   /** Turn sampling on/off */
   public boolean getSample() { return m_sample; }
@@ -630,6 +809,10 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
   public BlockingSampler getSampler() { return m_sampler; }
   public void setSampler(BlockingSampler s) { m_sampler = s; }
 
+  /** Set/get the meta-blocking stage; null to disable */
+  public void setMetaBlocking(MetaBlocking m) { m_metaBlocking = m; }
+  public MetaBlocking getMetaBlocking() { return m_metaBlocking; }
+
 
   /**
    * Gets the current settings of the Blocker
@@ -678,6 +861,14 @@ public class LearnableBlocking extends Blocking implements OptionHandler, Serial
       }
     }
 
+    if (m_metaBlocking != null) {
+      options[current++] = "-MB";
+      String[] metaOptions = m_metaBlocking.getOptions();
+      for (int i = 0; i < metaOptions.length; i++) {
+        options[current++] = metaOptions[i];
+      }
+    }
+
     while (current < options.length) {
       options[current++] = "";
     }
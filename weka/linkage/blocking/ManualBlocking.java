@@ -26,6 +26,7 @@ package weka.linkage.blocking;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.*;
 import java.text.SimpleDateFormat;
 
 import weka.linkage.*;
@@ -43,11 +44,20 @@ import weka.linkage.blocking.learn.*;
  */
 public class ManualBlocking extends Blocking implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 1916567283617435950L;
+
   /** Currently blocked pairs */
-  protected int[]  m_blockedPairs = null;
+  protected transient int[]  m_blockedPairs = null;
+
+  /** Weights of the blocked pairs if meta-blocking was used */
+  protected transient double[] m_blockedPairWeights = null;
+
+  /** Meta-blocking applied to the blocks of the blockers; null if none */
+  protected MetaBlocking m_metaBlocking = null;
 
   /** Instances */
-  protected Instances m_instances; 
+  protected transient Instances m_instances; 
   
   /** Number of Instances indeeded for generating pairs */
   protected int m_numInstances;
@@ -97,10 +107,15 @@ public class ManualBlocking extends Blocking implements OptionHandler, Serializa
   }
 
 
-  /** Given a list of strings, build the vector space */
+  /** Given a list of strings, build the vector space.  The blockers
+   * are applied together in a single pass, so unlike LearnableBlocking
+   * there is no point at which candidate generation can stop at the
+   * deadline of a budget; once it is done, all pairs are available.
+   */
   public void buildIndex(Instances instances) throws Exception {
     m_instances = instances;
     m_blockedPairs = new int[0]; 
+    m_blockedPairWeights = null; 
     m_numInstances = instances.numInstances();
     m_numTotalPairsTest = instances.numInstances() * (instances.numInstances() - 1) / 2;
     resetStatistics();
@@ -125,24 +140,22 @@ public class ManualBlocking extends Blocking implements OptionHandler, Serializa
       m_blockers[i].setAttribute((int)m_attrs[i]); 
     }
 
+    Blocker blocker; 
     if (m_blockers.length > 1) { 
-      ComboBlocker blocker = new ComboBlocker(m_blockers);
+      blocker = new ComboBlocker(m_blockers);
 
       blocker.blockData(instances);
-      HashSet<Integer> blockedPairSet = blocker.getPairs();
-      int numBlockedPairs = blockedPairSet.size();
-      
+      m_blockedPairs = blocker.getBlockingMap().getSortedPairs();
       for (int j = 0; j < goodPairs.length; j++) {
-        if (blockedPairSet.contains(goodPairs[j])) {
+        if (Arrays.binarySearch(m_blockedPairs, goodPairs[j]) >= 0) {
           m_numGoodPairs++;
         }
       }
     
-      m_numTotalPairs = blockedPairSet.size();
+      m_numTotalPairs = m_blockedPairs.length;
       m_numCurrentBlockers = 1; 
-      accumulateStatistics();
     } else {
-      Blocker blocker = m_blockers[0];
+      blocker = m_blockers[0];
 
       blocker.blockData(instances);
 
@@ -158,32 +171,45 @@ public class ManualBlocking extends Blocking implements OptionHandler, Serializa
           m_numGoodPairs++;
         }
       } 
-      accumulateStatistics();
-      
+      m_blockedPairs = blockedPairs;
     } 
 
-
+    if (m_metaBlocking != null) {
+      // prune the blocks, keeping the heaviest pairs first
+      m_metaBlocking.reset();
+      m_metaBlocking.addBlocks(blocker.getBlockingMap());
+      m_metaBlocking.prune(m_numInstances);
+      m_blockedPairs = m_metaBlocking.getPairs();
+      m_blockedPairWeights = m_metaBlocking.getWeights();
+      m_numTotalPairs = m_blockedPairs.length;
+      m_numGoodPairs = 0;
+      for (int pairCode : m_blockedPairs) {
+        if (Arrays.binarySearch(goodPairs, pairCode) >= 0) {
+          m_numGoodPairs++;
+        }
+      }
+    }
+    accumulateStatistics();
   }
 
 
   /** Return n most similar pairs
    */
   public InstancePair[] getMostSimilarPairs(int numPairs) {
-    int i = 0;
-    int numBlockedPairs = m_blockedPairs.length;
-    InstancePair [] pairs = new InstancePair[numPairs]; 
-    while (i < numBlockedPairs && i < numPairs) {
-      int pairCode = m_blockedPairs[i]; 
-      Integer idx1 = new Integer(pairCode / m_numInstances);
-      Integer idx2 = new Integer(pairCode % m_numInstances);
-      Instance instance1 = m_instances.instance(idx1);
-      Instance instance2 = m_instances.instance(idx2);
-      InstancePair pair = new InstancePair(instance1, instance2, true, 0);
-      pairs[i] = pair;
-      ++i;
-    }
-    return pairs; 
+    return pairsFromCodes(m_instances, m_blockedPairs, m_blockedPairWeights, numPairs);
   } 
+
+
+  /** Append the n most similar pairs to a pair store */
+  public void getMostSimilarPairs(int numPairs, PairStore store) throws Exception {
+    appendPairCodes(m_instances, m_blockedPairs, m_blockedPairWeights, numPairs, store);
+  }
+
+
+  /** Append the n most similar pairs to a pair buffer */
+  public void getMostSimilarPairs(int numPairs, PairBuffer buffer) {
+    appendPairCodes(m_instances, m_blockedPairs, m_blockedPairWeights, numPairs, buffer);
+  }
   
 
   /** Reset the current statistics */
@@ -261,25 +287,16 @@ public class ManualBlocking extends Blocking implements OptionHandler, Serializa
    * @returns the number of true same-class pairs
    */
   protected int numTruePairs(Instances instances) {
-    int numTruePairs = 0;
-    HashMap<Double,Integer> classCountMap = new HashMap<Double,Integer>();
-
+    DoubleIntHashMap classCounts = new DoubleIntHashMap();
     for (int i = 0; i < instances.numInstances(); i++) {
-      Instance instance = instances.instance(i);
-      Double classValue = new Double(instance.classValue());
-      if (classCountMap.containsKey(classValue)) {
-        Integer counts = (Integer) classCountMap.get(classValue);
-        classCountMap.put(classValue, new Integer(counts.intValue() + 1));
-      } else {
-        classCountMap.put(classValue, new Integer(1));
-      }
+      classCounts.increment(instances.instance(i).classValue(), 1);
     }
 
     // calculate the number of pairs
-    for (Integer counts : classCountMap.values()) { 
+    int numTruePairs = 0;
+    for (int counts : classCounts.values()) {
       numTruePairs += counts * (counts - 1) / 2;
     }
-
     return numTruePairs;
   }
 
@@ -293,20 +310,11 @@ public class ManualBlocking extends Blocking implements OptionHandler, Serializa
         System.err.println("Instance " + instance + " has missing class!!!");
         continue;
       }
-      Double classValue = new Double(instance.classValue());
-      realBlockingMap.putInstanceIdx(i, classValue);
+      realBlockingMap.putInstanceIdx(i, Double.doubleToLongBits(instance.classValue()));
     }
     realBlockingMap.createPotentialPairs(instances.numInstances());
 
-    HashSet<Integer> realPairSet = realBlockingMap.getPairs();
-    int[] pairs = new int[realPairSet.size()];
-    int i = 0; 
-    for (int pairIdx : realPairSet) {
-      pairs[i++] = pairIdx;
-    }
-    Arrays.sort(pairs);
-
-    return pairs;
+    return realBlockingMap.getSortedPairs();
   }
 
 
@@ -314,6 +322,10 @@ public class ManualBlocking extends Blocking implements OptionHandler, Serializa
   public void setBlockers(Blocker[] blockers) { m_blockers = blockers; } 
   public Blocker[] getBlockers() { return m_blockers; }
 
+  /** Set/get the meta-blocking stage; null to disable */
+  public void setMetaBlocking(MetaBlocking m) { m_metaBlocking = m; }
+  public MetaBlocking getMetaBlocking() { return m_metaBlocking; }
+
 
   public String getAttributeIndeces() {
     StringBuffer buf = new StringBuffer();
@@ -380,6 +392,14 @@ public class ManualBlocking extends Blocking implements OptionHandler, Serializa
       }
     }
 
+    if (m_metaBlocking != null) {
+      options[current++] = "-MB";
+      String[] metaOptions = m_metaBlocking.getOptions();
+      for (int i = 0; i < metaOptions.length; i++) {
+        options[current++] = metaOptions[i];
+      }
+    }
+
     while (current < options.length) {
       options[current++] = "";
     }
@@ -0,0 +1,541 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MetaBlocking.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+
+package weka.linkage.blocking;
+
+import java.util.*;
+import java.io.Serializable;
+import weka.core.*;
+
+import weka.linkage.blocking.learn.BlockingMap;
+
+/**
+ * Post-processes a collection of blocks produced by one or more
+ * blockers.  Oversized blocks are purged first; the remaining blocks
+ * define a blocking graph where records are nodes and every pair of
+ * records sharing a block is an edge.  Edges are weighted by the
+ * co-occurrence of the two records in blocks, and pruned either by a
+ * weight threshold or by keeping the top-k edges of every node.  Each
+ * retained pair is emitted exactly once, in the order of decreasing
+ * weight.
+ *
+ * @author Mikhail Bilenko
+ */
+public class MetaBlocking implements OptionHandler, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 635379658310292778L;
+
+  /** Edge weighting schemes */
+  public static final int WEIGHTING_CBS = 1;
+  public static final int WEIGHTING_JACCARD = 2;
+  public static final int WEIGHTING_ECBS = 4;
+  public static final Tag[] TAGS_WEIGHTING = {
+    new Tag(WEIGHTING_CBS, "common blocks"),
+    new Tag(WEIGHTING_JACCARD, "Jaccard of block sets"),
+    new Tag(WEIGHTING_ECBS, "common blocks scaled by block-set IDF")
+      };
+  /** The edge weighting scheme, by default Jaccard */
+  protected int m_weighting = WEIGHTING_JACCARD;
+
+  /** Edge pruning schemes */
+  public static final int PRUNING_WEIGHT = 1;
+  public static final int PRUNING_TOPK = 2;
+  public static final Tag[] TAGS_PRUNING = {
+    new Tag(PRUNING_WEIGHT, "weight threshold"),
+    new Tag(PRUNING_TOPK, "top-k edges per node")
+      };
+  /** The edge pruning scheme, by default a weight threshold */
+  protected int m_pruning = PRUNING_WEIGHT;
+
+  /** Blocks with more records than this are purged (0 to disable) */
+  protected int m_maxBlockSize = 0;
+
+  /** Blocks containing more than this fraction of all records are purged */
+  protected double m_maxBlockFraction = 0.1;
+
+  /** Minimum edge weight; if not positive, the mean edge weight is used */
+  protected double m_weightThreshold = 0;
+
+  /** Number of edges kept for every node; if not positive, the average
+   * number of blocks per record is used */
+  protected int m_k = 0;
+
+  /** The block collection: block b holds
+   *  m_members[m_offsets[b] .. m_offsets[b+1]-1] */
+  protected transient int[] m_offsets = null;
+  protected transient int[] m_members = null;
+  protected int m_numBlocks = 0;
+  protected int m_numMembers = 0;
+
+  /** Retained pair codes and their weights, by decreasing weight */
+  protected transient int[] m_pairs = null;
+  protected transient double[] m_weights = null;
+
+  /** Statistics of the last run */
+  protected int m_numPurgedBlocks = 0;
+  protected long m_numComparisonsBefore = 0;
+  protected long m_numComparisonsAfter = 0;
+
+
+  public MetaBlocking() {
+    reset();
+  }
+
+  /** Drop all accumulated blocks and results */
+  public void reset() {
+    m_offsets = new int[17];
+    m_members = new int[16];
+    m_numBlocks = 0;
+    m_numMembers = 0;
+    m_pairs = null;
+    m_weights = null;
+  }
+
+
+  /** Add all blocks of a blocking map to the block collection.  The map
+   * may be discarded afterwards. */
+  public void addBlocks(BlockingMap map) {
+    int[] offsets = map.getBlockOffsets();
+    int[] members = map.getBlockMembers();
+    int numBlocks = map.getNumBlocks();
+
+    for (int b = 0; b < numBlocks; b++) {
+      int start = offsets[b];
+      int blockSize = offsets[b+1] - start;
+      if (blockSize < 2) {       // singletons produce no comparisons
+        continue;
+      }
+      if (m_numMembers + blockSize > m_members.length) {
+        int[] newMembers = new int[Math.max(m_members.length * 2, m_numMembers + blockSize)];
+        System.arraycopy(m_members, 0, newMembers, 0, m_numMembers);
+        m_members = newMembers;
+      }
+      if (m_numBlocks + 2 > m_offsets.length) {
+        int[] newOffsets = new int[m_offsets.length * 2];
+        System.arraycopy(m_offsets, 0, newOffsets, 0, m_numBlocks + 1);
+        m_offsets = newOffsets;
+      }
+      System.arraycopy(members, start, m_members, m_numMembers, blockSize);
+      m_numMembers += blockSize;
+      m_offsets[++m_numBlocks] = m_numMembers;
+    }
+  }
+
+
+  /** Purge oversized blocks, weight the blocking graph and prune it.
+   * @param numInstances the number of records the blocks were built over
+   */
+  public void prune(int numInstances) {
+    int maxBlockSize = numInstances;
+    if (m_maxBlockFraction > 0) {
+      maxBlockSize = (int) (m_maxBlockFraction * numInstances);
+    }
+    if (m_maxBlockSize > 0 && m_maxBlockSize < maxBlockSize) {
+      maxBlockSize = m_maxBlockSize;
+    }
+    maxBlockSize = Math.max(maxBlockSize, 2);
+
+    // purge: count the retained blocks of every record
+    boolean[] purged = new boolean[m_numBlocks];
+    int[] instanceOffsets = new int[numInstances + 1];
+    int numBlocks = 0;
+    m_numPurgedBlocks = 0;
+    m_numComparisonsBefore = 0;
+    for (int b = 0; b < m_numBlocks; b++) {
+      long blockSize = m_offsets[b+1] - m_offsets[b];
+      m_numComparisonsBefore += blockSize * (blockSize - 1) / 2;
+      if (blockSize > maxBlockSize) {
+        purged[b] = true;
+        m_numPurgedBlocks++;
+        continue;
+      }
+      numBlocks++;
+      for (int i = m_offsets[b]; i < m_offsets[b+1]; i++) {
+        instanceOffsets[m_members[i] + 1]++;
+      }
+    }
+
+    // reverse CSR index of the retained blocks of every record
+    for (int i = 0; i < numInstances; i++) {
+      instanceOffsets[i+1] += instanceOffsets[i];
+    }
+    int[] instanceBlocks = new int[instanceOffsets[numInstances]];
+    int[] fill = new int[numInstances];
+    for (int b = 0; b < m_numBlocks; b++) {
+      if (purged[b]) continue;
+      for (int i = m_offsets[b]; i < m_offsets[b+1]; i++) {
+        int idx = m_members[i];
+        instanceBlocks[instanceOffsets[idx] + fill[idx]++] = b;
+      }
+    }
+    fill = null;
+
+    int k = m_k;
+    if (k <= 0) {
+      k = Math.max(1, (int) Math.round(instanceBlocks.length / (double) numInstances));
+    }
+
+    // node-centric pass: for every record, accumulate its common block
+    // counts with all of its neighbors, weight the edges and keep the
+    // ones passing the pruning criterion
+    int[] commonBlocks = new int[numInstances];
+    int[] neighbors = new int[numInstances];
+    double[] neighborWeights = new double[numInstances];
+    long[] edges = new long[Math.max(16, numInstances)];
+    int numEdges = 0;
+    double weightSum = 0;
+    long numWeighted = 0;
+
+    for (int idx1 = 0; idx1 < numInstances; idx1++) {
+      int numNeighbors = 0;
+      for (int i = instanceOffsets[idx1]; i < instanceOffsets[idx1+1]; i++) {
+        int b = instanceBlocks[i];
+        for (int j = m_offsets[b]; j < m_offsets[b+1]; j++) {
+          int idx2 = m_members[j];
+          // the threshold criterion is symmetric, so visit every edge once
+          if (idx2 == idx1 || (m_pruning == PRUNING_WEIGHT && idx2 < idx1)) {
+            continue;
+          }
+          if (commonBlocks[idx2]++ == 0) {
+            neighbors[numNeighbors++] = idx2;
+          }
+        }
+      }
+
+      for (int n = 0; n < numNeighbors; n++) {
+        int idx2 = neighbors[n];
+        neighborWeights[n] = weight(commonBlocks[idx2],
+                                    instanceOffsets[idx1+1] - instanceOffsets[idx1],
+                                    instanceOffsets[idx2+1] - instanceOffsets[idx2],
+                                    numBlocks);
+        commonBlocks[idx2] = 0;
+        weightSum += neighborWeights[n];
+        numWeighted++;
+      }
+
+      int numKept = numNeighbors;
+      if (m_pruning == PRUNING_TOPK && numNeighbors > k) {
+        selectTopK(neighbors, neighborWeights, numNeighbors, k);
+        numKept = k;
+      }
+
+      if (numEdges + numKept > edges.length) {
+        long[] newEdges = new long[Math.max(edges.length * 2, numEdges + numKept)];
+        System.arraycopy(edges, 0, newEdges, 0, numEdges);
+        edges = newEdges;
+      }
+      for (int n = 0; n < numKept; n++) {
+        edges[numEdges++] = edgeKey(genPairCode(idx1, neighbors[n]), neighborWeights[n]);
+      }
+    }
+    commonBlocks = null;
+    neighbors = null;
+    neighborWeights = null;
+
+    // apply the weight threshold
+    double threshold = 0;
+    if (m_pruning == PRUNING_WEIGHT) {
+      threshold = (m_weightThreshold > 0) ? m_weightThreshold
+        : ((numWeighted > 0) ? weightSum / numWeighted : 0);
+      threshold = (float) threshold;
+    }
+
+    // sort by weight, dropping edges below the threshold and edges
+    // selected by both of their endpoints
+    Arrays.sort(edges, 0, numEdges);
+    int numPairs = 0;
+    if (m_pruning == PRUNING_TOPK) {
+      // order by pair code to find edges selected from both ends
+      long[] byCode = new long[numEdges];
+      for (int e = 0; e < numEdges; e++) {
+        byCode[e] = (edges[e] << 32) | (edges[e] >>> 32);
+      }
+      Arrays.sort(byCode);
+      int numUnique = 0;
+      for (int e = 0; e < numEdges; e++) {
+        if (numUnique == 0 || (byCode[e] >>> 32) != (byCode[numUnique-1] >>> 32)) {
+          byCode[numUnique++] = byCode[e];
+        }
+      }
+      for (int e = 0; e < numUnique; e++) {
+        edges[e] = (byCode[e] << 32) | (byCode[e] >>> 32);
+      }
+      numEdges = numUnique;
+      Arrays.sort(edges, 0, numEdges);
+    }
+    for (int e = numEdges - 1; e >= 0; e--) {
+      if (edgeWeight(edges[e]) < threshold) break;
+      numPairs++;
+    }
+
+    m_pairs = new int[numPairs];
+    m_weights = new double[numPairs];
+    for (int p = 0; p < numPairs; p++) {
+      long edge = edges[numEdges - 1 - p];
+      m_pairs[p] = (int) edge;
+      m_weights[p] = edgeWeight(edge);
+    }
+    m_numComparisonsAfter = numPairs;
+
+    System.out.println("Meta-blocking: purged " + m_numPurgedBlocks + " of "
+                       + m_numBlocks + " blocks larger than " + maxBlockSize
+                       + "; " + m_numComparisonsBefore + " comparisons -> "
+                       + numPairs + " pairs");
+  }
+
+
+  /** Weight of an edge given the number of blocks shared by its endpoints,
+   * the number of blocks of each endpoint and the total number of blocks */
+  protected double weight(int common, int numBlocks1, int numBlocks2, int numBlocks) {
+    switch (m_weighting) {
+    case WEIGHTING_CBS:
+      return common;
+    case WEIGHTING_ECBS:
+      return common * Math.log((double) numBlocks / numBlocks1)
+        * Math.log((double) numBlocks / numBlocks2);
+    case WEIGHTING_JACCARD:
+    default:
+      return (double) common / (numBlocks1 + numBlocks2 - common);
+    }
+  }
+
+
+  /** Move the k heaviest neighbors to the front of the arrays */
+  protected static void selectTopK(int[] neighbors, double[] weights, int num, int k) {
+    int left = 0, right = num - 1;
+    while (left < right) {
+      double pivot = weights[(left + right) >>> 1];
+      int i = left, j = right;
+      while (i <= j) {
+        while (weights[i] > pivot) i++;
+        while (weights[j] < pivot) j--;
+        if (i <= j) {
+          double w = weights[i]; weights[i] = weights[j]; weights[j] = w;
+          int n = neighbors[i]; neighbors[i] = neighbors[j]; neighbors[j] = n;
+          i++;
+          j--;
+        }
+      }
+      if (k - 1 <= j) {
+        right = j;
+      } else if (k - 1 >= i) {
+        left = i;
+      } else {
+        break;
+      }
+    }
+  }
+
+
+  /** Pack an edge into a long that sorts by weight, then pair code.
+   * Weights are non-negative, so the float bits preserve their order. */
+  protected static long edgeKey(int pairCode, double weight) {
+    return ((long) Float.floatToIntBits((float) weight) << 32)
+      | (pairCode & 0xffffffffL);
+  }
+
+  protected static double edgeWeight(long edgeKey) {
+    return Float.intBitsToFloat((int) (edgeKey >>> 32));
+  }
+
+  /** Generate pairs based on the instance indices, as in BlockingMap */
+  protected final static int genPairCode(int idx1, int idx2) {
+    if (idx1 > idx2) {
+      return idx1 * (idx1 - 1)/2 + idx2;
+    } else {
+      return idx2 * (idx2 - 1)/2 + idx1;
+    }
+  }
+
+
+  /** Return the retained pair codes, by decreasing weight */
+  public int[] getPairs() { return m_pairs; }
+
+  /** Return the weights of the retained pairs */
+  public double[] getWeights() { return m_weights; }
+
+  /** Return the number of blocks purged in the last run */
+  public int getNumPurgedBlocks() { return m_numPurgedBlocks; }
+
+  /** Return the number of comparisons in the block collection before pruning,
+   *  counting a pair once for every block it shares */
+  public long getNumComparisonsBefore() { return m_numComparisonsBefore; }
+
+  /** Return the number of distinct pairs retained */
+  public long getNumComparisonsAfter() { return m_numComparisonsAfter; }
+
+
+  /** Set/get the edge weighting scheme */
+  public void setWeighting(SelectedTag weighting) {
+    if (weighting.getTags() == TAGS_WEIGHTING) {
+      m_weighting = weighting.getSelectedTag().getID();
+    }
+  }
+  public SelectedTag getWeighting() {
+    return new SelectedTag(m_weighting, TAGS_WEIGHTING);
+  }
+
+  /** Set/get the edge pruning scheme */
+  public void setPruning(SelectedTag pruning) {
+    if (pruning.getTags() == TAGS_PRUNING) {
+      m_pruning = pruning.getSelectedTag().getID();
+    }
+  }
+  public SelectedTag getPruning() {
+    return new SelectedTag(m_pruning, TAGS_PRUNING);
+  }
+
+  /** Set/get the maximum block size */
+  public void setMaxBlockSize(int size) { m_maxBlockSize = size; }
+  public int getMaxBlockSize() { return m_maxBlockSize; }
+
+  /** Set/get the maximum fraction of records a block may contain */
+  public void setMaxBlockFraction(double fraction) { m_maxBlockFraction = fraction; }
+  public double getMaxBlockFraction() { return m_maxBlockFraction; }
+
+  /** Set/get the minimum edge weight */
+  public void setWeightThreshold(double threshold) { m_weightThreshold = threshold; }
+  public double getWeightThreshold() { return m_weightThreshold; }
+
+  /** Set/get the number of edges kept per node */
+  public void setK(int k) { m_k = k; }
+  public int getK() { return m_k; }
+
+
+  /**
+   * Gets the current settings of meta-blocking
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String [] getOptions() {
+    String [] options = new String [10];
+    int current = 0;
+
+    switch (m_weighting) {
+    case WEIGHTING_CBS:
+      options[current++] = "-CBS";
+      break;
+    case WEIGHTING_ECBS:
+      options[current++] = "-ECBS";
+      break;
+    default:
+      options[current++] = "-JS";
+    }
+
+    if (m_pruning == PRUNING_TOPK) {
+      options[current++] = "-topK" + m_k;
+    } else {
+      options[current++] = "-minW" + m_weightThreshold;
+    }
+
+    if (m_maxBlockSize > 0) {
+      options[current++] = "-maxSize" + m_maxBlockSize;
+    }
+    options[current++] = "-maxFrac" + m_maxBlockFraction;
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+    return options;
+  }
+
+  /**
+   * Parses a given list of options, in the form getOptions() writes them:
+   * values follow their flags without a space.  Recognized options are
+   * blanked in the array.  Valid options are:<p>
+   *
+   * -CBS, -JS or -ECBS <br>
+   * Weight edges by common blocks, Jaccard of block sets, or common
+   * blocks scaled by block-set IDF.<p>
+   *
+   * -topK&lt;k&gt; <br>
+   * Keep the k heaviest edges of every node (0 for the average number of
+   * blocks per record).<p>
+   *
+   * -minW&lt;weight&gt; <br>
+   * Keep the edges weighing at least this much (0 for the mean weight).<p>
+   *
+   * -maxSize&lt;size&gt; <br>
+   * Purge blocks with more records than this.<p>
+   *
+   * -maxFrac&lt;fraction&gt; <br>
+   * Purge blocks containing more than this fraction of all records.<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option has a malformed value
+   */
+  public void setOptions(String[] options) throws Exception {
+    for (int i = 0; i < options.length; i++) {
+      String option = options[i];
+      if (option.equals("-CBS")) {
+        m_weighting = WEIGHTING_CBS;
+      } else if (option.equals("-JS")) {
+        m_weighting = WEIGHTING_JACCARD;
+      } else if (option.equals("-ECBS")) {
+        m_weighting = WEIGHTING_ECBS;
+      } else if (option.startsWith("-topK")) {
+        m_pruning = PRUNING_TOPK;
+        m_k = Integer.parseInt(option.substring(5));
+      } else if (option.startsWith("-minW")) {
+        m_pruning = PRUNING_WEIGHT;
+        m_weightThreshold = Double.parseDouble(option.substring(5));
+      } else if (option.startsWith("-maxSize")) {
+        m_maxBlockSize = Integer.parseInt(option.substring(8));
+      } else if (option.startsWith("-maxFrac")) {
+        m_maxBlockFraction = Double.parseDouble(option.substring(8));
+      } else {
+        continue;
+      }
+      options[i] = "";
+    }
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector newVector = new Vector(7);
+    newVector.addElement(new Option("\tWeight edges by common blocks.",
+                                    "CBS", 0, "-CBS"));
+    newVector.addElement(new Option("\tWeight edges by Jaccard of block sets (default).",
+                                    "JS", 0, "-JS"));
+    newVector.addElement(new Option("\tWeight edges by common blocks scaled by block-set IDF.",
+                                    "ECBS", 0, "-ECBS"));
+    newVector.addElement(new Option("\tKeep the k heaviest edges of every node\n"
+                                    + "\t(0 for the average number of blocks per record).",
+                                    "topK", 1, "-topK<k>"));
+    newVector.addElement(new Option("\tKeep the edges weighing at least this much\n"
+                                    + "\t(0 for the mean weight, default).",
+                                    "minW", 1, "-minW<weight>"));
+    newVector.addElement(new Option("\tPurge blocks with more records than this\n"
+                                    + "\t(default 0, disabled).",
+                                    "maxSize", 1, "-maxSize<size>"));
+    newVector.addElement(new Option("\tPurge blocks containing more than this fraction\n"
+                                    + "\tof all records (default 0.1).",
+                                    "maxFrac", 1, "-maxFrac<fraction>"));
+    return newVector.elements();
+  }
+}
@@ -26,6 +26,7 @@ package weka.linkage.blocking;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.*;
 import java.text.SimpleDateFormat;
 
 import weka.linkage.metrics.*;
@@ -40,22 +41,26 @@ import weka.linkage.*;
  * @author Mikhail Bilenko
  */
 public class NonLearnableBlocking extends Blocking implements OptionHandler, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -3278627117051656999L;
+
   /** The dataset that contains the instances */ 
-  protected Instances m_instances = null;
+  protected transient Instances m_instances = null;
   
   /** Strings are mapped to StringReferences in this hash */
-  protected HashMap m_instanceRefHash = null;
+  protected transient HashMap m_instanceRefHash = null;
 
   /** A HashMap where tokens are indexed. Each indexed token maps
    * to a TokenInfo. */
-  protected HashMap m_tokenHash = null;
+  protected transient HashMap m_tokenHash = null;
 
-  /** A TreeSet where the InstancePairs are stored for subsequent retrieval */
-  protected TreeSet m_pairSet = null;
+  /** Candidate pairs, ranked lazily for subsequent retrieval */
+  protected transient PairHeap m_pairs = null;
 
 
   /** A list of all indexed instance.  Elements are InstanceReference's. */
-  public ArrayList m_instanceRefs = null;
+  public transient ArrayList m_instanceRefs = null;
 
   /** An underlying tokenizer used to convert strings into HashMapVectors  */
   protected Tokenizer m_tokenizer = new WordTokenizer();
@@ -66,12 +71,24 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
   /** Minimum TF-IDF threshold required */
   protected double m_simThreshold = 0.1; 
 
+  /** When more than this fraction of indexed instances has been added
+   * or removed incrementally, IDF weights and vector lengths are
+   * recomputed before the next candidates query */
+  protected double m_refreshFraction = 0.1;
+
+  /** Number of incremental additions and removals since IDF weights
+   * were last computed */
+  protected transient int m_numUpdates = 0;
+
+  /** Index of the next incrementally added instance */
+  protected transient int m_nextIdx = 0;
+
   /** Construct a vector space from a given set of examples
    * @param strings a list of strings from which the inverted index is
    * to be constructed
    */
   public NonLearnableBlocking() {
-    m_pairSet = new TreeSet(new InstancePairComparator());
+    m_pairs = new PairHeap();
     m_instanceRefHash = new HashMap();
     m_tokenHash = new HashMap();
     m_instanceRefs = new ArrayList();
@@ -88,53 +105,39 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
    */
   public void buildIndex(Instances instances) throws Exception {
     m_instances = instances; 
-    m_pairSet = new TreeSet(new InstancePairComparator());
+    m_pairs = new PairHeap(1024, m_maxIndexPairs);
     m_instanceRefHash = new HashMap();
     m_tokenHash = new HashMap();
-    int classIndex = instances.classIndex();
+    m_instanceRefs = new ArrayList();
 
     for (int i = 0; i < instances.numInstances(); i++) { 
       Instance instance = instances.instance(i);
-      StringBuffer buffer = new StringBuffer();
-      for (int j = 0; j < instance.numAttributes(); j++) {
-	if (j != classIndex) {
-	  buffer.append(instance.stringValue(j)).append(" ");
-	} 
-      }
       // Create a document vector for this document
-      String string = buffer.toString();
+      String string = instanceString(instance);
       HashMapVector vector = m_tokenizer.tokenize(string);
       vector.initLength();
       indexInstance(instance, i, string, vector);
     }
+    m_nextIdx = instances.numInstances();
     // Now that all instances have been processed, we can calculate the IDF weights for
     // all tokens and the resulting lengths of all weighted document vectors.
     computeIDFandStringLengths();
+    m_numUpdates = 0;
     System.out.println(getTimestamp() + " Indexed " +  m_instanceRefs.size() + " documents with " + size() + " unique terms.");
     createPairSet();
-    System.out.println(getTimestamp() + " Created a set with " + m_pairSet.size() + " pairs");
+    System.out.println(getTimestamp() + " Created a set with " + m_pairs.size() + " pairs");
 
     if (m_statistics != null) { // we are doing this just for blocking evaluation
       // COUNT THE NUM TRUE PAIRS
       int numTruePairs = 0;
       // get the class counts
-      HashMap classCountMap = new HashMap();
-      
+      DoubleIntHashMap classCounts = new DoubleIntHashMap();
       for (int i = 0; i < instances.numInstances(); i++) {
-        Instance instance = instances.instance(i);
-        Double classValue = new Double(instance.classValue());
-        if (classCountMap.containsKey(classValue)) {
-          Integer counts = (Integer) classCountMap.get(classValue);
-          classCountMap.put(classValue, new Integer(counts.intValue() + 1));
-        } else {
-          classCountMap.put(classValue, new Integer(1));
-        }
+        classCounts.increment(instances.instance(i).classValue(), 1);
       }
       
       // calculate the number of pairs
-      Iterator iterator = classCountMap.values().iterator();
-      while (iterator.hasNext()) {
-        int counts = ((Integer) iterator.next()).intValue();
+      for (int counts : classCounts.values()) {
         numTruePairs += counts * (counts - 1) / 2;
       }
       // END COUNT NUM TRUE PAIRS
@@ -217,6 +220,187 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
     }
   }
 
+  /** Concatenate the values of all non-class attributes of an instance */
+  protected String instanceString(Instance instance) {
+    int classIndex = (instance.dataset() == null ? -1 : instance.classIndex());
+    StringBuffer buffer = new StringBuffer();
+    for (int j = 0; j < instance.numAttributes(); j++) {
+      if (j != classIndex) {
+        buffer.append(instance.stringValue(j)).append(" ");
+      } 
+    }
+    return buffer.toString();
+  }
+
+
+  /** Add an instance to the index.  IDF weights of tokens already in
+   * the index are not updated until the next refresh; the vector
+   * length of the new instance is computed with the current weights.
+   * @param instance the instance to add
+   */
+  public void add(Instance instance) throws Exception {
+    if (m_instanceRefHash == null) {
+      m_instanceRefHash = new HashMap();
+      m_tokenHash = new HashMap();
+      m_instanceRefs = new ArrayList();
+    }
+    if (m_instanceRefHash.containsKey(instance)) {
+      return;
+    }
+    
+    String string = instanceString(instance);
+    HashMapVector vector = m_tokenizer.tokenize(string);
+    vector.initLength();
+    indexInstance(instance, m_nextIdx++, string, vector);
+    InstanceReference instRef = (InstanceReference) m_instanceRefHash.get(instance);
+
+    // tokens seen for the first time get their IDF right away
+    double N = m_instanceRefHash.size();
+    double length = 0;
+    Iterator mapEntries = vector.iterator();
+    while (mapEntries.hasNext()) {
+      Map.Entry entry = (Map.Entry)mapEntries.next();
+      TokenInfo tokenInfo = (TokenInfo) m_tokenHash.get(entry.getKey());
+      if (tokenInfo.occList.size() == 1) {
+        tokenInfo.idf = Math.log(N);
+      }
+      if (tokenInfo.idf == 0) {
+        continue;
+      }
+      double weight = ((Weight)entry.getValue()).getValue();
+      if (m_useIDF) {
+        weight *= tokenInfo.idf;
+      }
+      length += weight * weight;
+    }
+    instRef.length = Math.sqrt(length);
+    m_numUpdates++;
+  }
+
+
+  /** Remove an instance from the index.  Its token occurrences are
+   * dropped at the next refresh.
+   * @param instance the instance to remove
+   */
+  public void remove(Instance instance) throws Exception {
+    if (m_instanceRefHash != null && m_instanceRefHash.remove(instance) != null) {
+      m_numUpdates++;
+    }
+  }
+
+
+  /** Return the indexed instances that are most similar to a given one
+   * @param instance the query instance; it does not need to be indexed
+   * @param k the maximum number of candidates to return
+   * @returns pairs of the query instance and its candidates, by
+   * decreasing similarity; only pairs above the similarity threshold
+   * are returned
+   */
+  public InstancePair[] candidates(Instance instance, int k) throws Exception {
+    if (m_instanceRefHash == null) {
+      return new InstancePair[0];
+    }
+    if (m_numUpdates > m_refreshFraction * m_instanceRefHash.size()) {
+      refreshIndex();
+    }
+
+    // accumulate dot products with all instances sharing a token
+    HashMapVector vector = m_tokenizer.tokenize(instanceString(instance));
+    HashMap dotProducts = new HashMap();
+    double length = 0;
+    Iterator mapEntries = vector.iterator();
+    while (mapEntries.hasNext()) {
+      Map.Entry entry = (Map.Entry)mapEntries.next();
+      TokenInfo tokenInfo = (TokenInfo) m_tokenHash.get(entry.getKey());
+      if (tokenInfo == null || tokenInfo.idf == 0) {
+        continue;
+      }
+      double weight = ((Weight)entry.getValue()).getValue();
+      if (m_useIDF) {
+        weight *= tokenInfo.idf;
+      }
+      length += weight * weight;
+      
+      for (int i = 0; i < tokenInfo.occList.size(); i++) {
+        TokenInstanceOccurrence occ = (TokenInstanceOccurrence)tokenInfo.occList.get(i);
+        if (occ.instanceRef.instance == instance || !isIndexed(occ.instanceRef)) {
+          continue;
+        }
+        double occWeight = (m_useIDF ? tokenInfo.idf * occ.count : occ.count);
+        Weight dotProduct = (Weight) dotProducts.get(occ.instanceRef);
+        if (dotProduct == null) {
+          dotProduct = new Weight();
+          dotProducts.put(occ.instanceRef, dotProduct);
+        }
+        dotProduct.increment(weight * occWeight);
+      }
+    }
+    length = Math.sqrt(length);
+    if (length == 0) {
+      return new InstancePair[0];
+    }
+
+    ArrayList pairList = new ArrayList();
+    Iterator iterator = dotProducts.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry entry = (Map.Entry)iterator.next();
+      InstanceReference instRef = (InstanceReference) entry.getKey();
+      if (instRef.length == 0) {
+        continue;
+      }
+      double sim = ((Weight)entry.getValue()).getValue() / (length * instRef.length);
+      if (sim > m_simThreshold) { 
+        pairList.add(new InstancePair(instance, instRef.instance,
+                                      sameClass(instance, instRef.instance), sim));
+      }
+    }
+    return topPairs(pairList, k);
+  }
+
+
+  /** Is the reference the current one for its instance? References of
+   * removed instances stay in the token occurrence lists until the next
+   * refresh. */
+  protected boolean isIndexed(InstanceReference instRef) {
+    return m_instanceRefHash.get(instRef.instance) == instRef;
+  }
+
+
+  /** Drop occurrences of removed instances, then recompute IDF weights
+   * and vector lengths for the current set of instances */
+  public void refreshIndex() {
+    Iterator tokenInfos = m_tokenHash.values().iterator();
+    while (tokenInfos.hasNext()) {
+      TokenInfo tokenInfo = (TokenInfo) tokenInfos.next();
+      ArrayList occList = new ArrayList(tokenInfo.occList.size());
+      for (int i = 0; i < tokenInfo.occList.size(); i++) {
+        TokenInstanceOccurrence occ = (TokenInstanceOccurrence)tokenInfo.occList.get(i);
+        if (isIndexed(occ.instanceRef)) {
+          occList.add(occ);
+        }
+      }
+      if (occList.isEmpty()) {
+        tokenInfos.remove();
+      } else {
+        tokenInfo.occList = occList;
+      }
+    }
+
+    ArrayList instanceRefs = new ArrayList(m_instanceRefHash.size());
+    for (int i = 0; i < m_instanceRefs.size(); i++) {
+      InstanceReference instRef = (InstanceReference) m_instanceRefs.get(i);
+      if (isIndexed(instRef)) {
+        instRef.length = 0;
+        instanceRefs.add(instRef);
+      }
+    }
+    m_instanceRefs = instanceRefs;
+    
+    computeIDFandStringLengths();
+    m_numUpdates = 0;
+  }
+
+
   /** Index a given Instance using its corresponding vector */
   protected void indexInstance(Instance instance, int idx, String string, HashMapVector vector) {
     // Create a new reference
@@ -272,11 +456,10 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
 
       // Calculate the IDF factor for this token
       double idf = Math.log(N/numInstanceRefs);
-      if (idf == 0.0) 
-	// If IDF is 0, then just remove this inconsequential token from the index
-	mapEntries.remove();
-      else {
-	tokenInfo.idf = idf;
+      tokenInfo.idf = idf;
+      // If IDF is 0, this token is inconsequential and is ignored; it
+      // is kept in the index since instances added later may lack it
+      if (idf != 0.0) {
 	// In order to compute document vector lengths,  sum the
 	// square of the weights (IDF * occurrence count) across
 	// every token occurrence for each document.
@@ -300,12 +483,15 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
   }
 
 
-  /** Populate m_pairSet with all the instancePairs that contain common tokens, so that
-   * they can be retrieved in the order of decreasing similarity later
+  /** Populate m_pairs with all the instancePairs that contain common tokens, so that
+   * they can be retrieved in the order of decreasing similarity later.
+   * A pair is compared once, under the first of its common tokens, so
+   * no set of processed pairs is kept.  If m_pairs has a maximum size,
+   * only the most similar pairs are kept.  Stops when the deadline of
+   * a budget passes, leaving the pairs found so far, once at least one
+   * pair has been found.
    */
   public void createPairSet() {
-    HashSet processedPairSet = new HashSet();
-    
     // Iterate through each of the tokens in the index, getting instances containing them
     Iterator mapEntries = m_tokenHash.entrySet().iterator();
     while (mapEntries.hasNext()) {
@@ -317,33 +503,28 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
       // Get the total number of strings in which this token occurs
       int numInstanceRefs = tokenInfo.occList.size();
       // if more than 1, compare pair and add to the index
-      if (numInstanceRefs > 1) {
+      if (numInstanceRefs > 1 && tokenInfo.idf != 0) {
 	for (int i = 0; i < numInstanceRefs; i++) {
+          if (m_pairs.size() > 0 && deadlinePassed()) {
+            System.out.println(getTimestamp() + " Stopped creating pairs at the deadline");
+            return;
+          }
 	  InstanceReference instRef1 = ((TokenInstanceOccurrence) tokenInfo.occList.get(i)).instanceRef;
 	  for (int j = i+1; j < numInstanceRefs; j++) {
 	    InstanceReference instRef2 = ((TokenInstanceOccurrence) tokenInfo.occList.get(j)).instanceRef;
-	    Integer hashValue1 = new Integer(instRef1.idx * m_instances.numInstances() + instRef2.idx);
-	    Integer hashValue2 = new Integer(instRef2.idx * m_instances.numInstances() + instRef1.idx);
-	    // if the similarity for this pair of instances has not been calculated before, calculate and store
-	    if (!processedPairSet.contains(hashValue1)) {
-	      double sim = similarity(instRef1, instRef2);
-
-              if (sim > m_simThreshold) { 
-
-                // make sure that true duplicates are included
-                if (m_includeAllDuplicates) { 
-                  if (instRef1.instance.classValue() == instRef2.instance.classValue()) 
-                    sim = 1e3+i*numInstanceRefs+j;
-                }
-                
-                InstancePair pair = new InstancePair(instRef1.instance, instRef2.instance,
-                                                     (instRef1.instance.classValue() == instRef2.instance.classValue()),
-                                                     sim); 
-                m_pairSet.add(pair); 
-                processedPairSet.add(hashValue1);
-                processedPairSet.add(hashValue2);
+	    // the similarity is NaN if the pair is compared under another token
+	    double sim = similarity(instRef1, instRef2, token);
+
+            if (sim > m_simThreshold) { 
+
+              // make sure that true duplicates are included
+              if (m_includeAllDuplicates) { 
+                if (instRef1.instance.classValue() == instRef2.instance.classValue()) 
+                  sim = 1e3+i*numInstanceRefs+j;
               }
-	    }
+                
+              m_pairs.add(PairStore.pairCode(instRef1.idx, instRef2.idx), sim);
+            }
 	  }
 	}
       }
@@ -357,6 +538,19 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
    * @returns similarity between two strings
    */
   public double similarity(InstanceReference iRef1, InstanceReference iRef2) {
+    return similarity(iRef1, iRef2, null);
+  }
+
+
+  /** Compute similarity between two strings unless they have a common
+   * weighted token that sorts before a given one
+   * @param firstToken the token the strings are compared under; null
+   * to compare them in any case
+   * @returns similarity between two strings, or NaN if they have a
+   * common weighted token before firstToken
+   */
+  protected double similarity(InstanceReference iRef1, InstanceReference iRef2,
+                              String firstToken) {
     double length1 = iRef1.length;
     double length2 = iRef2.length;
     HashMapVector v1 = iRef1.vector;
@@ -378,7 +572,10 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
 	TokenInfo tokenInfo = (TokenInfo) m_tokenHash.get(token);
 
 	// add this component unless it was killed (with idf=0)
-	if (tokenInfo != null) {
+	if (tokenInfo != null && tokenInfo.idf != 0) {
+          if (firstToken != null && token.compareTo(firstToken) < 0) {
+            return Double.NaN;
+          }
 	  double increment = count1 * count2;
 	  if (m_useIDF) {
 	    increment *= tokenInfo.idf * tokenInfo.idf;
@@ -394,18 +591,83 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
   /** Return n most similar pairs
    */
   public InstancePair[] getMostSimilarPairs(int numPairs) {
-    Iterator iterator = m_pairSet.iterator();
-    int i = 0;
-    numPairs = (numPairs < m_pairSet.size()
-                ? numPairs : m_pairSet.size()); 
+    numPairs = (numPairs < m_pairs.size()
+                ? numPairs : m_pairs.size()); 
+    m_pairs.rank(numPairs);
     InstancePair [] pairs = new InstancePair[numPairs]; 
-    while (iterator.hasNext() && i < numPairs) {
-      InstancePair pair = (InstancePair) iterator.next();
-      pairs[i++] = pair;
-      //      System.out.println(pair.value + "\t" + pair.positive);
+    for (int i = 0; i < numPairs; i++) {
+      pairs[i] = createPair(i);
     }
     return pairs; 
   } 
+
+
+  /** Append the n most similar pairs to a pair store */
+  public void getMostSimilarPairs(int numPairs, PairStore store) throws Exception {
+    numPairs = Math.min(numPairs, m_pairs.size());
+    m_pairs.rank(numPairs);
+    for (int i = 0; i < numPairs; i++) {
+      long pairCode = m_pairs.code(i);
+      Instance instance1 = m_instances.instance(PairStore.firstIndex(pairCode));
+      Instance instance2 = m_instances.instance(PairStore.secondIndex(pairCode));
+      store.append(pairCode, (float) m_pairs.value(i),
+                   (instance1.classValue() == instance2.classValue() ? PairStore.FLAG_POSITIVE : 0));
+    }
+  }
+
+
+  /** Append the n most similar pairs to a pair buffer */
+  public void getMostSimilarPairs(int numPairs, PairBuffer buffer) {
+    numPairs = Math.min(numPairs, m_pairs.size());
+    m_pairs.rank(numPairs);
+    for (int i = 0; i < numPairs; i++) {
+      long pairCode = m_pairs.code(i);
+      buffer.add(m_instances, PairStore.secondIndex(pairCode), PairStore.firstIndex(pairCode),
+                 (float) m_pairs.value(i));
+    }
+  }
+
+
+  /** Rank pairs in chunks until the deadline; at least the first chunk
+   * is ranked even if candidate generation used up the time */
+  protected int numPairsWithin(int maxPairs, long deadline) {
+    int numPairs = Math.min(maxPairs, m_pairs.size());
+    int numRanked = 0;
+    for (int chunk = 1024; numRanked < numPairs
+           && (numRanked == 0 || System.nanoTime() < deadline); chunk *= 2) {
+      numRanked = (int) Math.min(numPairs, (long) numRanked + chunk);
+      m_pairs.rank(numRanked);
+    }
+    return numRanked;
+  }
+
+
+  /** Iterate over the candidate pairs by decreasing similarity; pairs
+   * are ranked only as far as they are read */
+  public Iterator pairIterator() {
+    return new Iterator() {
+        int m_rank = 0;
+        public boolean hasNext() { return m_rank < m_pairs.size(); }
+        public Object next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return createPair(m_rank++);
+        }
+        public void remove() { throw new UnsupportedOperationException(); }
+      };
+  }
+
+
+  /** Create the pair of a given rank */
+  protected InstancePair createPair(int rank) {
+    long pairCode = m_pairs.code(rank);
+    Instance instance1 = m_instances.instance(PairStore.secondIndex(pairCode));
+    Instance instance2 = m_instances.instance(PairStore.firstIndex(pairCode));
+    return new InstancePair(instance1, instance2,
+                            (instance1.classValue() == instance2.classValue()),
+                            m_pairs.value(rank));
+  }
   
 
   /** Return the number of tokens indexed.
@@ -440,6 +702,11 @@ public class NonLearnableBlocking extends Blocking implements OptionHandler, Ser
   public void setSimThreshold(double threshold) { m_simThreshold = threshold; }
   public double getSimThreshold() { return m_simThreshold; }
 
+  /** Set/get the fraction of updated instances that triggers
+   * recomputing IDF weights in incremental mode */
+  public void setRefreshFraction(double f) { m_refreshFraction = f; }
+  public double getRefreshFraction() { return m_refreshFraction; }
+
   
   /**
    * Gets the current settings of the Blocker
@@ -0,0 +1,222 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    PairHeap.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage.blocking;
+
+/**
+ * Candidate pairs kept as pair codes and values in parallel arrays, and
+ * ranked lazily by decreasing value.  The first request for ranked pairs
+ * turns the arrays into a binary max-heap in linear time; pairs are then
+ * extracted heapsort-style only as far as they are asked for, so taking
+ * the top n of P pairs costs O(P + n log P) rather than a full sort.
+ * Ties are ranked by increasing pair code.  A heap with a maximum size
+ * keeps only the top pairs added to it: once full, the arrays are kept
+ * as a heap with the lowest ranked pair on top, which a better pair
+ * replaces.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class PairHeap {
+
+  protected long[] m_codes;
+  protected double[] m_values;
+
+  /** Number of pairs */
+  protected int m_size = 0;
+
+  /** Pairs [0, m_heapSize) form the unranked heap; the pair of rank r
+   * is kept at m_size-1-r */
+  protected int m_heapSize = 0;
+
+  /** Whether [0, m_heapSize) is a heap */
+  protected boolean m_heapified = false;
+
+  /** Maximum number of pairs kept */
+  protected int m_maxSize = Integer.MAX_VALUE;
+
+  /** Whether [0, m_size) is a heap with the lowest ranked pair on top */
+  protected boolean m_bottomHeapified = false;
+
+  /** Memory taken by a pair */
+  public static final int BYTES_PER_PAIR = 16;
+
+
+  public PairHeap() {
+    this(1024);
+  }
+
+  public PairHeap(int capacity) {
+    m_codes = new long[Math.max(capacity, 16)];
+    m_values = new double[m_codes.length];
+  }
+
+  /**
+   * @param capacity the initial capacity
+   * @param maxSize the maximum number of pairs kept; lower ranked pairs
+   * are dropped
+   */
+  public PairHeap(int capacity, int maxSize) {
+    this(Math.min(capacity, maxSize));
+    m_maxSize = maxSize;
+  }
+
+
+  /** Add a pair; any ranking done so far is discarded.  If the heap is
+   * full, the pair replaces the lowest ranked one if it ranks above it,
+   * and is dropped otherwise. */
+  public void add(long pairCode, double value) {
+    if (m_size == m_maxSize) {
+      if (m_size == 0) {
+        return;
+      }
+      if (!m_bottomHeapified) {
+        for (int i = m_size / 2 - 1; i >= 0; i--) {
+          siftDownBottom(i);
+        }
+        m_bottomHeapified = true;
+      }
+      if (value > m_values[0] || (value == m_values[0] && pairCode < m_codes[0])) {
+        m_codes[0] = pairCode;
+        m_values[0] = value;
+        siftDownBottom(0);
+      }
+      m_heapified = false;
+      return;
+    }
+    if (m_size == m_codes.length) {
+      int capacity = (int) Math.min(Math.min(Integer.MAX_VALUE - 8, 2L * m_size), m_maxSize);
+      long[] codes = new long[capacity];
+      double[] values = new double[capacity];
+      System.arraycopy(m_codes, 0, codes, 0, m_size);
+      System.arraycopy(m_values, 0, values, 0, m_size);
+      m_codes = codes;
+      m_values = values;
+    }
+    m_codes[m_size] = pairCode;
+    m_values[m_size] = value;
+    m_size++;
+    m_heapified = false;
+    m_bottomHeapified = false;
+  }
+
+
+  /** Number of pairs */
+  public int size() {
+    return m_size;
+  }
+
+
+  /** Remove all pairs */
+  public void clear() {
+    m_size = 0;
+    m_heapSize = 0;
+    m_heapified = false;
+    m_bottomHeapified = false;
+  }
+
+
+  /** The pair code of the pair with a given rank, 0 being the highest value */
+  public long code(int rank) {
+    rank(rank + 1);
+    return m_codes[m_size - 1 - rank];
+  }
+
+
+  /** The value of the pair with a given rank */
+  public double value(int rank) {
+    rank(rank + 1);
+    return m_values[m_size - 1 - rank];
+  }
+
+
+  /** Make sure that the top n pairs are ranked */
+  public void rank(int n) {
+    if (!m_heapified) {
+      m_bottomHeapified = false;
+      m_heapSize = m_size;
+      for (int i = m_heapSize / 2 - 1; i >= 0; i--) {
+        siftDown(i);
+      }
+      m_heapified = true;
+    }
+    n = Math.min(n, m_size);
+    while (m_size - m_heapSize < n) {
+      m_heapSize--;
+      swap(0, m_heapSize);
+      siftDown(0);
+    }
+  }
+
+
+  /** Does pair i rank above pair j? */
+  protected boolean above(int i, int j) {
+    return m_values[i] > m_values[j] || (m_values[i] == m_values[j] && m_codes[i] < m_codes[j]);
+  }
+
+
+  protected void siftDown(int i) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= m_heapSize) {
+        return;
+      }
+      if (child + 1 < m_heapSize && above(child + 1, child)) {
+        child++;
+      }
+      if (!above(child, i)) {
+        return;
+      }
+      swap(i, child);
+      i = child;
+    }
+  }
+
+
+  /** Sift down in the heap of all pairs with the lowest ranked on top */
+  protected void siftDownBottom(int i) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= m_size) {
+        return;
+      }
+      if (child + 1 < m_size && above(child, child + 1)) {
+        child++;
+      }
+      if (!above(i, child)) {
+        return;
+      }
+      swap(i, child);
+      i = child;
+    }
+  }
+
+
+  protected void swap(int i, int j) {
+    long code = m_codes[i];
+    m_codes[i] = m_codes[j];
+    m_codes[j] = code;
+    double value = m_values[i];
+    m_values[i] = m_values[j];
+    m_values[j] = value;
+  }
+}
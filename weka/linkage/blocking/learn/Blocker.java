@@ -25,6 +25,7 @@ import weka.core.Instances;
 import weka.core.Instance;
 import weka.core.Utils;
 import java.util.*;
+import weka.core.collections.LongHashSet;
 import weka.linkage.*;
 import java.io.*;
 
@@ -33,13 +34,16 @@ import java.io.*;
  *
  * @author Beena Kamath
  */
-public abstract class Blocker implements Cloneable {
+public abstract class Blocker implements Cloneable, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -4330888937523733041L;
 
   /** Stores the blocking map */
-  protected BlockingMap m_blockingMap = null;
+  protected transient BlockingMap m_blockingMap = null;
 
   /** Instances */
-  protected Instances m_instances = null; 
+  protected transient Instances m_instances = null; 
 
   /** using RedBlue? */
   protected boolean m_redBlue = true; 
@@ -59,7 +63,7 @@ public abstract class Blocker implements Cloneable {
 
 
   /** Temporarily store good pairs found in last map */
-  HashSet<Integer> m_goodPairSet = null; 
+  transient LongHashSet m_goodPairSet = null; 
 
 
   /** Set the attribute which should be used for blocking */
@@ -87,25 +91,31 @@ public abstract class Blocker implements Cloneable {
     
     // for all instances
     for (int idx = 0; idx < numInstances; idx++) {
-      Object[] blocks = getBlocks(instances.instance(idx)); 
-      m_blockingMap.putInstanceBlocks(idx, blocks);
-
-      for (Object blockValue : blocks) { 
-        m_blockingMap.putInstanceIdx(idx, blockValue);
+      long[] blocks = getBlocks(instances.instance(idx)); 
+      for (long blockKey : blocks) { 
+        m_blockingMap.putInstanceIdx(idx, blockKey);
       }
     }
     m_blockingMap.createPotentialPairs(instances.numInstances());
   }
 
 
-  /** Return the list of blocks for a given instance */
-  public abstract Object[] getBlocks (Instance instance);
+  /** Return the keys of the blocks for a given instance.  Keys are
+   * 64-bit hashes of the block values, see hashChars() */
+  public abstract long[] getBlocks (Instance instance);
   
   
   /** Given two instances, do they fall into the same block? */
   public abstract boolean sameBlock(Instance instance1, Instance instance2);
 
 
+  /** Can the blocks of a single instance be computed without blocking
+   *  a whole dataset first? */
+  public boolean isIncremental() {
+    return true;
+  }
+
+
   /** Are blocks overlapping or disjoint for this blocker?
    *  In other words, can an instance belong to more than one block? */
   public abstract boolean blocksOverlap(); 
@@ -137,7 +147,7 @@ public abstract class Blocker implements Cloneable {
 
 
   /** Get the list of duplicate pairs found by this blocker */
-  public HashSet<Integer> getPairs() {
+  public LongHashSet getPairs() {
     return m_blockingMap.getPairs();
   }
 
@@ -149,7 +159,7 @@ public abstract class Blocker implements Cloneable {
     
   
   /** Get the list of duplicate pairs found by this blocker */
-  public HashSet<Integer> getGoodPairs() {
+  public LongHashSet getGoodPairs() {
     return m_goodPairSet; 
   }
   
@@ -169,6 +179,107 @@ public abstract class Blocker implements Cloneable {
       (m_instances == null ? m_attrId : m_instances.attribute(m_attrId).name());
   } 
 
+  /** Returned by blockers for instances that fall into no block */
+  protected static final long[] NO_BLOCKS = new long[0];
+
+  /** Offset basis and prime of the 64-bit FNV-1a hash */
+  public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  public static final long FNV_PRIME = 0x100000001b3L;
+
+  /** Continue a 64-bit FNV-1a hash over a range of chars of a string */
+  protected static final long hashChars(long hash, String str, int start, int end) {
+    for (int i = start; i < end; i++) {
+      hash = (hash ^ str.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /** Hash a range of chars of a string into a block key */
+  protected static final long hashChars(String str, int start, int end) {
+    return mixKey(hashChars(FNV_OFFSET, str, start, end));
+  }
+
+  /** Continue a 64-bit FNV-1a hash over a range of chars of an array */
+  public static final long hashChars(long hash, char[] chars, int start, int end) {
+    for (int i = start; i < end; i++) {
+      hash = (hash ^ chars[i]) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /** Hash a range of chars of an array into a block key; equal to the
+   * key of the same chars in a string */
+  public static final long hashChars(char[] chars, int start, int end) {
+    return mixKey(hashChars(FNV_OFFSET, chars, start, end));
+  }
+
+  /** Scramble the bits of a key (the finalizer of MurmurHash3) */
+  public static final long mixKey(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  /** Key of the conjunction of two blocks */
+  public static final long combineKeys(long key1, long key2) {
+    return mixKey(key1 * 0x9e3779b97f4a7c15L + key2);
+  }
+
+  /** Create a lookup table for single-character ASCII delimiters */
+  protected static boolean[] delimiterTable(String delimiters) {
+    boolean[] isDelimiter = new boolean[128];
+    for (int i = 0; i < delimiters.length(); i++) {
+      isDelimiter[delimiters.charAt(i)] = true;
+    }
+    return isDelimiter;
+  }
+
+  /** Find the tokens of a string without creating substrings
+   * @param str the string to tokenize
+   * @param isDelimiter a table created by delimiterTable()
+   * @param bounds receives token t at [bounds[2t], bounds[2t+1]);
+   * must be at least str.length()+1 long
+   * @returns the number of tokens
+   */
+  protected static int tokenize(String str, boolean[] isDelimiter, int[] bounds) {
+    int numTokens = 0;
+    int length = str.length();
+    int i = 0;
+    while (i < length) {
+      while (i < length && isDelimiter(str.charAt(i), isDelimiter)) i++;
+      if (i == length) break;
+      bounds[2 * numTokens] = i;
+      while (i < length && !isDelimiter(str.charAt(i), isDelimiter)) i++;
+      bounds[2 * numTokens + 1] = i;
+      numTokens++;
+    }
+    return numTokens;
+  }
+
+  private static final boolean isDelimiter(char c, boolean[] isDelimiter) {
+    return c < isDelimiter.length && isDelimiter[c];
+  }
+
+  /** Sort the first numKeys keys and return the distinct ones */
+  protected static long[] uniqueKeys(long[] keys, int numKeys) {
+    Arrays.sort(keys, 0, numKeys);
+    int numUnique = 0;
+    for (int i = 0; i < numKeys; i++) {
+      if (numUnique == 0 || keys[i] != keys[numUnique-1]) {
+        keys[numUnique++] = keys[i];
+      }
+    }
+    if (numUnique == keys.length) {
+      return keys;
+    }
+    long[] uniqueKeys = new long[numUnique];
+    System.arraycopy(keys, 0, uniqueKeys, 0, numUnique);
+    return uniqueKeys;
+  }
+
   public static Blocker forName(String blockerName, String[] options) throws Exception {
     return (Blocker)Utils.forName(Blocker.class,
                                   blockerName,
@@ -198,13 +309,13 @@ public abstract class Blocker implements Cloneable {
     CommonIntegerBlocker blocker = new CommonIntegerBlocker();
     blocker.setAttribute(0);
     
-    Object[] blocks = blocker.getBlocks(instance);
+    long[] blocks = blocker.getBlocks(instance);
 
 
 
     
     System.out.println(instance); 
-    for (Object block : blocks) {
+    for (long block : blocks) {
       System.out.print('\t');
       System.out.println(block);
     }
@@ -25,13 +25,17 @@ import weka.core.Instances;
 import weka.core.Utils;
 import java.util.*;
 import weka.linkage.*;
+import java.io.Serializable;
 
 /**
  * An abstract class for a blocking criterion learner
  *
  * @author Beena Kamath
  */
-public abstract class BlockingLearner implements Cloneable {
+public abstract class BlockingLearner implements Cloneable, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 2881830007768638856L;
   
   /** Given the data, learn the blocking criteria 
   */
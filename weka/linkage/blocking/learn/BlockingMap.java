@@ -24,6 +24,7 @@ package weka.linkage.blocking.learn;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.LongHashSet;
 import weka.linkage.*;
 
 /**
@@ -38,11 +39,33 @@ import java.io.*;
 
 public class BlockingMap {
 
-  /** A hashmap where Instances are grouped based on their blockid */
-  protected HashMap<Object,int[]> m_blockInstanceMap = null;
+  /** Open-addressing table mapping each distinct 64-bit block key to its
+   *  dense block id; a slot is empty if its id entry is -1 */
+  protected long[] m_keyTable = null;
+  protected int[] m_idTable = null;
 
-  /** A reverse map where each instance is mapped to a list of blocks */
-  protected Object[][] m_instanceBlocks = null; 
+  /** Block keys in the order of their ids */
+  protected long[] m_blockKeys = null;
+  protected int m_numBlocks = 0;
+
+  /** Block memberships as they are streamed in: (block id, instance) pairs
+   *  kept in two parallel growable arrays */
+  protected int[] m_insertBlocks = null;
+  protected int[] m_insertInstances = null;
+  protected int m_numInserts = 0;
+
+  /** Have all memberships been compacted into the CSR arrays below? */
+  protected boolean m_compacted = false;
+
+  /** CSR index of blocks: members of block b are
+   *  m_blockMembers[m_blockOffsets[b] .. m_blockOffsets[b+1]-1] */
+  protected int[] m_blockOffsets = null;
+  protected int[] m_blockMembers = null;
+
+  /** CSR reverse index: blocks of instance i are
+   *  m_instanceBlockIds[m_instanceOffsets[i] .. m_instanceOffsets[i+1]-1] */
+  protected int[] m_instanceOffsets = null;
+  protected int[] m_instanceBlockIds = null;
 
   /** Are the blocks overlapping or not? */
   protected boolean m_overlapping; 
@@ -55,7 +78,7 @@ public class BlockingMap {
 
   /** All good pairs found by this blocker */
   int[] m_goodBlockedPairs = null;
-  HashSet<Integer> m_goodPairSet = null;
+  LongHashSet m_goodPairSet = null;
 
   /** A list with all the positive examples as TrainingPair's 
    *  not used due to memory problems
@@ -74,8 +97,15 @@ public class BlockingMap {
   protected int m_numInstances;
 
   public BlockingMap(int numInstances, boolean overlapping, boolean redBlue) {
-    m_blockInstanceMap = new HashMap<Object,int[]>();
-    m_instanceBlocks = new Object[numInstances][0]; 
+    m_keyTable = new long[64];
+    m_idTable = new int[64];
+    Arrays.fill(m_idTable, -1);
+    m_blockKeys = new long[32];
+    m_numBlocks = 0;
+    m_insertBlocks = new int[Math.max(16, numInstances)];
+    m_insertInstances = new int[m_insertBlocks.length];
+    m_numInserts = 0;
+    m_compacted = false; 
     m_numInstances = numInstances;
     m_numSameBlockPairs = 0;
     m_overlapping = overlapping; 
@@ -89,77 +119,187 @@ public class BlockingMap {
     return m_numInstances;
   }
 
-  /** Return the actual map */
-  public HashMap<Object,int[]>  getBlockInstanceMap() {
-    return m_blockInstanceMap;
+  /** Return the number of distinct blocks */
+  public int getNumBlocks() {
+    return m_numBlocks;
   }
 
-  /** Return the instances and corresponding blocks */
-  public Object[][] getInstanceBlocks() {
-    return m_instanceBlocks;
+  /** Return the key of the block with a given id */
+  public long getBlockKey(int blockIdx) {
+    return m_blockKeys[blockIdx];
   }
 
+  /** Return the CSR block offsets; block b spans
+   *  [offsets[b], offsets[b+1]) in getBlockMembers() */
+  public int[] getBlockOffsets() {
+    compact();
+    return m_blockOffsets;
+  }
 
-  /** Put the instance in its correspoding block */
-  public void putInstanceIdx(int instanceIdx, Object blockValue) {
-    int[] instanceIndeces =  m_blockInstanceMap.get(blockValue);
-    if (blockValue instanceof String && ((String)blockValue).length() == 0) {
-      return;
+  /** Return the CSR array of instance indeces grouped by block */
+  public int[] getBlockMembers() {
+    compact();
+    return m_blockMembers;
+  }
+
+  /** Return the CSR instance offsets; instance i spans
+   *  [offsets[i], offsets[i+1]) in getInstanceBlockIds() */
+  public int[] getInstanceOffsets() {
+    compact();
+    return m_instanceOffsets;
+  }
+
+  /** Return the CSR array of block ids grouped by instance */
+  public int[] getInstanceBlockIds() {
+    compact();
+    return m_instanceBlockIds;
+  }
+
+  /** Return the keys of all blocks containing a given instance */
+  public long[] getInstanceBlocks(int instanceIdx) {
+    compact();
+    int start = m_instanceOffsets[instanceIdx];
+    long[] blocks = new long[m_instanceOffsets[instanceIdx+1] - start];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = m_blockKeys[m_instanceBlockIds[start + i]];
     }
-    
-    if (instanceIndeces != null) { // seen this blockValue before
-      int[] newInstanceIndeces = new int[instanceIndeces.length+1];
-      System.arraycopy(instanceIndeces, 0, newInstanceIndeces, 0,
-                       instanceIndeces.length);
-      newInstanceIndeces[instanceIndeces.length] = instanceIdx;
-      instanceIndeces = newInstanceIndeces; 
-    } else {   // new blockValue
-      instanceIndeces = new int[1];
-      instanceIndeces[0] = instanceIdx;
+    return blocks;
+  }
+
+
+  /** Return the id of the block with a given key, allocating a new id
+   *  if the key has not been seen before */
+  protected int getBlockIdx(long blockKey) {
+    int mask = m_keyTable.length - 1;
+    int slot = (int) Blocker.mixKey(blockKey) & mask;
+    while (m_idTable[slot] >= 0) {
+      if (m_keyTable[slot] == blockKey) {
+        return m_idTable[slot];
+      }
+      slot = (slot + 1) & mask;
     }
 
-    m_blockInstanceMap.put(blockValue, instanceIndeces);
+    // new block key
+    int blockIdx = m_numBlocks++;
+    m_keyTable[slot] = blockKey;
+    m_idTable[slot] = blockIdx;
+    if (blockIdx == m_blockKeys.length) {
+      long[] newKeys = new long[m_blockKeys.length * 2];
+      System.arraycopy(m_blockKeys, 0, newKeys, 0, blockIdx);
+      m_blockKeys = newKeys;
+    }
+    m_blockKeys[blockIdx] = blockKey;
+
+    // keep the table at most half full
+    if (2 * m_numBlocks > m_keyTable.length) {
+      long[] newKeyTable = new long[m_keyTable.length * 2];
+      int[] newIdTable = new int[m_keyTable.length * 2];
+      Arrays.fill(newIdTable, -1);
+      mask = newKeyTable.length - 1;
+      for (int b = 0; b < m_numBlocks; b++) {
+        int newSlot = (int) Blocker.mixKey(m_blockKeys[b]) & mask;
+        while (newIdTable[newSlot] >= 0) {
+          newSlot = (newSlot + 1) & mask;
+        }
+        newKeyTable[newSlot] = m_blockKeys[b];
+        newIdTable[newSlot] = b;
+      }
+      m_keyTable = newKeyTable;
+      m_idTable = newIdTable;
+    }
+    return blockIdx;
   }
 
-  /** Store the block IDs for the instance */
-  public void putInstanceBlocks(int instanceIdx, Object[] blocks) {
-    m_instanceBlocks[instanceIdx] = blocks; 
+
+  /** Put the instance in its correspoding block */
+  public void putInstanceIdx(int instanceIdx, long blockKey) {
+    int blockIdx = getBlockIdx(blockKey);
+
+    if (m_numInserts == m_insertBlocks.length) {
+      int newLength = m_insertBlocks.length * 2;
+      int[] newBlocks = new int[newLength];
+      int[] newInstances = new int[newLength];
+      System.arraycopy(m_insertBlocks, 0, newBlocks, 0, m_numInserts);
+      System.arraycopy(m_insertInstances, 0, newInstances, 0, m_numInserts);
+      m_insertBlocks = newBlocks;
+      m_insertInstances = newInstances;
+    }
+    m_insertBlocks[m_numInserts] = blockIdx;
+    m_insertInstances[m_numInserts] = instanceIdx;
+    m_numInserts++;
+    m_compacted = false; 
   }
 
-  /** Add a new block ID for the instance */
-  public void addInstanceBlock(int instanceIdx, Object block) {
-    Object[] oldBlocks = m_instanceBlocks[instanceIdx];
-    Object[] newBlocks = new Object[oldBlocks.length+1];
-    System.arraycopy(oldBlocks, 0, newBlocks, 0, oldBlocks.length);
-    newBlocks[oldBlocks.length] = block;
-    m_instanceBlocks[instanceIdx] = newBlocks;
-  } 
+
+  /** Build the CSR block and instance indeces from the streamed
+   *  memberships with a two-pass counting sort:  the first pass counts
+   *  the members of each block (and blocks of each instance), the second
+   *  scatters the memberships into place.  Insertion order is preserved
+   *  within each block. */
+  protected void compact() {
+    if (m_compacted) {
+      return;
+    }
+    int numBlocks = m_numBlocks;
+
+    // pass 1: count
+    m_blockOffsets = new int[numBlocks + 1];
+    m_instanceOffsets = new int[m_numInstances + 1];
+    for (int i = 0; i < m_numInserts; i++) {
+      m_blockOffsets[m_insertBlocks[i] + 1]++;
+      m_instanceOffsets[m_insertInstances[i] + 1]++;
+    }
+    for (int b = 0; b < numBlocks; b++) {
+      m_blockOffsets[b+1] += m_blockOffsets[b];
+    }
+    for (int i = 0; i < m_numInstances; i++) {
+      m_instanceOffsets[i+1] += m_instanceOffsets[i];
+    }
+
+    // pass 2: scatter
+    m_blockMembers = new int[m_numInserts];
+    m_instanceBlockIds = new int[m_numInserts];
+    int[] blockFill = new int[numBlocks];
+    int[] instanceFill = new int[m_numInstances];
+    for (int i = 0; i < m_numInserts; i++) {
+      int blockIdx = m_insertBlocks[i];
+      int instanceIdx = m_insertInstances[i];
+      m_blockMembers[m_blockOffsets[blockIdx] + blockFill[blockIdx]++] = instanceIdx;
+      m_instanceBlockIds[m_instanceOffsets[instanceIdx] + instanceFill[instanceIdx]++] = blockIdx;
+    }
+
+    m_compacted = true; 
+  }
 
 
   /** Calculate the number of potential positive pairs */
   public void createPotentialPairs(int numInstances) {
     m_numInstances = numInstances;
+    m_compacted = false;
+    compact(); 
     m_numSameBlockPairs = 0;
 
     // go through all blocks and add the total number of same-block pairs
-    for (int[] instanceIndeces : m_blockInstanceMap.values()) { 
-      m_numSameBlockPairs += instanceIndeces.length * (instanceIndeces.length - 1) / 2;
+    for (int b = 0; b < m_numBlocks; b++) {
+      int blockSize = m_blockOffsets[b+1] - m_blockOffsets[b];
+      m_numSameBlockPairs += blockSize * (blockSize - 1) / 2;
     }
   }
 
 
   /** Return the list of positive duplicate pairs found */
-  public HashSet<Integer> getPairs() {
-    HashSet<Integer> pairSet = new HashSet<Integer>();
+  public LongHashSet getPairs() {
+    compact(); 
+    LongHashSet pairSet = new LongHashSet();
     
     // go through lists of instances for each block
-    for (int[] instanceIndeces : m_blockInstanceMap.values()) {
+    for (int b = 0; b < m_numBlocks; b++) {
       // create a list of *all* positive pairs
-      int blockSize = instanceIndeces.length; 
-      for (int i = 0; i < blockSize-1; i++) {
-        int instanceIdx1 = instanceIndeces[i];
-        for (int j = i+1; j < blockSize; j++) {
-          int instanceIdx2 = instanceIndeces[j];
+      int blockEnd = m_blockOffsets[b+1];
+      for (int i = m_blockOffsets[b]; i < blockEnd-1; i++) {
+        int instanceIdx1 = m_blockMembers[i];
+        for (int j = i+1; j < blockEnd; j++) {
+          int instanceIdx2 = m_blockMembers[j];
           int pairCode = genPairCode(instanceIdx1, instanceIdx2);
           pairSet.add(pairCode);
         }
@@ -169,21 +309,34 @@ public class BlockingMap {
     return pairSet; 
   }
 
+
+  /** Return the codes of the pairs found, in increasing order */
+  public int[] getSortedPairs() {
+    long[] pairCodes = getPairs().toArray();
+    int[] pairs = new int[pairCodes.length];
+    for (int i = 0; i < pairs.length; i++) {
+      pairs[i] = (int) pairCodes[i];
+    }
+    Arrays.sort(pairs);
+    return pairs;
+  }
+
   
   /** Return the covered pairs as an array */
   public int[] getPairsArray() {
+    compact(); 
     int numTotalPairs = m_numInstances * (m_numInstances-1)/2;
     boolean[] coveredPairs = new boolean[numTotalPairs];
     Arrays.fill(coveredPairs, false); 
       
     // go through lists of instances for each block
-    for (int[] instanceIndeces : m_blockInstanceMap.values()) {
+    for (int b = 0; b < m_numBlocks; b++) {
       // create a list of *all* positive pairs
-      int blockSize = instanceIndeces.length; 
-      for (int i = 0; i < blockSize-1; i++) {
-        int instanceIdx1 = instanceIndeces[i];
-        for (int j = i+1; j < blockSize; j++) {
-          int instanceIdx2 = instanceIndeces[j];
+      int blockEnd = m_blockOffsets[b+1];
+      for (int i = m_blockOffsets[b]; i < blockEnd-1; i++) {
+        int instanceIdx1 = m_blockMembers[i];
+        for (int j = i+1; j < blockEnd; j++) {
+          int instanceIdx2 = m_blockMembers[j];
           int pairCode = genPairCode(instanceIdx1, instanceIdx2);
           coveredPairs[pairCode] = true; 
         }
@@ -211,9 +364,9 @@ public class BlockingMap {
 
 
   /** Return the list of TRUE positive duplicate pairs found */
-  public HashSet<Integer> getGoodPairs() {
+  public LongHashSet getGoodPairs() {
     if (m_goodPairSet == null) {
-      m_goodPairSet = new HashSet<Integer>(m_numSameBlockPairs);
+      m_goodPairSet = new LongHashSet(m_goodBlockedPairs.length);
       for (int pairIdx : m_goodBlockedPairs) { 
         m_goodPairSet.add(pairIdx);
       }
@@ -243,24 +396,22 @@ public class BlockingMap {
 		                        int[] goodFoundPairs) {
     //    int [] seenPairs = new int[0];
     boolean[] seenPairs = new boolean[m_numInstances * (m_numInstances-1)/2];
-    HashSet<Integer> seenPairSet = new HashSet<Integer>(); 
-      
     int numNewPositives = 0;
     int numOldPositives = 0; 
     int cost = 0; 
-    HashSet<Integer> goodPairSet = new HashSet<Integer>();
+    LongHashSet goodPairSet = new LongHashSet();
     m_redBlueCost = 0;
 
-    int blockIdx = 0;
-    System.out.print(m_blockInstanceMap.size() + " blocks: "); 
+    compact(); 
+    System.out.print(m_numBlocks + " blocks: "); 
 
-    for (int[] instanceIndeces : m_blockInstanceMap.values()) {
-      int blockSize = instanceIndeces.length;
+    for (int blockIdx = 0; blockIdx < m_numBlocks; blockIdx++) {
+      int blockEnd = m_blockOffsets[blockIdx+1];
 
-      for (int i = 0; i < blockSize-1; i++) {
-        int instanceIdx1 = instanceIndeces[i];
-        for (int j = i+1; j < blockSize; j++) {
-          int instanceIdx2 = instanceIndeces[j];
+      for (int i = m_blockOffsets[blockIdx]; i < blockEnd-1; i++) {
+        int instanceIdx1 = m_blockMembers[i];
+        for (int j = i+1; j < blockEnd; j++) {
+          int instanceIdx2 = m_blockMembers[j];
           int pairCode = genPairCode(instanceIdx1, instanceIdx2);
 
           if (seenPairs[pairCode] == false) {
@@ -281,7 +432,6 @@ public class BlockingMap {
           }
         }
       }
-      blockIdx++; 
     }
     seenPairs = null;
 
@@ -291,10 +441,10 @@ public class BlockingMap {
                        (cost - m_redBlueCost - numNewPositives) + " old,"
                        + m_redBlueCost + " bad\t");
       
-    m_goodBlockedPairs = new int[goodPairSet.size()];
-    int i = 0; 
-    for (Integer pairIdx : goodPairSet) {
-      m_goodBlockedPairs[i++] = pairIdx;
+    long[] goodPairCodes = goodPairSet.toArray();
+    m_goodBlockedPairs = new int[goodPairCodes.length];
+    for (int i = 0; i < goodPairCodes.length; i++) {
+      m_goodBlockedPairs[i] = (int) goodPairCodes[i];
     }
 
 
@@ -320,14 +470,15 @@ public class BlockingMap {
     int numOldNegatives = 0;
     int total = 0; 
     boolean allFoundInitialized = (allFoundPairs != null);
-    HashSet<Integer> pairSet = new HashSet<Integer>();
-
-    for (int[] instanceIndeces : m_blockInstanceMap.values()) {
-      int blockSize = instanceIndeces.length; 
-      for (int i = 0; i < blockSize-1; i++) {
-        int instanceIdx1 = instanceIndeces[i];
-        for (int j = i+1; j < blockSize; j++) {
-          int instanceIdx2 = instanceIndeces[j];
+    LongHashSet pairSet = new LongHashSet();
+
+    compact(); 
+    for (int b = 0; b < m_numBlocks; b++) {
+      int blockEnd = m_blockOffsets[b+1];
+      for (int i = m_blockOffsets[b]; i < blockEnd-1; i++) {
+        int instanceIdx1 = m_blockMembers[i];
+        for (int j = i+1; j < blockEnd; j++) {
+          int instanceIdx2 = m_blockMembers[j];
           int pairCode = genPairCode(instanceIdx1, instanceIdx2);
           if (pairSet.contains(pairCode)) {
             continue;
@@ -377,16 +528,17 @@ public class BlockingMap {
                               int[][] goodFoundPairs,
                               int[][] allFoundPairs) {
     boolean allFoundInitialized = (allFoundPairs != null);
-    HashSet<Integer> newGoodFoundSet = new HashSet<Integer>();
-    HashSet<Integer> newAllFoundSet = new HashSet<Integer>();  
+    LongHashSet newGoodFoundSet = new LongHashSet();
+    LongHashSet newAllFoundSet = new LongHashSet();  
     
     if (m_redBlue == false) {
-      for (int[] instanceIndeces : m_blockInstanceMap.values()) {
-        int blockSize = instanceIndeces.length; 
-        for (int i = 0; i < blockSize; i++) {
-          int instanceIdx1 = instanceIndeces[i];
-          for (int j = i+1; j < blockSize; j++) {
-            int instanceIdx2 = instanceIndeces[j];
+      compact(); 
+      for (int b = 0; b < m_numBlocks; b++) {
+        int blockEnd = m_blockOffsets[b+1];
+        for (int i = m_blockOffsets[b]; i < blockEnd; i++) {
+          int instanceIdx1 = m_blockMembers[i];
+          for (int j = i+1; j < blockEnd; j++) {
+            int instanceIdx2 = m_blockMembers[j];
             int pairCode = genPairCode(instanceIdx1, instanceIdx2);
   
             // if good and unseen previously, add to good found pairs
@@ -430,8 +582,8 @@ public class BlockingMap {
       System.arraycopy(goodFoundPairs[0], 0, newPairs, 0, numOldPairs);
 
       int j = numOldPairs; 
-      for (Integer newPair : newGoodFoundSet) { 
-        newPairs[j++] = newPair;
+      for (long newPair : newGoodFoundSet.toArray()) { 
+        newPairs[j++] = (int) newPair;
       }
 
       Arrays.sort(newPairs);
@@ -445,10 +597,9 @@ public class BlockingMap {
       int[] newPairs = new int[numOldPairs + numNewPairs];
       System.arraycopy(allFoundPairs[0], 0, newPairs, 0, numOldPairs);
 
-      Iterator<Integer> iter = newAllFoundSet.iterator();
       int j = numOldPairs; 
-      while (iter.hasNext()) { 
-        newPairs[j++] = iter.next();
+      for (long newPair : newAllFoundSet.toArray()) { 
+        newPairs[j++] = (int) newPair;
       }
       
       Arrays.sort(newPairs);
@@ -472,57 +623,26 @@ public class BlockingMap {
   public static double getCombinedCover(BlockingMap map1,
                                         BlockingMap map2,
                                         int[] goodPairs) {
-    Object[][] instanceBlocks1 = map1.getInstanceBlocks();
-    Object[][] instanceBlocks2 = map2.getInstanceBlocks();
-    int numInstances = instanceBlocks1.length;
-    
-    HashMap<String, int[]> combinedBlockMap = new HashMap<String, int[]>();
-
-    // create the new block map
-    int numNewPairs = 0; 
+    int[] offsets1 = map1.getInstanceOffsets();
+    int[] blockIds1 = map1.getInstanceBlockIds();
+    int[] offsets2 = map2.getInstanceOffsets();
+    int[] blockIds2 = map2.getInstanceBlockIds();
+    int numInstances = map1.getNumInstances();
+    long numBlocks2 = map2.getNumBlocks(); 
+
+    // the conjunction of two blocks is identified by the pair of their ids
+    BlockingMap combinedMap = new BlockingMap(numInstances, true, true); 
     for (int i = 0; i < numInstances; i++) {
-      Object[] blocks1 = instanceBlocks1[i];
-      Object[] blocks2 = instanceBlocks2[i];
-
-      for (int blockIdx1 = 0; blockIdx1 < blocks1.length; blockIdx1++) {
-        for (int blockIdx2 = 0; blockIdx2 < blocks2.length; blockIdx2++) {
-          String blockValue = blocks1[blockIdx1].toString() + "___"
-            + blocks2[blockIdx2].toString();
-
-          int [] instanceIndeces = combinedBlockMap.get(blockValue);
-          if (instanceIndeces != null) { // seen this blockValue before
-            int[] newInstanceIndeces = new int[instanceIndeces.length+1];
-            System.arraycopy(instanceIndeces, 0, newInstanceIndeces, 0,
-                             instanceIndeces.length);
-            newInstanceIndeces[instanceIndeces.length] = i;
-            instanceIndeces = newInstanceIndeces;
-
-            numNewPairs = numNewPairs + instanceIndeces.length - 1; 
-          } else {   // new blockValue
-            instanceIndeces = new int[1];
-            instanceIndeces[0] = i;
-          }
-          combinedBlockMap.put(blockValue, instanceIndeces); 
+      for (int k1 = offsets1[i]; k1 < offsets1[i+1]; k1++) {
+        for (int k2 = offsets2[i]; k2 < offsets2[i+1]; k2++) {
+          long blockKey = blockIds1[k1] * numBlocks2 + blockIds2[k2];
+          combinedMap.putInstanceIdx(i, blockKey); 
         }
       }
     }
 
-    
-    HashSet<Integer> foundPairs = new HashSet<Integer>(); 
     // go through the block map and check the number of positives and negatives
-    for (int[] blockIndeces : combinedBlockMap.values()) {
-      int numBlockInstances = blockIndeces.length;
-      
-      for (int i = 0; i < numBlockInstances - 1; i++) {
-        int idx1 = blockIndeces[i];
-
-        for (int j = i+1; j < numBlockInstances; j++) {
-          int idx2 = blockIndeces[j];
-          int pairCode = genPairCode(idx1, idx2);
-          foundPairs.add(new Integer(pairCode)); 
-        }
-      } 
-    }
+    LongHashSet foundPairs = combinedMap.getPairs(); 
 
     int numPositives = 0; 
     for (int pairIdx : goodPairs) {
@@ -26,6 +26,7 @@ package weka.linkage.blocking.learn;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.*;
 import java.text.SimpleDateFormat;
 
 import weka.linkage.*;
@@ -41,6 +42,9 @@ import weka.linkage.blocking.*;
  */
 public abstract class BlockingSampler
   implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -2577394401673971873L;
   
   /** Upper bound on the number of instances in the sample.  */
   protected int m_maxNumInstances = Integer.MAX_VALUE; 
@@ -52,29 +56,25 @@ public abstract class BlockingSampler
   public int getMaxNumInstances() { return m_maxNumInstances; }
   public void setMaxNumInstances(int max) { m_maxNumInstances = max; }
 
-  /** A helper function that takes instances and creates a map
-   * where each class is mapped to an array of instance id's */
-  public static HashMap<Double, int[]> createClassInstanceMap(Instances data) {
-
-    HashMap<Double, int[]> map = new HashMap<Double, int[]>(data.numClasses());
+  /** A helper function that takes instances and creates a list of
+   * instance id's for every class, in the order the classes are first seen */
+  public static IntArrayList[] createClassInstanceLists(Instances data) {
+    DoubleIntHashMap classSlots = new DoubleIntHashMap();
+    ArrayList<IntArrayList> lists = new ArrayList<IntArrayList>();
 
     int numInstances = data.numInstances();
     for (int i = 0; i < numInstances; i++) {
       double classID = data.instance(i).classValue();
-      int[] classIndeces = map.get(classID);
-      if (classIndeces == null) { // haven't seen this class before
-        classIndeces = new int[1];
-        map.put(classID, classIndeces);
-      } else { // have seen the class, need to resize
-        int[] newIndeces = new int[classIndeces.length+1];
-        System.arraycopy(classIndeces, 0, newIndeces, 0, classIndeces.length);
-        newIndeces[classIndeces.length] = i;
-        classIndeces = null;
-        map.put(classID, newIndeces);
+      int slot = classSlots.get(classID, -1);
+      if (slot == -1) { // haven't seen this class before
+        slot = lists.size();
+        classSlots.put(classID, slot);
+        lists.add(new IntArrayList());
       }
+      lists.get(slot).add(i);
     }
 
-    return map; 
+    return lists.toArray(new IntArrayList[lists.size()]);
   } 
 
   
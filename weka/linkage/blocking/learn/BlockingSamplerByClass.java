@@ -26,6 +26,7 @@ package weka.linkage.blocking.learn;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.*;
 import java.text.SimpleDateFormat;
 
 import weka.linkage.*;
@@ -42,6 +43,9 @@ import weka.linkage.blocking.*;
 public class BlockingSamplerByClass extends BlockingSampler
   implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = -636864474747338273L;
+
   /** Upper bound on the number of true objects. */
   int m_maxNumClasses = Integer.MAX_VALUE;
 
@@ -52,10 +56,9 @@ public class BlockingSamplerByClass extends BlockingSampler
   public Instances getSample(Instances data) {
     Instances sample = new Instances(data, 0);
 
-    // Create a class-instance map
-    HashMap<Double, int[]> classInstanceMap = createClassInstanceMap(data);
-    Double[] classValues = classInstanceMap.keySet().toArray(new Double[0]);
-    int totalClasses = classInstanceMap.size();
+    // Create the per-class instance lists
+    IntArrayList[] classInstanceLists = createClassInstanceLists(data);
+    int totalClasses = classInstanceLists.length;
     int numClasses = totalClasses; 
 
     // Depending on the sampling mode, we'll want either a proportion
@@ -81,11 +84,9 @@ public class BlockingSamplerByClass extends BlockingSampler
     while (currClassIdx < sampleClasses.length &&
            numInstances < m_maxNumInstances) {
       // get the instances for the current class ID and add them to the sample
-      int classIdx = sampleClasses[currClassIdx];
-      double classValue = classValues[classIdx];
-      int[] instanceIndeces = classInstanceMap.get(classValue);
-      for (int i = 0; i < instanceIndeces.length; i++) {
-        sample.add(data.instance(instanceIndeces[i]));
+      IntArrayList instanceIndeces = classInstanceLists[sampleClasses[currClassIdx]];
+      for (int i = 0; i < instanceIndeces.size(); i++) {
+        sample.add(data.instance(instanceIndeces.get(i)));
       } 
 
       currClassIdx++;
@@ -36,6 +36,9 @@ import weka.linkage.*;
 public class ComboBlocker extends Blocker
   implements OptionHandler, Serializable, Cloneable {
 
+  /** for serialization */
+  static final long serialVersionUID = 4601049822984768652L;
+
   /** The array of blockers */
   protected Blocker[] m_blockers = null;
 
@@ -54,6 +57,17 @@ public class ComboBlocker extends Blocker
     return m_overlapping;
   }
 
+  /** Blocks of a single instance can be computed if they can be
+   *  computed for all combined blockers */
+  public boolean isIncremental() {
+    for (Blocker blocker : m_blockers) {
+      if (!blocker.isIncremental()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public ComboBlocker(Blocker[] blockers) {
     setBlockers(blockers); 
   }
@@ -115,11 +129,9 @@ public class ComboBlocker extends Blocker
     
     // for all instances
     for (int idx = 0; idx < numInstances; idx++) {
-      Object[] blocks = getBlocks(instances.instance(idx)); 
-      m_blockingMap.putInstanceBlocks(idx, blocks);
-
-      for (Object blockValue : blocks) { 
-        m_blockingMap.putInstanceIdx(idx, blockValue);
+      long[] blocks = getBlocks(instances.instance(idx)); 
+      for (long blockKey : blocks) { 
+        m_blockingMap.putInstanceIdx(idx, blockKey);
       }
     }
     m_blockingMap.createPotentialPairs(instances.numInstances());
@@ -127,19 +139,19 @@ public class ComboBlocker extends Blocker
 
   
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
-    Object[] blocks = m_blockers[0].getBlocks(instance);
+  public long[] getBlocks (Instance instance) {
+    long[] blocks = m_blockers[0].getBlocks(instance);
     if (blocks == null) {
-      return new Object[0]; 
+      return NO_BLOCKS; 
     }
 
     for (int i = 1; i < m_blockers.length; i++) {
-      Object[] currBlocks = m_blockers[i].getBlocks(instance);
-      Object[] newBlocks = new Object[blocks.length * currBlocks.length];
+      long[] currBlocks = m_blockers[i].getBlocks(instance);
+      long[] newBlocks = new long[blocks.length * currBlocks.length];
       int blockIdx = 0; 
       for (int oldIdx = 0; oldIdx < blocks.length; oldIdx++) {
         for (int newIdx = 0; newIdx < currBlocks.length; newIdx++) {
-          newBlocks[blockIdx++] = blocks[oldIdx] +"___"+ currBlocks[newIdx];
+          newBlocks[blockIdx++] = combineKeys(blocks[oldIdx], currBlocks[newIdx]);
         }
       }
       blocks = newBlocks; 
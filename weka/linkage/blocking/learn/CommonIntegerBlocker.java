@@ -36,10 +36,14 @@ import weka.linkage.*;
 public class CommonIntegerBlocker extends Blocker
   implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = -4937862431549181268L;
+
 
   /** Delimiters for tokenizing */
   protected final String delimiters =
     " \t\n\r\f\'\"\\!@#$%^&*()_-+={}<>,.;:|[]{}/*~`";
+  protected final boolean[] m_isDelimiter = delimiterTable(delimiters);
  
   /** Initializations 
    */
@@ -59,11 +63,42 @@ public class CommonIntegerBlocker extends Blocker
 
 
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
-    String attrValue = instance.stringValue(m_attrId);
-    HashSet<String> numbers = getNumbers(attrValue); 
+  public long[] getBlocks (Instance instance) {
+    char[] chars;
+    int[] bounds;
+    int numTokens;
+    TextField field = RecordText.normalizedField(instance, m_attrId);
+    if (field != null) {
+      // normalized values are tokenized once per record
+      chars = field.chars();
+      bounds = field.tokenBounds();
+      numTokens = field.numTokens();
+    } else {
+      String attrValue = instance.stringValue(m_attrId);
+      chars = attrValue.toCharArray();
+      bounds = new int[attrValue.length() + 1];
+      numTokens = tokenize(attrValue, m_isDelimiter, bounds);
+    }
+
+    // the key of a token hashes the digits it contains
+    long[] blocks = new long[numTokens];
+    int numBlocks = 0;
+    for (int i = 0; i < numTokens; i++) {
+      long hash = FNV_OFFSET;
+      boolean hasDigits = false;
+      for (int j = bounds[2*i]; j < bounds[2*i+1]; j++) {
+        char c = chars[j];
+        if (Character.isDigit(c)) {
+          hash = (hash ^ c) * FNV_PRIME;
+          hasDigits = true;
+        }
+      }
+      if (hasDigits) {
+        blocks[numBlocks++] = mixKey(hash);
+      }
+    }
    
-    return numbers.toArray(); 
+    return uniqueKeys(blocks, numBlocks); 
   }
 
 
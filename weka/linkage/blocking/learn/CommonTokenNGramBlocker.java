@@ -36,6 +36,9 @@ import weka.linkage.*;
 public class CommonTokenNGramBlocker extends Blocker
   implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = -5428927839999806816L;
+
   /** number of consecutive tokens to use */
   protected int m_N = 2; 
   
@@ -43,6 +46,7 @@ public class CommonTokenNGramBlocker extends Blocker
   /** Delimiters for tokenizing */
   protected final String delimiters =
     " \t\n\r\f\'\"\\!@#$%^&*()_-+={}<>,.;:|[]{}/*~`";
+  protected final boolean[] m_isDelimiter = delimiterTable(delimiters);
  
   /** Initializations 
    */
@@ -64,25 +68,39 @@ public class CommonTokenNGramBlocker extends Blocker
 
   
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
+  public long[] getBlocks (Instance instance) {
+    // normalized values are tokenized once per record
+    TextField field = RecordText.normalizedField(instance, m_attrId);
+    if (field != null) {
+      char[] chars = field.chars();
+      int numBlocks = Math.max(0, field.numTokens() - m_N+1);
+      long[] blocks = new long[numBlocks];
+      for (int i = 0; i < numBlocks; i++) {
+        long hash = FNV_OFFSET;
+        for (int j = i; j < i+m_N; j++) {
+          hash = hashChars(hash, chars, field.tokenStart(j), field.tokenEnd(j));
+        }
+        blocks[i] = mixKey(hash); 
+      }
+      return uniqueKeys(blocks, numBlocks); 
+    }
+
     String attrValue = instance.stringValue(m_attrId);
 
-    StringTokenizer tokenizer = new StringTokenizer(attrValue, delimiters);
-    List<String> tokenList = new ArrayList<String>();
-    while (tokenizer.hasMoreTokens()) {
-      tokenList.add(tokenizer.nextToken()); 
-    }
+    int[] bounds = new int[attrValue.length() + 1];
+    int numTokens = tokenize(attrValue, m_isDelimiter, bounds);
       
-    HashSet<String> blocks = new HashSet<String>();
-    for (int i = 0; i < tokenList.size() - m_N+1; i++) {
-      StringBuffer buff = new StringBuffer(tokenList.get(i));
-      for (int j = i+1; j < i+m_N; j++) {
-        buff.append(tokenList.get(j));
+    // the key of a token n-gram hashes the concatenated tokens
+    int numBlocks = Math.max(0, numTokens - m_N+1);
+    long[] blocks = new long[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      long hash = FNV_OFFSET;
+      for (int j = i; j < i+m_N; j++) {
+        hash = hashChars(hash, attrValue, bounds[2*j], bounds[2*j+1]);
       }
-      String blockValue = buff.toString();
-      blocks.add(blockValue); 
+      blocks[i] = mixKey(hash); 
     }
-    return blocks.toArray(); 
+    return uniqueKeys(blocks, numBlocks); 
   } 
 
 
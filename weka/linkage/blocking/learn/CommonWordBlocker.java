@@ -36,10 +36,14 @@ import weka.linkage.*;
 public class CommonWordBlocker extends Blocker
   implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 479066815802656832L;
+
 
   /** Delimiters for tokenizing */
   protected final String delimiters =
     " \t\n\r\f\'\"\\!@#$%^&*()_-+={}<>,.;:|[]{}/*~`";
+  protected final boolean[] m_isDelimiter = delimiterTable(delimiters);
  
   /** Initializations 
    */
@@ -59,17 +63,23 @@ public class CommonWordBlocker extends Blocker
 
 
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
+  public long[] getBlocks (Instance instance) {
+    // normalized values are tokenized once per record
+    TextField field = RecordText.normalizedField(instance, m_attrId);
+    if (field != null) {
+      return field.distinctTokenKeys();
+    }
+
     String attrValue = instance.stringValue(m_attrId);
       
-    StringTokenizer tokenizer = new StringTokenizer(attrValue, delimiters);
-    HashSet<String> blocks = new HashSet<String>();
-    while (tokenizer.hasMoreTokens()) {
-      String blockValue = tokenizer.nextToken();
-      blocks.add(blockValue); 
+    int[] bounds = new int[attrValue.length() + 1];
+    int numTokens = tokenize(attrValue, m_isDelimiter, bounds);
+    long[] blocks = new long[numTokens];
+    for (int i = 0; i < numTokens; i++) {
+      blocks[i] = hashChars(attrValue, bounds[2*i], bounds[2*i+1]); 
     }
 
-    return blocks.toArray(); 
+    return uniqueKeys(blocks, numTokens); 
   }
 
 
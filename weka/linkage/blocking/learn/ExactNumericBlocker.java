@@ -35,6 +35,9 @@ import weka.linkage.*;
 
 public class ExactNumericBlocker extends Blocker implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = -8113913560230461236L;
+
 
   /** Initializations */
   public ExactNumericBlocker() {
@@ -55,10 +58,9 @@ public class ExactNumericBlocker extends Blocker implements OptionHandler, Seria
 
   
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
-    Double blockValue = new Double(instance.value(m_attrId));
-    Object[] blocks = new Object[1];
-    blocks[0] = blockValue; 
+  public long[] getBlocks (Instance instance) {
+    long[] blocks = new long[1];
+    blocks[0] = Double.doubleToLongBits(instance.value(m_attrId)); 
     return blocks; 
   }
   
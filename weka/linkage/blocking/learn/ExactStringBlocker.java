@@ -36,6 +36,9 @@ import weka.linkage.*;
 public class ExactStringBlocker extends Blocker
   implements OptionHandler, Serializable, Cloneable {
 
+  /** for serialization */
+  static final long serialVersionUID = 9012483371835731446L;
+
   /** Initializations */
   public ExactStringBlocker() {
   }
@@ -54,10 +57,18 @@ public class ExactStringBlocker extends Blocker
 
 
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
-    String blockValue = instance.stringValue(m_attrId);
-    Object[] blocks = new Object[1];
-    blocks[0] = blockValue; 
+  public long[] getBlocks (Instance instance) {
+    TextField field = RecordText.normalizedField(instance, m_attrId);
+    if (field != null) {
+      return (field.chars().length == 0) ? NO_BLOCKS : new long[] {field.textKey()};
+    }
+
+    String str = instance.stringValue(m_attrId);
+    if (str.length() == 0) {
+      return NO_BLOCKS;
+    }
+    long[] blocks = new long[1];
+    blocks[0] = hashChars(str, 0, str.length()); 
     return blocks; 
   }
 
@@ -36,6 +36,9 @@ import weka.linkage.*;
 public class FirstNCharBlocker extends Blocker
   implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 4880432268259317925L;
+
   /** The number of chars that should match */
   protected int m_N = 3; 
 
@@ -57,14 +60,14 @@ public class FirstNCharBlocker extends Blocker
 
 
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
-    String blockValue = instance.stringValue(m_attrId);
-    if (blockValue.length() >= m_N) {
-      blockValue = blockValue.substring(0, m_N);
+  public long[] getBlocks (Instance instance) {
+    String str = instance.stringValue(m_attrId);
+    if (str.length() == 0) {
+      return NO_BLOCKS;
     }
 
-    Object[] blocks = new Object[1];
-    blocks[0] = blockValue;
+    long[] blocks = new long[1];
+    blocks[0] = hashChars(str, 0, Math.min(m_N, str.length()));
     
     return blocks; 
   }
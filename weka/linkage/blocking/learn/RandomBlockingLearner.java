@@ -35,6 +35,9 @@ import weka.linkage.*;
 
 public class RandomBlockingLearner extends BlockingLearner implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 7252781939481088475L;
+
   /** Initialize the blocking learner.
    */
   public RandomBlockingLearner() {
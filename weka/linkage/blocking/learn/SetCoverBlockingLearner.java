@@ -24,6 +24,7 @@ package weka.linkage.blocking.learn;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.LongHashSet;
 import weka.linkage.*;
 
 /**
@@ -36,6 +37,9 @@ import weka.linkage.*;
 public class SetCoverBlockingLearner extends BlockingLearner
   implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 6127760631805437806L;
+
   /** If memory is tight, don't track negative covered pairs */
   protected boolean m_trackNegatives = false;
 
@@ -257,13 +261,13 @@ public class SetCoverBlockingLearner extends BlockingLearner
     List<Blocker> subsumedBlockerList = new ArrayList<Blocker>();
     for (int i = 0; i < blockerList.size()-1; i++) {
       Blocker earlyBlocker = (Blocker) blockerList.get(i);
-      HashSet<Integer> earlyGoodPairs = earlyBlocker.getGoodPairs();
+      LongHashSet earlyGoodPairs = earlyBlocker.getGoodPairs();
 
       boolean subsumes = true;
       for (int j = i+1; j < blockerList.size(); j++) {
         Blocker lateBlocker =  (Blocker) blockerList.get(j);
-        HashSet<Integer> lateGoodPairs = lateBlocker.getGoodPairs();
-        for (Integer earlyGoodPair : earlyGoodPairs) {
+        LongHashSet lateGoodPairs = lateBlocker.getGoodPairs();
+        for (long earlyGoodPair : earlyGoodPairs.toArray()) {
           if (!lateGoodPairs.contains(earlyGoodPair)) {
             subsumes = false;
             break;
@@ -299,21 +303,11 @@ public class SetCoverBlockingLearner extends BlockingLearner
         System.err.println("Instance " + instance + " has missing class!!!");
         continue;
       }
-      Double classValue = new Double(instance.classValue());
-      realBlockingMap.putInstanceIdx(i, classValue);
+      realBlockingMap.putInstanceIdx(i, Double.doubleToLongBits(instance.classValue()));
     }
     
     realBlockingMap.createPotentialPairs(instances.numInstances());
-    HashSet<Integer> realPairSet = realBlockingMap.getPairs();
-
-    int[] pairs = new int[realPairSet.size()];
-    int i = 0; 
-    for (int pairIdx : realPairSet) {
-      pairs[i++] = pairIdx;
-    }
-    Arrays.sort(pairs);
-
-    return pairs;
+    return realBlockingMap.getSortedPairs();
   }
 
 
@@ -36,6 +36,9 @@ import weka.linkage.*;
 public class SetCoverDNFBlockingLearner extends SetCoverBlockingLearner
   implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = -247249562347618003L;
+
   /** Minimum amount of cover needed for DNF blockers */
   protected double m_minCover = 0.1;
 
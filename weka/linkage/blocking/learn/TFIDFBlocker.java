@@ -22,25 +22,36 @@
 package weka.linkage.blocking.learn;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.io.Serializable;
 
 import java.text.SimpleDateFormat;
 import java.text.DecimalFormat;
 
 import weka.core.*;
+import weka.core.collections.IntArrayList;
 import weka.linkage.*;
 import weka.linkage.blocking.*;
+import weka.linkage.metrics.GramVector;
 import weka.linkage.metrics.Tokenizer;
 import weka.linkage.metrics.WordTokenizer;
 import weka.linkage.metrics.NGramTokenizer;
-import weka.linkage.metrics.TokenInfo;
-import weka.linkage.metrics.HashMapVector;
-import weka.linkage.metrics.Weight;
 
 
 
 /**
- * Create blocks using the "Canopies" algorithm (McCallum, Ungar, Nigam, KDD-2000)
+ * Create blocks using the "Canopies" algorithm (McCallum, Ungar, Nigam, KDD-2000).
+ * Every string within the loose similarity threshold of a center joins
+ * its canopy; strings within the tight threshold cannot become centers
+ * themselves.  Candidates are found through an inverted index over token
+ * codes (Tokenizer.tokenizeCodes()), skipping tokens with more than
+ * maxPostingLength occurrences.  With more than one thread, canopies of
+ * consecutive centers are computed concurrently and committed in center
+ * order, so the blocks do not depend on the number of threads.
  * 
  * @author Misha Bilenko
  */
@@ -48,23 +59,43 @@ import weka.linkage.metrics.Weight;
 public class TFIDFBlocker extends Blocker
   implements OptionHandler, Serializable {
 
-  /** Instances are mapped to StringReferences in this hash */
-  //  protected HashMap<Integer,StringRef> m_strRefMap = null;
-  
-  /** A HashMap where tokens are indexed. Each indexed token maps to a TokenInfo. */
-  protected HashMap<String,TokenInfo> m_tokenInfoMap = null;
+  /** for serialization */
+  static final long serialVersionUID = 4418318169498443862L;
+
+  /** Sorted distinct codes of the indexed tokens, and their IDF weights */
+  protected transient long[] m_termCodes = null;
+  protected transient double[] m_idfs = null;
+
+  /** For every token, the strings it occurs in, in increasing order */
+  protected transient int[][] m_postings = null;
 
-  /** A list of all indexed instance.  Elements are InstanceReference's. */
-  public ArrayList<StringRef> m_strRefList = null;
+  /** Weighted token vectors of the strings, and the index of every
+   * token of a vector in m_termCodes */
+  protected transient GramVector[] m_vectors = null;
+  protected transient int[][] m_stringTerms = null;
 
-  /** An underlying tokenizer used to convert strings into HashMapVectors  */
+  /** An underlying tokenizer used to convert strings into token codes */
   protected Tokenizer m_tokenizer = new WordTokenizer();
 
   /** Should IDF weighting be used? */
   protected boolean m_useIDF = true;
 
-  /** Minimum TF-IDF threshold required */
+  /** Minimum TF-IDF similarity to a center required to join its
+   * canopy (the loose threshold) */
   protected double m_simThreshold = 0.6; 
+
+  /** Minimum TF-IDF similarity to a center that keeps a string from
+   * becoming a center; the loose threshold is used if it is lower */
+  protected double m_tightThreshold = 0;
+
+  /** Tokens occurring in more strings are not used to find candidates */
+  protected int m_maxPostingLength = 1000;
+
+  /** Number of threads computing canopies */
+  protected int m_numThreads = 1;
+
+  /** Number of centers processed in a batch by each thread */
+  protected static final int CENTERS_PER_THREAD = 16;
  
   /** Initializations 
    */
@@ -76,8 +107,11 @@ public class TFIDFBlocker extends Blocker
   public void resetBlocker() {
     m_instances = null; 
     m_blockingMap = null;
-    m_tokenInfoMap = null;
-    m_strRefList = null;
+    m_termCodes = null;
+    m_idfs = null;
+    m_postings = null;
+    m_vectors = null;
+    m_stringTerms = null;
   }
 
   /** Return a copy of this Blocker */
@@ -85,6 +119,9 @@ public class TFIDFBlocker extends Blocker
     TFIDFBlocker blocker = new TFIDFBlocker();
     blocker.setUseIDF(m_useIDF);
     blocker.setSimThreshold(m_simThreshold);
+    blocker.setTightThreshold(m_tightThreshold);
+    blocker.setMaxPostingLength(m_maxPostingLength);
+    blocker.setNumThreads(m_numThreads);
     blocker.setTokenizer(m_tokenizer); 
     return blocker;
   }
@@ -94,6 +131,11 @@ public class TFIDFBlocker extends Blocker
     return true;
   }
 
+  /** Canopies depend on the whole dataset */
+  public boolean isIncremental() {
+    return false;
+  }
+
   /** Given the data, construct the blocking */
   public void blockData(Instances instances, boolean redBlue) {
     if (m_instances != null) {
@@ -102,247 +144,332 @@ public class TFIDFBlocker extends Blocker
     m_instances = instances;
     int numInstances = instances.numInstances();
 
-    m_tokenInfoMap = new HashMap<String,TokenInfo>();
-    m_strRefList = new ArrayList<StringRef>(numInstances);
+    GramVector[] counts = new GramVector[numInstances];
     for (int i = 0; i < numInstances; i++) { 
-      Instance instance = instances.instance(i);
-      String val = instance.stringValue(m_attrId); 
-      HashMapVector vector = m_tokenizer.tokenize(val);
-      vector.initLength();
-      indexInstance(i, val, vector);
+      counts[i] = m_tokenizer.tokenizeCodes(instances.instance(i).stringValue(m_attrId));
     }
-
-    // Now that all instances have been processed, we can calculate the IDF weights for
-    // all tokens and the resulting lengths of all weighted document vectors.
-    computeIDFandStringLengths();
+    indexStrings(counts);
     System.out.print('\t' + getTimestamp() + " " + toString() + "\t" 
-                       + m_strRefList.size() + " strings, "
-                       + m_tokenInfoMap.size() + " tokens; ");
-    createPairSet();
+                       + numInstances + " strings, "
+                       + m_termCodes.length + " tokens; ");
+    try {
+      createPairSet();
+    } catch (Exception e) {
+      throw new RuntimeException("Could not create the canopies of " + toString(), e);
+    }
     System.out.println(getTimestamp() + " Done creating the pair set "); 
   }
 
 
-    /** Index a given Instance using its corresponding vector */
-  protected void indexInstance(int instanceIdx, String str, HashMapVector vector) {
-    // Create a new reference
-    StringRef strRef = new StringRef(instanceIdx,
-                                     m_instances.instance(instanceIdx).classValue(),
-                                     str, vector);
-    m_strRefList.add(strRef);
-    
-    //    m_strRefMap.put(instanceIdx, strRef);
-    // Iterate through each of the tokens in the document
-    Iterator mapEntries = vector.iterator();
-    while (mapEntries.hasNext()) {
-      Map.Entry entry = (Map.Entry)mapEntries.next();
-      // An entry in the HashMap maps a token to a Weight
-      String token = (String)entry.getKey();
-      // The count for the token is in the value of the Weight
-      int count = (int)((Weight)entry.getValue()).getValue();
-      // Add an occurence of this token to the inverted index pointing to this document
-      indexToken(token, count, strRef);
-    }
-  }
-
-  
-  /** Add a token occurrence to the index.
-   * @param token The token to index.
-   * @param count The number of times it occurs in the document.
-   * @param instRef A reference to the Instance it occurs in.
+  /** Build the inverted index and the weighted vectors of the strings.
+   * Tokens occurring in all strings get an IDF of 0 and are dropped.
+   * @param counts token counts of the strings
    */
-  protected void indexToken(String token, int count, StringRef strRef) {
-    // Find this token in the index
-    TokenInfo tokenInfo = m_tokenInfoMap.get(token);
-    if (tokenInfo == null) {
-      // If this is a new token, create info for it to put in the hashtable
-      tokenInfo = new TokenInfo();
-      m_tokenInfoMap.put(token, tokenInfo);
+  protected void indexStrings(GramVector[] counts) {
+    int numStrings = counts.length;
+    int numOccurrences = 0;
+    for (GramVector vector : counts) {
+      numOccurrences += vector.size();
+    }
+    long[] codes = new long[numOccurrences];
+    int numCodes = 0;
+    for (GramVector vector : counts) {
+      for (int i = 0; i < vector.size(); i++) {
+        codes[numCodes++] = vector.code(i);
+      }
+    }
+    Arrays.sort(codes);
+    int numTerms = 0;
+    for (int i = 0; i < numCodes; i++) {
+      if (numTerms == 0 || codes[i] != codes[numTerms - 1]) {
+        codes[numTerms++] = codes[i];
+      }
+    }
+    long[] termCodes = Arrays.copyOf(codes, numTerms);
+
+    // count the strings of every token
+    int[][] stringTerms = new int[numStrings][];
+    int[] postingLengths = new int[numTerms];
+    for (int s = 0; s < numStrings; s++) {
+      GramVector vector = counts[s];
+      stringTerms[s] = new int[vector.size()];
+      for (int i = 0; i < vector.size(); i++) {
+        int term = Arrays.binarySearch(termCodes, vector.code(i));
+        stringTerms[s][i] = term;
+        postingLengths[term]++;
+      }
     }
-    // Add a new occurrence for this token to its info
-    tokenInfo.occList.add(new TokenStrOccurrence(strRef, count));
-  }
 
-  
-  /** Compute the IDF factor for every token in the index and the length
-   * of the string vector for every string referenced in the index. */
-  protected void computeIDFandStringLengths() {
-    // Let N be the total number of documents indexed
-    double N = m_strRefList.size();
-    // Iterate through each of the tokens in the index 
-    Iterator mapEntries = m_tokenInfoMap.entrySet().iterator();
-    while (mapEntries.hasNext()) {
-      // Get the token and the tokenInfo for each entry in the HashMap
-      Map.Entry entry = (Map.Entry)mapEntries.next();
-      String token = (String)entry.getKey();
-      TokenInfo tokenInfo = (TokenInfo)entry.getValue();
-
-      // Get the total number of strings in which this token occurs
-      double numStringRefs = tokenInfo.occList.size(); 
-
-      // Calculate the IDF factor for this token
-      double idf = Math.log(N/numStringRefs);
-      if (idf == 0.0) 
-	// If IDF is 0, then just remove this "all-strings" token from the index
-	mapEntries.remove();
-      else {
-	tokenInfo.idf = idf;
-	// In order to compute document vector lengths,  sum the
-	// square of the weights (IDF * occurrence count) across
-	// every token occurrence for each document.
-	for(int i = 0; i < tokenInfo.occList.size(); i++) {
-	  TokenStrOccurrence occ =
-            (TokenStrOccurrence)tokenInfo.occList.get(i);
-	  if (m_useIDF) { 
-	    occ.stringRef.length = occ.stringRef.length +
-              (idf*occ.count) * (idf*occ.count);
-	  } else {
-	    occ.stringRef.length = occ.stringRef.length +
-              occ.count * occ.count;
-	  }
-	}
+    // drop the tokens that occur in all strings, renumbering the rest
+    int[] termMap = new int[numTerms];
+    int numKept = 0;
+    double[] idfs = new double[numTerms];
+    for (int t = 0; t < numTerms; t++) {
+      double idf = Math.log(numStrings / (double) postingLengths[t]);
+      if (idf == 0.0) {
+        termMap[t] = -1;
+      } else {
+        termMap[t] = numKept;
+        termCodes[numKept] = termCodes[t];
+        postingLengths[numKept] = postingLengths[t];
+        idfs[numKept++] = idf;
       }
     }
-    // At this point, every document length should be the sum of the squares of
-    // its token weights.  In order to calculate final lengths, just need to
-    // set the length of every document reference to the square-root of this sum.
-    for(StringRef strRef : m_strRefList) { 
-      strRef.length = Math.sqrt(strRef.length);
+    m_termCodes = Arrays.copyOf(termCodes, numKept);
+    m_idfs = Arrays.copyOf(idfs, numKept);
+
+    // fill the postings and weight the vectors
+    m_postings = new int[numKept][];
+    for (int t = 0; t < numKept; t++) {
+      m_postings[t] = new int[postingLengths[t]];
+      postingLengths[t] = 0;
+    }
+    m_vectors = new GramVector[numStrings];
+    m_stringTerms = new int[numStrings][];
+    for (int s = 0; s < numStrings; s++) {
+      GramVector vector = counts[s];
+      int[] terms = new int[vector.size()];
+      long[] weightedCodes = new long[vector.size()];
+      double[] weights = new double[vector.size()];
+      int numWeighted = 0;
+      for (int i = 0; i < vector.size(); i++) {
+        int term = termMap[stringTerms[s][i]];
+        if (term >= 0) {
+          m_postings[term][postingLengths[term]++] = s;
+          terms[numWeighted] = term;
+          weightedCodes[numWeighted] = vector.code(i);
+          weights[numWeighted++] = m_useIDF ? m_idfs[term] * vector.weight(i) : vector.weight(i);
+        }
+      }
+      m_stringTerms[s] = Arrays.copyOf(terms, numWeighted);
+      m_vectors[s] = new GramVector(Arrays.copyOf(weightedCodes, numWeighted),
+                                    Arrays.copyOf(weights, numWeighted));
     }
   }
 
 
-  
-  /** Populate m_pairSet with all the pairs that contain common tokens, so that
-   * they can be retrieved in the order of decreasing similarity later */
-  public void createPairSet() {
-    int numInstances = m_instances.numInstances();
-    HashSet<Integer> centers = new HashSet<Integer>();
-    for (int i = 0; i < numInstances; i++) {
-      centers.add(i);
+  /** A canopy of a center; its members in increasing order, with the
+   * members within the tight threshold flagged */
+  protected static class Canopy {
+    protected final int m_center;
+    protected final int[] m_members;
+    protected final boolean[] m_tight;
+
+    protected Canopy(int center, int[] members, boolean[] tight) {
+      m_center = center;
+      m_members = members;
+      m_tight = tight;
     }
-    int numCenters = 0; 
+  }
 
-    m_blockingMap = new BlockingMap(m_instances.numInstances(),
-                                    true, true);    
-
-    while (centers.size() > 0) {
-
-      // get a random center
-      Iterator<Integer> iter = centers.iterator();
-      int centerIdx = iter.next();
-      StringRef centerStrRef = m_strRefList.get(centerIdx); 
-
-      // initialize the canopy with the center
-      HashSet<Integer> canopy = new HashSet<Integer>();
-      canopy.add(centerIdx);
-
-      // avoid computing similarity twice
-      HashSet<Integer> seenInstances = new HashSet<Integer>();
-
-      // iterate through all tokens in the center
-      Set tokens = centerStrRef.vector.hashMap.keySet();
-      Iterator tokenIter = tokens.iterator();
-      while (tokenIter.hasNext()) {
-        String token = (String) tokenIter.next();
-        TokenInfo tokenInfo = m_tokenInfoMap.get(token);
-        
-        // Get the total number of strings in which this token occurs
-        int numStringRefs = tokenInfo.occList.size();
-
-        // if more than 1, compare pair and add to the index
-        if (numStringRefs > 1 && numStringRefs < 1000) {
-          
-          for (int i = 0; i < numStringRefs; i++) {
-            StringRef stringRef =
-              ((TokenStrOccurrence) tokenInfo.occList.get(i)).stringRef;
-            int idx = stringRef.idx;
-
-            if (idx != centerIdx && !seenInstances.contains(idx)) {
-              seenInstances.add(idx);
-
-              double sim = similarity(centerStrRef, stringRef);
-              if (sim >= m_simThreshold) {
-                canopy.add(idx);
-
-                // remove from centers
-                centers.remove(idx); 
+
+  /** Finds canopies; holds the buffers of one thread */
+  protected class CanopyFinder {
+    /** The last center for which a string was seen */
+    protected int[] m_seenFor;
+    protected IntArrayList m_candidates = new IntArrayList();
+
+    protected CanopyFinder(int numStrings) {
+      m_seenFor = new int[numStrings];
+      Arrays.fill(m_seenFor, -1);
+    }
+
+    /** Compute the canopy of a center */
+    protected Canopy canopy(int centerIdx) {
+      GramVector center = m_vectors[centerIdx];
+      m_candidates.clear();
+      m_candidates.add(centerIdx);
+      m_seenFor[centerIdx] = centerIdx;
+      if (center.length() > 0) {
+        for (int term : m_stringTerms[centerIdx]) {
+          int[] posting = m_postings[term];
+          // tokens occurring in one string or in too many strings
+          // are not used to find candidates
+          if (posting.length > 1 && posting.length < m_maxPostingLength) {
+            for (int idx : posting) {
+              if (m_seenFor[idx] != centerIdx) {
+                m_seenFor[idx] = centerIdx;
+                m_candidates.add(idx);
               }
             }
           }
         }
       }
+      m_candidates.sort();
+
+      double tightThreshold = Math.max(m_tightThreshold, m_simThreshold);
+      int[] members = new int[m_candidates.size()];
+      boolean[] tight = new boolean[m_candidates.size()];
+      int numMembers = 0;
+      for (int i = 0; i < m_candidates.size(); i++) {
+        int idx = m_candidates.get(i);
+        double sim = (idx == centerIdx) ? 1 : similarity(center, m_vectors[idx]);
+        if (idx == centerIdx || sim >= m_simThreshold) {
+          members[numMembers] = idx;
+          tight[numMembers++] = (idx == centerIdx || sim >= tightThreshold);
+        }
+      }
+      return new Canopy(centerIdx, Arrays.copyOf(members, numMembers),
+                        Arrays.copyOf(tight, numMembers));
+    }
+  }
 
-      // remove from centers
-      centers.remove(centerIdx);
-      ++numCenters; 
+  
+  /** Create the canopies and put them into m_blockingMap.  Centers are
+   * taken in increasing order of the strings not removed yet.  With
+   * several threads, a batch of the next candidate centers is processed
+   * concurrently; the canopies are then committed in order, dropping
+   * those of candidates removed by a canopy committed before them.
+   * Claims only save work, so the result is the same for any number
+   * of threads. */
+  public void createPairSet() throws Exception {
+    final int numInstances = m_instances.numInstances();
+    boolean[] removed = new boolean[numInstances];
+    int numCenters = 0; 
 
-      if (canopy.size() > 1) {
-        for (int idx : canopy) {
-          m_blockingMap.putInstanceIdx(idx, centerIdx);
-          m_blockingMap.addInstanceBlock(idx, centerIdx);
-        } 
-      } 
+    m_blockingMap = new BlockingMap(numInstances, true, true);    
+
+    final int numThreads = Math.max(1, m_numThreads);
+    final CanopyFinder[] finders = new CanopyFinder[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      finders[t] = new CanopyFinder(numInstances);
+    }
+    ExecutorService executor = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads) : null;
+    try {
+      int next = 0;
+      int numBatches = 0;
+      int[] batch = new int[numThreads * CENTERS_PER_THREAD];
+      Canopy[] canopies = new Canopy[batch.length];
+      AtomicIntegerArray claims = (numThreads > 1) ? new AtomicIntegerArray(numInstances) : null;
+      while (true) {
+        int batchSize = 0;
+        for (; next < numInstances && batchSize < (numThreads == 1 ? 1 : batch.length); next++) {
+          if (!removed[next]) {
+            batch[batchSize++] = next;
+          }
+        }
+        if (batchSize == 0) {
+          break;
+        }
+        findCanopies(executor, finders, batch, batchSize, ++numBatches, claims, canopies);
+
+        for (int c = 0; c < batchSize; c++) {
+          Canopy canopy = canopies[c];
+          canopies[c] = null;
+          if (removed[batch[c]]) {
+            continue;
+          }
+          if (canopy == null) {
+            // skipped, but the canopy that claimed it was dropped
+            canopy = finders[0].canopy(batch[c]);
+          }
+          ++numCenters;
+          for (int i = 0; i < canopy.m_members.length; i++) {
+            if (canopy.m_tight[i]) {
+              removed[canopy.m_members[i]] = true;
+            }
+          }
+          if (canopy.m_members.length > 1) {
+            for (int idx : canopy.m_members) {
+              m_blockingMap.putInstanceIdx(idx, canopy.m_center);
+            }
+          }
+        }
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
     }
 
     System.out.println(numCenters + " centers.");
-    // + numNonCenters + " non-centers"); 
+  }
+
+
+  /** Compute the canopies of a batch of centers, on the executor if
+   * there is one.  Concurrently, a center within the tight threshold of
+   * an earlier center of the batch is claimed by it and skipped; its
+   * canopy is left null.
+   * @param batchNo a number identifying the batch in claims
+   * @param claims the last batch in which each string was claimed
+   */
+  protected void findCanopies(ExecutorService executor, final CanopyFinder[] finders,
+                              final int[] batch, final int batchSize, final int batchNo,
+                              final AtomicIntegerArray claims,
+                              final Canopy[] canopies) throws Exception {
+    if (executor == null) {
+      for (int c = 0; c < batchSize; c++) {
+        canopies[c] = finders[0].canopy(batch[c]);
+      }
+      return;
+    }
+    ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int t = 0; t < finders.length; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Object>() {
+          public Object call() {
+            for (int c = thread; c < batchSize; c += finders.length) {
+              int centerIdx = batch[c];
+              if (claims.get(centerIdx) == batchNo) {
+                continue;
+              }
+              Canopy canopy = finders[thread].canopy(centerIdx);
+              for (int i = 0; i < canopy.m_members.length; i++) {
+                if (canopy.m_tight[i] && canopy.m_members[i] > centerIdx) {
+                  claims.set(canopy.m_members[i], batchNo);
+                }
+              }
+              canopies[c] = canopy;
+            }
+            return null;
+          }
+        }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
   }
 
   
 
-  /** Compute similarity between two strings
-   * @param s1 first string
-   * @param s2 second string
-   * @returns similarity between two strings
+  /** Compute the cosine similarity between two weighted token vectors
+   * @param v1 first vector
+   * @param v2 second vector
+   * @returns similarity between the vectors
    */
-  public double similarity(StringRef stringRef1, StringRef stringRef2) {
-    double length1 = stringRef1.length;
-    double length2 = stringRef2.length;
-    HashMapVector v1 = stringRef1.vector;
-    HashMapVector v2 = stringRef2.vector;
-    double similarity = 0;
-        
-    if (length1 == 0 || length2 == 0) {
+  public double similarity(GramVector v1, GramVector v2) {
+    if (v1.length() == 0 || v2.length() == 0) {
       return 0;
     }
+    return v1.dot(v2) / (v1.length() * v2.length());
+  }
 
-    Iterator mapEntries = v1.iterator();
-    while (mapEntries.hasNext()) {
-      // Get the token and the count for each token in the query
-      Map.Entry entry = (Map.Entry)mapEntries.next();
-      String token = (String)entry.getKey();
-      if (v2.hashMap.containsKey(token)) {
-        double count1 = ((Weight)entry.getValue()).getValue();
-        double count2 = ((Weight)v2.hashMap.get(token)).getValue();
-        TokenInfo tokenInfo = m_tokenInfoMap.get(token);
-
-        // add this component unless it was killed (with idf=0)
-        if (tokenInfo != null) {
-          double increment = count1 * count2;
-          if (m_useIDF) {
-            increment *= tokenInfo.idf * tokenInfo.idf;
-          }
-          similarity += increment;
-        }
+
+  /** Weight the token counts of a string with the IDFs of the index;
+   * tokens that are not indexed are dropped */
+  protected GramVector weightedVector(String str) {
+    GramVector counts = m_tokenizer.tokenizeCodes(str);
+    if (m_termCodes == null) {
+      return counts;
+    }
+    long[] codes = new long[counts.size()];
+    double[] weights = new double[counts.size()];
+    int numWeighted = 0;
+    for (int i = 0; i < counts.size(); i++) {
+      int term = Arrays.binarySearch(m_termCodes, counts.code(i));
+      if (term >= 0) {
+        codes[numWeighted] = counts.code(i);
+        weights[numWeighted++] = m_useIDF ? m_idfs[term] * counts.weight(i) : counts.weight(i);
       }
     }
-    similarity /= length1 * length2;
-    return similarity;
+    return new GramVector(Arrays.copyOf(codes, numWeighted), Arrays.copyOf(weights, numWeighted));
   }
-
   
   
   /** Return the list of blocks for a given instance */
-  public Object[] getBlocks (Instance instance) {
+  public long[] getBlocks (Instance instance) {
     int idx = (int) instance.weight();
-//     if (m_blockingMap == null || m_blockingMap.m_instanceBlocks==null) { 
-//       System.out.println("\n\nWHAAAAAT?\n\n");
-//       System.out.println(toString());
-//       System.out.println(m_blockingMap.m_instanceBlocks);
-//       return null;
-//     } 
-    return m_blockingMap.m_instanceBlocks[idx]; 
+    return m_blockingMap.getInstanceBlocks(idx); 
   } 
 
 
@@ -350,25 +477,9 @@ public class TFIDFBlocker extends Blocker
   
   /** Given two instances, do they fall into the same block? */
   public boolean sameBlock(Instance instance1, Instance instance2) {
-    String str1 = instance1.stringValue(m_attrId);
-    HashMapVector vector1 = m_tokenizer.tokenize(str1);
-    vector1.initLength();
-    StringRef strRef1 = new StringRef((int)instance1.weight(),
-                                      instance1.classValue(),
-                                      str1, vector1);
-
-    String str2 = instance2.stringValue(m_attrId);
-    HashMapVector vector2 = m_tokenizer.tokenize(str2);
-    vector2.initLength();
-    StringRef strRef2 = new StringRef((int)instance2.weight(),
-                                      instance2.classValue(),
-                                      str2, vector2);
-
-    if (similarity(strRef1, strRef2) >= m_simThreshold) {
-      return true;
-    } else {
-      return false;
-    }
+    GramVector vector1 = weightedVector(instance1.stringValue(m_attrId));
+    GramVector vector2 = weightedVector(instance2.stringValue(m_attrId));
+    return similarity(vector1, vector2) >= m_simThreshold;
   }
 
   
@@ -384,6 +495,20 @@ public class TFIDFBlocker extends Blocker
   public void setSimThreshold(double threshold) { m_simThreshold = threshold; }
   public double getSimThreshold() { return m_simThreshold; }
 
+  /** Set/get the tight threshold; strings this similar to a center
+   * cannot become centers */
+  public void setTightThreshold(double threshold) { m_tightThreshold = threshold; }
+  public double getTightThreshold() { return m_tightThreshold; }
+
+  /** Set/get the maximum number of strings a token may occur in to be
+   * used for finding candidates */
+  public void setMaxPostingLength(int maxPostingLength) { m_maxPostingLength = maxPostingLength; }
+  public int getMaxPostingLength() { return m_maxPostingLength; }
+
+  /** Set/get the number of threads computing canopies */
+  public void setNumThreads(int numThreads) { m_numThreads = numThreads; }
+  public int getNumThreads() { return m_numThreads; }
+
   /** Set/get the tokenizer */
   public void setTokenizer(Tokenizer tokenizer) { m_tokenizer = tokenizer; } 
   public Tokenizer getTokenizer() { return m_tokenizer; } 
@@ -400,6 +525,14 @@ public class TFIDFBlocker extends Blocker
     
     options[current++] = "-minSim" + m_simThreshold;
 
+    if (m_tightThreshold > m_simThreshold) {
+      options[current++] = "-tightSim" + m_tightThreshold;
+    }
+
+    if (m_maxPostingLength != 1000) {
+      options[current++] = "-maxPosting" + m_maxPostingLength;
+    }
+
     if (m_useIDF == false) {
       options[current++] = "-noIDF";
     }
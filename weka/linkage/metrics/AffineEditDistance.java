@@ -38,6 +38,9 @@ import weka.core.*;
 
 public class AffineEditDistance extends StringMetric implements OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 2242478244629678706L;
+
   /** The cost of matching two characters */
   protected double m_matchCost = -5;
   
@@ -0,0 +1,429 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BitParallelEditDistance.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage.metrics;
+
+import java.util.*;
+import java.io.Serializable;
+import weka.core.*;
+
+/**
+ * Unit-cost edit distance computed with the bit-vector algorithm of
+ * Myers (J. ACM 1999) in the formulation of Hyyrö (2001): a column of
+ * the DP matrix is kept as vertical deltas in 64-bit words, one word
+ * per 64 characters of the shorter string, and updated with a few word
+ * operations per character of the longer one.  Optionally adjacent
+ * transpositions cost 1 (the restricted Damerau distance, Hyyrö 2003).
+ * With a maximum distance, computation stops as soon as the distance
+ * is known to exceed it.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+
+public class BitParallelEditDistance extends StringMetric implements OptionHandler, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 3828124309400775960L;
+
+  /** Should the distance be normalized by the length of the longer string? */
+  protected boolean m_normalized = true;
+
+  /** Should adjacent transpositions cost 1 instead of 2? */
+  protected boolean m_transpositions = false;
+
+  /** Distances above this are not computed exactly; 0 for no limit */
+  protected int m_maxDistance = 0;
+
+  /** Match masks of the characters of the shorter string: for chars
+   * below 256, the mask of word w is at m_peq[c * numWords + w]; other
+   * chars are listed in m_extChars, with masks in m_extPeq */
+  protected transient long[] m_peq = null;
+  protected transient char[] m_extChars = null;
+  protected transient long[] m_extPeq = null;
+  protected transient int m_numExt = 0;
+
+  /** Vertical deltas of the current column, and for transpositions the
+   * previous diagonal deltas and masks, by word */
+  protected transient long[] m_vp = null;
+  protected transient long[] m_vn = null;
+  protected transient long[] m_d0 = null;
+  protected transient long[] m_pm = null;
+  protected transient long[] m_oldD0 = null;
+  protected transient long[] m_oldPm = null;
+
+
+  /** A default constructor */
+  public BitParallelEditDistance() { }
+
+
+  /** Obtain the distance between two strings
+   * @param string1 String 1
+   * @param string2 String 2
+   * @returns the edit distance, normalized if required; if it exceeds
+   * the maximum distance, the maximum distance plus one
+   */
+  public double distance(String string1, String string2) {
+    int maxDistance = (m_maxDistance > 0 ? m_maxDistance : Integer.MAX_VALUE - 1);
+    int distance = distance(string1, string2, maxDistance);
+    if (m_normalized) {
+      int length = Math.max(string1.length(), string2.length());
+      return (length == 0) ? 0 : distance / (double) length;
+    }
+    return distance;
+  }
+
+
+  /** Compute the edit distance between two strings if it is at most k
+   * @param s1 first string
+   * @param s2 second string
+   * @param k the largest distance of interest
+   * @returns the distance if it is at most k, k+1 otherwise
+   */
+  public synchronized int distance(String s1, String s2, int k) {
+    if (s1.length() > s2.length()) {
+      String s = s1;
+      s1 = s2;
+      s2 = s;
+    }
+    int m = s1.length(), n = s2.length();
+    if (n - m > k) {
+      return k + 1;
+    }
+    if (m == 0) {
+      return n;
+    }
+    int numWords = (m + 63) >>> 6;
+    buildPeq(s1, numWords);
+    int distance;
+    if (m_transpositions) {
+      distance = damerauBlocks(s2, m, numWords, k);
+    } else if (numWords == 1) {
+      distance = levenshteinWord(s2, m, k);
+    } else {
+      distance = levenshteinBlocks(s2, m, numWords, k);
+    }
+    clearPeq(s1, numWords);
+    return distance;
+  }
+
+
+  /** Levenshtein distance for a shorter string of at most 64 chars */
+  protected int levenshteinWord(String s2, int m, int k) {
+    long last = 1L << (m - 1);
+    long vp = -1L, vn = 0;
+    int distance = m;
+    int n = s2.length();
+    for (int j = 0; j < n; j++) {
+      long x = peq(s2.charAt(j), 0, 1);
+      long d0 = (((x & vp) + vp) ^ vp) | x | vn;
+      long hp = vn | ~(d0 | vp);
+      long hn = d0 & vp;
+      if ((hp & last) != 0) {
+        distance++;
+      } else if ((hn & last) != 0) {
+        distance--;
+      }
+      // the distance decreases by at most 1 per remaining column
+      if (distance - (n - j - 1) > k) {
+        return k + 1;
+      }
+      hp = (hp << 1) | 1;
+      hn = hn << 1;
+      vp = hn | ~(d0 | hp);
+      vn = hp & d0;
+    }
+    return (distance > k ? k + 1 : distance);
+  }
+
+
+  /** Levenshtein distance for a shorter string of any length, with
+   * carries between words */
+  protected int levenshteinBlocks(String s2, int m, int numWords, int k) {
+    long[] vp = buffer(m_vp, numWords);
+    long[] vn = buffer(m_vn, numWords);
+    m_vp = vp;
+    m_vn = vn;
+    Arrays.fill(vp, 0, numWords, -1L);
+    Arrays.fill(vn, 0, numWords, 0);
+    long last = 1L << ((m - 1) & 63);
+    int distance = m;
+    int n = s2.length();
+    for (int j = 0; j < n; j++) {
+      char c = s2.charAt(j);
+      long hpCarry = 1, hnCarry = 0;
+      for (int w = 0; w < numWords; w++) {
+        long x = peq(c, w, numWords) | hnCarry;
+        long d0 = (((x & vp[w]) + vp[w]) ^ vp[w]) | x | vn[w];
+        long hp = vn[w] | ~(d0 | vp[w]);
+        long hn = d0 & vp[w];
+        long hpIn = hpCarry, hnIn = hnCarry;
+        if (w < numWords - 1) {
+          hpCarry = hp >>> 63;
+          hnCarry = hn >>> 63;
+        } else {
+          hpCarry = ((hp & last) != 0) ? 1 : 0;
+          hnCarry = ((hn & last) != 0) ? 1 : 0;
+        }
+        hp = (hp << 1) | hpIn;
+        hn = (hn << 1) | hnIn;
+        vp[w] = hn | ~(d0 | hp);
+        vn[w] = hp & d0;
+      }
+      distance += (int) hpCarry - (int) hnCarry;
+      if (distance - (n - j - 1) > k) {
+        return k + 1;
+      }
+    }
+    return (distance > k ? k + 1 : distance);
+  }
+
+
+  /** Restricted Damerau distance (optimal string alignment) for a
+   * shorter string of any length */
+  protected int damerauBlocks(String s2, int m, int numWords, int k) {
+    long[] vp = buffer(m_vp, numWords);
+    long[] vn = buffer(m_vn, numWords);
+    // diagonal deltas and masks are kept for words -1..numWords-1,
+    // word -1 being all zeroes
+    long[] d0s = buffer(m_d0, numWords + 1);
+    long[] pms = buffer(m_pm, numWords + 1);
+    long[] oldD0s = buffer(m_oldD0, numWords + 1);
+    long[] oldPms = buffer(m_oldPm, numWords + 1);
+    m_vp = vp;
+    m_vn = vn;
+    Arrays.fill(vp, 0, numWords, -1L);
+    Arrays.fill(vn, 0, numWords, 0);
+    Arrays.fill(d0s, 0, numWords + 1, 0);
+    Arrays.fill(pms, 0, numWords + 1, 0);
+    Arrays.fill(oldD0s, 0, numWords + 1, 0);
+    Arrays.fill(oldPms, 0, numWords + 1, 0);
+    long last = 1L << ((m - 1) & 63);
+    int distance = m;
+    int n = s2.length();
+    for (int j = 0; j < n; j++) {
+      char c = s2.charAt(j);
+      long hpCarry = 1, hnCarry = 0;
+      for (int w = 0; w < numWords; w++) {
+        long x = peq(c, w, numWords);
+        long oldD0 = oldD0s[w + 1];
+        long tr = ((((~oldD0) & x) << 1) | (((~oldD0s[w]) & pms[w]) >>> 63)) & oldPms[w + 1];
+        pms[w + 1] = x;
+        x |= hnCarry;
+        long d0 = (((x & vp[w]) + vp[w]) ^ vp[w]) | x | vn[w] | tr;
+        long hp = vn[w] | ~(d0 | vp[w]);
+        long hn = d0 & vp[w];
+        if (w == numWords - 1) {
+          distance += ((hp & last) != 0 ? 1 : 0) - ((hn & last) != 0 ? 1 : 0);
+        }
+        long hpIn = hpCarry, hnIn = hnCarry;
+        hpCarry = hp >>> 63;
+        hnCarry = hn >>> 63;
+        hp = (hp << 1) | hpIn;
+        hn = (hn << 1) | hnIn;
+        vp[w] = hn | ~(d0 | hp);
+        vn[w] = hp & d0;
+        d0s[w + 1] = d0;
+      }
+      long[] swap = oldD0s;
+      oldD0s = d0s;
+      d0s = swap;
+      swap = oldPms;
+      oldPms = pms;
+      pms = swap;
+      if (distance - (n - j - 1) > k) {
+        break;
+      }
+    }
+    m_d0 = d0s;
+    m_pm = pms;
+    m_oldD0 = oldD0s;
+    m_oldPm = oldPms;
+    return (distance > k ? k + 1 : distance);
+  }
+
+
+  /** Get a buffer of at least a given length, reusing an old one */
+  protected static long[] buffer(long[] buffer, int length) {
+    return (buffer != null && buffer.length >= length) ? buffer : new long[Math.max(length, 4)];
+  }
+
+
+  /** Set the match masks of the characters of a string */
+  protected void buildPeq(String s, int numWords) {
+    if (m_peq == null || m_peq.length < 256 * numWords) {
+      m_peq = new long[256 * numWords];
+    }
+    m_numExt = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      int w = i >>> 6;
+      long bit = 1L << (i & 63);
+      if (c < 256) {
+        m_peq[c * numWords + w] |= bit;
+      } else {
+        int e = extIndex(c);
+        if (e < 0) {
+          e = m_numExt++;
+          if (m_extChars == null || m_extChars.length <= e) {
+            m_extChars = Arrays.copyOf(m_extChars == null ? new char[0] : m_extChars, 2 * e + 4);
+          }
+          if (m_extPeq == null || m_extPeq.length < (e + 1) * numWords) {
+            m_extPeq = Arrays.copyOf(m_extPeq == null ? new long[0] : m_extPeq, 2 * (e + 1) * numWords);
+          }
+          m_extChars[e] = c;
+          Arrays.fill(m_extPeq, e * numWords, (e + 1) * numWords, 0);
+        }
+        m_extPeq[e * numWords + w] |= bit;
+      }
+    }
+  }
+
+
+  /** Reset the match masks set by buildPeq */
+  protected void clearPeq(String s, int numWords) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 256) {
+        m_peq[c * numWords + (i >>> 6)] = 0;
+      }
+    }
+    m_numExt = 0;
+  }
+
+
+  protected int extIndex(char c) {
+    for (int e = 0; e < m_numExt; e++) {
+      if (m_extChars[e] == c) {
+        return e;
+      }
+    }
+    return -1;
+  }
+
+
+  /** The match mask of a char in a word */
+  protected long peq(char c, int w, int numWords) {
+    if (c < 256) {
+      return m_peq[c * numWords + w];
+    }
+    int e = extIndex(c);
+    return (e < 0) ? 0 : m_extPeq[e * numWords + w];
+  }
+
+
+  /** The computation of a metric can be either based on distance, or on similarity
+   * @returns true
+   */
+  public boolean isDistanceBased() {
+    return true;
+  }
+
+
+  /** Set/get whether the distance is normalized by the length of the longer string */
+  public void setNormalized(boolean normalized) { m_normalized = normalized; }
+  public boolean getNormalized() { return m_normalized; }
+
+  /** Set/get whether adjacent transpositions cost 1 */
+  public void setTranspositions(boolean transpositions) { m_transpositions = transpositions; }
+  public boolean getTranspositions() { return m_transpositions; }
+
+  /** Set/get the maximum distance computed exactly; 0 for no limit */
+  public void setMaxDistance(int maxDistance) { m_maxDistance = maxDistance; }
+  public int getMaxDistance() { return m_maxDistance; }
+
+
+  /** Create a copy of this metric
+   * @return another BitParallelEditDistance with the same parameters as this metric
+   */
+  public Object clone() {
+    BitParallelEditDistance metric = new BitParallelEditDistance();
+    metric.setNormalized(m_normalized);
+    metric.setTranspositions(m_transpositions);
+    metric.setMaxDistance(m_maxDistance);
+    metric.m_conversionType = m_conversionType;
+    return metric;
+  }
+
+
+  /**
+   * Gets the current settings of the metric.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String [] getOptions() {
+    String [] options = new String [5];
+    int current = 0;
+
+    if (m_normalized) {
+      options[current++] = "-N";
+    }
+    if (m_transpositions) {
+      options[current++] = "-T";
+    }
+    if (m_maxDistance > 0) {
+      options[current++] = "-k";
+      options[current++] = "" + m_maxDistance;
+    }
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+    return options;
+  }
+
+
+  /**
+   * Parses a given list of options. Valid options are:<p>
+   *
+   * -N normalize by length
+   * -T transpositions cost 1
+   * -k maximum distance
+   */
+  public void setOptions(String[] options) throws Exception {
+    setNormalized(Utils.getFlag('N', options));
+    setTranspositions(Utils.getFlag('T', options));
+
+    String maxDistanceString = Utils.getOption('k', options);
+    if (maxDistanceString.length() != 0) {
+      setMaxDistance(Integer.parseInt(maxDistanceString));
+    }
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector newVector = new Vector(3);
+
+    newVector.addElement(new Option("\tNormalize the distance by the length of the longer string\n",
+				    "N", 0, "-N"));
+    newVector.addElement(new Option("\tAdjacent transpositions cost 1\n",
+				    "T", 0, "-T"));
+    newVector.addElement(new Option("\tMaximum distance computed exactly\n",
+				    "k", 1, "-k maxDistance"));
+
+    return newVector.elements();
+  }
+}
@@ -0,0 +1,660 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    CascadeInstanceMetric.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage.metrics;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.io.Serializable;
+
+import weka.linkage.*;
+import weka.core.*;
+import weka.core.collections.*;
+
+/**
+ * CascadeInstanceMetric runs a sequence of cheap checks on a pair of
+ * records before the metric that scores it.  The checks are a minimum
+ * number of common tokens and any number of filter InstanceMetrics,
+ * each of which rejects the pair when its similarity falls below a
+ * threshold.  Rejected pairs get the largest distance and a similarity
+ * of 0.  Thresholds that are not set (NaN) are learned on same-class
+ * training pairs, so that a given fraction of them passes each filter.
+ * The checks are reordered as pairs are scored, by their measured cost
+ * per rejection, so that most non-matching pairs are decided by the
+ * cheapest check that rejects them.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+
+public class CascadeInstanceMetric extends InstanceMetric implements OptionHandler, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 300602305819148158L;
+
+  /** The metric that scores the pairs passing all checks */
+  protected InstanceMetric m_metric = new SumInstanceMetric();
+
+  /** Filter metrics, and the similarities below which they reject a
+   * pair; NaN thresholds are learned */
+  protected InstanceMetric[] m_filters = new InstanceMetric[] {defaultFilter()};
+  protected double[] m_thresholds = new double[] {Double.NaN};
+
+  /** The thresholds in use: the set ones, and the learned ones */
+  protected double[] m_filterThresholds = null;
+
+  /** Minimum number of distinct normalized tokens that records must
+   * share over all attributes; 0 turns the check off */
+  protected int m_minCommonTokens = 1;
+
+  /** Fraction of same-class training pairs passing a learned threshold */
+  protected double m_targetRecall = 0.99;
+
+  /** Maximum number of same-class training pairs for learning thresholds */
+  protected int m_numPosPairs = 1000;
+
+  /** Checks are reordered after a thread has checked this many pairs */
+  protected int m_reorderInterval = 1024;
+
+  /** One pair in this many is timed */
+  protected static final int TIMING_INTERVAL = 64;
+
+  /** The checks in the order they are run */
+  protected transient Check[] m_checks = null;
+  protected transient volatile Check[] m_order = null;
+
+  /** Number of pairs evaluated and rejected, and of timed evaluations
+   * and nanoseconds they took, by check; merged from the threads'
+   * counts when the checks are reordered */
+  protected transient AtomicLongArray m_numEvaluated = null;
+  protected transient AtomicLongArray m_numRejected = null;
+  protected transient AtomicLongArray m_numTimed = null;
+  protected transient AtomicLongArray m_nanos = null;
+
+  /** The counts of every thread since it last merged them */
+  protected transient ThreadLocal<CheckCounts> m_counts = null;
+
+
+  /** A check that may reject a pair */
+  protected abstract class Check {
+    protected final int m_id;
+
+    protected Check(int id) {
+      m_id = id;
+    }
+
+    /** Does the pair pass the check? */
+    protected abstract boolean accepts(Instance instance1, Instance instance2) throws Exception;
+  }
+
+
+  /** Counts of one thread, by check */
+  protected static class CheckCounts {
+    protected final long[] m_numEvaluated;
+    protected final long[] m_numRejected;
+    protected final long[] m_numTimed;
+    protected final long[] m_nanos;
+    protected int m_numPairs = 0;
+
+    protected CheckCounts(int numChecks) {
+      m_numEvaluated = new long[numChecks];
+      m_numRejected = new long[numChecks];
+      m_numTimed = new long[numChecks];
+      m_nanos = new long[numChecks];
+    }
+  }
+
+
+  /** Rejects records with too few common tokens */
+  protected class CommonTokenCheck extends Check {
+    protected CommonTokenCheck(int id) {
+      super(id);
+    }
+
+    protected boolean accepts(Instance instance1, Instance instance2) {
+      int numCommon = 0;
+      for (int i = 0; i < m_attrIdxs.length && numCommon < m_minCommonTokens; i++) {
+        numCommon += RecordText.field(instance1, m_attrIdxs[i])
+          .numCommonTokens(RecordText.field(instance2, m_attrIdxs[i]));
+      }
+      return numCommon >= m_minCommonTokens;
+    }
+
+    public String toString() {
+      return "CommonTokens>=" + m_minCommonTokens;
+    }
+  }
+
+
+  /** Rejects pairs that a filter metric finds too dissimilar */
+  protected class FilterCheck extends Check {
+    protected final int m_filter;
+
+    protected FilterCheck(int id, int filter) {
+      super(id);
+      m_filter = filter;
+    }
+
+    protected boolean accepts(Instance instance1, Instance instance2) throws Exception {
+      return m_filters[m_filter].similarity(instance1, instance2) >= m_filterThresholds[m_filter];
+    }
+
+    public String toString() {
+      return Utils.removeSubstring(m_filters[m_filter].getClass().getName(), "weka.linkage.metrics.")
+        + ">=" + m_filterThresholds[m_filter];
+    }
+  }
+
+
+  /** The default filter: Jaccard similarity of character 3-grams */
+  protected static InstanceMetric defaultFilter() {
+    NGramTokenizer tokenizer = new NGramTokenizer();
+    tokenizer.setN(3);
+    JaccardMetric jaccard = new JaccardMetric();
+    jaccard.setTokenizer(tokenizer);
+    jaccard.setUseTokenCodes(true);
+    SumInstanceMetric filter = new SumInstanceMetric();
+    filter.setMetric(jaccard);
+    return filter;
+  }
+
+
+  /** A default constructor */
+  public CascadeInstanceMetric() {
+  }
+
+
+  /**
+   * Generates a new CascadeInstanceMetric that uses the specified
+   * attributes in all of its metrics
+   *
+   * @param attrIdxs the indeces of attributes that the metric will use
+   * @exception Exception if the metric has not been generated successfully.
+   */
+  public void buildInstanceMetric(int[] attrIdxs) throws Exception {
+    m_attrIdxs = attrIdxs;
+    m_filterThresholds = m_thresholds.clone();
+    for (InstanceMetric filter : m_filters) {
+      filter.setClassIndex(m_classIndex);
+      filter.buildInstanceMetric(attrIdxs);
+    }
+    m_metric.setClassIndex(m_classIndex);
+    m_metric.buildInstanceMetric(attrIdxs);
+    initChecks();
+  }
+
+
+  /** Create the checks and reset their statistics */
+  protected void initChecks() {
+    ArrayList<Check> checks = new ArrayList<Check>();
+    if (m_minCommonTokens > 0) {
+      checks.add(new CommonTokenCheck(checks.size()));
+    }
+    for (int i = 0; i < m_filters.length; i++) {
+      checks.add(new FilterCheck(checks.size(), i));
+    }
+    m_checks = checks.toArray(new Check[checks.size()]);
+    m_numEvaluated = new AtomicLongArray(m_checks.length);
+    m_numRejected = new AtomicLongArray(m_checks.length);
+    m_numTimed = new AtomicLongArray(m_checks.length);
+    m_nanos = new AtomicLongArray(m_checks.length);
+    final int numChecks = m_checks.length;
+    m_counts = new ThreadLocal<CheckCounts>() {
+        protected CheckCounts initialValue() {
+          return new CheckCounts(numChecks);
+        }
+      };
+    m_order = m_checks.clone();
+  }
+
+
+  /**
+   * Train the filters and the scoring metric, and learn the thresholds
+   * that are not set
+   * @param trainData instances for training the metric
+   * @param testData instances that will be used for testing
+   */
+  public void trainInstanceMetric(Instances trainData, Instances testData) throws Exception {
+    for (InstanceMetric filter : m_filters) {
+      filter.trainInstanceMetric(trainData, testData);
+    }
+    m_metric.trainInstanceMetric(trainData, testData);
+    m_numActualPosPairs = m_metric.getNumActualPosPairs();
+    m_numActualNegPairs = m_metric.getNumActualNegPairs();
+
+    int[][] posPairs = null;
+    m_filterThresholds = m_thresholds.clone();
+    for (int i = 0; i < m_filters.length; i++) {
+      if (Double.isNaN(m_thresholds[i])) {
+        if (posPairs == null) {
+          posPairs = samplePositivePairs(trainData);
+        }
+        m_filterThresholds[i] = learnThreshold(m_filters[i], trainData, posPairs);
+      }
+    }
+    initChecks();
+    System.out.println("Cascade checks: " + Arrays.toString(m_checks));
+  }
+
+
+  /** Sample pairs of training records that share a class value,
+   * uniformly and without replacement.  Pairs are drawn by their rank
+   * among all same-class pairs: a class is chosen in proportion to its
+   * number of pairs, and a pair within it, so the pairs are never
+   * enumerated.
+   * @returns pairs of indeces into the data
+   */
+  protected int[][] samplePositivePairs(Instances data) {
+    Integer[] idxs = new Integer[data.numInstances()];
+    for (int i = 0; i < idxs.length; i++) {
+      idxs[i] = i;
+    }
+    final Instances instances = data;
+    Arrays.sort(idxs, new Comparator<Integer>() {
+        public int compare(Integer i1, Integer i2) {
+          return Double.compare(instances.instance(i1).classValue(),
+                                instances.instance(i2).classValue());
+        }
+      });
+
+    // the classes with pairs, and the number of same-class pairs
+    // before each; every class adds at least one pair
+    int[] starts = new int[idxs.length];
+    long[] pairsBefore = new long[idxs.length + 1];
+    int numClasses = 0;
+    for (int start = 0, end; start < idxs.length; start = end) {
+      double classValue = data.instance(idxs[start]).classValue();
+      for (end = start + 1; end < idxs.length
+             && data.instance(idxs[end]).classValue() == classValue; end++);
+      if (end - start > 1) {
+        starts[numClasses] = start;
+        pairsBefore[numClasses + 1] = pairsBefore[numClasses]
+          + (long) (end - start) * (end - start - 1) / 2;
+        numClasses++;
+      }
+    }
+    long numPairs = pairsBefore[numClasses];
+
+    int numSampled = (int) Math.min(numPairs, m_numPosPairs);
+    Random random = new Random(0);
+    LongHashSet sampled = new LongHashSet(numSampled);
+    int[][] pairs = new int[numSampled][];
+    for (int n = 0; n < numSampled; ) {
+      long rank = (numSampled == numPairs) ? n : (random.nextLong() >>> 1) % numPairs;
+      if (!sampled.add(rank)) {
+        continue;
+      }
+      // the class holding the pair, and the pair within it
+      int c = Arrays.binarySearch(pairsBefore, 0, numClasses + 1, rank);
+      c = (c >= 0) ? c : -c - 2;
+      long offset = rank - pairsBefore[c];
+      pairs[n++] = new int[] {idxs[starts[c] + PairStore.firstIndex(offset)],
+                              idxs[starts[c] + PairStore.secondIndex(offset)]};
+    }
+    return pairs;
+  }
+
+
+  /** Find the similarity that the target fraction of positive pairs
+   * reaches under a filter; -Infinity if there are no pairs */
+  protected double learnThreshold(InstanceMetric filter, Instances data, int[][] posPairs)
+    throws Exception {
+    if (posPairs.length == 0) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    double[] similarities = new double[posPairs.length];
+    for (int i = 0; i < posPairs.length; i++) {
+      similarities[i] = filter.similarity(data.instance(posPairs[i][0]),
+                                          data.instance(posPairs[i][1]));
+    }
+    Arrays.sort(similarities);
+    int idx = (int) Math.floor((1 - m_targetRecall) * similarities.length);
+    return similarities[Math.min(idx, similarities.length - 1)];
+  }
+
+
+  /** Run the checks on a pair, in the current order.  Counts are kept
+   * per thread and merged when the thread reorders the checks; one pair
+   * in TIMING_INTERVAL is timed.
+   * @returns true if all checks accept the pair
+   */
+  protected boolean passes(Instance instance1, Instance instance2) throws Exception {
+    Check[] order = m_order;
+    if (order == null) {
+      // the checks are not serialized
+      synchronized (this) {
+        if (m_order == null) {
+          initChecks();
+        }
+      }
+      order = m_order;
+    }
+    CheckCounts counts = m_counts.get();
+    boolean timed = (counts.m_numPairs % TIMING_INTERVAL == 0);
+    boolean passes = true;
+    for (Check check : order) {
+      long start = timed ? System.nanoTime() : 0;
+      boolean accepts = check.accepts(instance1, instance2);
+      if (timed) {
+        counts.m_nanos[check.m_id] += System.nanoTime() - start;
+        counts.m_numTimed[check.m_id]++;
+      }
+      counts.m_numEvaluated[check.m_id]++;
+      if (!accepts) {
+        counts.m_numRejected[check.m_id]++;
+        passes = false;
+        break;
+      }
+    }
+    if (++counts.m_numPairs >= m_reorderInterval) {
+      mergeCounts(counts);
+      if (order.length > 1) {
+        reorderChecks();
+      }
+    }
+    return passes;
+  }
+
+
+  /** Add the counts of a thread to the totals and reset them */
+  protected void mergeCounts(CheckCounts counts) {
+    for (int i = 0; i < counts.m_numEvaluated.length; i++) {
+      m_numEvaluated.addAndGet(i, counts.m_numEvaluated[i]);
+      m_numRejected.addAndGet(i, counts.m_numRejected[i]);
+      m_numTimed.addAndGet(i, counts.m_numTimed[i]);
+      m_nanos.addAndGet(i, counts.m_nanos[i]);
+      counts.m_numEvaluated[i] = 0;
+      counts.m_numRejected[i] = 0;
+      counts.m_numTimed[i] = 0;
+      counts.m_nanos[i] = 0;
+    }
+    counts.m_numPairs = 0;
+  }
+
+
+  /** Sort the checks by increasing expected cost per rejected pair.
+   * Checks that have not been timed yet go first, so that they get
+   * measured. */
+  protected void reorderChecks() {
+    final double[] costs = new double[m_checks.length];
+    for (int i = 0; i < m_checks.length; i++) {
+      long numEvaluated = m_numEvaluated.get(i);
+      long numRejected = m_numRejected.get(i);
+      long numTimed = m_numTimed.get(i);
+      if (numTimed == 0) {
+        costs[i] = 0;
+      } else if (numRejected == 0) {
+        costs[i] = Double.POSITIVE_INFINITY;
+      } else {
+        costs[i] = (m_nanos.get(i) / (double) numTimed) / (numRejected / (double) numEvaluated);
+      }
+    }
+    Check[] order = m_order.clone();
+    Arrays.sort(order, new Comparator<Check>() {
+        public int compare(Check c1, Check c2) {
+          return Double.compare(costs[c1.m_id], costs[c2.m_id]);
+        }
+      });
+    m_order = order;
+  }
+
+
+  /**
+   * Returns distance between two records; the largest distance if the
+   * pair is rejected by a check
+   * @param instance1 First record.
+   * @param instance2 Second record.
+   * @exception Exception if distance could not be calculated.
+   */
+  public double distance(Instance instance1, Instance instance2) throws Exception {
+    if (!passes(instance1, instance2)) {
+      return Double.MAX_VALUE;
+    }
+    return m_metric.distance(instance1, instance2);
+  }
+
+
+  /**
+   * Returns similarity between two records; 0 if the pair is rejected
+   * by a check
+   * @param instance1 First instance.
+   * @param instance2 Second instance.
+   * @exception Exception if similarity could not be calculated.
+   */
+  public double similarity(Instance instance1, Instance instance2) throws Exception {
+    if (!passes(instance1, instance2)) {
+      return 0;
+    }
+    return m_metric.similarity(instance1, instance2);
+  }
+
+
+  /** The computation can be either based on distance, or on similarity
+   * @returns true if the scoring metric computes distance, false if similarity
+   */
+  public boolean isDistanceBased() {
+    return m_metric.isDistanceBased();
+  }
+
+
+  /** Get a summary of the checks in their current order: for each,
+   * the pairs evaluated and rejected and the average time per pair.
+   * Pairs checked since a thread last reordered the checks are not
+   * counted yet. */
+  public String getCheckStatistics() {
+    StringBuffer buffer = new StringBuffer();
+    for (Check check : m_order) {
+      long numTimed = m_numTimed.get(check.m_id);
+      buffer.append(check).append(": ").append(m_numEvaluated.get(check.m_id)).append(" evaluated, ")
+        .append(m_numRejected.get(check.m_id)).append(" rejected, ")
+        .append(numTimed == 0 ? 0 : m_nanos.get(check.m_id) / numTimed).append(" ns/pair\n");
+    }
+    return buffer.toString();
+  }
+
+
+  /** Set/get the metric that scores the pairs passing all checks */
+  public void setMetric(InstanceMetric metric) { m_metric = metric; }
+  public InstanceMetric getMetric() { return m_metric; }
+
+  /** Set/get the filter metrics; their thresholds are reset to be learned */
+  public void setFilters(InstanceMetric[] filters) {
+    m_filters = filters;
+    m_thresholds = new double[filters.length];
+    Arrays.fill(m_thresholds, Double.NaN);
+  }
+  public InstanceMetric[] getFilters() { return m_filters; }
+
+  /** Set/get the similarity thresholds of the filters; NaN thresholds
+   * are learned in training */
+  public void setThresholds(double[] thresholds) { m_thresholds = thresholds; }
+  public double[] getThresholds() { return m_thresholds; }
+
+  /** Set/get the minimum number of common tokens; 0 turns the check off */
+  public void setMinCommonTokens(int minCommonTokens) { m_minCommonTokens = minCommonTokens; }
+  public int getMinCommonTokens() { return m_minCommonTokens; }
+
+  /** Set/get the fraction of same-class training pairs that must pass
+   * a learned threshold */
+  public void setTargetRecall(double targetRecall) { m_targetRecall = targetRecall; }
+  public double getTargetRecall() { return m_targetRecall; }
+
+  /** Set/get the maximum number of same-class pairs used for learning thresholds */
+  public void setNumPosPairs(int numPosPairs) { m_numPosPairs = numPosPairs; }
+  public int getNumPosPairs() { return m_numPosPairs; }
+
+  /** Set/get the number of pairs after which the checks are reordered */
+  public void setReorderInterval(int reorderInterval) { m_reorderInterval = reorderInterval; }
+  public int getReorderInterval() { return m_reorderInterval; }
+
+
+  /**
+   * Returns an enumeration describing the available options
+   *
+   * @return an enumeration of all the available options
+   **/
+  public Enumeration listOptions() {
+    Vector newVector = new Vector(6);
+    newVector.addElement(new Option("\tMinimum number of common tokens.\n"
+				    +"\t(default=1)", "t", 1, "-t num"));
+    newVector.addElement(new Option("\tFraction of same-class pairs passing learned thresholds.\n"
+				    +"\t(default=0.99)", "r", 1, "-r recall"));
+    newVector.addElement(new Option("\tMaximum number of same-class pairs for learning thresholds.\n"
+				    +"\t(default=1000)", "p", 1, "-p num"));
+    newVector.addElement(new Option("\tFilter metric; may be repeated.\n"
+				    +"\t(default=SumInstanceMetric over 3-gram JaccardMetric)",
+				    "F", 1, "-F \"metric_name metric_options\""));
+    newVector.addElement(new Option("\tComma-separated similarity thresholds of the filters;\n"
+				    +"\tNaN thresholds are learned.\n"
+				    +"\t(default=all learned)", "T", 1, "-T thresholds"));
+    newVector.addElement(new Option("\tScoring metric.\n"
+				    +"\t(default=SumInstanceMetric)", "M", 1, "-M \"metric_name metric_options\""));
+    return newVector.elements();
+  }
+
+
+  /**
+   * Parses a given list of options.
+   *
+   * Valid options are:<p>
+   *
+   * -t num <p>
+   * Minimum number of common tokens <p>
+   *
+   * -r recall <p>
+   * Fraction of same-class pairs passing learned thresholds <p>
+   *
+   * -p num <p>
+   * Maximum number of same-class pairs for learning thresholds <p>
+   *
+   * -F "metric options" <p>
+   * InstanceMetric filtering the pairs; may be repeated <p>
+   *
+   * -T thresholds <p>
+   * Comma-separated similarity thresholds of the filters; NaN
+   * thresholds are learned <p>
+   *
+   * -M "metric options" <p>
+   * InstanceMetric scoring the pairs <p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if an option is not supported
+   *
+   **/
+  public void setOptions(String[] options) throws Exception {
+    String optionString = Utils.getOption('t', options);
+    if (optionString.length() != 0) {
+      setMinCommonTokens(Integer.parseInt(optionString));
+    }
+    optionString = Utils.getOption('r', options);
+    if (optionString.length() != 0) {
+      setTargetRecall(Double.parseDouble(optionString));
+    }
+    optionString = Utils.getOption('p', options);
+    if (optionString.length() != 0) {
+      setNumPosPairs(Integer.parseInt(optionString));
+    }
+
+    ArrayList<InstanceMetric> filters = new ArrayList<InstanceMetric>();
+    String filterString;
+    while ((filterString = Utils.getOption('F', options)).length() != 0) {
+      String[] filterSpec = Utils.splitOptions(filterString);
+      String filterName = filterSpec[0];
+      filterSpec[0] = "";
+      filters.add(InstanceMetric.forName(filterName, filterSpec));
+    }
+    if (filters.size() > 0) {
+      setFilters(filters.toArray(new InstanceMetric[filters.size()]));
+    }
+    optionString = Utils.getOption('T', options);
+    if (optionString.length() != 0) {
+      String[] thresholdStrings = optionString.split(",");
+      if (thresholdStrings.length != m_filters.length) {
+        throw new Exception(thresholdStrings.length + " thresholds given for "
+                            + m_filters.length + " filters");
+      }
+      double[] thresholds = new double[thresholdStrings.length];
+      for (int i = 0; i < thresholds.length; i++) {
+        thresholds[i] = Double.parseDouble(thresholdStrings[i]);
+      }
+      setThresholds(thresholds);
+    }
+
+    String metricString = Utils.getOption('M', options);
+    if (metricString.length() != 0) {
+      String[] metricSpec = Utils.splitOptions(metricString);
+      String metricName = metricSpec[0];
+      metricSpec[0] = "";
+      setMetric(InstanceMetric.forName(metricName, metricSpec));
+    }
+  }
+
+
+  /** Get the class name and options of a metric as a single option */
+  protected static String metricSpec(InstanceMetric metric) {
+    String name = metric.getClass().getName();
+    if (!(metric instanceof OptionHandler)) {
+      return name;
+    }
+    return name + " " + Utils.joinOptions(((OptionHandler)metric).getOptions());
+  }
+
+
+  /**
+   * Gets the current settings of the metric
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String [] getOptions() {
+    String [] options = new String [12 + 2 * m_filters.length];
+    int current = 0;
+
+    options[current++] = "-t";
+    options[current++] = "" + m_minCommonTokens;
+    options[current++] = "-r";
+    options[current++] = "" + m_targetRecall;
+    options[current++] = "-p";
+    options[current++] = "" + m_numPosPairs;
+
+    boolean learnAll = true;
+    StringBuffer thresholds = new StringBuffer();
+    for (int i = 0; i < m_filters.length; i++) {
+      options[current++] = "-F";
+      options[current++] = metricSpec(m_filters[i]);
+      learnAll &= Double.isNaN(m_thresholds[i]);
+      thresholds.append(i > 0 ? "," : "").append(m_thresholds[i]);
+    }
+    if (!learnAll) {
+      options[current++] = "-T";
+      options[current++] = thresholds.toString();
+    }
+
+    options[current++] = "-M";
+    options[current++] = metricSpec(m_metric);
+
+    while (current < options.length) {
+      options[current++] = "";
+    }
+
+    return options;
+  }
+}
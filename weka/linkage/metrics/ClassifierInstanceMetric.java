@@ -48,6 +48,9 @@ import weka.classifiers.Evaluation;
  */
 
 public class ClassifierInstanceMetric extends InstanceMetric implements OptionHandler, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -5069392783034770656L;
   
   /** Classifier that is used for estimating similarity between records */
   protected Classifier m_classifier = new SMO();
@@ -186,6 +189,8 @@ public class ClassifierInstanceMetric extends InstanceMetric implements OptionHa
 
     System.out.println(getTimestamp() + ":  Building " + m_classifier.getClass().getName());
     m_classifier.buildClassifier(m_diffInstances);
+    // only the header is needed for computing distances
+    m_diffInstances = new Instances(m_diffInstances, 0);
     System.out.println(getTimestamp() + ":  Done building " + m_classifier.getClass().getName());
     System.out.println(m_classifier.toString()); 
   }
@@ -26,6 +26,7 @@ package weka.linkage.metrics;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.LongFloatHashMap;
 
 /**
  * This class uses a vector space to calculate similarity between two strings
@@ -37,6 +38,9 @@ import weka.core.*;
 public class CosineSimilarity extends StringMetric
   implements DataDependentStringMetric, OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = -3954436654955756104L;
+
   /** Strings are mapped to StringReferences in this hash */
   protected HashMap m_stringRefHash = null;
 
@@ -55,6 +59,14 @@ public class CosineSimilarity extends StringMetric
   /** Should IDF weighting be used? */
   protected boolean m_useIDF = true;
 
+  /** Should strings be compared by vectors of token codes from
+   * Tokenizer.tokenizeCodes() rather than of token strings? */
+  protected boolean m_useTokenCodes = false;
+
+  /** Weighted token code vectors of the indexed strings */
+  protected HashMap<String,GramVector> m_codeVectors = null;
+  protected int m_numCodes = 0;
+
   /** We can have different ways of converting from similarity to distance */
   public static final int CONVERSION_LAPLACIAN = 1;
   public static final int CONVERSION_UNIT = 2;
@@ -83,6 +95,10 @@ public class CosineSimilarity extends StringMetric
   public void buildMetric(List<String> strings) throws Exception {
     m_stringRefHash = new HashMap();
     m_tokenHash = new HashMap();
+    if (m_useTokenCodes) {
+      buildCodeVectors(strings);
+      return;
+    }
 
     // Loop, processing each of the examples
     for (String string : strings) { 
@@ -97,6 +113,43 @@ public class CosineSimilarity extends StringMetric
     System.out.println("Indexed " +  m_stringRefs.size() + " documents with " + size() + " unique terms.");
   }
 
+  /** Create the token code vectors of the strings, weighting the codes
+   * as the token index does */
+  protected void buildCodeVectors(List<String> strings) {
+    ArrayList<GramVector> vectors = new ArrayList<GramVector>(strings.size());
+    LongFloatHashMap stringCounts = new LongFloatHashMap();
+    for (String string : strings) {
+      GramVector vector = m_tokenizer.tokenizeCodes(string);
+      vectors.add(vector);
+      for (int i = 0; i < vector.size(); i++) {
+        stringCounts.add(vector.code(i), 1);
+      }
+    }
+
+    double N = strings.size();
+    m_codeVectors = new HashMap<String,GramVector>();
+    LongFloatHashMap idfs = new LongFloatHashMap();
+    for (int s = 0; s < strings.size(); s++) {
+      GramVector vector = vectors.get(s);
+      long[] codes = new long[vector.size()];
+      double[] weights = new double[vector.size()];
+      int numCodes = 0;
+      for (int i = 0; i < vector.size(); i++) {
+        double idf = Math.log(N/stringCounts.get(vector.code(i), 0));
+        // codes that occur in all strings are dropped
+        if (idf != 0.0) {
+          codes[numCodes] = vector.code(i);
+          weights[numCodes++] = m_useIDF ? idf * vector.weight(i) : vector.weight(i);
+          idfs.put(vector.code(i), 1);
+        }
+      }
+      m_codeVectors.put(strings.get(s), new GramVector(Arrays.copyOf(codes, numCodes),
+                                                       Arrays.copyOf(weights, numCodes)));
+    }
+    m_numCodes = idfs.size();
+    System.out.println("Indexed " +  strings.size() + " documents with " + size() + " unique terms.");
+  }
+
   /** Index a given string using its corresponding vector */
   protected void indexString(String string, HashMapVector vector) {
     // Create a new reference
@@ -186,6 +239,14 @@ public class CosineSimilarity extends StringMetric
    * @returns similarity between two strings
    */
   public double similarity(String s1, String s2) {
+    if (m_useTokenCodes) {
+      GramVector v1 = m_codeVectors.get(s1);
+      GramVector v2 = m_codeVectors.get(s2);
+      if (v1.length() == 0 || v2.length() == 0) {
+        return 0;
+      }
+      return v1.dot(v2) / (v1.length() * v2.length());
+    }
     StringReference stringRef1 = (StringReference) m_stringRefHash.get(s1);
     StringReference stringRef2 = (StringReference) m_stringRefHash.get(s2);
     double length1 = stringRef1.m_length;
@@ -259,11 +320,25 @@ public class CosineSimilarity extends StringMetric
     return m_useIDF;
   } 
 
+  /** Turn comparing token code vectors instead of token strings on/off
+   * @param useTokenCodes if true, strings are compared by token codes
+   */
+  public void setUseTokenCodes(boolean useTokenCodes) {
+    m_useTokenCodes = useTokenCodes;
+  } 
+
+  /** Check whether token code vectors are compared
+   * @return true if strings are compared by token codes
+   */
+  public boolean getUseTokenCodes() {
+    return m_useTokenCodes;
+  } 
+
 
   /** Return the number of tokens indexed.
    * @return the number of tokens indexed*/
   public int size() {
-    return m_tokenHash.size();
+    return m_useTokenCodes ? m_numCodes : m_tokenHash.size();
   }
 
   /**
@@ -314,6 +389,7 @@ public class CosineSimilarity extends StringMetric
     metric.setConversionType(new SelectedTag(m_conversionType, TAGS_CONVERSION));
     metric.setTokenizer(m_tokenizer);
     metric.setUseIDF(m_useIDF);
+    metric.setUseTokenCodes(m_useTokenCodes);
     return metric;
   }
 
@@ -330,12 +406,18 @@ public class CosineSimilarity extends StringMetric
       options[current++] = "-E";
     } else if (m_conversionType == CONVERSION_UNIT) {
       options[current++] = "-U";
+    } else {
+      options[current++] = "-L";
     }
 
     if (m_useIDF) {
       options[current++] = "-I";
     }
 
+    if (m_useTokenCodes) {
+      options[current++] = "-C";
+    }
+
     options[current++] = "-T";
     options[current++] = Utils.removeSubstring(m_tokenizer.getClass().getName(),
                                                "weka.linkage.metrics.");
@@ -356,12 +438,54 @@ public class CosineSimilarity extends StringMetric
   /**
    * Parses a given list of options. Valid options are:<p>
    *
-   * -S use stemming
-   * -R remove stopwords
-   * -N gram size
+   * -E, -U or -L <br>
+   * Convert similarity to distance as exp(-similarity), 1-similarity
+   * or 1/(1+similarity).<p>
+   *
+   * -I <br>
+   * Weight tokens by IDF.<p>
+   *
+   * -C <br>
+   * Compare vectors of token codes rather than of token strings.<p>
+   *
+   * -T tokenizer <br>
+   * The tokenizer; the options following it are passed to the
+   * tokenizer, so this comes last.<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if the tokenizer cannot be created
    */
   public void setOptions(String[] options) throws Exception {
-    // TODO
+    // the tokenizer options may repeat our flags, so they are split off first
+    String[] tokenizerSpec = null;
+    for (int i = 0; i < options.length - 1; i++) {
+      if (options[i].equals("-T")) {
+        tokenizerSpec = new String[options.length - i - 1];
+        System.arraycopy(options, i + 1, tokenizerSpec, 0, tokenizerSpec.length);
+        Arrays.fill(options, i, options.length, "");
+        break;
+      }
+    }
+
+    if (Utils.getFlag('E', options)) {
+      m_conversionType = CONVERSION_EXPONENTIAL;
+    } else if (Utils.getFlag('U', options)) {
+      m_conversionType = CONVERSION_UNIT;
+    } else if (Utils.getFlag('L', options)) {
+      m_conversionType = CONVERSION_LAPLACIAN;
+    }
+
+    setUseIDF(Utils.getFlag('I', options));
+    setUseTokenCodes(Utils.getFlag('C', options));
+
+    if (tokenizerSpec != null) {
+      String tokenizerName = tokenizerSpec[0];
+      tokenizerSpec[0] = "";
+      if (tokenizerName.indexOf('.') < 0) {
+        tokenizerName = "weka.linkage.metrics." + tokenizerName;
+      }
+      setTokenizer((Tokenizer) Utils.forName(Tokenizer.class, tokenizerName, tokenizerSpec));
+    }
   }
 
   /**
@@ -370,8 +494,19 @@ public class CosineSimilarity extends StringMetric
    * @return an enumeration of all the available options.
    */
   public Enumeration listOptions() {
-    Vector newVector = new Vector(0);
-
+    Vector newVector = new Vector(6);
+    newVector.addElement(new Option("\tConvert similarity to distance as exp(-similarity).",
+                                    "E", 0, "-E"));
+    newVector.addElement(new Option("\tConvert similarity to distance as 1-similarity.",
+                                    "U", 0, "-U"));
+    newVector.addElement(new Option("\tConvert similarity to distance as 1/(1+similarity).",
+                                    "L", 0, "-L"));
+    newVector.addElement(new Option("\tWeight tokens by IDF.",
+                                    "I", 0, "-I"));
+    newVector.addElement(new Option("\tCompare vectors of token codes rather than of token strings.",
+                                    "C", 0, "-C"));
+    newVector.addElement(new Option("\tThe tokenizer, followed by its options.",
+                                    "T", 1, "-T <tokenizer>"));
     return newVector.elements();
   }
 }
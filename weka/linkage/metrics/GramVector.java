@@ -0,0 +1,148 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    GramVector.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage.metrics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A sparse vector over token codes: the codes are kept sorted in one
+ * array and their weights in a parallel one, so that vectors can be
+ * compared by merging rather than by hash lookups.  Created by
+ * Tokenizer.tokenizeCodes, with token counts as weights.
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class GramVector implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 543083120669640729L;
+
+  /** Sorted distinct codes, and their weights */
+  protected long[] m_codes;
+  protected double[] m_weights;
+
+  /** Euclidean length */
+  protected double m_length;
+
+
+  /**
+   * @param codes sorted distinct codes
+   * @param weights the weights of the codes
+   */
+  public GramVector(long[] codes, double[] weights) {
+    m_codes = codes;
+    m_weights = weights;
+    double length = 0;
+    for (int i = 0; i < weights.length; i++) {
+      length += weights[i] * weights[i];
+    }
+    m_length = Math.sqrt(length);
+  }
+
+
+  /** Create a vector from unsorted codes, weighting each by its count
+   * @param codes the codes; sorted in place
+   * @param numCodes the number of codes used in the array
+   */
+  public static GramVector fromCodes(long[] codes, int numCodes) {
+    Arrays.sort(codes, 0, numCodes);
+    int numDistinct = 0;
+    for (int i = 0; i < numCodes; i++) {
+      if (i == 0 || codes[i] != codes[i - 1]) {
+        numDistinct++;
+      }
+    }
+    long[] distinct = new long[numDistinct];
+    double[] counts = new double[numDistinct];
+    int j = -1;
+    for (int i = 0; i < numCodes; i++) {
+      if (i == 0 || codes[i] != codes[i - 1]) {
+        distinct[++j] = codes[i];
+      }
+      counts[j]++;
+    }
+    return new GramVector(distinct, counts);
+  }
+
+
+  public int size() { return m_codes.length; }
+  public long code(int i) { return m_codes[i]; }
+  public double weight(int i) { return m_weights[i]; }
+  public double length() { return m_length; }
+
+  /** Get the weight of a code; 0 if the vector does not have it */
+  public double getWeight(long code) {
+    int i = Arrays.binarySearch(m_codes, code);
+    return (i < 0) ? 0 : m_weights[i];
+  }
+
+
+  /** Compute the dot product with another vector */
+  public double dot(GramVector other) {
+    long[] codes1 = m_codes, codes2 = other.m_codes;
+    double dot = 0;
+    int i = 0, j = 0;
+    while (i < codes1.length && j < codes2.length) {
+      if (codes1[i] < codes2[j]) {
+        i++;
+      } else if (codes1[i] > codes2[j]) {
+        j++;
+      } else {
+        dot += m_weights[i++] * other.m_weights[j++];
+      }
+    }
+    return dot;
+  }
+
+
+  /** Count the codes shared with another vector */
+  public int numCommon(GramVector other) {
+    long[] codes1 = m_codes, codes2 = other.m_codes;
+    int common = 0;
+    int i = 0, j = 0;
+    while (i < codes1.length && j < codes2.length) {
+      if (codes1[i] < codes2[j]) {
+        i++;
+      } else if (codes1[i] > codes2[j]) {
+        j++;
+      } else {
+        common++;
+        i++;
+        j++;
+      }
+    }
+    return common;
+  }
+
+
+  public String toString() {
+    StringBuffer buffer = new StringBuffer("{");
+    for (int i = 0; i < m_codes.length; i++) {
+      buffer.append(i == 0 ? "" : ", ").append(Long.toHexString(m_codes[i]))
+        .append('=').append(m_weights[i]);
+    }
+    return buffer.append('}').toString();
+  }
+}
@@ -1,6 +1,7 @@
 package weka.linkage.metrics;
 
 import java.util.*;
+import java.io.Serializable;
 
 /** A data structure for a term vector for a document stored
  * as a HashMap that maps tokens to Weight's that store the
@@ -12,7 +13,11 @@ import java.util.*;
  * @author Ray Mooney
  */
 
-public class HashMapVector {
+public class HashMapVector implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -1403264763168565764L;
+
   /** The HashMap that stores the mapping of tokens to Weight's */
   public HashMap hashMap = new HashMap();
 
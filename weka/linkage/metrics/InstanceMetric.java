@@ -35,7 +35,11 @@ import weka.core.*;
  * @version $Revision: 1.1.1.1 $
  */
 
-public abstract class InstanceMetric  {
+public abstract class InstanceMetric implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -1906350496638915188L;
+
   /** indeces of attributes which the metric works on  */
   protected int [] m_attrIdxs =  null;
 
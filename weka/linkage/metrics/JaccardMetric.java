@@ -26,6 +26,7 @@ package weka.linkage.metrics;
 import java.util.*;
 import java.io.Serializable;
 import weka.core.*;
+import weka.core.collections.LongHashSet;
 
 /**
  * This class claculates  similarity between two strings using the Jaccard metric
@@ -37,6 +38,9 @@ import weka.core.*;
 public class JaccardMetric extends StringMetric
   implements DataDependentStringMetric, OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = -1009892481896034194L;
+
   /** Strings are mapped to StringReferences in this hash */
   protected HashMap m_stringRefHash = null;
 
@@ -62,6 +66,13 @@ public class JaccardMetric extends StringMetric
     new Tag(CONVERSION_LAPLACIAN, "distance=1/(1+similarity)"),
     new Tag(CONVERSION_EXPONENTIAL, "distance=exp(-similarity)")
       };
+  /** Should strings be compared by vectors of token codes from
+   * Tokenizer.tokenizeCodes() rather than of token strings? */
+  protected boolean m_useTokenCodes = false;
+
+  /** Token code vectors of the indexed strings */
+  protected HashMap<String,GramVector> m_codeVectors = null;
+
   /** The method of converting, by default laplacian */
   protected int m_conversionType = CONVERSION_LAPLACIAN;
 
@@ -81,6 +92,19 @@ public class JaccardMetric extends StringMetric
   public void buildMetric(List<String> strings) throws Exception {
     m_stringRefHash = new HashMap();
     m_tokenHash = new HashMap();
+    if (m_useTokenCodes) {
+      m_codeVectors = new HashMap<String,GramVector>();
+      LongHashSet codes = new LongHashSet();
+      for (String string : strings) {
+        GramVector vector = m_tokenizer.tokenizeCodes(string);
+        m_codeVectors.put(string, vector);
+        for (int i = 0; i < vector.size(); i++) {
+          codes.add(vector.code(i));
+        }
+      }
+      System.out.println("Indexed " +  strings.size() + " documents with " + codes.size() + " unique terms.");
+      return;
+    }
 
     // Loop, processing each of the examples
     for (String string : strings) { 
@@ -135,6 +159,13 @@ public class JaccardMetric extends StringMetric
    * @returns similarity between two strings
    */
   public double similarity(String s1, String s2) {
+    if (m_useTokenCodes) {
+      GramVector v1 = m_codeVectors.get(s1);
+      GramVector v2 = m_codeVectors.get(s2);
+      int l1 = v1.size();
+      int l2 = v2.size();
+      return (l1 + l2 == 0) ? 0 : (v1.numCommon(v2) + 0.0)/(0.0 + Math.max(l1, l2));
+    }
     StringReference stringRef1 = (StringReference) m_stringRefHash.get(s1);
     StringReference stringRef2 = (StringReference) m_stringRefHash.get(s2);
     HashMapVector v1 = stringRef1.m_vector;
@@ -181,6 +212,20 @@ public class JaccardMetric extends StringMetric
     return m_tokenizer;
   }
 
+  /** Turn comparing token code vectors instead of token strings on/off
+   * @param useTokenCodes if true, strings are compared by token codes
+   */
+  public void setUseTokenCodes(boolean useTokenCodes) {
+    m_useTokenCodes = useTokenCodes;
+  } 
+
+  /** Check whether token code vectors are compared
+   * @return true if strings are compared by token codes
+   */
+  public boolean getUseTokenCodes() {
+    return m_useTokenCodes;
+  } 
+
   /** Return the number of tokens indexed.
    * @return the number of tokens indexed*/
   public int size() {
@@ -262,6 +307,7 @@ public class JaccardMetric extends StringMetric
     JaccardMetric metric = new JaccardMetric();
     metric.setConversionType(new SelectedTag(m_conversionType, TAGS_CONVERSION));
     metric.setTokenizer(m_tokenizer); 
+    metric.setUseTokenCodes(m_useTokenCodes);
     return metric;
   }
 
@@ -278,6 +324,12 @@ public class JaccardMetric extends StringMetric
       options[current++] = "-E";
     } else if (m_conversionType == CONVERSION_UNIT) {
       options[current++] = "-U";
+    } else {
+      options[current++] = "-L";
+    }
+
+    if (m_useTokenCodes) {
+      options[current++] = "-C";
     }
 
     options[current++] = "-T";
@@ -300,12 +352,50 @@ public class JaccardMetric extends StringMetric
   /**
    * Parses a given list of options. Valid options are:<p>
    *
-   * -S use stemming
-   * -R remove stopwords
-   * -N gram size
+   * -E, -U or -L <br>
+   * Convert similarity to distance as exp(-similarity), 1-similarity
+   * or 1/(1+similarity).<p>
+   *
+   * -C <br>
+   * Compare vectors of token codes rather than of token strings.<p>
+   *
+   * -T tokenizer <br>
+   * The tokenizer; the options following it are passed to the
+   * tokenizer, so this comes last.<p>
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if the tokenizer cannot be created
    */
   public void setOptions(String[] options) throws Exception {
-    // TODO
+    // the tokenizer options may repeat our flags, so they are split off first
+    String[] tokenizerSpec = null;
+    for (int i = 0; i < options.length - 1; i++) {
+      if (options[i].equals("-T")) {
+        tokenizerSpec = new String[options.length - i - 1];
+        System.arraycopy(options, i + 1, tokenizerSpec, 0, tokenizerSpec.length);
+        Arrays.fill(options, i, options.length, "");
+        break;
+      }
+    }
+
+    if (Utils.getFlag('E', options)) {
+      m_conversionType = CONVERSION_EXPONENTIAL;
+    } else if (Utils.getFlag('U', options)) {
+      m_conversionType = CONVERSION_UNIT;
+    } else if (Utils.getFlag('L', options)) {
+      m_conversionType = CONVERSION_LAPLACIAN;
+    }
+
+    setUseTokenCodes(Utils.getFlag('C', options));
+
+    if (tokenizerSpec != null) {
+      String tokenizerName = tokenizerSpec[0];
+      tokenizerSpec[0] = "";
+      if (tokenizerName.indexOf('.') < 0) {
+        tokenizerName = "weka.linkage.metrics." + tokenizerName;
+      }
+      setTokenizer((Tokenizer) Utils.forName(Tokenizer.class, tokenizerName, tokenizerSpec));
+    }
   }
 
   /**
@@ -314,8 +404,17 @@ public class JaccardMetric extends StringMetric
    * @return an enumeration of all the available options.
    */
   public Enumeration listOptions() {
-    Vector newVector = new Vector(0);
-
+    Vector newVector = new Vector(5);
+    newVector.addElement(new Option("\tConvert similarity to distance as exp(-similarity).",
+                                    "E", 0, "-E"));
+    newVector.addElement(new Option("\tConvert similarity to distance as 1-similarity.",
+                                    "U", 0, "-U"));
+    newVector.addElement(new Option("\tConvert similarity to distance as 1/(1+similarity).",
+                                    "L", 0, "-L"));
+    newVector.addElement(new Option("\tCompare vectors of token codes rather than of token strings.",
+                                    "C", 0, "-C"));
+    newVector.addElement(new Option("\tThe tokenizer, followed by its options.",
+                                    "T", 1, "-T <tokenizer>"));
     return newVector.elements();
   }
 }
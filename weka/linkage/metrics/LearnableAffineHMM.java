@@ -36,6 +36,9 @@ import weka.linkage.*;
  **/
 public class LearnableAffineHMM extends StringMetric implements LearnableStringMetric, Serializable, OptionHandler {
 
+  /** for serialization */
+  static final long serialVersionUID = -401370768496397549L;
+
   /* Current probabilities, log-probabilities and accumulated expectations
      for each edit operation */
   protected double [][] m_editopProbs;
@@ -45,6 +45,9 @@ import weka.classifiers.Evaluation;
 public class LearnableCosine extends StringMetric implements DataDependentStringMetric, LearnableStringMetric,
 							    OptionHandler, Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 822579743552797788L;
+
   /** Strings are mapped to StringReferences in this hash */
   protected HashMap m_stringRefHash = null;
 
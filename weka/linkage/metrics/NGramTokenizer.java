@@ -34,6 +34,10 @@ import weka.core.*;
  * @author Mikhail Bilenko
  */
 public class NGramTokenizer extends Tokenizer implements Serializable, OptionHandler {
+
+  /** for serialization */
+  static final long serialVersionUID = -5644033599119631466L;
+
   /** Converting all tokens to lowercase */
   protected boolean m_caseInsensitive = true;
 
@@ -59,6 +63,14 @@ public class NGramTokenizer extends Tokenizer implements Serializable, OptionHan
   protected boolean m_replaceSpaces = false; 
 
 
+  /** Multiplier of the rolling hash of grams longer than 4 chars */
+  protected static final long HASH_BASE = 0x100000001b3L;
+
+  /** Buffers reused by tokenizeCodes */
+  protected transient char[] m_charBuffer = null;
+  protected transient long[] m_codeBuffer = null;
+
+
   /** A default constructor */
   public NGramTokenizer() {
     super();
@@ -75,35 +87,7 @@ public class NGramTokenizer extends Tokenizer implements Serializable, OptionHan
     if (m_caseInsensitive) {
       string = string.toLowerCase();
     }
-    
-    StringBuffer filteredString = new StringBuffer();
-
-    // only need to tokenize if stemming, or removing stopwords, or replacing space equivalents
-    if (m_stemming || m_stopwordRemoval || m_replaceSpaces) {
-      StringTokenizer tokenizer = new StringTokenizer(string, m_spaceEquivalents, true);
-      while (tokenizer.hasMoreTokens()) {
-	String token = tokenizer.nextToken();
-
-	if (m_stemming) {
-	  token = stem(token);
-	}
-	if (m_stopwordRemoval && m_stopwordSet.contains(token)) {
-	  continue;
-	}
-
-	if (m_replaceSpaces && token.length() == 1) {
-	  if (m_spaceEquivalents.indexOf(token) > -1) {
-	    filteredString.append(" ");
-	  }
-	} else {
-	  filteredString.append(token);
-	}
-      }
-    } else {
-      filteredString = new StringBuffer(string);
-    } 
-    
-    char[] chars = filteredString.toString().toCharArray();
+    char[] chars = filter(string).toCharArray();
    
     HashMapVector result = new HashMapVector();
 
@@ -114,41 +98,114 @@ public class NGramTokenizer extends Tokenizer implements Serializable, OptionHan
     return result;
   }
 
-  /** Take a string and create a TokenString of overlapping n-gram tokens from it
+
+  /** Take a string and create a vector of the codes of its n-grams,
+   * weighted by their counts.  The grams are those of tokenize(), but
+   * no strings are created for them: grams of up to 4 characters are
+   * packed into their codes, longer ones are given rolling hashes.
    * @param string a String to tokenize
-   * @returns vector with individual tokens
+   * @returns vector of gram codes
    */
-  public TokenString getTokenString(String string) {
-    TokenString ts = new TokenString(string);
-    ArrayList tokenList = new ArrayList();
-    
-    StringBuffer filteredString = new StringBuffer();
-    // only need to tokenize if stemming, or removing stopwords, or replacing space equivalents
+  public synchronized GramVector tokenizeCodes(String string) {
+    if (m_caseInsensitive) {
+      string = string.toLowerCase();
+    }
     if (m_stemming || m_stopwordRemoval || m_replaceSpaces) {
-      StringTokenizer tokenizer = new StringTokenizer(string, m_spaceEquivalents, true);
-      while (tokenizer.hasMoreTokens()) {
-	String token = tokenizer.nextToken();
+      string = filter(string);
+    }
+    int length = string.length();
+    if (m_charBuffer == null || m_charBuffer.length < length) {
+      m_charBuffer = new char[Math.max(2 * length, 64)];
+    }
+    string.getChars(0, length, m_charBuffer, 0);
 
-	if (m_stemming) {
-	  token = stem(token);
-	}
-	if (m_stopwordRemoval && m_stopwordSet.contains(token)) {
-	  continue;
-	}
+    int numGrams = Math.max(0, length - m_n);
+    if (m_codeBuffer == null || m_codeBuffer.length < numGrams) {
+      m_codeBuffer = new long[Math.max(2 * numGrams, 64)];
+    }
+    gramCodes(m_charBuffer, numGrams, m_n, m_codeBuffer);
+    return GramVector.fromCodes(m_codeBuffer, numGrams);
+  }
 
-	if (m_replaceSpaces && token.length() == 1) {
-	  if (m_spaceEquivalents.indexOf(token) > -1) {
-	    filteredString.append(" ");
-	  }
-	} else {
-	  filteredString.append(token);
-	}
+
+  /** Compute the codes of consecutive n-grams of an array of chars
+   * @param chars the chars
+   * @param numGrams the number of grams, starting at the first char
+   * @param n the gram length
+   * @param codes receives the codes
+   */
+  public static void gramCodes(char[] chars, int numGrams, int n, long[] codes) {
+    if (numGrams <= 0) {
+      return;
+    }
+    if (n <= 4) {
+      // 16 bits per char
+      long mask = (n == 4) ? -1L : (1L << (16 * n)) - 1;
+      long code = 0;
+      for (int k = 0; k < n - 1; k++) {
+        code = (code << 16) | chars[k];
+      }
+      for (int i = 0; i < numGrams; i++) {
+        code = ((code << 16) | chars[i + n - 1]) & mask;
+        codes[i] = code;
       }
     } else {
-      filteredString = new StringBuffer(string);
-    } 
+      // polynomial hash, rolled by removing the leading char
+      long power = 1;
+      for (int k = 0; k < n - 1; k++) {
+        power *= HASH_BASE;
+      }
+      long code = 0;
+      for (int k = 0; k < n; k++) {
+        code = code * HASH_BASE + chars[k];
+      }
+      codes[0] = code;
+      for (int i = 1; i < numGrams; i++) {
+        code = (code - chars[i - 1] * power) * HASH_BASE + chars[i + n - 1];
+        codes[i] = code;
+      }
+    }
+  }
+
+
+  /** Stem, remove stopwords and replace space equivalents, as set */
+  protected String filter(String string) {
+    // only need to tokenize if stemming, or removing stopwords, or replacing space equivalents
+    if (!m_stemming && !m_stopwordRemoval && !m_replaceSpaces) {
+      return string;
+    }
+    StringBuffer filteredString = new StringBuffer();
+    StringTokenizer tokenizer = new StringTokenizer(string, m_spaceEquivalents, true);
+    while (tokenizer.hasMoreTokens()) {
+      String token = tokenizer.nextToken();
+
+      if (m_stemming) {
+	token = stem(token);
+      }
+      if (m_stopwordRemoval && m_stopwordSet.contains(token)) {
+	continue;
+      }
+
+      if (m_replaceSpaces && token.length() == 1) {
+	if (m_spaceEquivalents.indexOf(token) > -1) {
+	  filteredString.append(" ");
+	}
+      } else {
+	filteredString.append(token);
+      }
+    }
+    return filteredString.toString();
+  }
+
+  /** Take a string and create a TokenString of overlapping n-gram tokens from it
+   * @param string a String to tokenize
+   * @returns vector with individual tokens
+   */
+  public TokenString getTokenString(String string) {
+    TokenString ts = new TokenString(string);
+    ArrayList tokenList = new ArrayList();
     
-    char[] chars = filteredString.toString().toCharArray();
+    char[] chars = filter(string).toCharArray();
    
     HashMapVector result = new HashMapVector();
 
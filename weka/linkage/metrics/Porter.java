@@ -27,6 +27,9 @@ class NewString {
 
 public class Porter implements Serializable {
 
+  /** for serialization */
+  static final long serialVersionUID = 4496991683542430835L;
+
   private String Clean( String str ) {
     int last = str.length();
      
@@ -24,6 +24,7 @@
 package weka.linkage.metrics;
 
 import weka.core.*;
+import java.io.Serializable;
 
 /**
  * An abstract class that returns a measure of similarity between strings
@@ -31,7 +32,10 @@ import weka.core.*;
  * @author Mikhail Bilenko
  */
 
-public abstract class StringMetric implements Cloneable {
+public abstract class StringMetric implements Cloneable, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -1365945483853735799L;
 
   /** We can have different ways of converting from distance to similarity  */
   public static final int CONVERSION_LAPLACIAN = 1;
@@ -0,0 +1,303 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    StringMetricBenchmark.java
+ *    Copyright (C) 2006 Mikhail Bilenko
+ *
+ */
+
+package weka.linkage.metrics;
+
+import weka.core.*;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Measures the speed and allocation of the string metrics, so that
+ * regressions in the metric hot paths can be caught.  Every metric is
+ * run on synthetic strings of given mean lengths and on the values of
+ * the string attributes of given datasets, in two modes:
+ * <ul>
+ * <li> single: one distance computation per operation, on random pairs
+ * <li> batch: one string against a block of strings per operation,
+ * reported per pair
+ * </ul>
+ * Each measurement is preceded by warmup iterations; the mean time per
+ * pair, its standard deviation over the measurement iterations and the
+ * bytes allocated per pair are printed as CSV.  Allocation is read from
+ * the thread allocation counter of the JVM, and is reported as NaN where
+ * that counter is unavailable.<p>
+ *
+ * Example:
+ * <pre>
+ * java weka.linkage.metrics.StringMetricBenchmark -L 10,40,160 \
+ * -D datasets/restaurant-nophone.arff -D datasets/cora-ATVYOall.arff
+ * </pre>
+ *
+ * @author Mikhail Bilenko (mbilenko@cs.utexas.edu)
+ * @version $Revision: 1.1.1.1 $
+ */
+public class StringMetricBenchmark {
+
+  /** Number of strings in a synthetic input */
+  protected int m_numStrings = 1000;
+
+  /** Number of strings a string is compared to in batch mode */
+  protected int m_batchSize = 100;
+
+  /** Number of warmup and measurement iterations */
+  protected int m_warmupIterations = 5;
+  protected int m_measureIterations = 10;
+
+  /** Milliseconds an iteration runs for */
+  protected int m_iterationTime = 500;
+
+  protected Random m_random = new Random(1);
+
+  /** Sink for the computed distances, so that they are not optimized away */
+  protected volatile double m_sink;
+
+
+  /** The metrics to measure; named by the configuration they represent */
+  public static LinkedHashMap<String, StringMetric> createMetrics() {
+    LinkedHashMap<String, StringMetric> metrics = new LinkedHashMap<String, StringMetric>();
+    metrics.put("AffineEditDistance", new AffineEditDistance());
+    LearnableAffineHMM cost = new LearnableAffineHMM();
+    cost.setUseGenerativeModel(false);
+    metrics.put("LearnableAffineHMM-cost", cost);
+    LearnableAffineHMM generative = new LearnableAffineHMM();
+    generative.setUseGenerativeModel(true);
+    metrics.put("LearnableAffineHMM-generative", generative);
+    metrics.put("CosineSimilarity", new CosineSimilarity());
+    metrics.put("JaccardMetric", new JaccardMetric());
+    metrics.put("LearnableCosine", new LearnableCosine());
+    return metrics;
+  }
+
+
+  /** Generate strings of words, with lengths uniform within half the
+   * mean length around the mean */
+  public String[] syntheticStrings(int meanLength) {
+    String[] strings = new String[m_numStrings];
+    for (int i = 0; i < m_numStrings; i++) {
+      int length = meanLength / 2 + m_random.nextInt(meanLength + 1);
+      StringBuffer buffer = new StringBuffer(length);
+      while (buffer.length() < length) {
+        if (buffer.length() > 0) {
+          buffer.append(' ');
+        }
+        int wordLength = 3 + m_random.nextInt(7);
+        for (int j = 0; j < wordLength && buffer.length() < length; j++) {
+          buffer.append((char) ('a' + m_random.nextInt(26)));
+        }
+      }
+      strings[i] = buffer.toString();
+    }
+    return strings;
+  }
+
+
+  /** Get the non-missing values of all string attributes of a dataset */
+  public static String[] datasetStrings(File file) throws Exception {
+    Instances data = new Instances(new BufferedReader(new FileReader(file)));
+    ArrayList<String> strings = new ArrayList<String>();
+    for (int i = 0; i < data.numInstances(); i++) {
+      Instance instance = data.instance(i);
+      for (int j = 0; j < data.numAttributes(); j++) {
+        if (data.attribute(j).isString() && !instance.isMissing(j)) {
+          strings.add(instance.stringValue(j));
+        }
+      }
+    }
+    return strings.toArray(new String[strings.size()]);
+  }
+
+
+  /** Measure a metric on a set of strings
+   * @param metric the metric; data-dependent metrics are built on the strings
+   * @param strings the strings
+   * @param batch whether to compare strings against blocks
+   * @returns the mean ns per pair, its deviation, and the bytes allocated per pair
+   */
+  public double[] measure(StringMetric metric, String[] strings, boolean batch) throws Exception {
+    if (metric instanceof DataDependentStringMetric) {
+      ((DataDependentStringMetric) metric).buildMetric(Arrays.asList(strings));
+    }
+    int[] pairs = new int[2 * 4096];
+    for (int i = 0; i < pairs.length; i++) {
+      pairs[i] = m_random.nextInt(strings.length);
+    }
+    for (int i = 0; i < m_warmupIterations; i++) {
+      iteration(metric, strings, pairs, batch);
+    }
+    double[] times = new double[m_measureIterations];
+    double sum = 0, bytes = 0, numPairs = 0;
+    for (int i = 0; i < m_measureIterations; i++) {
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      long n = iteration(metric, strings, pairs, batch);
+      times[i] = (System.nanoTime() - start) / (double) n;
+      bytes += allocatedBytes() - allocated;
+      numPairs += n;
+      sum += times[i];
+    }
+    double mean = sum / m_measureIterations;
+    double variance = 0;
+    for (int i = 0; i < m_measureIterations; i++) {
+      variance += (times[i] - mean) * (times[i] - mean);
+    }
+    double deviation = Math.sqrt(variance / Math.max(1, m_measureIterations - 1));
+    return new double[] {mean, deviation, (allocatedBytes() < 0) ? Double.NaN : bytes / numPairs};
+  }
+
+
+  /** Compute distances for the iteration time
+   * @returns the number of pairs compared */
+  protected long iteration(StringMetric metric, String[] strings, int[] pairs, boolean batch) throws Exception {
+    long end = System.nanoTime() + m_iterationTime * 1000000L;
+    long n = 0;
+    double sum = 0;
+    int p = 0;
+    do {
+      if (batch) {
+        String s = strings[pairs[p]];
+        int offset = pairs[p + 1];
+        for (int i = 0; i < m_batchSize; i++) {
+          sum += metric.distance(s, strings[(offset + i) % strings.length]);
+        }
+        n += m_batchSize;
+      } else {
+        sum += metric.distance(strings[pairs[p]], strings[pairs[p + 1]]);
+        n++;
+      }
+      p = (p + 2) % pairs.length;
+    } while (System.nanoTime() < end);
+    m_sink = sum;
+    return n;
+  }
+
+
+  /** Get the bytes allocated so far by the current thread, or -1 if unknown */
+  protected static long allocatedBytes() {
+    try {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    } catch (Throwable t) {
+    }
+    return -1;
+  }
+
+
+  /** Set the number of strings in a synthetic input */
+  public void setNumStrings(int numStrings) { m_numStrings = numStrings; }
+  public int getNumStrings() { return m_numStrings; }
+
+  /** Set the number of strings a string is compared to in batch mode */
+  public void setBatchSize(int batchSize) { m_batchSize = batchSize; }
+  public int getBatchSize() { return m_batchSize; }
+
+  /** Set the number of warmup iterations */
+  public void setWarmupIterations(int warmupIterations) { m_warmupIterations = warmupIterations; }
+  public int getWarmupIterations() { return m_warmupIterations; }
+
+  /** Set the number of measurement iterations */
+  public void setMeasureIterations(int measureIterations) { m_measureIterations = measureIterations; }
+  public int getMeasureIterations() { return m_measureIterations; }
+
+  /** Set the milliseconds an iteration runs for */
+  public void setIterationTime(int iterationTime) { m_iterationTime = iterationTime; }
+  public int getIterationTime() { return m_iterationTime; }
+
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args -L mean lengths, -D datasets, -M metric names, -o output file, -n strings,
+   * -b batch size, -w warmup iterations, -i measurement iterations, -t ms per iteration
+   */
+  public static void main(String[] args) {
+    try {
+      StringMetricBenchmark benchmark = new StringMetricBenchmark();
+      String lengths = Utils.getOption('L', args);
+      if (lengths.length() == 0) {
+        lengths = "10,40,160";
+      }
+      ArrayList<String> datasets = new ArrayList<String>();
+      String dataset;
+      while ((dataset = Utils.getOption('D', args)).length() != 0) {
+        datasets.add(dataset);
+      }
+      String metricNames = Utils.getOption('M', args);
+      String outputFile = Utils.getOption('o', args);
+      String option = Utils.getOption('n', args);
+      if (option.length() != 0) benchmark.setNumStrings(Integer.parseInt(option));
+      option = Utils.getOption('b', args);
+      if (option.length() != 0) benchmark.setBatchSize(Integer.parseInt(option));
+      option = Utils.getOption('w', args);
+      if (option.length() != 0) benchmark.setWarmupIterations(Integer.parseInt(option));
+      option = Utils.getOption('i', args);
+      if (option.length() != 0) benchmark.setMeasureIterations(Integer.parseInt(option));
+      option = Utils.getOption('t', args);
+      if (option.length() != 0) benchmark.setIterationTime(Integer.parseInt(option));
+      Utils.checkForRemainingOptions(args);
+
+      LinkedHashMap<String, String[]> inputs = new LinkedHashMap<String, String[]>();
+      if (!lengths.equals("none")) {
+        StringTokenizer tokenizer = new StringTokenizer(lengths, ",");
+        while (tokenizer.hasMoreTokens()) {
+          int length = Integer.parseInt(tokenizer.nextToken().trim());
+          inputs.put("synthetic-" + length, benchmark.syntheticStrings(length));
+        }
+      }
+      for (String name : datasets) {
+        inputs.put(new File(name).getName(), datasetStrings(new File(name)));
+      }
+
+      // some metrics print progress to standard output
+      PrintStream out = (outputFile.length() != 0) ? new PrintStream(new FileOutputStream(outputFile), true) : System.out;
+      out.println("metric,input,mode,ns/op,error,bytes/op");
+      for (Map.Entry<String, String[]> input : inputs.entrySet()) {
+        for (String metricName : createMetrics().keySet()) {
+          if (metricNames.length() != 0 && ("," + metricNames + ",").indexOf("," + metricName + ",") < 0) {
+            continue;
+          }
+          for (int mode = 0; mode < 2; mode++) {
+            // a fresh metric, so that no state is carried between inputs
+            StringMetric metric = createMetrics().get(metricName);
+            double[] result = benchmark.measure(metric, input.getValue(), mode == 1);
+            out.println(metricName + "," + input.getKey() + "," + (mode == 1 ? "batch" : "single")
+                               + "," + Utils.doubleToString(result[0], 1)
+                               + "," + Utils.doubleToString(result[1], 1)
+                               + "," + Utils.doubleToString(result[2], 1));
+          }
+        }
+      }
+      if (out != System.out) {
+        out.close();
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.err.println("Usage:\n\tStringMetricBenchmark [-L <mean lengths>|none] [-D <arff file>]*"
+                         + " [-M <metric names>] [-o <csv file>] [-n <num strings>] [-b <batch size>]"
+                         + " [-w <warmup iterations>] [-i <iterations>] [-t <ms per iteration>]\n");
+    }
+  }
+}
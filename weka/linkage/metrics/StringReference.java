@@ -10,7 +10,11 @@ import java.io.*;
  * @author Ray Mooney
  */
 
-public class StringReference {
+public class StringReference implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 955788577003558293L;
+
   /** The referenced string. */
   public String m_string = null;
   /** The corresponding HashMapVector */
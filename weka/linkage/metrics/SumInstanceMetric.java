@@ -39,6 +39,9 @@ import weka.core.*;
  */
 
 public class SumInstanceMetric extends InstanceMetric implements OptionHandler, Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -3443010383742242029L;
   
   /** A selector object that will create training sets */
   PairwiseSelector m_selector = new PairwiseSelector();
@@ -1,6 +1,7 @@
 package weka.linkage.metrics;
 
 import java.util.*;
+import java.io.Serializable;
 
 /** A lightweight object for storing information about a token (a.k.a word, term)
  * in an inverted index.
@@ -8,8 +9,12 @@ import java.util.*;
  * @author Ray Mooney
  */
 
-public class TokenInfo
+public class TokenInfo implements Serializable
 {
+
+    /** for serialization */
+    static final long serialVersionUID = 8431353778084247891L;
+
     /** The IDF (inverse document frequency) factor for this token 
      * which indicates how much to weight an occurence. Tokens that
      * appear in many documents are not very discriminative and therefore
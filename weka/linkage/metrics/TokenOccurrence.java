@@ -1,12 +1,18 @@
 package weka.linkage.metrics;
 
+import java.io.Serializable;
+
 /** A lightweight object for storing information about an occurrence of a token (a.k.a word, term)
  * in a Document.
  *
  * @author Ray Mooney
  */
 
-public class TokenOccurrence {
+public class TokenOccurrence implements Serializable {
+
+    /** for serialization */
+    static final long serialVersionUID = 74316539966863416L;
+
     /** A reference to the Document where it occurs */
     public StringReference m_stringRef = null;
     /** The number of times it occurs in the Document */
@@ -31,7 +31,10 @@ import java.io.*;
  *
  * @author Mikhail Bilenko
  */
-public abstract class Tokenizer {
+public abstract class Tokenizer implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 3007621049761461844L;
 
   /** A tokenizer keeps an index of seen tokens */ 
   protected HashMap m_stringIDmap;
@@ -56,6 +59,45 @@ public abstract class Tokenizer {
   public abstract TokenString getTokenString(String s); 
 
 
+  /** Take a string and create a vector of token codes weighted by
+   * the token counts.  Codes are hashes of the tokens from tokenize();
+   * subclasses may compute them without creating the token strings.
+   * @param string a string to tokenize
+   * @return the vector of codes
+   */
+  public GramVector tokenizeCodes(String s) {
+    HashMapVector vector = tokenize(s);
+    long[] codes = new long[vector.size()];
+    int numCodes = 0;
+    Iterator mapEntries = vector.iterator();
+    while (mapEntries.hasNext()) {
+      Map.Entry entry = (Map.Entry)mapEntries.next();
+      codes[numCodes++] = hashToken((String)entry.getKey());
+    }
+    GramVector distinct = GramVector.fromCodes(codes, numCodes);
+
+    // weight the codes by the token counts, merging any collisions
+    double[] weights = new double[distinct.size()];
+    mapEntries = vector.iterator();
+    while (mapEntries.hasNext()) {
+      Map.Entry entry = (Map.Entry)mapEntries.next();
+      long code = hashToken((String)entry.getKey());
+      weights[Arrays.binarySearch(distinct.m_codes, code)] += ((Weight)entry.getValue()).getValue();
+    }
+    return new GramVector(distinct.m_codes, weights);
+  }
+
+
+  /** Hash a token into a code (64-bit FNV-1a) */
+  public static long hashToken(String token) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < token.length(); i++) {
+      hash = (hash ^ token.charAt(i)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+
 }
 
 
@@ -1,5 +1,7 @@
 package weka.linkage.metrics;
 
+import java.io.Serializable;
+
 /** A simple wrapper data structure for storing a double weight
  * as an Object that can be put into lists, maps, etc. and then
  * incremented, decremented, and set.
@@ -7,7 +9,11 @@ package weka.linkage.metrics;
  * @author Ray Mooney
  */
 
-public class Weight {
+public class Weight implements Serializable {
+
+    /** for serialization */
+    static final long serialVersionUID = 9041368516524393836L;
+
     /** A numerical weight value */
     protected double value = 0;
     
@@ -36,6 +36,10 @@ import weka.core.*;
  */
 public class WordTokenizer extends Tokenizer
   implements Serializable, OptionHandler, Cloneable {
+
+  /** for serialization */
+  static final long serialVersionUID = -7088880037140397082L;
+
   /** Converting all tokens to lowercase */
   protected boolean m_caseInsensitive = true;
 
@@ -205,12 +209,15 @@ public class WordTokenizer extends Tokenizer
   /**
    * Parses a given list of options. Valid options are:<p>
    *
-    * -S use stemming
+   * -I case-insensitive
+   * -S use stemming
    * -R remove stopwords
    * -m minimum length of a token for it to be included
    */
   public void setOptions(String[] options) throws Exception {
     System.out.println("Inside setOPtions + " + options.length); 
+    setCaseInsensitive(Utils.getFlag('I', options));
+
     setStemming(Utils.getFlag('S', options));
 
     setStopwordRemoval(Utils.getFlag('R', options));
@@ -229,6 +236,9 @@ public class WordTokenizer extends Tokenizer
   public Enumeration listOptions() {
     Vector newVector = new Vector(5);
 
+    newVector.addElement(new Option("\tIgnore case\n",
+				    "I", 0, "-I"));
+
     newVector.addElement(new Option("\tUse Porter stemmer for stemming\n",
 				    "S", 0, "-S"));
 